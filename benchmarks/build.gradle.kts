@@ -0,0 +1,30 @@
+import org.robolectric.gradle.AndroidSdk
+
+plugins { alias(libs.plugins.robolectric.java.module) }
+
+dependencies {
+  annotationProcessor(libs.jmh.generator.annprocess)
+
+  implementation(project(":sandbox"))
+  implementation(project(":simulator"))
+  implementation(libs.jmh.core)
+  implementation(AndroidSdk.MAX_SDK.coordinates)
+}
+
+// Runs the JMH benchmarks and writes machine-readable results to build/reports/jmh/results.json.
+// Pass -PjmhInclude=<regex> to run only matching benchmarks.
+val jmhResultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+
+tasks.register<JavaExec>("jmh") {
+  description = "Runs the JMH benchmarks"
+  group = "robolectric"
+
+  classpath = sourceSets.main.get().runtimeClasspath
+  mainClass = "org.openjdk.jmh.Main"
+  args(providers.gradleProperty("jmhInclude").getOrElse(".*"))
+  args("-rf", "json", "-rff", jmhResultsFile.get().asFile.absolutePath)
+  outputs.file(jmhResultsFile)
+  outputs.upToDateWhen { false }
+
+  doFirst { jmhResultsFile.get().asFile.parentFile.mkdirs() }
+}
@@ -0,0 +1,57 @@
+package org.robolectric.benchmarks;
+
+import java.lang.reflect.Constructor;
+import org.robolectric.benchmarks.sandboxed.ApplicationSetup;
+import org.robolectric.internal.AndroidSandbox;
+import org.robolectric.simulator.SandboxBuilder;
+
+/**
+ * A Robolectric sandbox with an application set up, shared by every benchmark in the JVM that
+ * exercises code needing an Android environment.
+ *
+ * <p>Code that uses Android classes lives in {@link org.robolectric.benchmarks.sandboxed} and is
+ * loaded by the sandbox's class loader. Benchmarks interact with it through {@link Runnable}.
+ *
+ * <p>The SDK defaults to the newest known one, and can be set with the {@code
+ * robolectric.benchmarks.sdk} system property.
+ */
+final class AndroidEnvironment {
+  private static AndroidEnvironment instance;
+
+  private final AndroidSandbox sandbox;
+
+  static synchronized AndroidEnvironment get() {
+    if (instance == null) {
+      instance = new AndroidEnvironment();
+    }
+    return instance;
+  }
+
+  private AndroidEnvironment() {
+    sandbox =
+        SandboxBuilder.newBuilder()
+            .setSdkVersion(Integer.getInteger("robolectric.benchmarks.sdk", -1))
+            .build();
+    runOnMainThread(newOperation(ApplicationSetup.class, sandbox));
+  }
+
+  /**
+   * Creates an instance of the sandboxed copy of {@code operationClass}, using its only
+   * constructor.
+   */
+  Runnable newOperation(Class<? extends Runnable> operationClass, Object... args) {
+    try {
+      Constructor<?> constructor =
+          sandbox.bootstrappedClass(operationClass).getDeclaredConstructors()[0];
+      constructor.setAccessible(true);
+      return (Runnable) constructor.newInstance(args);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot create " + operationClass.getName(), e);
+    }
+  }
+
+  /** Runs {@code runnable} on the sandbox's main thread and waits for it to finish. */
+  void runOnMainThread(Runnable runnable) {
+    sandbox.runOnMainThread(runnable);
+  }
+}
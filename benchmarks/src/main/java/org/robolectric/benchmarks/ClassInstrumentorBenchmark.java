@@ -0,0 +1,77 @@
+package org.robolectric.benchmarks;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.internal.bytecode.ClassDetails;
+import org.robolectric.internal.bytecode.ClassInstrumentor;
+import org.robolectric.internal.bytecode.ClassNodeProvider;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+
+/** Measures {@link ClassInstrumentor#instrument} on classes of various shapes and sizes. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClassInstrumentorBenchmark {
+
+  @Param({
+    "com.google.common.collect.ImmutableList",
+    "com.google.common.collect.HashBiMap",
+    "com.google.common.collect.Maps"
+  })
+  public String className;
+
+  private ClassInstrumentor classInstrumentor;
+  private InstrumentationConfiguration config;
+  private ClassNodeProvider classNodeProvider;
+  private ClassDetails classDetails;
+
+  @Setup
+  public void setUp() throws ClassNotFoundException {
+    classInstrumentor = new ClassInstrumentor();
+    config =
+        new InstrumentationConfiguration.Builder()
+            .addInstrumentedPackage("com.google.common.collect")
+            .build();
+    classNodeProvider =
+        new ClassNodeProvider() {
+          @Override
+          protected byte[] getClassBytes(String className) throws ClassNotFoundException {
+            return readClassBytes(className);
+          }
+        };
+    classDetails = new ClassDetails(readClassBytes(className.replace('.', '/')));
+  }
+
+  @Benchmark
+  public byte[] instrument() {
+    return classInstrumentor.instrument(classDetails, config, classNodeProvider);
+  }
+
+  private static byte[] readClassBytes(String internalClassName) throws ClassNotFoundException {
+    ClassLoader classLoader = ClassInstrumentorBenchmark.class.getClassLoader();
+    try (InputStream in = classLoader.getResourceAsStream(internalClassName + ".class")) {
+      if (in == null) {
+        throw new ClassNotFoundException(internalClassName);
+      }
+      return ByteStreams.toByteArray(in);
+    } catch (IOException e) {
+      throw new ClassNotFoundException(internalClassName, e);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.benchmarks.sandboxed.MessageDispatch;
+
+/**
+ * Measures enqueueing messages on the main looper and dispatching them, as implemented by
+ * ShadowPausedMessageQueue and ShadowPausedLooper. Scores are per message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageQueueBenchmark {
+  private static final int MESSAGE_COUNT = 1000;
+
+  private AndroidEnvironment environment;
+  private Runnable messageDispatch;
+
+  @Setup
+  public void setUp() {
+    environment = AndroidEnvironment.get();
+    messageDispatch = environment.newOperation(MessageDispatch.class, MESSAGE_COUNT);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MESSAGE_COUNT)
+  public void postAndIdle() {
+    environment.runOnMainThread(messageDispatch);
+  }
+}
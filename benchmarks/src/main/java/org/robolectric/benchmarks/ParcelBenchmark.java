@@ -0,0 +1,36 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.benchmarks.sandboxed.ParcelCycle;
+
+/** Measures write/read cycles of {@code android.os.Parcel} as implemented by ShadowParcel. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParcelBenchmark {
+
+  private Runnable parcelCycle;
+
+  @Setup
+  public void setUp() {
+    parcelCycle = AndroidEnvironment.get().newOperation(ParcelCycle.class);
+  }
+
+  @Benchmark
+  public void writeAndRead() {
+    parcelCycle.run();
+  }
+}
@@ -0,0 +1,44 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.benchmarks.sandboxed.ResourceLookup;
+
+/**
+ * Measures framework resource lookups through {@code android.content.res.Resources}, which in
+ * binary resources mode are served by CppAssetManager2 and ResTable.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResourceLookupBenchmark {
+
+  /** See {@link ResourceLookup}. */
+  @Param({"value", "string", "identifier"})
+  public String lookup;
+
+  private Runnable resourceLookup;
+
+  @Setup
+  public void setUp() {
+    resourceLookup = AndroidEnvironment.get().newOperation(ResourceLookup.class, lookup);
+  }
+
+  @Benchmark
+  public void lookUp() {
+    resourceLookup.run();
+  }
+}
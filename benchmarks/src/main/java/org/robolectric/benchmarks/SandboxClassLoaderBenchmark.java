@@ -0,0 +1,104 @@
+package org.robolectric.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.internal.bytecode.ClassInstrumentor;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.SandboxClassLoader;
+import org.robolectric.internal.bytecode.UrlResourceProvider;
+
+/**
+ * Measures {@link SandboxClassLoader#loadClass} both for classes that must be instrumented and
+ * defined (cold) and for classes the loader has already defined (warm).
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SandboxClassLoaderBenchmark {
+
+  /** Instrumented classes that together pull in a good part of their package. */
+  private static final String[] COLD_CLASS_NAMES = {
+    "com.google.common.collect.ImmutableList",
+    "com.google.common.collect.ImmutableMap",
+    "com.google.common.collect.HashBiMap",
+    "com.google.common.collect.TreeMultimap",
+    "com.google.common.collect.Maps",
+  };
+
+  private static SandboxClassLoader newSandboxClassLoader() {
+    InstrumentationConfiguration config =
+        new InstrumentationConfiguration.Builder()
+            .addInstrumentedPackage("com.google.common.collect")
+            .build();
+    return new SandboxClassLoader(
+        SandboxClassLoaderBenchmark.class.getClassLoader(),
+        config,
+        new UrlResourceProvider(),
+        new ClassInstrumentor());
+  }
+
+  /** A new class loader for each invocation, as a new sandbox would have. */
+  @State(Scope.Thread)
+  public static class ColdLoader {
+    SandboxClassLoader classLoader;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+      classLoader = newSandboxClassLoader();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+      classLoader.close();
+    }
+  }
+
+  /** A class loader that has already loaded the classes being requested. */
+  @State(Scope.Benchmark)
+  public static class WarmLoader {
+    SandboxClassLoader classLoader;
+
+    @Setup
+    public void setUp() throws ClassNotFoundException {
+      classLoader = newSandboxClassLoader();
+      for (String className : COLD_CLASS_NAMES) {
+        classLoader.loadClass(className);
+      }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+      classLoader.close();
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public Class<?> loadClassCold(ColdLoader loader) throws ClassNotFoundException {
+    Class<?> loadedClass = null;
+    for (String className : COLD_CLASS_NAMES) {
+      loadedClass = loader.classLoader.loadClass(className);
+    }
+    return loadedClass;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public Class<?> loadClassWarm(WarmLoader loader) throws ClassNotFoundException {
+    return loader.classLoader.loadClass("com.google.common.collect.ImmutableList");
+  }
+}
@@ -0,0 +1,44 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.benchmarks.sandboxed.ShadowDispatch;
+
+/**
+ * Measures ShadowWrangler: resolving the shadow method for a call site, calling a shadowed method
+ * through an already linked call site, and dispatching an intercepted call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShadowDispatchBenchmark {
+
+  /** See {@link ShadowDispatch}. */
+  @Param({"findShadowMethodHandle", "shadowedCall", "intercept"})
+  public String path;
+
+  private Runnable shadowDispatch;
+
+  @Setup
+  public void setUp() {
+    shadowDispatch = AndroidEnvironment.get().newOperation(ShadowDispatch.class, path);
+  }
+
+  @Benchmark
+  public void dispatch() {
+    shadowDispatch.run();
+  }
+}
@@ -0,0 +1,207 @@
+package org.robolectric.benchmarks;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import com.google.common.reflect.ClassPath;
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.internal.bytecode.ClassHandler;
+import org.robolectric.internal.bytecode.InvokeDynamicSupport;
+import org.robolectric.internal.bytecode.RobolectricInternals;
+import org.robolectric.internal.bytecode.ShadowInvalidator;
+import org.robolectric.util.ReflectionHelpers;
+
+/**
+ * Measures call site bootstrapping through {@link InvokeDynamicSupport} from several threads at
+ * once, as when parallel sandboxes load classes, alone and while shadow map changes invalidate
+ * classes. Each bootstrap binds the call site against the {@link SwitchPoint} of the class
+ * declaring it.
+ *
+ * <p>The {@code synchronized} invalidator is the implementation that serialized every switch point
+ * lookup, kept as a baseline for the lock-free {@link ShadowInvalidator}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShadowInvalidatorBenchmark {
+
+  private static final MethodType TYPE = methodType(void.class);
+  private static final MethodHandle ORIGINAL;
+
+  static {
+    try {
+      ORIGINAL =
+          MethodHandles.lookup().findStatic(ShadowInvalidatorBenchmark.class, "original", TYPE);
+    } catch (ReflectiveOperationException e) {
+      throw new LinkageError(e.getMessage(), e);
+    }
+  }
+
+  @Param({"concurrent", "synchronized"})
+  public String invalidator;
+
+  /** The number of distinct classes declaring call sites. */
+  @Param({"2000"})
+  public int classCount;
+
+  private MethodHandles.Lookup[] callers;
+  private List<String> invalidatedClassNames;
+  private ShadowInvalidator shadowInvalidator;
+
+  @Setup
+  public void setUp() throws IOException {
+    List<MethodHandles.Lookup> lookups = new ArrayList<>();
+    for (ClassPath.ClassInfo classInfo :
+        ClassPath.from(ShadowInvalidatorBenchmark.class.getClassLoader())
+            .getTopLevelClassesRecursive("android")) {
+      if (lookups.size() == classCount) {
+        break;
+      }
+      lookups.add(MethodHandles.lookup().in(classInfo.load()));
+    }
+    callers = lookups.toArray(new MethodHandles.Lookup[0]);
+
+    // Shadow map changes between tests typically invalidate a handful of classes.
+    invalidatedClassNames = new ArrayList<>();
+    for (int i = 0; i < Math.min(16, callers.length); i++) {
+      invalidatedClassNames.add(callers[i].lookupClass().getName());
+    }
+
+    ReflectionHelpers.setStaticField(
+        RobolectricInternals.class, "classHandler", new UnshadowedClassHandler());
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpInvalidator() {
+    shadowInvalidator =
+        invalidator.equals("synchronized")
+            ? new SynchronizedShadowInvalidator()
+            : new ShadowInvalidator();
+    ReflectionHelpers.setStaticField(
+        RobolectricInternals.class, "shadowInvalidator", shadowInvalidator);
+  }
+
+  /** Per-thread position in the sequence of classes whose call sites are bootstrapped. */
+  @State(Scope.Thread)
+  public static class CallSites {
+    private int next;
+
+    CallSite bootstrapNext(MethodHandles.Lookup[] callers) throws IllegalAccessException {
+      MethodHandles.Lookup caller = callers[next];
+      next = (next + 1) % callers.length;
+      return InvokeDynamicSupport.bootstrapStatic(caller, "original", TYPE, ORIGINAL, 0);
+    }
+  }
+
+  @Benchmark
+  @Threads(4)
+  public CallSite bootstrapCallSites(CallSites callSites) throws IllegalAccessException {
+    return callSites.bootstrapNext(callers);
+  }
+
+  @Benchmark
+  @Group("bootstrapWhileInvalidating")
+  @GroupThreads(3)
+  public CallSite bootstrapCallSitesWhileInvalidating(CallSites callSites)
+      throws IllegalAccessException {
+    return callSites.bootstrapNext(callers);
+  }
+
+  @Benchmark
+  @Group("bootstrapWhileInvalidating")
+  @GroupThreads(1)
+  public void invalidateClasses() {
+    shadowInvalidator.invalidateClasses(invalidatedClassNames);
+  }
+
+  private static void original() {}
+
+  /** The {@link ShadowInvalidator} implementation that locked on every switch point lookup. */
+  private static class SynchronizedShadowInvalidator extends ShadowInvalidator {
+    private static final SwitchPoint DUMMY = new SwitchPoint();
+
+    static {
+      SwitchPoint.invalidateAll(new SwitchPoint[] {DUMMY});
+    }
+
+    private final Map<String, SwitchPoint> switchPoints = new HashMap<>();
+
+    @Override
+    public synchronized SwitchPoint getSwitchPoint(String className) {
+      SwitchPoint switchPoint = switchPoints.get(className);
+      if (switchPoint == null) switchPoints.put(className, switchPoint = new SwitchPoint());
+      return switchPoint;
+    }
+
+    @Override
+    public synchronized void invalidateClasses(Collection<String> classNames) {
+      if (classNames.isEmpty()) return;
+      SwitchPoint[] points = new SwitchPoint[classNames.size()];
+      int i = 0;
+      for (String className : classNames) {
+        SwitchPoint switchPoint = switchPoints.put(className, null);
+        if (switchPoint == null) switchPoint = DUMMY;
+        points[i++] = switchPoint;
+      }
+
+      SwitchPoint.invalidateAll(points);
+    }
+  }
+
+  /** Links every call site to the original code, as for classes without shadows. */
+  private static class UnshadowedClassHandler implements ClassHandler {
+    @Override
+    public void classInitializing(Class<?> clazz) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MethodHandle getShadowCreator(Class<?> theClass) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MethodHandle findShadowMethodHandle(
+        Class<?> theClass, String name, MethodType methodType, boolean isStatic, boolean isNative) {
+      return null;
+    }
+
+    @Override
+    public Object intercept(String signature, Object instance, Object[] params, Class<?> theClass) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends Throwable> T stripStackTrace(T throwable) {
+      return throwable;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package org.robolectric.benchmarks.sandboxed;
+
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.ConscryptMode;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.SQLiteMode;
+import org.robolectric.annotation.experimental.LazyApplication;
+import org.robolectric.internal.AndroidSandbox;
+import org.robolectric.manifest.AndroidManifest;
+import org.robolectric.simulator.FixedConfiguration;
+
+/** Sets up a default application in the sandbox, as a test without a manifest would get. */
+public final class ApplicationSetup implements Runnable {
+  private final AndroidSandbox sandbox;
+
+  public ApplicationSetup(AndroidSandbox sandbox) {
+    this.sandbox = sandbox;
+  }
+
+  @Override
+  public void run() {
+    Thread.currentThread().setContextClassLoader(sandbox.getRobolectricClassLoader());
+
+    AndroidManifest manifest = new AndroidManifest(null, null, null, "org.robolectric.benchmarks");
+    FixedConfiguration configuration =
+        FixedConfiguration.newBuilder()
+            .put(ConscryptMode.Mode.class, ConscryptMode.Mode.OFF)
+            .put(LooperMode.Mode.class, LooperMode.Mode.PAUSED)
+            .put(LazyApplication.LazyLoad.class, LazyApplication.LazyLoad.OFF)
+            .put(GraphicsMode.Mode.class, GraphicsMode.Mode.LEGACY)
+            .put(SQLiteMode.Mode.class, SQLiteMode.Mode.NATIVE)
+            .put(Config.class, new Config.Builder().build())
+            .build();
+
+    sandbox.getTestEnvironment().setUpApplicationState("benchmarks", configuration, manifest);
+  }
+}
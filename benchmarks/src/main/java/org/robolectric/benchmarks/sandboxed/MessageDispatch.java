@@ -0,0 +1,29 @@
+package org.robolectric.benchmarks.sandboxed;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Posts a number of messages to the main looper and dispatches them all. Must be run on the main
+ * thread.
+ */
+public final class MessageDispatch implements Runnable {
+  private final int messageCount;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private long dispatchedCount;
+  private final Runnable message = () -> dispatchedCount++;
+
+  public MessageDispatch(int messageCount) {
+    this.messageCount = messageCount;
+  }
+
+  @Override
+  public void run() {
+    for (int i = 0; i < messageCount; i++) {
+      handler.post(message);
+    }
+    shadowOf(Looper.getMainLooper()).idle();
+  }
+}
@@ -0,0 +1,32 @@
+package org.robolectric.benchmarks.sandboxed;
+
+import android.os.Parcel;
+
+/** Writes a mix of values to a {@link Parcel}, reads them back and recycles it. */
+public final class ParcelCycle implements Runnable {
+  private static final byte[] BYTES = new byte[64];
+
+  private long checksum;
+
+  @Override
+  public void run() {
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.writeInt(42);
+      parcel.writeLong(4200L);
+      parcel.writeString("robolectric");
+      parcel.writeByteArray(BYTES);
+      parcel.writeDouble(4.2);
+
+      parcel.setDataPosition(0);
+      checksum +=
+          parcel.readInt()
+              + parcel.readLong()
+              + parcel.readString().length()
+              + parcel.createByteArray().length
+              + (long) parcel.readDouble();
+    } finally {
+      parcel.recycle();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package org.robolectric.benchmarks.sandboxed;
+
+import android.content.res.Resources;
+import android.util.TypedValue;
+import org.robolectric.RuntimeEnvironment;
+
+/** Looks up a framework resource in one of several ways. */
+public final class ResourceLookup implements Runnable {
+  private final String lookup;
+  private final Resources resources = RuntimeEnvironment.getApplication().getResources();
+  private final TypedValue typedValue = new TypedValue();
+
+  private long checksum;
+
+  /**
+   * @param lookup one of {@code "value"}, {@code "string"} or {@code "identifier"}
+   */
+  public ResourceLookup(String lookup) {
+    this.lookup = lookup;
+  }
+
+  @Override
+  public void run() {
+    switch (lookup) {
+      case "value":
+        resources.getValue(android.R.string.ok, typedValue, true);
+        checksum += typedValue.type;
+        break;
+      case "string":
+        checksum += resources.getString(android.R.string.ok).length();
+        break;
+      case "identifier":
+        checksum += resources.getIdentifier("ok", "string", "android");
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown lookup: " + lookup);
+    }
+  }
+}
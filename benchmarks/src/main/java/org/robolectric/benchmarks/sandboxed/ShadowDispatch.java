@@ -0,0 +1,50 @@
+package org.robolectric.benchmarks.sandboxed;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import android.os.SystemClock;
+import org.robolectric.internal.bytecode.RobolectricInternals;
+
+/** Exercises the paths through which instrumented code reaches shadows and interceptors. */
+public final class ShadowDispatch implements Runnable {
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private final String path;
+
+  private long checksum;
+
+  /**
+   * @param path one of {@code "findShadowMethodHandle"}, {@code "shadowedCall"} or {@code
+   *     "intercept"}
+   */
+  public ShadowDispatch(String path) {
+    this.path = path;
+  }
+
+  @Override
+  public void run() {
+    try {
+      switch (path) {
+        case "findShadowMethodHandle":
+          checksum +=
+              RobolectricInternals.findShadowMethodHandle(
+                      SystemClock.class, "uptimeMillis", methodType(long.class), true, true)
+                  .hashCode();
+          break;
+        case "shadowedCall":
+          checksum += SystemClock.uptimeMillis();
+          break;
+        case "intercept":
+          checksum +=
+              (Long)
+                  RobolectricInternals.intercept(
+                      "java/lang/System/nanoTime()J", null, NO_ARGS, ShadowDispatch.class);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown path: " + path);
+      }
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,8 @@
+/**
+ * Benchmark operations that use Android classes.
+ *
+ * <p>These classes are loaded by a Robolectric sandbox's class loader, not by the class loader of
+ * the benchmarks themselves, so they are only referenced through {@link Runnable} outside of this
+ * package.
+ */
+package org.robolectric.benchmarks.sandboxed;
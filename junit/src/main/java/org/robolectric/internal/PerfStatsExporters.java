@@ -0,0 +1,103 @@
+package org.robolectric.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.robolectric.pluginapi.perf.PerfStatsReporter;
+import org.robolectric.util.JsonPerfStatsReporter;
+import org.robolectric.util.OpenMetricsPerfStatsReporter;
+import org.robolectric.util.PerfStatsCollector;
+
+/**
+ * Exporters of perf stats that are enabled by system properties rather than registered as {@link
+ * PerfStatsReporter} plugins.
+ *
+ * @see SandboxTestRunner#PERF_STATS_JFR_PROPERTY
+ * @see SandboxTestRunner#PERF_STATS_JSON_DIR_PROPERTY
+ * @see SandboxTestRunner#PERF_STATS_OPEN_METRICS_DIR_PROPERTY
+ */
+final class PerfStatsExporters {
+  private static final PerfStatsExporters INSTANCE = new PerfStatsExporters();
+
+  private final List<PerfStatsReporter> reporters;
+  private final boolean flightRecorderEnabled;
+
+  private PerfStatsExporters() {
+    List<PerfStatsReporter> reporters = new ArrayList<>();
+    String jsonDir = System.getProperty(SandboxTestRunner.PERF_STATS_JSON_DIR_PROPERTY);
+    if (jsonDir != null) {
+      reporters.add(new JsonPerfStatsReporter(new File(jsonDir)));
+    }
+    String openMetricsDir =
+        System.getProperty(SandboxTestRunner.PERF_STATS_OPEN_METRICS_DIR_PROPERTY);
+    if (openMetricsDir != null) {
+      reporters.add(new OpenMetricsPerfStatsReporter(new File(openMetricsDir)));
+    }
+    this.reporters = Collections.unmodifiableList(reporters);
+
+    flightRecorderEnabled = Boolean.getBoolean(SandboxTestRunner.PERF_STATS_JFR_PROPERTY);
+    if (flightRecorderEnabled) {
+      PerfStatsCollector.getInstance().addEventListener(new FlightRecorderListener());
+    }
+  }
+
+  static PerfStatsExporters getInstance() {
+    return INSTANCE;
+  }
+
+  /** Returns the reporters that write perf stats to files. */
+  List<PerfStatsReporter> getReporters() {
+    return reporters;
+  }
+
+  /** Returns whether perf stats events are recorded as Java Flight Recorder events. */
+  boolean isFlightRecorderEnabled() {
+    return flightRecorderEnabled;
+  }
+
+  /** Commits a {@link PerfStatsEvent} for each perf stats event. */
+  private static class FlightRecorderListener implements PerfStatsCollector.EventListener {
+    @Nullable
+    @Override
+    public Object eventStarted(String eventName) {
+      PerfStatsEvent event = new PerfStatsEvent();
+      if (!event.isEnabled()) {
+        return null;
+      }
+      event.name = eventName;
+      event.begin();
+      return event;
+    }
+
+    @Override
+    public void eventFinished(
+        @Nullable Object startValue, String eventName, long elapsedNs, boolean success) {
+      if (startValue == null) {
+        return;
+      }
+      PerfStatsEvent event = (PerfStatsEvent) startValue;
+      event.success = success;
+      event.commit();
+    }
+  }
+
+  @Name("org.robolectric.PerfStats")
+  @Label("Robolectric Perf Stats Event")
+  @Description("An event measured by Robolectric's PerfStatsCollector")
+  @Category("Robolectric")
+  @StackTrace(false)
+  static class PerfStatsEvent extends jdk.jfr.Event {
+    @Label("Name")
+    String name;
+
+    @Label("Success")
+    boolean success;
+  }
+}
@@ -5,6 +5,7 @@ import static java.util.Arrays.stream;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.ArrayDeque;
@@ -12,14 +13,19 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.junit.AssumptionViolatedException;
 import org.junit.Test;
 import org.junit.internal.runners.statements.FailOnTimeout;
@@ -66,6 +72,60 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
   private static final Injector DEFAULT_INJECTOR = defaultInjector().build();
   public static final String CLASS_NAME_JUNIT_JUPITER_TEST = "org.junit.jupiter.api.Test";
 
+  /**
+   * System property for the number of sandboxes that the tests of each sandbox group are sharded
+   * across. Each shard runs on its own sandbox, with its own main thread and Android environment,
+   * concurrently with the other shards. Defaults to 1, which runs tests sequentially.
+   *
+   * <p>Each shard collects perf stats on its main thread with a collector of its own, see {@link
+   * PerfStatsCollector#setThreadCollector}, so they are reported for the test that caused them.
+   * Stats that are recorded on other threads while shards run may be reported with any test.
+   */
+  public static final String PARALLEL_SANDBOXES_PROPERTY = "robolectric.parallelSandboxes";
+
+  /**
+   * System property that, if set to {@code true}, records each perf stats event, such as loading or
+   * instrumenting a class, as a Java Flight Recorder event named {@code org.robolectric.PerfStats}.
+   */
+  public static final String PERF_STATS_JFR_PROPERTY = "robolectric.perfStats.jfr";
+
+  /**
+   * System property for a directory that the perf stats of each test class are written to as JSON,
+   * in a file named after the class.
+   */
+  public static final String PERF_STATS_JSON_DIR_PROPERTY = "robolectric.perfStats.jsonDir";
+
+  /**
+   * System property for a directory that the perf stats of each test class are written to in the
+   * OpenMetrics text format, in a file named after the class.
+   */
+  public static final String PERF_STATS_OPEN_METRICS_DIR_PROPERTY =
+      "robolectric.perfStats.openMetricsDir";
+
+  /**
+   * System property that, if set to {@code true}, only redirects the methods of classes that have
+   * shadows to shadow code, so the methods of other Android classes run as plain bytecode. Shadows
+   * must all be known when sandboxes are created, i.e. come from shadow providers or {@link
+   * #getExtraShadows}.
+   *
+   * <p>Classes that are already instrumented, like those in the preinstrumented android-all jars,
+   * are loaded as they are. So with Robolectric's default SDK provider this also switches to the
+   * android-all jars that aren't preinstrumented, unless {@code robolectric.usePreinstrumentedJars}
+   * is set explicitly, in which case setting it to {@code true} makes this property ineffective for
+   * Android classes.
+   *
+   * @see InstrumentationConfiguration#isMinimalInstrumentation()
+   */
+  public static final String MINIMAL_INSTRUMENTATION_PROPERTY =
+      "robolectric.minimalInstrumentation";
+
+  private static final ExecutorService SHARD_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setNameFormat("Robolectric shard runner %d")
+              .setDaemon(true)
+              .build());
+
   protected static Injector.Builder defaultInjector() {
     return new Injector.Builder();
   }
@@ -77,9 +137,12 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
   protected final List<MethodHandleDecorator> decorators;
 
   private final PerfStatsPublisher perfStatsPublisher;
+  private final int parallelSandboxes;
 
-  private final HashMap<Class<?>, HelperTestRunner> helperRunners = new HashMap<>();
+  private final Map<Class<?>, HelperTestRunner> helperRunners = new ConcurrentHashMap<>();
   private final WeakHashMap<Sandbox, LinkageError> firstLinkageErrors = new WeakHashMap<>();
+  // Sandboxes other than the one returned by getSandbox() that run particular methods.
+  private final Map<FrameworkMethod, Sandbox> shardSandboxes = new ConcurrentHashMap<>();
 
   public SandboxTestRunner(Class<?> klass) throws InitializationError {
     this(klass, DEFAULT_INJECTOR);
@@ -92,13 +155,17 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
     interceptors = new Interceptors(findInterceptors());
     shadowProviders = injector.getInstance(ShadowProviders.class);
     classHandlerBuilder = injector.getInstance(ClassHandlerBuilder.class);
+    PerfStatsExporters perfStatsExporters = PerfStatsExporters.getInstance();
     List<PerfStatsReporter> reporters =
-        Arrays.asList(injector.getInstance(PerfStatsReporter[].class));
+        new ArrayList<>(Arrays.asList(injector.getInstance(PerfStatsReporter[].class)));
+    reporters.addAll(perfStatsExporters.getReporters());
     perfStatsPublisher = PerfStatsPublisher.getInstance();
     perfStatsPublisher.addReporters(reporters);
     perfStatsPublisher.doFinalReportOnShutdown();
-    PerfStatsCollector.getInstance().setEnabled(!reporters.isEmpty());
+    PerfStatsCollector.getInstance()
+        .setEnabled(!reporters.isEmpty() || perfStatsExporters.isFlightRecorderEnabled());
     decorators = Arrays.asList(injector.getInstance(MethodHandleDecorator[].class));
+    parallelSandboxes = Math.max(1, Integer.getInteger(PARALLEL_SANDBOXES_PROPERTY, 1));
 
     // The computeTestMethods is not a good place to do following validation as it will be called
     // multiple times, and one calling is from parent class' constructor.
@@ -224,25 +291,128 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
       public void evaluate() throws Throwable {
         // generating nested statement for all the tests in each sandboxes
         for (Map.Entry<Sandbox, List<FrameworkMethod>> entry : methodsBySandbox.entrySet()) {
-          FrameworkMethod firstMethod = entry.getValue().get(0);
-          Sandbox sandbox = ensureSandboxIsAlive(entry.getKey(), firstMethod);
+          List<FrameworkMethod> methods = entry.getValue();
+          int shardCount = Math.min(parallelSandboxes, methods.size());
+          if (shardCount > 1) {
+            runShards(entry.getKey(), methods, shardCount, notifier);
+          } else {
+            Sandbox sandbox = ensureSandboxIsAlive(entry.getKey(), methods.get(0));
+            testGroupStatement(sandbox, methods, notifier, null).evaluate();
+          }
+        }
+      }
+    };
+  }
 
-          Statement statement = childrenInvoker(entry.getValue(), notifier);
+  private Statement testGroupStatement(
+      Sandbox sandbox,
+      List<FrameworkMethod> methods,
+      RunNotifier notifier,
+      @Nullable PerfStatsCollector shardPerfStatsCollector) {
+    Statement statement = childrenInvoker(methods, notifier);
 
-          Class<?> bootstrappedTestClass = sandbox.bootstrappedClass(getTestClass().getJavaClass());
+    Class<?> bootstrappedTestClass = sandbox.bootstrappedClass(getTestClass().getJavaClass());
+
+    HelperTestRunner helperTestRunner = getCachedHelperTestRunner(bootstrappedTestClass);
+    statement = helperTestRunner.withBeforeClasses(statement);
+    statement = helperTestRunner.withAfterClasses(statement);
 
-          HelperTestRunner helperTestRunner = getCachedHelperTestRunner(bootstrappedTestClass);
-          statement = helperTestRunner.withBeforeClasses(statement);
-          statement = helperTestRunner.withAfterClasses(statement);
+    statement = withClassRules(statement, bootstrappedTestClass);
+
+    // Use the first method to setup a sandbox and invoke everything in that sandbox
+    return inSandboxThread(sandbox, methods.get(0), statement, shardPerfStatsCollector);
+  }
 
-          statement = withClassRules(statement, bootstrappedTestClass);
+  /**
+   * Distributes {@code methods} round-robin across {@code shardCount} sandboxes and runs the shards
+   * concurrently. Class-level setup ({@code @BeforeClass}, {@code @AfterClass} and class rules)
+   * runs once per shard, as each shard has its own copy of the test class. Each shard records perf
+   * stats into a collector of its own, and what's left in them once all shards have finished, i.e.
+   * wasn't reported with a test, is merged into the shared collector.
+   */
+  private void runShards(
+      Sandbox sandbox, List<FrameworkMethod> methods, int shardCount, RunNotifier notifier)
+      throws Throwable {
+    List<List<FrameworkMethod>> shards = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      shards.add(new ArrayList<>());
+    }
+    for (int i = 0; i < methods.size(); i++) {
+      shards.get(i % shardCount).add(methods.get(i));
+    }
+
+    // Otherwise the shards would all record into, report and reset the same collector, mixing up
+    // the stats of concurrent tests.
+    PerfStatsCollector perfStatsCollector = PerfStatsCollector.getInstance();
+    List<PerfStatsCollector> shardPerfStatsCollectors = new ArrayList<>();
+    for (int i = 0; i < shardCount; i++) {
+      shardPerfStatsCollectors.add(perfStatsCollector.newThreadCollector());
+    }
+
+    Queue<Throwable> thrown = new ArrayDeque<>();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 1; i < shardCount; i++) {
+        int shard = i;
+        futures.add(
+            SHARD_EXECUTOR.submit(
+                () ->
+                    runShard(
+                        shard, shards.get(shard), notifier, shardPerfStatsCollectors.get(shard))));
+      }
 
-          // Use the first method to setup a sandbox and invoke everything in that sandbox
-          Statement statementsOfTestGroup = inSandboxThread(sandbox, firstMethod, statement);
-          statementsOfTestGroup.evaluate();
+      try {
+        testGroupStatement(
+                ensureSandboxIsAlive(sandbox, methods.get(0)),
+                shards.get(0),
+                notifier,
+                shardPerfStatsCollectors.get(0))
+            .evaluate();
+      } catch (Throwable t) {
+        thrown.add(t);
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          thrown.add(e.getCause());
         }
       }
-    };
+    } finally {
+      for (PerfStatsCollector shardPerfStatsCollector : shardPerfStatsCollectors) {
+        perfStatsCollector.merge(shardPerfStatsCollector);
+      }
+    }
+
+    Throwable first = thrown.poll();
+    if (first != null) {
+      while (!thrown.isEmpty()) {
+        first.addSuppressed(thrown.remove());
+      }
+      throw first;
+    }
+  }
+
+  private Void runShard(
+      int shard,
+      List<FrameworkMethod> methods,
+      RunNotifier notifier,
+      PerfStatsCollector shardPerfStatsCollector)
+      throws Exception {
+    Sandbox sandbox = getShardSandbox(methods.get(0), shard);
+    for (FrameworkMethod method : methods) {
+      shardSandboxes.put(method, sandbox);
+    }
+    try {
+      testGroupStatement(sandbox, methods, notifier, shardPerfStatsCollector).evaluate();
+      return null;
+    } catch (Throwable t) {
+      throw Util.sneakyThrow(t);
+    } finally {
+      for (FrameworkMethod method : methods) {
+        shardSandboxes.remove(method);
+      }
+    }
   }
 
   private Statement withClassRules(Statement statement, Class<?> bootstrappedTestClass) {
@@ -265,7 +435,11 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
 
   // As the sandbox for all methods are the same, we can just use the first method to get the
   // extra shadows
-  private Statement inSandboxThread(Sandbox sandbox, FrameworkMethod firstMethod, Statement base) {
+  private Statement inSandboxThread(
+      Sandbox sandbox,
+      FrameworkMethod firstMethod,
+      Statement base,
+      @Nullable PerfStatsCollector shardPerfStatsCollector) {
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
@@ -276,10 +450,14 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
 
         sandbox.runOnMainThreadWithClassLoader(
             () -> {
+              PerfStatsCollector perfStatsCollector = PerfStatsCollector.getInstance();
+              perfStatsCollector.setThreadCollector(shardPerfStatsCollector);
               try {
                 base.evaluate();
               } catch (Throwable throwable) {
                 throw Util.sneakyThrow(throwable);
+              } finally {
+                perfStatsCollector.setThreadCollector(null);
               }
             });
       }
@@ -305,6 +483,19 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
     return new Sandbox(instrumentationConfiguration, new UrlResourceProvider(), classInstrumentor);
   }
 
+  /**
+   * Returns a sandbox for running the given method in parallel with the methods running in the
+   * sandbox returned by {@link #getSandbox}. Each {@code shard} must map to a distinct sandbox with
+   * the same configuration as the one returned by {@link #getSandbox}.
+   *
+   * @param shard the index of the shard, from 1 to the value of {@link
+   *     #PARALLEL_SANDBOXES_PROPERTY} minus 1
+   */
+  @Nonnull
+  protected Sandbox getShardSandbox(FrameworkMethod method, int shard) {
+    return getSandbox(method);
+  }
+
   /** Returns a sandbox for the given method. If the sandbox is shutdown, returns a new sandbox. */
   // TODO: Evicting sandboxes in these use cases is inefficient seeing as we are retaining the
   //  sandboxes in the methodsBySandox map, seems like it would be better to first group by key
@@ -343,9 +534,18 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
       builder.setDoNotInstrumentClassRegex(customClassesRegex);
     }
 
+    boolean minimalInstrumentation = Boolean.getBoolean(MINIMAL_INSTRUMENTATION_PROPERTY);
+    if (minimalInstrumentation) {
+      builder.setMinimalInstrumentation(true);
+      builder.addShadowedClasses(shadowProviders.getBaseShadowMap().getShadowedClassNames());
+    }
+
     for (Class<?> shadowClass : getExtraShadows(method)) {
       ShadowInfo shadowInfo = ShadowMap.obtainShadowInfo(shadowClass);
       builder.addInstrumentedClass(shadowInfo.shadowedClassName);
+      if (minimalInstrumentation) {
+        builder.addShadowedClass(shadowInfo.shadowedClassName);
+      }
     }
 
     addInstrumentedPackages(method, builder);
@@ -392,11 +592,12 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
-        PerfStatsCollector perfStatsCollector = PerfStatsCollector.getInstance();
+        PerfStatsCollector perfStatsCollector = PerfStatsCollector.getInstance().forCurrentThread();
 
         Event initialization = perfStatsCollector.startEvent("initialization");
 
-        final Sandbox sandbox = getSandbox(method);
+        Sandbox shardSandbox = shardSandboxes.get(method);
+        final Sandbox sandbox = shardSandbox != null ? shardSandbox : getSandbox(method);
 
         // Configure sandbox *BEFORE* setting the ClassLoader. This is necessary because
         // creating the ShadowMap loads all ShadowProviders via ServiceLoader and this is
@@ -425,11 +626,15 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
 
             Statement statement =
                 helperTestRunner.methodBlock(new FrameworkMethod(bootstrappedMethod));
-            try {
-              statement.evaluate();
-            } catch (Throwable t) {
-              throw Util.sneakyThrow(t);
-            }
+            perfStatsCollector.measure(
+                "test",
+                () -> {
+                  try {
+                    statement.evaluate();
+                  } catch (Throwable t) {
+                    throw Util.sneakyThrow(t);
+                  }
+                });
             return null;
           });
     } finally {
@@ -519,18 +724,21 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
    * incomplete NoClassDefError with the original and more descriptive LinkageErrors.
    */
   private Throwable handleLinkageError(Throwable throwable, Sandbox sandbox) {
-    if (!firstLinkageErrors.containsKey(sandbox)) {
-      firstLinkageErrors.put(sandbox, (LinkageError) throwable);
-      return throwable;
-    }
+    synchronized (firstLinkageErrors) {
+      if (!firstLinkageErrors.containsKey(sandbox)) {
+        firstLinkageErrors.put(sandbox, (LinkageError) throwable);
+        return throwable;
+      }
 
-    if (throwable instanceof NoClassDefFoundError
-        && firstLinkageErrors.containsKey(sandbox)
-        && linkageErrorsMatch((NoClassDefFoundError) throwable, firstLinkageErrors.get(sandbox))) {
-      return firstLinkageErrors.get(sandbox);
-    }
+      if (throwable instanceof NoClassDefFoundError
+          && firstLinkageErrors.containsKey(sandbox)
+          && linkageErrorsMatch(
+              (NoClassDefFoundError) throwable, firstLinkageErrors.get(sandbox))) {
+        return firstLinkageErrors.get(sandbox);
+      }
 
-    return throwable;
+      return throwable;
+    }
   }
 
   private boolean linkageErrorsMatch(NoClassDefFoundError error, LinkageError first) {
@@ -1,15 +1,37 @@
 package org.robolectric.pluginapi.perf;
 
+import javax.annotation.Nullable;
+
 /** Environment metadata for perf stats collection. */
 public class Metadata {
   private final int sdk;
+  @Nullable private final String testClassName;
+  @Nullable private final String testName;
 
   public Metadata(int sdk) {
+    this(sdk, null, null);
+  }
+
+  public Metadata(int sdk, @Nullable String testClassName, @Nullable String testName) {
     this.sdk = sdk;
+    this.testClassName = testClassName;
+    this.testName = testName;
   }
 
   /** Get the Android SDK API level the performance stats apply to. */
   public int getSdk() {
     return sdk;
   }
+
+  /** Get the name of the test class the performance stats apply to, if known. */
+  @Nullable
+  public String getTestClassName() {
+    return testClassName;
+  }
+
+  /** Get the name of the test method the performance stats apply to, if known. */
+  @Nullable
+  public String getTestName() {
+    return testName;
+  }
 }
@@ -69,6 +69,32 @@ public class Metric {
     this.count = count;
   }
 
+  /** Adds the count and elapsed time of {@code other}, which has the same name, to this metric. */
+  public void merge(Metric other) {
+    int otherCount;
+    long otherElapsedNs;
+    long otherMinNs;
+    long otherMaxNs;
+    synchronized (other) {
+      otherCount = other.count;
+      otherElapsedNs = other.elapsedNs;
+      otherMinNs = other.minNs;
+      otherMaxNs = other.maxNs;
+    }
+    synchronized (this) {
+      if (otherElapsedNs > 0 || otherMaxNs > 0) {
+        if (elapsedNs == 0 && maxNs == 0) {
+          minNs = otherMinNs;
+        } else {
+          minNs = Math.min(minNs, otherMinNs);
+        }
+        maxNs = Math.max(maxNs, otherMaxNs);
+      }
+      count += otherCount;
+      elapsedNs += otherElapsedNs;
+    }
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
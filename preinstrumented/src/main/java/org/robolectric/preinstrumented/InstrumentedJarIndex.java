@@ -0,0 +1,130 @@
+package org.robolectric.preinstrumented;
+
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.newOutputStream;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records, for each class written by {@link JarInstrumentor}, the digest of its source bytes and
+ * the class hierarchy information its instrumentation depended on. It is stored next to the
+ * instrumented JAR so that a later run can reuse classes that haven't changed.
+ */
+class InstrumentedJarIndex {
+  private static final int MAGIC = 0x524f4249; // "ROBI"
+  private static final int FORMAT_VERSION = 1;
+
+  private final String fingerprint;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+  InstrumentedJarIndex(String fingerprint) {
+    this.fingerprint = fingerprint;
+  }
+
+  Entry get(String entryName) {
+    return entries.get(entryName);
+  }
+
+  void put(String entryName, Entry entry) {
+    entries.put(entryName, entry);
+  }
+
+  /**
+   * Reads the index at the given location, returning null if it doesn't exist, can't be read, or
+   * was produced with a different instrumentation fingerprint.
+   */
+  static InstrumentedJarIndex read(File indexFile, String fingerprint) {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(newInputStream(indexFile.toPath())))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        System.err.println("Ignoring index in an unknown format: " + indexFile);
+        return null;
+      }
+      if (!in.readUTF().equals(fingerprint)) {
+        System.out.println("Instrumentation changed, not reusing classes from " + indexFile);
+        return null;
+      }
+      InstrumentedJarIndex index = new InstrumentedJarIndex(fingerprint);
+      int entryCount = in.readInt();
+      for (int i = 0; i < entryCount; i++) {
+        String entryName = in.readUTF();
+        HashCode sourceDigest = HashCode.fromBytes(readBytes(in));
+        int consultedCount = in.readInt();
+        ImmutableSet.Builder<String> consultedClasses = ImmutableSet.builder();
+        for (int j = 0; j < consultedCount; j++) {
+          consultedClasses.add(in.readUTF());
+        }
+        HashCode hierarchyDigest = HashCode.fromBytes(readBytes(in));
+        index.put(entryName, new Entry(sourceDigest, consultedClasses.build(), hierarchyDigest));
+      }
+      return index;
+    } catch (NoSuchFileException e) {
+      System.out.println("No index found, instrumenting all classes: " + indexFile);
+      return null;
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Ignoring unreadable index " + indexFile + ": " + e);
+      return null;
+    }
+  }
+
+  void write(File indexFile) throws IOException {
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(newOutputStream(indexFile.toPath())))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeUTF(fingerprint);
+      out.writeInt(entries.size());
+      // Sort for deterministic output.
+      for (String entryName : new TreeSet<>(entries.keySet())) {
+        Entry entry = entries.get(entryName);
+        out.writeUTF(entryName);
+        writeBytes(out, entry.sourceDigest.asBytes());
+        out.writeInt(entry.consultedClasses.size());
+        for (String consultedClass : entry.consultedClasses) {
+          out.writeUTF(consultedClass);
+        }
+        writeBytes(out, entry.hierarchyDigest.asBytes());
+      }
+    }
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length <= 0 || length > 1024) {
+      throw new IOException("corrupt digest length " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /** The inputs that determined the instrumented output of a single class. */
+  static class Entry {
+    final HashCode sourceDigest;
+    final Set<String> consultedClasses;
+    final HashCode hierarchyDigest;
+
+    Entry(HashCode sourceDigest, Set<String> consultedClasses, HashCode hierarchyDigest) {
+      this.sourceDigest = sourceDigest;
+      this.consultedClasses = consultedClasses;
+      this.hierarchyDigest = hierarchyDigest;
+    }
+  }
+}
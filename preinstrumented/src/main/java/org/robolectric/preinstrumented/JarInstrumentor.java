@@ -5,18 +5,33 @@ import static java.nio.file.Files.newOutputStream;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
@@ -28,6 +43,7 @@ import org.robolectric.internal.bytecode.ClassInstrumentor;
 import org.robolectric.internal.bytecode.ClassNodeProvider;
 import org.robolectric.internal.bytecode.InstrumentationConfiguration;
 import org.robolectric.internal.bytecode.Interceptors;
+import org.robolectric.internal.bytecode.RecordingClassNodeProvider;
 import org.robolectric.util.inject.Injector;
 import org.robolectric.versioning.VersionCalculator;
 
@@ -36,6 +52,9 @@ public class JarInstrumentor {
 
   private static final int ONE_MB = 1024 * 1024;
 
+  /** How many entries each worker thread may run ahead of the writer. */
+  private static final int PENDING_ENTRIES_PER_THREAD = 64;
+
   private static final Injector INJECTOR = new Injector.Builder().build();
 
   private final ClassInstrumentor classInstrumentor;
@@ -48,6 +67,9 @@ public class JarInstrumentor {
   private ImmutableSet<String> resourceFilesToKeep = ImmutableSet.of();
   private ImmutableSet<String> resourceDirsToKeep = ImmutableSet.of();
 
+  private int threadCount = Runtime.getRuntime().availableProcessors();
+  private File previousOutputJarFile;
+
   public static void main(String[] args) throws IOException, ClassNotFoundException {
     new JarInstrumentor().processCommandLine(args);
   }
@@ -69,6 +91,8 @@ public class JarInstrumentor {
           "Usage: JarInstrumentor"
               + " [--packages_to_keep=file path containing package list]"
               + " [--resources_to_keep=file path containing resource list]"
+              + " [--threads=number of instrumentation threads]"
+              + " [--previous_output=previously instrumented jar to reuse classes from]"
               + " <source jar> <dest jar> ");
       exit(1);
     }
@@ -102,6 +126,23 @@ public class JarInstrumentor {
             !resourceFilesToKeep.isEmpty() && !resourceDirsToKeep.isEmpty(),
             "Resource files and directories must be specified.");
         hasResourcesToKeepFile = true;
+      } else if (arg.startsWith("--threads=")) {
+        String threads = arg.substring(arg.indexOf('=') + 1);
+        Integer parsedThreads = Ints.tryParse(threads);
+        if (parsedThreads == null || parsedThreads < 1) {
+          System.err.println("Invalid thread count: " + threads);
+          exit(1);
+          return;
+        }
+        threadCount = parsedThreads;
+      } else if (arg.startsWith("--previous_output=")) {
+        File previousOutput = new File(arg.substring(arg.indexOf('=') + 1));
+        if (previousOutput.exists()) {
+          previousOutputJarFile = previousOutput;
+        } else {
+          System.err.println(
+              "Previous output does not exist, instrumenting all classes: " + previousOutput);
+        }
       } else if (arg.startsWith("--")) {
         System.err.println("Unknown flag: " + arg);
         exit(1);
@@ -124,6 +165,13 @@ public class JarInstrumentor {
   /**
    * Performs the JAR instrumentation.
    *
+   * <p>Classes are instrumented in parallel on {@code --threads} worker threads (all available
+   * processors by default) and written back in the order of the source JAR, so the output is
+   * identical to a serial run. If {@code --previous_output} names the output of an earlier run,
+   * classes whose bytes and hierarchy are unchanged are copied from it instead of being
+   * re-instrumented. The previous output may be the destination itself: the new JAR is written to a
+   * temporary file next to the destination and moved into place once complete.
+   *
    * @param sourceJarFile The source JAR to process.
    * @param destJarFile The destination JAR with the instrumented method calls.
    */
@@ -142,6 +190,7 @@ public class JarInstrumentor {
 
     int nonClassCount = 0;
     int classCount = 0;
+    int reusedCount = 0;
 
     // get the jar's SDK version
     try {
@@ -150,9 +199,27 @@ public class JarInstrumentor {
       throw new AssertionError("Unable to get Android SDK version from Jar file", e);
     }
 
-    try (JarOutputStream jarOut =
-        new JarOutputStream(
-            new BufferedOutputStream(newOutputStream(destJarFile.toPath()), ONE_MB))) {
+    String fingerprint = instrumentationFingerprint();
+    InstrumentedJarIndex previousIndex = null;
+    if (previousOutputJarFile != null && fingerprint != null) {
+      previousIndex = InstrumentedJarIndex.read(indexFileFor(previousOutputJarFile), fingerprint);
+    }
+    InstrumentedJarIndex newIndex =
+        fingerprint == null ? null : new InstrumentedJarIndex(fingerprint);
+
+    File tempJarFile = createTempFileFor(destJarFile);
+    ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+    try (JarFile previousJar = previousIndex == null ? null : new JarFile(previousOutputJarFile);
+        JarOutputStream jarOut =
+            new JarOutputStream(
+                new BufferedOutputStream(newOutputStream(tempJarFile.toPath()), ONE_MB))) {
+      ClassReuser classReuser =
+          previousIndex == null ? null : new ClassReuser(previousIndex, previousJar);
+
+      // Entries are queued in source order and written as soon as they are ready, bounding the
+      // number of instrumented classes held in memory.
+      Deque<Future<OutputEntry>> pending = new ArrayDeque<>();
+      int maxPending = threadCount * PENDING_ENTRIES_PER_THREAD;
       Enumeration<JarEntry> entries = jarFile.entries();
       while (entries.hasMoreElements()) {
         JarEntry jarEntry = entries.nextElement();
@@ -164,7 +231,7 @@ public class JarInstrumentor {
         }
         if (name.endsWith("/")) {
           // Copy directories
-          jarOut.putNextEntry(createJarEntry(jarEntry));
+          pending.add(Futures.immediateFuture(OutputEntry.copy(jarEntry)));
         } else if (name.endsWith(".class")) {
           String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
 
@@ -176,22 +243,11 @@ public class JarInstrumentor {
             }
           }
 
-          try {
-            byte[] classBytes = getClassBytes(className, jarFile);
-            ClassDetails classDetails = new ClassDetails(classBytes);
-            byte[] outBytes = classBytes;
-            if (instrumentationConfiguration.shouldInstrument(classDetails)) {
-              outBytes =
-                  classInstrumentor.instrument(
-                      classDetails, instrumentationConfiguration, classNodeProvider);
-            }
-            jarOut.putNextEntry(createJarEntry(jarEntry));
-            jarOut.write(outBytes);
-            classCount++;
-          } catch (NegativeArraySizeException e) {
-            System.err.println(
-                "Skipping instrumenting due to NegativeArraySizeException for class: " + className);
-          }
+          pending.add(
+              executorService.submit(
+                  () ->
+                      instrumentClass(
+                          jarEntry, className, jarFile, classNodeProvider, classReuser)));
         } else {
           boolean shouldKeep = true;
           if (hasResourcesToKeepFile) {
@@ -204,21 +260,230 @@ public class JarInstrumentor {
             }
           }
           if (shouldKeep) {
-            jarOut.putNextEntry(createJarEntry(jarEntry));
-            ByteStreams.copy(jarFile.getInputStream(jarEntry), jarOut);
+            pending.add(Futures.immediateFuture(OutputEntry.copy(jarEntry)));
             nonClassCount++;
           }
         }
+
+        while (pending.size() > maxPending || (!pending.isEmpty() && pending.peek().isDone())) {
+          OutputEntry outputEntry = getUnchecked(pending.remove());
+          classCount += outputEntry.write(jarOut, jarFile, newIndex);
+          reusedCount += outputEntry.reused ? 1 : 0;
+        }
+      }
+      while (!pending.isEmpty()) {
+        OutputEntry outputEntry = getUnchecked(pending.remove());
+        classCount += outputEntry.write(jarOut, jarFile, newIndex);
+        reusedCount += outputEntry.reused ? 1 : 0;
       }
+    } catch (Throwable t) {
+      java.nio.file.Files.deleteIfExists(tempJarFile.toPath());
+      throw t;
+    } finally {
+      executorService.shutdownNow();
+      jarFile.close();
+    }
+    // Drop the old index first so that it's never paired with the new JAR.
+    java.nio.file.Files.deleteIfExists(indexFileFor(destJarFile).toPath());
+    moveIntoPlace(tempJarFile, destJarFile);
+    if (newIndex != null) {
+      File tempIndexFile = createTempFileFor(indexFileFor(destJarFile));
+      newIndex.write(tempIndexFile);
+      moveIntoPlace(tempIndexFile, indexFileFor(destJarFile));
     }
 
     long elapsedNs = System.nanoTime() - startNs;
     System.out.printf(
         Locale.getDefault(),
-        "Wrote %d classes and %d resources in %1.2f seconds%n",
+        "Wrote %d classes (%d reused) and %d resources in %1.2f seconds using %d threads%n",
         classCount,
+        reusedCount,
         nonClassCount,
-        elapsedNs / 1000000000.0);
+        elapsedNs / 1000000000.0,
+        threadCount);
+  }
+
+  /** Instruments a single class. Called concurrently from the worker threads. */
+  private OutputEntry instrumentClass(
+      JarEntry jarEntry,
+      String className,
+      JarFile jarFile,
+      ClassNodeProvider classNodeProvider,
+      ClassReuser classReuser)
+      throws IOException, ClassNotFoundException {
+    try {
+      byte[] classBytes = getClassBytes(className, jarFile);
+      HashCode sourceDigest = Hashing.sha256().hashBytes(classBytes);
+      if (classReuser != null) {
+        OutputEntry reused = classReuser.maybeReuse(jarEntry, sourceDigest, classNodeProvider);
+        if (reused != null) {
+          return reused;
+        }
+      }
+
+      ClassDetails classDetails = new ClassDetails(classBytes);
+      byte[] outBytes = classBytes;
+      Set<String> consultedClasses = ImmutableSet.of();
+      if (instrumentationConfiguration.shouldInstrument(classDetails)) {
+        RecordingClassNodeProvider recordingProvider =
+            new RecordingClassNodeProvider(classNodeProvider);
+        outBytes =
+            classInstrumentor.instrument(
+                classDetails, instrumentationConfiguration, recordingProvider);
+        consultedClasses = recordingProvider.getConsultedClasses();
+      }
+      InstrumentedJarIndex.Entry indexEntry =
+          new InstrumentedJarIndex.Entry(
+              sourceDigest,
+              consultedClasses,
+              RecordingClassNodeProvider.hierarchyDigest(consultedClasses, classNodeProvider));
+      return OutputEntry.instrumented(jarEntry, outBytes, indexEntry, false);
+    } catch (NegativeArraySizeException e) {
+      System.err.println(
+          "Skipping instrumenting due to NegativeArraySizeException for class: " + className);
+      return OutputEntry.skipped(jarEntry);
+    }
+  }
+
+  private static OutputEntry getUnchecked(Future<OutputEntry> future)
+      throws IOException, ClassNotFoundException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while instrumenting");
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.throwIfInstanceOf(e.getCause(), ClassNotFoundException.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new AssertionError(e.getCause());
+    }
+  }
+
+  /**
+   * Identifies the instrumentation applied to classes, used to decide whether the output of a
+   * previous run can be reused. Returns null if the instrumentor can't be fingerprinted.
+   */
+  private String instrumentationFingerprint() {
+    String instrumentorFingerprint = classInstrumentor.fingerprint();
+    if (instrumentorFingerprint == null) {
+      return null;
+    }
+    return instrumentorFingerprint + ":" + instrumentationConfiguration.fingerprint();
+  }
+
+  private static File indexFileFor(File jarFile) {
+    return new File(jarFile.getPath() + ".index");
+  }
+
+  /** Creates a temporary file in the same directory as {@code file}, so it can be moved over it. */
+  private static File createTempFileFor(File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    return File.createTempFile(file.getName() + ".", ".tmp", dir);
+  }
+
+  /** Replaces {@code dest} with {@code temp}, atomically where the file system supports it. */
+  private static void moveIntoPlace(File temp, File dest) throws IOException {
+    try {
+      java.nio.file.Files.move(
+          temp.toPath(),
+          dest.toPath(),
+          StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      java.nio.file.Files.move(temp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /** Copies classes from a previous output JAR when neither they nor their hierarchy changed. */
+  private static class ClassReuser {
+    private final InstrumentedJarIndex previousIndex;
+    private final JarFile previousJar;
+
+    ClassReuser(InstrumentedJarIndex previousIndex, JarFile previousJar) {
+      this.previousIndex = previousIndex;
+      this.previousJar = previousJar;
+    }
+
+    OutputEntry maybeReuse(
+        JarEntry jarEntry, HashCode sourceDigest, ClassNodeProvider classNodeProvider)
+        throws IOException {
+      InstrumentedJarIndex.Entry previous = previousIndex.get(jarEntry.getName());
+      if (previous == null || !previous.sourceDigest.equals(sourceDigest)) {
+        return null;
+      }
+      ZipEntry previousEntry = previousJar.getEntry(jarEntry.getName());
+      if (previousEntry == null
+          || !previous.hierarchyDigest.equals(
+              RecordingClassNodeProvider.hierarchyDigest(
+                  previous.consultedClasses, classNodeProvider))) {
+        return null;
+      }
+      try (InputStream in = previousJar.getInputStream(previousEntry)) {
+        return OutputEntry.instrumented(jarEntry, ByteStreams.toByteArray(in), previous, true);
+      }
+    }
+  }
+
+  /** An entry of the destination JAR, waiting to be written in source order. */
+  private static class OutputEntry {
+    final JarEntry jarEntry;
+    final byte[] classBytes;
+    final InstrumentedJarIndex.Entry indexEntry;
+    final boolean copyFromSource;
+    final boolean reused;
+
+    private OutputEntry(
+        JarEntry jarEntry,
+        byte[] classBytes,
+        InstrumentedJarIndex.Entry indexEntry,
+        boolean copyFromSource,
+        boolean reused) {
+      this.jarEntry = jarEntry;
+      this.classBytes = classBytes;
+      this.indexEntry = indexEntry;
+      this.copyFromSource = copyFromSource;
+      this.reused = reused;
+    }
+
+    static OutputEntry copy(JarEntry jarEntry) {
+      return new OutputEntry(jarEntry, null, null, true, false);
+    }
+
+    static OutputEntry instrumented(
+        JarEntry jarEntry,
+        byte[] classBytes,
+        InstrumentedJarIndex.Entry indexEntry,
+        boolean reused) {
+      return new OutputEntry(jarEntry, classBytes, indexEntry, false, reused);
+    }
+
+    static OutputEntry skipped(JarEntry jarEntry) {
+      return new OutputEntry(jarEntry, null, null, false, false);
+    }
+
+    /** Writes this entry and returns the number of classes written. */
+    int write(JarOutputStream jarOut, JarFile jarFile, InstrumentedJarIndex index)
+        throws IOException {
+      if (copyFromSource) {
+        jarOut.putNextEntry(createJarEntry(jarEntry));
+        if (!jarEntry.isDirectory()) {
+          try (InputStream in = jarFile.getInputStream(jarEntry)) {
+            ByteStreams.copy(in, jarOut);
+          }
+        }
+        return 0;
+      }
+      if (classBytes == null) {
+        return 0;
+      }
+      jarOut.putNextEntry(createJarEntry(jarEntry));
+      jarOut.write(classBytes);
+      if (index != null) {
+        index.put(jarEntry.getName(), indexEntry);
+      }
+      return 1;
+    }
   }
 
   private static byte[] getClassBytes(String className, JarFile jarFile)
@@ -1,20 +1,48 @@
 package org.robolectric.preinstrumented;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 
 /** Test for {@link JarInstrumentor}. */
 @RunWith(JUnit4.class)
 public class JarInstrumentorTest {
 
+  private static final int CLASS_COUNT = 20;
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
   private JarInstrumentor spyDummyInstrumentor;
 
   @Before
@@ -47,4 +75,169 @@ public class JarInstrumentorTest {
     verify(spyDummyInstrumentor, never()).instrumentJar(any(File.class), any(File.class));
     verify(spyDummyInstrumentor).exit(1);
   }
+
+  @Test
+  public void processCommandLine_threadsAndPreviousOutput() throws Exception {
+    spyDummyInstrumentor.processCommandLine(
+        new String[] {"--threads=4", "--previous_output=missing.jar", "source.jar", "dest.jar"});
+    verify(spyDummyInstrumentor).instrumentJar(new File("source.jar"), new File("dest.jar"));
+  }
+
+  @Test
+  public void processCommandLine_invalidThreads() throws Exception {
+    spyDummyInstrumentor.processCommandLine(new String[] {"--threads=0", "source.jar", "dest.jar"});
+    verify(spyDummyInstrumentor, never()).instrumentJar(any(File.class), any(File.class));
+    verify(spyDummyInstrumentor).exit(1);
+  }
+
+  @Test
+  public void instrumentJar_outputIsIndependentOfThreadCount() throws Exception {
+    File source = writeSourceJar("source.jar", -1);
+    File serial = tempFolder.newFile("serial.jar");
+    File parallel = tempFolder.newFile("parallel.jar");
+
+    instrument("--threads=1", source.getPath(), serial.getPath());
+    instrument("--threads=4", source.getPath(), parallel.getPath());
+
+    assertEquals(entryNames(source), entryNames(serial));
+    assertEquals(entryNames(serial), entryNames(parallel));
+    assertArrayEquals(Files.toByteArray(serial), Files.toByteArray(parallel));
+    // The classes were actually instrumented.
+    assertFalse(Arrays.equals(readEntry(source, className(0)), readEntry(serial, className(0))));
+  }
+
+  @Test
+  public void instrumentJar_reusesUnchangedClassesFromPreviousOutput() throws Exception {
+    File source = writeSourceJar("source.jar", -1);
+    File previous = tempFolder.newFile("previous.jar");
+    instrument(source.getPath(), previous.getPath());
+
+    // Mark a class in the previous output, so copying it can be told apart from re-instrumenting.
+    byte[] marker = "reused".getBytes(UTF_8);
+    File markedPrevious = new File(tempFolder.getRoot(), "marked.jar");
+    Map<String, byte[]> previousEntries = readEntries(previous);
+    previousEntries.put(className(1), marker);
+    previousEntries.put(className(2), marker);
+    writeJar(markedPrevious, previousEntries);
+    Files.copy(new File(previous + ".index"), new File(markedPrevious + ".index"));
+
+    File changedSource = writeSourceJar("changed.jar", 2);
+    File incremental = tempFolder.newFile("incremental.jar");
+    File full = tempFolder.newFile("full.jar");
+    instrument(
+        "--previous_output=" + markedPrevious, changedSource.getPath(), incremental.getPath());
+    instrument(changedSource.getPath(), full.getPath());
+
+    assertArrayEquals(marker, readEntry(incremental, className(1)));
+    assertArrayEquals(readEntry(full, className(2)), readEntry(incremental, className(2)));
+    assertArrayEquals(readEntry(full, className(3)), readEntry(incremental, className(3)));
+    assertEquals(entryNames(full), entryNames(incremental));
+  }
+
+  @Test
+  public void instrumentJar_previousOutputMayBeTheDestination() throws Exception {
+    File source = writeSourceJar("source.jar", -1);
+    File dest = tempFolder.newFile("dest.jar");
+    instrument(source.getPath(), dest.getPath());
+
+    File changedSource = writeSourceJar("changed.jar", 2);
+    File full = tempFolder.newFile("full.jar");
+    instrument("--previous_output=" + dest, changedSource.getPath(), dest.getPath());
+    instrument(changedSource.getPath(), full.getPath());
+
+    assertArrayEquals(Files.toByteArray(full), Files.toByteArray(dest));
+    assertTrue(new File(dest + ".index").exists());
+    assertEquals(
+        Collections.emptyList(),
+        Arrays.asList(tempFolder.getRoot().list((dir, name) -> name.endsWith(".tmp"))));
+  }
+
+  private void instrument(String... args) throws Exception {
+    new JarInstrumentor() {
+      @Override
+      protected void exit(int status) {
+        throw new AssertionError("exit(" + status + ")");
+      }
+    }.processCommandLine(args);
+  }
+
+  /**
+   * Writes a JAR resembling android-all, with a directory, a resource and some classes. If {@code
+   * changedClass} is non-negative, that class returns a different value.
+   */
+  private File writeSourceJar(String name, int changedClass) throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    entries.put(
+        "build.prop", "ro.build.version.codename=REL\nro.build.version.sdk=34\n".getBytes(UTF_8));
+    entries.put("android/", null);
+    entries.put("android/fake/", null);
+    entries.put("android/fake/resource.txt", "resource".getBytes(UTF_8));
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      entries.put(className(i), classBytes(i, i == changedClass ? 100 + i : i));
+    }
+    File jar = new File(tempFolder.getRoot(), name);
+    writeJar(jar, entries);
+    return jar;
+  }
+
+  private static String className(int i) {
+    return "android/fake/Fake" + i + ".class";
+  }
+
+  private static byte[] classBytes(int i, int value) {
+    ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
+    String superName = i == 0 ? "java/lang/Object" : "android/fake/Fake" + (i - 1);
+    cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "android/fake/Fake" + i, null, superName, null);
+    MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    init.visitCode();
+    init.visitVarInsn(Opcodes.ALOAD, 0);
+    init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+    init.visitInsn(Opcodes.RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+    MethodVisitor method = cw.visitMethod(Opcodes.ACC_PUBLIC, "value" + i, "()I", null, null);
+    method.visitCode();
+    method.visitLdcInsn(value);
+    method.visitInsn(Opcodes.IRETURN);
+    method.visitMaxs(0, 0);
+    method.visitEnd();
+    cw.visitEnd();
+    return cw.toByteArray();
+  }
+
+  private static void writeJar(File jar, Map<String, byte[]> entries) throws IOException {
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        JarEntry jarEntry = new JarEntry(entry.getKey());
+        jarEntry.setTime(0);
+        out.putNextEntry(jarEntry);
+        if (entry.getValue() != null) {
+          out.write(entry.getValue());
+        }
+      }
+    }
+  }
+
+  private static Map<String, byte[]> readEntries(File jar) throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    for (String name : entryNames(jar)) {
+      entries.put(name, name.endsWith("/") ? null : readEntry(jar, name));
+    }
+    return entries;
+  }
+
+  private static List<String> entryNames(File jar) throws IOException {
+    List<String> names = new ArrayList<>();
+    try (JarFile jarFile = new JarFile(jar)) {
+      Collections.list(jarFile.entries()).forEach(entry -> names.add(entry.getName()));
+    }
+    return names;
+  }
+
+  private static byte[] readEntry(File jar, String name) throws IOException {
+    try (JarFile jarFile = new JarFile(jar);
+        InputStream in = jarFile.getInputStream(jarFile.getEntry(name))) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
 }
@@ -1,7 +1,17 @@
 package org.robolectric.res.android;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.robolectric.util.PerfStatsCollector;
 
 /**
  * A global cache for ApkAssets (framework and app resources). This cache is shared between
@@ -12,21 +22,142 @@ import java.util.HashMap;
  * growing in size, and an increasing number of sandbox parameters, the memory usage did not scale
  * well as test suites increased in size.
  *
- * <p>Currently the items in this cache are not made available for GC. However, it would definitely
- * be possible to have a per-sdk-level reference counting mechanism where an item could be freed if
- * all sandboxes referencing that item are collected.
+ * <p>System resources are reference-counted per SDK level against the sandboxes that {@link
+ * #retain} them. Once every sandbox for an SDK level has been garbage collected, its resources are
+ * kept for reuse while the resource tables of all such unused SDK levels fit within {@code
+ * robolectric.apkAssetsCache.maxUnusedBytes} (unlimited by default); beyond that, the least
+ * recently used SDK levels are evicted and their ApkAssets are unregistered so that they can be
+ * collected too. App resources, and system resources for SDK levels that were never retained, are
+ * never evicted.
  */
 public final class ApkAssetsCache {
 
-  private static final HashMap<Key, Long> cachedApkAssetsPtrs = new HashMap<>();
+  private static final String MAX_UNUSED_BYTES_PROPERTY =
+      "robolectric.apkAssetsCache.maxUnusedBytes";
 
-  public static void put(String path, boolean system, int apiLevel, long ptr) {
-    cachedApkAssetsPtrs.put(Key.newInstance(path, system, system ? apiLevel : 0), ptr);
+  // All of the following state is guarded by ApkAssetsCache.class.
+  private static final Map<Key, CachedApkAssets> cachedApkAssets = new HashMap<>();
+  private static final Map<Integer, Integer> liveOwnerCounts = new HashMap<>();
+  // Prevents the owner references themselves from being collected before they're enqueued.
+  private static final Set<OwnerReference> ownerReferences = new HashSet<>();
+  private static final ReferenceQueue<Object> collectedOwners = new ReferenceQueue<>();
+  // SDK levels whose owners have all been collected, least recently used first.
+  private static final LinkedHashSet<Integer> unusedApiLevels = new LinkedHashSet<>();
+  private static long maxUnusedBytes = Long.getLong(MAX_UNUSED_BYTES_PROPERTY, Long.MAX_VALUE);
+
+  public static synchronized void put(String path, boolean system, int apiLevel, long ptr) {
+    expungeCollectedOwners();
+    Key key = Key.newInstance(path, system, system ? apiLevel : 0);
+    cachedApkAssets.put(key, new CachedApkAssets(ptr, sizeOf(ptr)));
+  }
+
+  /**
+   * Caches {@code ptr} unless resources are already cached for the same path and SDK level, e.g.
+   * because they were loaded concurrently by another sandbox.
+   *
+   * @return the cached pointer, which callers should use instead of {@code ptr}
+   */
+  public static synchronized long putIfAbsent(String path, boolean system, int apiLevel, long ptr) {
+    expungeCollectedOwners();
+    Key key = Key.newInstance(path, system, system ? apiLevel : 0);
+    CachedApkAssets cached = cachedApkAssets.get(key);
+    if (cached != null) {
+      return cached.ptr;
+    }
+    cachedApkAssets.put(key, new CachedApkAssets(ptr, sizeOf(ptr)));
+    return ptr;
+  }
+
+  public static synchronized long get(String path, boolean system, int apiLevel) {
+    expungeCollectedOwners();
+    CachedApkAssets cached =
+        cachedApkAssets.get(Key.newInstance(path, system, system ? apiLevel : 0));
+    return cached == null ? -1L : cached.ptr;
+  }
+
+  /**
+   * Records that {@code owner}, typically a sandbox, uses the system resources for {@code apiLevel}
+   * for as long as it's reachable.
+   */
+  public static synchronized void retain(int apiLevel, Object owner) {
+    expungeCollectedOwners();
+    ownerReferences.add(new OwnerReference(owner, apiLevel));
+    liveOwnerCounts.merge(apiLevel, 1, Integer::sum);
+    unusedApiLevels.remove(apiLevel);
+  }
+
+  @VisibleForTesting
+  static synchronized void setMaxUnusedBytes(long maxUnusedBytes) {
+    ApkAssetsCache.maxUnusedBytes = maxUnusedBytes;
+    evictUnusedApiLevels();
+  }
+
+  /** Forgets all cached resources and owners, without unregistering them. */
+  @VisibleForTesting
+  static synchronized void reset() {
+    cachedApkAssets.clear();
+    liveOwnerCounts.clear();
+    ownerReferences.clear();
+    unusedApiLevels.clear();
+    maxUnusedBytes = Long.getLong(MAX_UNUSED_BYTES_PROPERTY, Long.MAX_VALUE);
+  }
+
+  private static void expungeCollectedOwners() {
+    Reference<?> reference;
+    boolean released = false;
+    while ((reference = collectedOwners.poll()) != null) {
+      OwnerReference ownerReference = (OwnerReference) reference;
+      if (!ownerReferences.remove(ownerReference)) {
+        continue;
+      }
+      int apiLevel = ownerReference.apiLevel;
+      if (liveOwnerCounts.merge(apiLevel, -1, Integer::sum) == 0) {
+        liveOwnerCounts.remove(apiLevel);
+        unusedApiLevels.add(apiLevel);
+        released = true;
+      }
+    }
+    if (released) {
+      evictUnusedApiLevels();
+    }
   }
 
-  public static long get(String path, boolean system, int apiLevel) {
-    return cachedApkAssetsPtrs.getOrDefault(
-        Key.newInstance(path, system, system ? apiLevel : 0), -1L);
+  private static void evictUnusedApiLevels() {
+    long unusedBytes = 0;
+    for (Map.Entry<Key, CachedApkAssets> entry : cachedApkAssets.entrySet()) {
+      if (isUnused(entry.getKey())) {
+        unusedBytes += entry.getValue().size;
+      }
+    }
+
+    Iterator<Integer> leastRecentlyUsed = unusedApiLevels.iterator();
+    while (unusedBytes > maxUnusedBytes && leastRecentlyUsed.hasNext()) {
+      int apiLevel = leastRecentlyUsed.next();
+      leastRecentlyUsed.remove();
+      Iterator<Map.Entry<Key, CachedApkAssets>> entries = cachedApkAssets.entrySet().iterator();
+      while (entries.hasNext()) {
+        Map.Entry<Key, CachedApkAssets> entry = entries.next();
+        if (entry.getKey().system() && entry.getKey().apiLevel() == apiLevel) {
+          entries.remove();
+          unusedBytes -= entry.getValue().size;
+          Registries.NATIVE_APK_ASSETS_REGISTRY.unregister(entry.getValue().ptr);
+          PerfStatsCollector.getInstance().incrementCount("ApkAssetsCache.evict");
+        }
+      }
+    }
+  }
+
+  private static boolean isUnused(Key key) {
+    return key.system() && unusedApiLevels.contains(key.apiLevel());
+  }
+
+  /** Approximates the memory used by ApkAssets by the size of their resource table. */
+  private static long sizeOf(long ptr) {
+    CppApkAssets apkAssets = Registries.NATIVE_APK_ASSETS_REGISTRY.peekNativeObject(ptr);
+    if (apkAssets == null || apkAssets.resources_asset_ == null) {
+      return 0;
+    }
+    return apkAssets.resources_asset_.getLength();
   }
 
   /** The cache key for this cache. */
@@ -43,5 +174,24 @@ public final class ApkAssetsCache {
     }
   }
 
+  private static class CachedApkAssets {
+    final long ptr;
+    final long size;
+
+    CachedApkAssets(long ptr, long size) {
+      this.ptr = ptr;
+      this.size = size;
+    }
+  }
+
+  private static class OwnerReference extends WeakReference<Object> {
+    final int apiLevel;
+
+    OwnerReference(Object owner, int apiLevel) {
+      super(owner, collectedOwners);
+      this.apiLevel = apiLevel;
+    }
+  }
+
   private ApkAssetsCache() {}
 }
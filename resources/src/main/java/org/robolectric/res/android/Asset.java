@@ -12,6 +12,8 @@ import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Locale;
@@ -118,6 +120,15 @@ public abstract class Asset {
    */
   public abstract byte[] getBuffer(boolean wordAligned);
 
+  /*
+   * Get a little-endian buffer with the entire contents of the file. Unlike getBuffer(), this
+   * doesn't copy the contents into the heap if they're memory-mapped.
+   */
+  public ByteBuffer getByteBuffer(boolean wordAligned) {
+    byte[] buffer = getBuffer(wordAligned);
+    return buffer == null ? null : ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
   /*
    * Get the total amount of data that can be read.
    */
@@ -729,7 +740,9 @@ public abstract class Asset {
       mLength = dataMap.getDataLength();
       assert (mOffset == 0);
 
-      mBuf = dataMap.getDataPtr();
+      if (!dataMap.isMapped()) {
+        mBuf = dataMap.getDataPtr();
+      }
 
       return NO_ERROR;
     }
@@ -751,7 +764,7 @@ public abstract class Asset {
          * using the buffer or because what they're doing has appropriate
          * performance needs and access patterns.
          */
-        if (mBuf == null) getBuffer(false);
+        if (mBuf == null && (mMap == null || !mMap.isMapped())) getBuffer(false);
       }
 
       /* adjust count if we're near EOF */
@@ -762,7 +775,13 @@ public abstract class Asset {
         return 0;
       }
 
-      if (mMap != null) {
+      if (mMap != null && mMap.isMapped()) {
+        /* copy from mapped area */
+        ByteBuffer data = mMap.getDataBuffer();
+        data.position(Math.toIntExact(mOffset));
+        data.get(buf, bufOffset, count);
+        actual = count;
+      } else if (mMap != null) {
         /* copy from mapped area */
         // printf("map read\n");
         // memcpy(buf, (String)mMap.getDataPtr() + mOffset, count);
@@ -859,6 +878,14 @@ public abstract class Asset {
       // }
     }
 
+    @Override
+    public ByteBuffer getByteBuffer(boolean wordAligned) {
+      if (mMap != null && mMap.isMapped()) {
+        return mMap.getDataBuffer();
+      }
+      return super.getByteBuffer(wordAligned);
+    }
+
     /*
      * Return a read-only pointer to a buffer.
      *
@@ -16,9 +16,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.ZipEntry;
 import org.robolectric.res.android.Asset.AccessMode;
 import org.robolectric.res.android.CppAssetManager.FileType;
@@ -57,6 +60,8 @@ public class CppApkAssets {
   //   bool ForEachFile(const String& path,
   //                    const std::function<void(const StringPiece&, FileType)>& f) const;
 
+  private static final AtomicLong nextId = new AtomicLong();
+
   CppApkAssets() {
     this.zipFileRO = null;
   }
@@ -71,6 +76,14 @@ public class CppApkAssets {
     return path_;
   }
 
+  /**
+   * Returns an ID that's unique to this instance for the lifetime of the process, so that caches
+   * shared between AssetManagers can identify ApkAssets without holding on to them.
+   */
+  long GetId() {
+    return id_;
+  }
+
   // This is never nullptr.
   public LoadedArsc GetLoadedArsc() {
     return loaded_arsc_;
@@ -95,6 +108,7 @@ public class CppApkAssets {
   ZipArchiveHandle zip_handle_;
   private final ZipFileRO zipFileRO;
   private String path_;
+  private final long id_ = nextId.incrementAndGet();
   Asset resources_asset_;
   Asset idmap_asset_;
   private LoadedArsc loaded_arsc_;
@@ -185,9 +199,15 @@ public class CppApkAssets {
   public static CppApkAssets loadArscFromFd(FileDescriptor fd) {
     CppApkAssets loadedApk = new CppApkAssets();
     try {
-      byte[] bytes = ByteStreams.toByteArray(new FileInputStream(fd));
+      ByteBuffer buffer;
+      if (FileMap.isMmapEnabled()) {
+        FileChannel channel = new FileInputStream(fd).getChannel();
+        buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+      } else {
+        buffer = ByteBuffer.wrap(ByteStreams.toByteArray(new FileInputStream(fd)));
+      }
 
-      StringPiece data = new StringPiece(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), 0);
+      StringPiece data = new StringPiece(buffer.order(ByteOrder.LITTLE_ENDIAN), 0);
       loadedApk.loaded_arsc_ = LoadedArsc.Load(data, null, false, false);
 
     } catch (IOException e) {
@@ -279,8 +299,7 @@ public class CppApkAssets {
     //       loaded_apk.resources_asset_.getLength());
     StringPiece data =
         new StringPiece(
-            ByteBuffer.wrap(loaded_apk.resources_asset_.getBuffer(true /*wordAligned*/))
-                .order(ByteOrder.LITTLE_ENDIAN),
+            loaded_apk.resources_asset_.getByteBuffer(true /*wordAligned*/),
             0 /*(int) loaded_apk.resources_asset_.getLength()*/);
     loaded_apk.loaded_arsc_ = LoadedArsc.Load(data, loaded_idmap, system, load_as_shared_library);
 
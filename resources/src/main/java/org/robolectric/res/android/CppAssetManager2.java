@@ -15,6 +15,8 @@ import static org.robolectric.res.android.Util.dtohl;
 import static org.robolectric.res.android.Util.dtohs;
 import static org.robolectric.res.android.Util.isTruthy;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -208,6 +210,15 @@ public class CppAssetManager2 {
   //  private std.unordered_map<int, util.unique_cptr<ResolvedBag>> cached_bags_;
   private final Map<Integer, ResolvedBag> cached_bags_ = new HashMap<>();
 
+  // Cached results of FindEntry() for the current configuration, i.e. without a density override.
+  // These are dropped whenever the filtered configurations are rebuilt, i.e. whenever the
+  // configuration or the set of ApkAssets changes, even if other caches are kept.
+  private final ResidCache<CachedEntry> cached_entries_ = new ResidCache<>();
+
+  // Identifies the ApkAssets and configuration that themes are resolved against, for sharing theme
+  // state between AssetManagers. Computed lazily, and reset whenever either of them changes.
+  private ThemeKey.Resolution theme_resolution_;
+
   //  };
 
   // final ResolvedBag.Entry* begin(final ResolvedBag* bag) { return bag.entries; }
@@ -262,6 +273,16 @@ public class CppAssetManager2 {
     StringPoolRef entry_string_ref;
   }
 
+  private static class CachedEntry {
+    final ApkAssetsCookie cookie;
+    final FindEntryResult entry;
+
+    CachedEntry(ApkAssetsCookie cookie, FindEntryResult entry) {
+      this.cookie = cookie;
+      this.entry = entry;
+    }
+  }
+
   //  AssetManager2() { memset(&configuration_, 0, sizeof(configuration_)); }
 
   // Sets/resets the underlying ApkAssets for this AssetManager. The ApkAssets
@@ -273,6 +294,7 @@ public class CppAssetManager2 {
   //  boolean SetApkAssets(final List<ApkAssets> apk_assets, boolean invalidate_caches = true);
   public boolean SetApkAssets(final List<CppApkAssets> apk_assets, boolean invalidate_caches) {
     apk_assets_ = apk_assets;
+    theme_resolution_ = null;
     BuildDynamicRefTable();
     RebuildFilterList();
     if (invalidate_caches) {
@@ -436,6 +458,7 @@ public class CppAssetManager2 {
     configuration_ = configuration;
 
     if (isTruthy(diff)) {
+      theme_resolution_ = null;
       RebuildFilterList();
       //      InvalidateCaches(static_cast<int>(diff));
       InvalidateCaches(diff);
@@ -634,6 +657,14 @@ public class CppAssetManager2 {
       desired_config = densityOverrideConfig;
     }
 
+    if (desired_config == configuration_) {
+      CachedEntry cached_entry = cached_entries_.get(resid);
+      if (cached_entry != null) {
+        out_entry.set(cached_entry.entry);
+        return cached_entry.cookie;
+      }
+    }
+
     if (!is_valid_resid(resid)) {
       System.err.printf("Invalid ID 0x%08x.%n", resid);
       return K_INVALID_COOKIE;
@@ -770,9 +801,22 @@ public class CppAssetManager2 {
         new StringPoolRef(best_package.GetKeyStringPool(), best_entry.getKeyIndex());
     out_entry_.dynamic_ref_table = package_group.dynamic_ref_table;
     out_entry.set(out_entry_);
+    if (use_fast_path) {
+      cached_entries_.put(resid, new CachedEntry(best_cookie, out_entry_));
+    }
     return best_cookie;
   }
 
+  /** Returns the number of FindEntry() lookups that were served from the cache. */
+  public long GetEntryCacheHitCount() {
+    return cached_entries_.getHitCount();
+  }
+
+  /** Returns the number of FindEntry() lookups that had to search the ApkAssets. */
+  public long GetEntryCacheMissCount() {
+    return cached_entries_.getMissCount();
+  }
+
   // Populates the `out_name` parameter with resource name information.
   // Utf8 strings are preferred, and only if they are unavailable are
   // the Utf16 variants populated.
@@ -1299,6 +1343,8 @@ public class CppAssetManager2 {
   // Triggers the re-construction of lists of types that match the set configuration.
   // This should always be called when mutating the AssetManager's configuration or ApkAssets set.
   void RebuildFilterList() {
+    // Cached entries were selected from the filtered configurations that are about to be replaced.
+    cached_entries_.invalidate();
     PerfStatsCollector.getInstance()
         .measure(
             "RebuildFilterList",
@@ -1366,7 +1412,19 @@ public class CppAssetManager2 {
     return new Theme(this);
   }
 
+  private ThemeKey.Resolution GetThemeResolution() {
+    if (theme_resolution_ == null) {
+      theme_resolution_ = new ThemeKey.Resolution(apk_assets_, configuration_);
+    }
+    return theme_resolution_;
+  }
+
   public static class Theme {
+    // Resolved theme state, shared by all themes that applied the same styles against the same
+    // ApkAssets and configuration, across AssetManagers and sandboxes.
+    private static final Cache<ThemeKey, ThemeState> sharedThemeStates =
+        CacheBuilder.newBuilder().softValues().build();
+
     //  friend class AssetManager2;
     //
     // public:
@@ -1395,7 +1453,13 @@ public class CppAssetManager2 {
     private final CppAssetManager2 asset_manager_;
     private int type_spec_flags_ = 0;
     //  std.array<std.unique_ptr<Package>, kPackageCount> packages_;
-    private final ThemePackage[] packages_ = new ThemePackage[kPackageCount];
+    private ThemePackage[] packages_ = new ThemePackage[kPackageCount];
+    // Whether packages_ may be shared with other themes, and must be copied before it's modified.
+    private boolean shared_ = false;
+    // The key of the styles applied so far, or null if none have been. Only meaningful while
+    // cacheable_ is true, i.e. while this theme's state only depends on the styles applied to it.
+    private ThemeKey state_key_ = null;
+    private boolean cacheable_ = true;
 
     public Theme(CppAssetManager2 cppAssetManager2) {
       asset_manager_ = cppAssetManager2;
@@ -1405,11 +1469,32 @@ public class CppAssetManager2 {
       ApkAssetsCookie cookie;
       int type_spec_flags;
       Res_value value;
+
+      ThemeEntry copy() {
+        ThemeEntry copy = new ThemeEntry();
+        copy.cookie = cookie;
+        copy.type_spec_flags = type_spec_flags;
+        // Res_values are immutable.
+        copy.value = value;
+        return copy;
+      }
     }
 
     private static class ThemeType {
       int entry_count;
       ThemeEntry[] entries;
+
+      ThemeType copy() {
+        ThemeType copy = new ThemeType();
+        copy.entry_count = entry_count;
+        copy.entries = new ThemeEntry[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+          if (entries[i] != null) {
+            copy.entries[i] = entries[i].copy();
+          }
+        }
+        return copy;
+      }
     }
 
     //  static final int kPackageCount = std.numeric_limits<byte>.max() + 1;
@@ -1422,6 +1507,26 @@ public class CppAssetManager2 {
       // allocated to have the entries stored contiguously with the Type.
       // std::array<util::unique_cptr<ThemeType>, kTypeCount> types;
       ThemeType[] types = new ThemeType[kTypeCount];
+
+      ThemePackage copy() {
+        ThemePackage copy = new ThemePackage();
+        for (int t = 0; t < types.length; t++) {
+          if (types[t] != null) {
+            copy.types[t] = types[t].copy();
+          }
+        }
+        return copy;
+      }
+    }
+
+    private static class ThemeState {
+      final int type_spec_flags;
+      final ThemePackage[] packages;
+
+      ThemeState(int type_spec_flags, ThemePackage[] packages) {
+        this.type_spec_flags = type_spec_flags;
+        this.packages = packages;
+      }
     }
 
     // Applies the style identified by `resid` to this theme. This can be called
@@ -1432,6 +1537,55 @@ public class CppAssetManager2 {
     // Returns false if the style failed to apply.
     //  boolean ApplyStyle(int resid, boolean force = false);
     public boolean ApplyStyle(int resid, boolean force) {
+      ThemeKey.Resolution resolution = asset_manager_.GetThemeResolution();
+      ThemeKey key = null;
+      if (cacheable_ && (state_key_ == null || state_key_.getResolution().equals(resolution))) {
+        key =
+            state_key_ == null
+                ? ThemeKey.of(resolution, resid, force)
+                : state_key_.then(resid, force);
+        ThemeState state = sharedThemeStates.getIfPresent(key);
+        if (state != null) {
+          PerfStatsCollector.getInstance().incrementCount("ThemeCache.hit");
+          type_spec_flags_ = state.type_spec_flags;
+          packages_ = state.packages;
+          shared_ = true;
+          state_key_ = key;
+          return true;
+        }
+        PerfStatsCollector.getInstance().incrementCount("ThemeCache.miss");
+      }
+
+      Unshare();
+      boolean applied = ApplyStyleUncached(resid, force);
+      if (key != null && applied) {
+        sharedThemeStates.put(key, new ThemeState(type_spec_flags_, packages_));
+        shared_ = true;
+        state_key_ = key;
+      } else {
+        // A failed style may have been partially applied.
+        cacheable_ = false;
+        state_key_ = null;
+      }
+      return applied;
+    }
+
+    // Copies the theme state if it's shared, so that it can be modified.
+    private void Unshare() {
+      if (!shared_) {
+        return;
+      }
+      ThemePackage[] packages = new ThemePackage[kPackageCount];
+      for (int p = 0; p < packages_.length; p++) {
+        if (packages_[p] != null) {
+          packages[p] = packages_[p].copy();
+        }
+      }
+      packages_ = packages;
+      shared_ = false;
+    }
+
+    private boolean ApplyStyleUncached(int resid, boolean force) {
       // ATRACE_NAME("Theme::ApplyStyle");
 
       final ResolvedBag bag = asset_manager_.GetBag(resid);
@@ -1624,10 +1778,11 @@ public class CppAssetManager2 {
     //  void Clear();
     public void Clear() {
       type_spec_flags_ = 0;
-      for (int i = 0; i < packages_.length; i++) {
-        //        package_.reset();
-        packages_[i] = null;
-      }
+      // The previous state may be shared with other themes, so replace rather than reset it.
+      packages_ = new ThemePackage[kPackageCount];
+      shared_ = false;
+      state_key_ = null;
+      cacheable_ = true;
     }
 
     // Sets this Theme to be a copy of `o` if `o` has the same AssetManager as this Theme.
@@ -1638,10 +1793,25 @@ public class CppAssetManager2 {
         return true;
       }
 
-      type_spec_flags_ = o.type_spec_flags_;
-
       boolean copy_only_system = asset_manager_ != o.asset_manager_;
 
+      if (!copy_only_system && cacheable_ && state_key_ == null) {
+        // This theme is empty, so it can share the other theme's state.
+        type_spec_flags_ = o.type_spec_flags_;
+        packages_ = o.packages_;
+        shared_ = o.shared_ = true;
+        state_key_ = o.state_key_;
+        cacheable_ = o.cacheable_;
+        return true;
+      }
+
+      type_spec_flags_ = o.type_spec_flags_;
+      Unshare();
+      // Types that this theme has but the other one doesn't are kept, so the result no longer
+      // corresponds to a sequence of styles.
+      state_key_ = null;
+      cacheable_ = false;
+
       // for (int p = 0; p < packages_.size(); p++) {
       //   final Package package_ = o.packages_[p].get();
       for (int p = 0; p < packages_.length; p++) {
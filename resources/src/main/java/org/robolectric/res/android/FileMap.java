@@ -5,21 +5,25 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.robolectric.res.android.Util.ALOGV;
 
 import com.google.common.collect.Maps;
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
 import com.google.common.primitives.Shorts;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
 
 public class FileMap {
 
@@ -52,6 +56,10 @@ public class FileMap {
   private int fd;
   private boolean isFromZip;
 
+  // A view of the data within a memory-mapped file, if the data is stored uncompressed and the file
+  // is mapped. Otherwise, the data is read into mDataPtr on first use.
+  @Nullable private ByteBuffer mappedData;
+
   // Create a new mapping on an open file.
   //
   // Closing the file descriptor does not unmap the pages, so we don't
@@ -159,6 +167,7 @@ public class FileMap {
   boolean createFromZip(
       String origFileName,
       ZipFile zipFile,
+      @Nullable ByteBuffer mappedZipFile,
       ZipEntry entry,
       long offset,
       int length,
@@ -202,6 +211,9 @@ public class FileMap {
     mDataOffset = offset;
     // mDataPtr = mBasePtr + adjust;
     mDataLength = Math.toIntExact(entry.getSize());
+    if (mappedZipFile != null && entry.getMethod() == ZipEntry.STORED) {
+      mappedData = slice(mappedZipFile, Math.toIntExact(offset), mDataLength);
+    }
 
     // assert(mBasePtr != 0);
 
@@ -211,10 +223,6 @@ public class FileMap {
   }
 
   static Map<String, Long> guessDataOffsets(File zipFile, int length, int entryCount) {
-    // Presize to avoid repeated rehashing, framework jars may have ~100k entries.
-    HashMap<String, Long> result =
-        entryCount > 0 ? Maps.newHashMapWithExpectedSize(entryCount) : new HashMap<>();
-
     // Parse the zip file entry offsets from the central directory section.
     // See https://en.wikipedia.org/wiki/Zip_(file_format)
 
@@ -228,12 +236,7 @@ public class FileMap {
       byte[] buffer = new byte[endOfCdSize];
       randomAccessFile.readFully(buffer);
 
-      int centralDirOffset = findCentralDir(buffer);
-      if (centralDirOffset == -1) {
-        // If the zip file contains > 2^16 entries, a Zip64 EOCD is written, and the central
-        // dir offset in the regular EOCD may be -1.
-        centralDirOffset = findCentralDir64(buffer);
-      }
+      int centralDirOffset = findCentralDir(wrap(buffer));
       int offset = centralDirOffset - endofCdOffset;
       if (offset < 0) {
         // read the entire central directory record into memory
@@ -248,54 +251,92 @@ public class FileMap {
         // the central directory is already in the buffer, no need to reread
       }
 
-      // now read the entries
-      while (true) {
-        // Instead of trusting numRecords, read until we find the
-        // end-of-central-directory signature.  numRecords may wrap
-        // around with >64K entries.
-        int sig = readInt(buffer, offset);
-        if (sig == ENDSIG || sig == ENDSIG64) {
-          break;
-        }
-
-        int bitFlag = readShort(buffer, offset + 8);
-        int fileNameLength = readShort(buffer, offset + 28);
-        int extraLength = readShort(buffer, offset + 30);
-        int fieldCommentLength = readShort(buffer, offset + 32);
-        int relativeOffsetOfLocalFileHeader = readInt(buffer, offset + 42);
-
-        // Ignore .class files; they are ~75% of the entries in a typical Android framework jar, and
-        // are not needed for the purposes of loading binary resources. They are also handled by
-        // SandboxClassLoaders.
-        if (!endsWithSuffix(buffer, offset + 46, fileNameLength, DOT_CLASS)) {
-          byte[] nameBytes = copyBytes(buffer, offset + 46, fileNameLength);
-          Charset encoding = getEncoding(bitFlag);
-          String fileName = new String(nameBytes, encoding);
-          // Store the local file header offset only. The exact data offset requires reading the
-          // entry's local file header, so it is computed lazily in dataOffsetForLocalHeader.
-          // A typical test loads relatively few resources from the Android framework jars, so it is
-          // not worth the extra cost of seeking and reading the local header for all entries.
-          result.put(fileName, (long) relativeOffsetOfLocalFileHeader);
-        }
-        offset += 46 + fileNameLength + extraLength + fieldCommentLength;
-      }
+      return readCentralDir(wrap(buffer), offset, entryCount);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
 
-      // Avoid ImmutableMap.copyOf() because it rehashes every entry and is expensive for large
-      // maps (e.g. framework jars have ~100k entries).
-      return Collections.unmodifiableMap(result);
+  /**
+   * Like {@link #guessDataOffsets(File, int, int)}, but parses the central directory in place from
+   * a mapping of the entire zip file, without copying it.
+   */
+  static Map<String, Long> guessDataOffsets(ByteBuffer mappedZipFile, int entryCount) {
+    try {
+      int length = mappedZipFile.capacity();
+      int endOfCdSize = Math.min(MAXIMUM_ZIP_EOCD_SIZE, length);
+      int centralDirOffset =
+          findCentralDir(slice(mappedZipFile, length - endOfCdSize, endOfCdSize));
+      return readCentralDir(mappedZipFile, centralDirOffset, entryCount);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /** Maps the entire file read-only, in little-endian order. */
+  static ByteBuffer map(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // Closing the channel does not unmap the file.
+      return channel.map(MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  /** Returns whether resources and APKs should be memory-mapped rather than read into the heap. */
+  static boolean isMmapEnabled() {
+    return Boolean.getBoolean("robolectric.mmapResources");
+  }
+
+  private static Map<String, Long> readCentralDir(ByteBuffer buffer, int offset, int entryCount)
+      throws IOException {
+    // Presize to avoid repeated rehashing, framework jars may have ~100k entries.
+    HashMap<String, Long> result =
+        entryCount > 0 ? Maps.newHashMapWithExpectedSize(entryCount) : new HashMap<>();
+
+    // now read the entries
+    while (true) {
+      // Instead of trusting numRecords, read until we find the
+      // end-of-central-directory signature.  numRecords may wrap
+      // around with >64K entries.
+      int sig = buffer.getInt(offset);
+      if (sig == ENDSIG || sig == ENDSIG64) {
+        break;
+      }
+
+      int bitFlag = buffer.getShort(offset + 8);
+      int fileNameLength = buffer.getShort(offset + 28);
+      int extraLength = buffer.getShort(offset + 30);
+      int fieldCommentLength = buffer.getShort(offset + 32);
+      int relativeOffsetOfLocalFileHeader = buffer.getInt(offset + 42);
+
+      // Ignore .class files; they are ~75% of the entries in a typical Android framework jar, and
+      // are not needed for the purposes of loading binary resources. They are also handled by
+      // SandboxClassLoaders.
+      if (!endsWithSuffix(buffer, offset + 46, fileNameLength, DOT_CLASS)) {
+        byte[] nameBytes = copyBytes(buffer, offset + 46, fileNameLength);
+        Charset encoding = getEncoding(bitFlag);
+        String fileName = new String(nameBytes, encoding);
+        // Store the local file header offset only. The exact data offset requires reading the
+        // entry's local file header, so it is computed lazily in dataOffsetForLocalHeader.
+        // A typical test loads relatively few resources from the Android framework jars, so it is
+        // not worth the extra cost of seeking and reading the local header for all entries.
+        result.put(fileName, (long) relativeOffsetOfLocalFileHeader);
+      }
+      offset += 46 + fileNameLength + extraLength + fieldCommentLength;
+    }
+
+    // Avoid ImmutableMap.copyOf() because it rehashes every entry and is expensive for large
+    // maps (e.g. framework jars have ~100k entries).
+    return Collections.unmodifiableMap(result);
+  }
+
   private static boolean endsWithSuffix(
-      byte[] buffer, int nameStart, int nameLength, byte[] suffix) {
+      ByteBuffer buffer, int nameStart, int nameLength, byte[] suffix) {
     if (nameLength < suffix.length) {
       return false;
     }
     int start = nameStart + nameLength - suffix.length;
     for (int i = 0; i < suffix.length; i++) {
-      if (buffer[start + i] != suffix[i]) {
+      if (buffer.get(start + i) != suffix[i]) {
         return false;
       }
     }
@@ -321,9 +362,19 @@ public class FileMap {
     return localHeaderOffset + 30 + nameLength + extraLength;
   }
 
-  private static byte[] copyBytes(byte[] buffer, int offset, int length) {
+  /** Like {@link #dataOffsetForLocalHeader(RandomAccessFile, long)}, but for a mapped file. */
+  static long dataOffsetForLocalHeader(ByteBuffer mappedZipFile, long localHeaderOffset) {
+    int offset = Math.toIntExact(localHeaderOffset);
+    int nameLength = mappedZipFile.getShort(offset + 26);
+    int extraLength = mappedZipFile.getShort(offset + 28);
+    return localHeaderOffset + 30 + nameLength + extraLength;
+  }
+
+  private static byte[] copyBytes(ByteBuffer buffer, int offset, int length) {
     byte[] result = new byte[length];
-    System.arraycopy(buffer, offset, result, 0, length);
+    for (int i = 0; i < length; i++) {
+      result[i] = buffer.get(offset + i);
+    }
     return result;
   }
 
@@ -333,12 +384,22 @@ public class FileMap {
     return (0 != ((bitFlags >>> 11) & 1)) ? UTF_8 : ISO_8859_1;
   }
 
-  private static int findCentralDir(byte[] buffer) throws IOException {
+  private static int findCentralDir(ByteBuffer buffer) throws IOException {
+    int centralDirOffset = findCentralDir32(buffer);
+    if (centralDirOffset == -1) {
+      // If the zip file contains > 2^16 entries, a Zip64 EOCD is written, and the central
+      // dir offset in the regular EOCD may be -1.
+      centralDirOffset = findCentralDir64(buffer);
+    }
+    return centralDirOffset;
+  }
+
+  private static int findCentralDir32(ByteBuffer buffer) throws IOException {
     // find start of central directory by scanning backwards
-    int scanOffset = buffer.length - EOCD_SIZE;
+    int scanOffset = buffer.capacity() - EOCD_SIZE;
 
     while (true) {
-      int val = readInt(buffer, scanOffset);
+      int val = buffer.getInt(scanOffset);
       if (val == ENDSIG) {
         break;
       }
@@ -352,15 +413,15 @@ public class FileMap {
     }
     // scanOffset is now start of end of central directory record
     // the 'offset to central dir' data is at position 16 in the record
-    return readInt(buffer, scanOffset + 16);
+    return buffer.getInt(scanOffset + 16);
   }
 
-  private static int findCentralDir64(byte[] buffer) throws IOException {
+  private static int findCentralDir64(ByteBuffer buffer) throws IOException {
     // find start of central directory by scanning backwards
-    int scanOffset = buffer.length - EOCD_SIZE - ZIP64_EOCD_LOCATOR_SIZE - ZIP64_EOCD_SIZE;
+    int scanOffset = buffer.capacity() - EOCD_SIZE - ZIP64_EOCD_LOCATOR_SIZE - ZIP64_EOCD_SIZE;
 
     while (true) {
-      int val = readInt(buffer, scanOffset);
+      int val = buffer.getInt(scanOffset);
       if (val == ENDSIG64) {
         break;
       }
@@ -374,27 +435,19 @@ public class FileMap {
     }
     // scanOffset is now start of end of central directory record
     // the 'offset to central dir' data is at position 16 in the record
-    long offsetToCentralDir = readLong(buffer, scanOffset + 48);
+    long offsetToCentralDir = buffer.getLong(scanOffset + 48);
     return (int) offsetToCentralDir;
   }
 
-  /** Read a 32-bit integer from a bytebuffer in little-endian order. */
-  private static int readInt(byte[] buffer, int offset) {
-    return Ints.fromBytes(
-        buffer[offset + 3], buffer[offset + 2], buffer[offset + 1], buffer[offset]);
+  private static ByteBuffer wrap(byte[] buffer) {
+    return ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
   }
 
-  /** Read a 64-bit integer from a bytebuffer in little-endian order. */
-  private static long readLong(byte[] buffer, int offset) {
-    return Longs.fromBytes(
-        buffer[offset + 7],
-        buffer[offset + 6],
-        buffer[offset + 5],
-        buffer[offset + 4],
-        buffer[offset + 3],
-        buffer[offset + 2],
-        buffer[offset + 1],
-        buffer[offset]);
+  /** Returns a little-endian view of {@code length} bytes of {@code buffer} from {@code offset}. */
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer duplicate = buffer.duplicate();
+    duplicate.limit(offset + length).position(offset);
+    return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
   }
 
   /** Read a 16-bit short from a bytebuffer in little-endian order. */
@@ -450,6 +503,10 @@ public class FileMap {
   synchronized byte[] getDataPtr() {
     if (mDataPtr == null) {
       mDataPtr = new byte[mDataLength];
+      if (mappedData != null) {
+        mappedData.duplicate().get(mDataPtr);
+        return mDataPtr;
+      }
 
       InputStream is;
       try {
@@ -470,6 +527,24 @@ public class FileMap {
     return mDataPtr;
   }
 
+  /**
+   * Returns whether the data is read from a memory-mapped file rather than copied into the heap.
+   */
+  boolean isMapped() {
+    return mappedData != null;
+  }
+
+  /**
+   * Returns the data in little-endian order. If the data is mapped, this is a read-only view of the
+   * mapping; otherwise it wraps {@link #getDataPtr()}.
+   */
+  ByteBuffer getDataBuffer() {
+    if (mappedData != null) {
+      return mappedData.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    return ByteBuffer.wrap(getDataPtr()).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
   public static void readFully(InputStream is, byte[] bytes) throws IOException {
     int size = bytes.length;
     int remaining = size;
@@ -2,27 +2,38 @@ package org.robolectric.res.android;
 
 import static java.util.Objects.requireNonNull;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A unique id per object registry. Used to emulate android platform behavior of storing a long
  * which represents a pointer to an object.
+ *
+ * <p>Ids are allocated sequentially, so objects are stored in pages of an array indexed by id
+ * rather than in a map. Looking up an object by id takes no locks and doesn't box the id. Changes
+ * to the registry are serialized, and pages are released once all of their objects have been
+ * unregistered.
  */
 public class NativeObjRegistry<T> {
 
   private static final int INITIAL_ID = 1;
+  private static final int PAGE_SHIFT = 10;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
 
   private final String name;
   private final boolean debug;
-  private final BiMap<Long, T> nativeObjToIdMap = HashBiMap.create();
-  private final Map<Long, DebugInfo> idToDebugInfoMap;
+  private final AtomicLong nextId = new AtomicLong(INITIAL_ID);
+  // Replaced, never modified in place, when more pages are needed.
+  private volatile AtomicReferenceArray<Page> pages = new AtomicReferenceArray<>(16);
 
-  private long nextId = INITIAL_ID;
+  // All of the following state is guarded by this.
+  private final Map<T, Long> nativeObjToIdMap = new HashMap<>();
+  private final Map<Long, DebugInfo> idToDebugInfoMap;
 
   public NativeObjRegistry(Class<T> theClass) {
     this(theClass, false);
@@ -51,14 +62,13 @@ public class NativeObjRegistry<T> {
   @Deprecated
   public synchronized long getNativeObjectId(T o) {
     requireNonNull(o);
-    Long nativeId = nativeObjToIdMap.inverse().get(o);
+    Long nativeId = nativeObjToIdMap.get(o);
     if (nativeId == null) {
-      nativeId = nextId;
+      nativeId = nextId.getAndIncrement();
       if (debug) {
         System.out.printf("NativeObjRegistry %s: register %d -> %s%n", name, nativeId, o);
       }
-      nativeObjToIdMap.put(nativeId, o);
-      nextId++;
+      put(nativeId, o);
     }
     return nativeId;
   }
@@ -70,7 +80,7 @@ public class NativeObjRegistry<T> {
    */
   public synchronized long register(T o) {
     requireNonNull(o);
-    Long nativeId = nativeObjToIdMap.inverse().get(o);
+    Long nativeId = nativeObjToIdMap.get(o);
     if (nativeId != null) {
       if (debug) {
         DebugInfo debugInfo = idToDebugInfoMap.get(nativeId);
@@ -83,14 +93,13 @@ public class NativeObjRegistry<T> {
       throw new IllegalStateException("Object was previously registered with id " + nativeId);
     }
 
-    nativeId = nextId;
+    long newId = nextId.getAndIncrement();
     if (debug) {
-      System.out.printf("NativeObjRegistry %s: register %d -> %s%n", name, nativeId, o);
-      idToDebugInfoMap.put(nativeId, new DebugInfo(new Trace()));
+      System.out.printf("NativeObjRegistry %s: register %d -> %s%n", name, newId, o);
+      idToDebugInfoMap.put(newId, new DebugInfo(new Trace()));
     }
-    nativeObjToIdMap.put(nativeId, o);
-    nextId++;
-    return nativeId;
+    put(newId, o);
+    return newId;
   }
 
   /**
@@ -101,7 +110,7 @@ public class NativeObjRegistry<T> {
    *     unregistered.
    */
   public synchronized T unregister(long nativeId) {
-    T o = nativeObjToIdMap.remove(nativeId);
+    T o = remove(nativeId);
     if (debug) {
       System.out.printf("NativeObjRegistry %s: unregister %d -> %s%n", name, nativeId, o);
       new RuntimeException("unregister debug").printStackTrace(System.out);
@@ -128,19 +137,22 @@ public class NativeObjRegistry<T> {
    */
   @Deprecated
   public synchronized void unregister(T removed) {
-    nativeObjToIdMap.inverse().remove(removed);
+    Long nativeId = nativeObjToIdMap.get(removed);
+    if (nativeId != null) {
+      remove(nativeId);
+    }
   }
 
   /** Retrieve the native object for given id. Throws if object with that id cannot be found */
-  public synchronized T getNativeObject(long nativeId) {
-    T object = nativeObjToIdMap.get(nativeId);
+  public T getNativeObject(long nativeId) {
+    T object = peekNativeObject(nativeId);
     if (object != null) {
       return object;
     } else {
       throw new NullPointerException(
           String.format(
               "Could not find object with nativeId: %d. Currently registered ids: %s",
-              nativeId, nativeObjToIdMap.keySet()));
+              nativeId, getRegisteredIds()));
     }
   }
 
@@ -148,31 +160,124 @@ public class NativeObjRegistry<T> {
    * Updates the native object for the given id.
    *
    * @throws IllegalStateException if no object was registered with the given id before
+   * @throws IllegalArgumentException if the object is already registered with a different id
    */
   public synchronized void update(long nativeId, T o) {
-    T previous = nativeObjToIdMap.get(nativeId);
+    requireNonNull(o);
+    T previous = peekNativeObject(nativeId);
     if (previous == null) {
       throw new IllegalStateException("Native id " + nativeId + " was never registered");
     }
+    Long existingId = nativeObjToIdMap.get(o);
+    if (existingId != null && existingId != nativeId) {
+      throw new IllegalArgumentException("Object is already registered with id " + existingId);
+    }
     if (debug) {
       System.out.printf("NativeObjRegistry %s: update %d -> %s%n", name, nativeId, o);
       idToDebugInfoMap.put(nativeId, new DebugInfo(new Trace()));
     }
-    nativeObjToIdMap.put(nativeId, o);
+    nativeObjToIdMap.remove(previous);
+    nativeObjToIdMap.put(o, nativeId);
+    pages.get(pageIndex(nativeId)).set(slot(nativeId), o);
   }
 
   /**
    * Similar to {@link #getNativeObject(long)} but returns null if object with given id cannot be
    * found.
    */
-  public synchronized T peekNativeObject(long nativeId) {
-    return nativeObjToIdMap.get(nativeId);
+  @SuppressWarnings("unchecked")
+  public T peekNativeObject(long nativeId) {
+    if (nativeId < INITIAL_ID) {
+      return null;
+    }
+    AtomicReferenceArray<Page> pages = this.pages;
+    long pageIndex = nativeId >>> PAGE_SHIFT;
+    if (pageIndex >= pages.length()) {
+      return null;
+    }
+    Page page = pages.get((int) pageIndex);
+    return page == null ? null : (T) page.get(slot(nativeId));
+  }
+
+  /**
+   * Returns the number of objects that are currently registered, e.g. to detect objects that are
+   * never unregistered.
+   */
+  public synchronized int getRegisteredCount() {
+    return nativeObjToIdMap.size();
   }
 
   /** WARNING -- dangerous! Call {@link #unregister(long)} instead! */
   public synchronized void clear() {
-    nextId = INITIAL_ID;
+    nextId.set(INITIAL_ID);
     nativeObjToIdMap.clear();
+    pages = new AtomicReferenceArray<>(16);
+  }
+
+  private synchronized List<Long> getRegisteredIds() {
+    List<Long> ids = new ArrayList<>(nativeObjToIdMap.values());
+    ids.sort(null);
+    return ids;
+  }
+
+  // Must be called while holding the lock.
+  private void put(long nativeId, T o) {
+    int pageIndex = pageIndex(nativeId);
+    AtomicReferenceArray<Page> pages = this.pages;
+    if (pageIndex >= pages.length()) {
+      AtomicReferenceArray<Page> newPages =
+          new AtomicReferenceArray<>(Math.max(pages.length() * 2, pageIndex + 1));
+      for (int i = 0; i < pages.length(); i++) {
+        newPages.set(i, pages.get(i));
+      }
+      this.pages = pages = newPages;
+    }
+    Page page = pages.get(pageIndex);
+    if (page == null) {
+      page = new Page();
+      pages.set(pageIndex, page);
+    }
+    page.liveCount++;
+    page.set(slot(nativeId), o);
+    nativeObjToIdMap.put(o, nativeId);
+  }
+
+  // Must be called while holding the lock.
+  private T remove(long nativeId) {
+    T o = peekNativeObject(nativeId);
+    if (o == null) {
+      return null;
+    }
+    int pageIndex = pageIndex(nativeId);
+    Page page = pages.get(pageIndex);
+    page.set(slot(nativeId), null);
+    // Ids are never reused, so a page can be released once it's empty and fully allocated.
+    if (--page.liveCount == 0 && nextId.get() >> PAGE_SHIFT > pageIndex) {
+      pages.set(pageIndex, null);
+    }
+    nativeObjToIdMap.remove(o);
+    return o;
+  }
+
+  private static int pageIndex(long nativeId) {
+    long pageIndex = nativeId >>> PAGE_SHIFT;
+    if (pageIndex > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Too many native ids allocated");
+    }
+    return (int) pageIndex;
+  }
+
+  private static int slot(long nativeId) {
+    return (int) (nativeId & PAGE_MASK);
+  }
+
+  private static class Page extends AtomicReferenceArray<Object> {
+    // Guarded by the registry.
+    int liveCount;
+
+    Page() {
+      super(PAGE_SIZE);
+    }
   }
 
   private static class DebugInfo {
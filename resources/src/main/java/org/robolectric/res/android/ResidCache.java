@@ -0,0 +1,108 @@
+package org.robolectric.res.android;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table keyed by resource ID, used to cache resource lookups without boxing
+ * keys or allocating on lookup.
+ *
+ * <p>Every entry is stamped with the generation in which it was added. {@link #invalidate()} bumps
+ * the generation, which turns all existing entries into free slots without having to clear their
+ * keys. Entries are never removed individually, so a lookup can stop probing at the first slot that
+ * doesn't belong to the current generation.
+ */
+final class ResidCache<V> {
+  private static final int INITIAL_CAPACITY = 64;
+
+  private int[] keys = new int[INITIAL_CAPACITY];
+  private int[] generations = new int[INITIAL_CAPACITY];
+  private Object[] values = new Object[INITIAL_CAPACITY];
+  // Zero marks slots that have never been used.
+  private int generation = 1;
+  private int size;
+  private long hitCount;
+  private long missCount;
+
+  /** Returns the value cached for {@code resid} in the current generation, or null. */
+  @SuppressWarnings("unchecked")
+  V get(int resid) {
+    int mask = keys.length - 1;
+    for (int i = indexFor(resid, mask); generations[i] == generation; i = (i + 1) & mask) {
+      if (keys[i] == resid) {
+        hitCount++;
+        return (V) values[i];
+      }
+    }
+    missCount++;
+    return null;
+  }
+
+  void put(int resid, V value) {
+    if ((size + 1) * 2 > keys.length) {
+      resize(keys.length * 2);
+    }
+    if (insert(resid, value)) {
+      size++;
+    }
+  }
+
+  /** Drops every cached value. */
+  void invalidate() {
+    size = 0;
+    // Don't hold on to values that may refer to resources which are no longer in use.
+    Arrays.fill(values, null);
+    if (++generation == 0) {
+      Arrays.fill(generations, 0);
+      generation = 1;
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  long getHitCount() {
+    return hitCount;
+  }
+
+  long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns whether a new key was added, as opposed to an existing one being replaced. */
+  private boolean insert(int resid, Object value) {
+    int mask = keys.length - 1;
+    int i = indexFor(resid, mask);
+    while (generations[i] == generation) {
+      if (keys[i] == resid) {
+        values[i] = value;
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = resid;
+    generations[i] = generation;
+    values[i] = value;
+    return true;
+  }
+
+  private void resize(int capacity) {
+    int[] oldKeys = keys;
+    int[] oldGenerations = generations;
+    Object[] oldValues = values;
+    keys = new int[capacity];
+    generations = new int[capacity];
+    values = new Object[capacity];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldGenerations[i] == generation) {
+        insert(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  private static int indexFor(int resid, int mask) {
+    // Resource IDs of the same type only differ in their low bits, so spread them out.
+    int h = resid * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+}
@@ -81,7 +81,17 @@ public final class ResourceString {
       length = characterCount * 2;
     }
 
-    byte[] bytes = buffer.array();
+    byte[] bytes;
+    if (buffer.hasArray()) {
+      bytes = buffer.array();
+    } else {
+      // The buffer is e.g. a memory-mapped resources.arsc; copy just this string out of it.
+      bytes = new byte[length];
+      ByteBuffer duplicate = buffer.duplicate();
+      duplicate.position(offset);
+      duplicate.get(bytes);
+      offset = 0;
+    }
     if (type == Type.UTF8) {
       // Fast path: most resource strings (e.g. element/attribute names) are pure ASCII, which is
       // byte-identical in ISO-8859-1 and UTF-8, so a direct Latin-1 copy
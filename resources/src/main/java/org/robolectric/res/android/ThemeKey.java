@@ -0,0 +1,115 @@
+package org.robolectric.res.android;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Identifies the state of a {@link CppAssetManager2.Theme}: the ApkAssets and configuration of its
+ * AssetManager, and the styles that were applied to it, in order.
+ *
+ * <p>Two themes with equal keys hold the same attributes, even if they belong to different
+ * AssetManagers or sandboxes, so their resolved state can be shared.
+ */
+final class ThemeKey {
+
+  /** The ApkAssets and configuration that styles are resolved against. */
+  static final class Resolution {
+    private final long[] apkAssetsIds;
+    private final ResTable_config configuration;
+    private final int hashCode;
+
+    Resolution(List<CppApkAssets> apkAssets, ResTable_config configuration) {
+      this.apkAssetsIds = new long[apkAssets.size()];
+      for (int i = 0; i < apkAssetsIds.length; i++) {
+        apkAssetsIds[i] = apkAssets.get(i).GetId();
+      }
+      this.configuration = new ResTable_config(configuration);
+      this.hashCode = 31 * Arrays.hashCode(apkAssetsIds) + hashOf(configuration);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Resolution)) {
+        return false;
+      }
+      Resolution that = (Resolution) o;
+      return hashCode == that.hashCode
+          && Arrays.equals(apkAssetsIds, that.apkAssetsIds)
+          && configuration.compare(that.configuration) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    // Only covers fields that ResTable_config.compare() considers, so that it's consistent with
+    // equals().
+    private static int hashOf(ResTable_config config) {
+      int h = config.mcc & 0xffff;
+      h = 31 * h + (config.mnc & 0xffff);
+      h = 31 * h + (config.orientation & 0xff);
+      h = 31 * h + (config.touchscreen & 0xff);
+      h = 31 * h + (config.density & 0xffff);
+      h = 31 * h + (config.screenWidth & 0xffff);
+      h = 31 * h + (config.screenHeight & 0xffff);
+      h = 31 * h + (config.sdkVersion & 0xffff);
+      h = 31 * h + config.screenLayout;
+      h = 31 * h + config.uiMode;
+      h = 31 * h + config.smallestScreenWidthDp;
+      h = 31 * h + (config.screenWidthDp & 0xffff);
+      h = 31 * h + (config.screenHeightDp & 0xffff);
+      return h;
+    }
+  }
+
+  private final Resolution resolution;
+  // Pairs of (style resid, force) in the order they were applied.
+  private final int[] styles;
+  private final int hashCode;
+
+  private ThemeKey(Resolution resolution, int[] styles) {
+    this.resolution = resolution;
+    this.styles = styles;
+    this.hashCode = 31 * resolution.hashCode() + Arrays.hashCode(styles);
+  }
+
+  /** Returns the key of an empty theme after {@code resid} has been applied to it. */
+  static ThemeKey of(Resolution resolution, int resid, boolean force) {
+    return new ThemeKey(resolution, new int[] {resid, force ? 1 : 0});
+  }
+
+  /** Returns the key of this theme after {@code resid} has been applied to it. */
+  ThemeKey then(int resid, boolean force) {
+    int[] newStyles = Arrays.copyOf(styles, styles.length + 2);
+    newStyles[styles.length] = resid;
+    newStyles[styles.length + 1] = force ? 1 : 0;
+    return new ThemeKey(resolution, newStyles);
+  }
+
+  Resolution getResolution() {
+    return resolution;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ThemeKey)) {
+      return false;
+    }
+    ThemeKey that = (ThemeKey) o;
+    return hashCode == that.hashCode
+        && Arrays.equals(styles, that.styles)
+        && resolution.equals(that.resolution);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+}
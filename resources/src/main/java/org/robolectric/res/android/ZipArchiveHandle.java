@@ -3,13 +3,17 @@ package org.robolectric.res.android;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
 
 public class ZipArchiveHandle {
   final ZipFile zipFile;
   private final File file;
+  // The entire file, if it's memory-mapped.
+  @Nullable final ByteBuffer mappedFile;
   // name -> local file header offset (from the central directory).
   private final Map<String, Long> localHeaderOffsets;
   // name -> exact data offset.
@@ -17,9 +21,18 @@ public class ZipArchiveHandle {
   private RandomAccessFile randomAccessFile;
 
   public ZipArchiveHandle(ZipFile zipFile, File file, Map<String, Long> localHeaderOffsets) {
+    this(zipFile, file, localHeaderOffsets, null);
+  }
+
+  ZipArchiveHandle(
+      ZipFile zipFile,
+      File file,
+      Map<String, Long> localHeaderOffsets,
+      @Nullable ByteBuffer mappedFile) {
     this.zipFile = zipFile;
     this.file = file;
     this.localHeaderOffsets = localHeaderOffsets;
+    this.mappedFile = mappedFile;
   }
 
   /**
@@ -35,6 +48,11 @@ public class ZipArchiveHandle {
     if (localHeaderOffset == null) {
       return null;
     }
+    if (mappedFile != null) {
+      long exact = FileMap.dataOffsetForLocalHeader(mappedFile, localHeaderOffset);
+      dataOffsetCache.put(entryName, exact);
+      return exact;
+    }
     try {
       if (randomAccessFile == null) {
         randomAccessFile = new RandomAccessFile(file, "r");
@@ -7,6 +7,7 @@ import static org.robolectric.res.android.Util.isTruthy;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -50,15 +51,30 @@ public class ZipFileRO {
     //    free(mFileName);
   }
 
+  /**
+   * Opens a zip archive.
+   *
+   * <p>If the {@code robolectric.mmapResources} system property is {@code true}, the archive is
+   * memory-mapped, and uncompressed entries such as {@code resources.arsc} are read from the
+   * mapping rather than copied into the heap.
+   */
   static int OpenArchive(String zipFileName, Ref<ZipArchiveHandle> mHandle) {
     try {
       File file = new File(zipFileName);
       // TODO: consider moving away from ZipFile. By using ZipFile and guessDataOffsets, the zip
       // central directory is being read twice
       ZipFile zipFile = new ZipFile(file);
-      mHandle.set(
-          new ZipArchiveHandle(
-              zipFile, file, FileMap.guessDataOffsets(file, (int) file.length(), zipFile.size())));
+      long length = file.length();
+      if (FileMap.isMmapEnabled() && length <= Integer.MAX_VALUE) {
+        ByteBuffer mappedFile = FileMap.map(file);
+        mHandle.set(
+            new ZipArchiveHandle(
+                zipFile, file, FileMap.guessDataOffsets(mappedFile, zipFile.size()), mappedFile));
+      } else {
+        mHandle.set(
+            new ZipArchiveHandle(
+                zipFile, file, FileMap.guessDataOffsets(file, (int) length, zipFile.size())));
+      }
       return NO_ERROR;
     } catch (IOException e) {
       return NAME_NOT_FOUND;
@@ -284,6 +300,7 @@ public class ZipFileRO {
     if (!newMap.createFromZip(
         mFileName,
         mHandle.zipFile,
+        mHandle.mappedFile,
         entry.entry,
         entry.dataOffset,
         Math.toIntExact(entry.entry.getCompressedSize()),
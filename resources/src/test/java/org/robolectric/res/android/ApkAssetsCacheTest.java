@@ -0,0 +1,105 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.ref.WeakReference;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ApkAssetsCacheTest {
+
+  @After
+  public void tearDown() {
+    ApkAssetsCache.reset();
+  }
+
+  @Test
+  public void putIfAbsent_returnsFirstCachedPtr() {
+    long first = register(100);
+    long second = register(100);
+
+    assertThat(ApkAssetsCache.putIfAbsent("/concurrent.jar", true, 1001, first)).isEqualTo(first);
+    assertThat(ApkAssetsCache.putIfAbsent("/concurrent.jar", true, 1001, second)).isEqualTo(first);
+    assertThat(ApkAssetsCache.get("/concurrent.jar", true, 1001)).isEqualTo(first);
+  }
+
+  @Test
+  public void get_appResourcesAreSharedAcrossApiLevels() {
+    long ptr = register(100);
+    ApkAssetsCache.putIfAbsent("/app.apk", false, 1002, ptr);
+
+    assertThat(ApkAssetsCache.get("/app.apk", false, 1003)).isEqualTo(ptr);
+  }
+
+  @Test
+  public void unusedApiLevel_isEvictedWhenOverBudget() throws Exception {
+    ApkAssetsCache.setMaxUnusedBytes(50);
+    WeakReference<Object> owner = retainNewOwner(1004);
+    long ptr = register(100);
+    ApkAssetsCache.putIfAbsent("/framework.jar", true, 1004, ptr);
+
+    awaitCollection(owner);
+    awaitEviction("/framework.jar", 1004);
+
+    assertThat(Registries.NATIVE_APK_ASSETS_REGISTRY.peekNativeObject(ptr)).isNull();
+  }
+
+  @Test
+  public void unusedApiLevel_isKeptWithinBudget() throws Exception {
+    ApkAssetsCache.setMaxUnusedBytes(150);
+    WeakReference<Object> owner = retainNewOwner(1005);
+    long ptr = register(100);
+    ApkAssetsCache.putIfAbsent("/framework.jar", true, 1005, ptr);
+
+    awaitCollection(owner);
+
+    assertThat(ApkAssetsCache.get("/framework.jar", true, 1005)).isEqualTo(ptr);
+  }
+
+  @Test
+  public void liveApiLevel_isNotEvicted() {
+    Object owner = new Object();
+    ApkAssetsCache.retain(1006, owner);
+    long ptr = register(100);
+    ApkAssetsCache.putIfAbsent("/framework.jar", true, 1006, ptr);
+
+    ApkAssetsCache.setMaxUnusedBytes(0);
+
+    assertThat(ApkAssetsCache.get("/framework.jar", true, 1006)).isEqualTo(ptr);
+    assertThat(owner).isNotNull();
+  }
+
+  private static long register(long size) {
+    CppApkAssets apkAssets = new CppApkAssets();
+    apkAssets.resources_asset_ = mock(Asset.class);
+    when(apkAssets.resources_asset_.getLength()).thenReturn(size);
+    return Registries.NATIVE_APK_ASSETS_REGISTRY.register(apkAssets);
+  }
+
+  private static WeakReference<Object> retainNewOwner(int apiLevel) {
+    Object owner = new Object();
+    ApkAssetsCache.retain(apiLevel, owner);
+    return new WeakReference<>(owner);
+  }
+
+  private static void awaitCollection(WeakReference<?> reference) throws InterruptedException {
+    for (int i = 0; i < 100 && reference.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertThat(reference.get()).isNull();
+  }
+
+  private static void awaitEviction(String path, int apiLevel) throws InterruptedException {
+    // The cache learns about collected owners once their references have been enqueued.
+    for (int i = 0; i < 100 && ApkAssetsCache.get(path, true, apiLevel) != -1; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(ApkAssetsCache.get(path, true, apiLevel)).isEqualTo(-1);
+  }
+}
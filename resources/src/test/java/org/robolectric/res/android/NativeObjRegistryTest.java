@@ -0,0 +1,142 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class NativeObjRegistryTest {
+  private final NativeObjRegistry<Object> registry = new NativeObjRegistry<>("test");
+
+  @Test
+  public void register_assignsSequentialIds() {
+    Object first = new Object();
+    Object second = new Object();
+
+    assertThat(registry.register(first)).isEqualTo(1);
+    assertThat(registry.register(second)).isEqualTo(2);
+    assertThat(registry.getNativeObject(1)).isSameInstanceAs(first);
+    assertThat(registry.getNativeObject(2)).isSameInstanceAs(second);
+    assertThat(registry.getRegisteredCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void register_throwsIfAlreadyRegistered() {
+    Object o = new Object();
+    registry.register(o);
+
+    assertThrows(IllegalStateException.class, () -> registry.register(o));
+  }
+
+  @Test
+  public void unregister_removesObject() {
+    Object o = new Object();
+    long id = registry.register(o);
+
+    assertThat(registry.unregister(id)).isSameInstanceAs(o);
+    assertThat(registry.peekNativeObject(id)).isNull();
+    assertThat(registry.getRegisteredCount()).isEqualTo(0);
+    assertThrows(NullPointerException.class, () -> registry.getNativeObject(id));
+    assertThrows(IllegalStateException.class, () -> registry.unregister(id));
+  }
+
+  @Test
+  public void unregister_idsAreNotReused() {
+    long id = registry.register(new Object());
+    registry.unregister(id);
+
+    assertThat(registry.register(new Object())).isGreaterThan(id);
+  }
+
+  @Test
+  public void peekNativeObject_unknownIds() {
+    registry.register(new Object());
+
+    assertThat(registry.peekNativeObject(0)).isNull();
+    assertThat(registry.peekNativeObject(-1)).isNull();
+    assertThat(registry.peekNativeObject(2)).isNull();
+    assertThat(registry.peekNativeObject(Long.MAX_VALUE)).isNull();
+  }
+
+  @Test
+  public void update_replacesObject() {
+    long id = registry.register(new Object());
+    Object replacement = new Object();
+
+    registry.update(id, replacement);
+
+    assertThat(registry.getNativeObject(id)).isSameInstanceAs(replacement);
+    assertThrows(IllegalStateException.class, () -> registry.register(replacement));
+    assertThrows(IllegalStateException.class, () -> registry.update(id + 1, new Object()));
+  }
+
+  @Test
+  public void manyObjects_acrossPages() {
+    List<Object> objects = new ArrayList<>();
+    long[] ids = new long[5000];
+    for (int i = 0; i < 5000; i++) {
+      Object o = new Object();
+      objects.add(o);
+      ids[i] = registry.register(o);
+    }
+    // Empty the first pages entirely, and every other object elsewhere.
+    for (int i = 0; i < 5000; i++) {
+      if (i < 2500 || i % 2 == 0) {
+        registry.unregister(ids[i]);
+      }
+    }
+
+    for (int i = 0; i < 5000; i++) {
+      Object expected = i < 2500 || i % 2 == 0 ? null : objects.get(i);
+      assertThat(registry.peekNativeObject(ids[i])).isSameInstanceAs(expected);
+    }
+    assertThat(registry.getRegisteredCount()).isEqualTo(1250);
+  }
+
+  @Test
+  public void clear_resetsIds() {
+    registry.register(new Object());
+    registry.clear();
+
+    assertThat(registry.getRegisteredCount()).isEqualTo(0);
+    assertThat(registry.peekNativeObject(1)).isNull();
+    assertThat(registry.register(new Object())).isEqualTo(1);
+  }
+
+  @Test
+  public void concurrentRegistrations_getUniqueIds() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 10_000; i++) {
+                    Object o = new Object();
+                    long id = registry.register(o);
+                    assertThat(registry.getNativeObject(id)).isSameInstanceAs(o);
+                    if (i % 2 == 0) {
+                      registry.unregister(id);
+                    }
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(registry.getRegisteredCount()).isEqualTo(20_000);
+  }
+}
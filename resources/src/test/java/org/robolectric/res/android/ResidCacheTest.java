@@ -0,0 +1,63 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ResidCacheTest {
+
+  @Test
+  public void get_returnsPutValues() {
+    ResidCache<String> cache = new ResidCache<>();
+    cache.put(0x7f010001, "first");
+    cache.put(0x7f010002, "second");
+    cache.put(0x7f010001, "replaced");
+
+    assertThat(cache.get(0x7f010001)).isEqualTo("replaced");
+    assertThat(cache.get(0x7f010002)).isEqualTo("second");
+    assertThat(cache.get(0x7f010003)).isNull();
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_countsHitsAndMisses() {
+    ResidCache<String> cache = new ResidCache<>();
+    cache.get(0x01010000);
+    cache.put(0x01010000, "value");
+    cache.get(0x01010000);
+    cache.get(0x01010000);
+
+    assertThat(cache.getHitCount()).isEqualTo(2);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void put_growsBeyondInitialCapacity() {
+    ResidCache<Integer> cache = new ResidCache<>();
+    for (int i = 0; i < 10_000; i++) {
+      cache.put(0x7f010000 + i, i);
+    }
+
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(cache.get(0x7f010000 + i)).isEqualTo(i);
+    }
+    assertThat(cache.size()).isEqualTo(10_000);
+  }
+
+  @Test
+  public void invalidate_dropsAllValues() {
+    ResidCache<String> cache = new ResidCache<>();
+    cache.put(0x7f010001, "stale");
+    cache.put(0x7f020001, "stale");
+
+    cache.invalidate();
+    cache.put(0x7f020001, "fresh");
+
+    assertThat(cache.get(0x7f010001)).isNull();
+    assertThat(cache.get(0x7f020001)).isEqualTo("fresh");
+    assertThat(cache.size()).isEqualTo(1);
+  }
+}
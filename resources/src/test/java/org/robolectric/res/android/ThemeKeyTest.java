@@ -0,0 +1,72 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public final class ThemeKeyTest {
+  private final CppApkAssets framework = new CppApkAssets();
+  private final CppApkAssets app = new CppApkAssets();
+
+  @Test
+  public void equals_sameStylesAgainstEqualResolutions() {
+    ThemeKey.Resolution resolution =
+        new ThemeKey.Resolution(ImmutableList.of(framework, app), config(160));
+    ThemeKey.Resolution sameResolution =
+        new ThemeKey.Resolution(ImmutableList.of(framework, app), config(160));
+
+    ThemeKey key = ThemeKey.of(resolution, 0x01030005, false).then(0x7f0a0001, true);
+    ThemeKey sameKey = ThemeKey.of(sameResolution, 0x01030005, false).then(0x7f0a0001, true);
+
+    assertThat(sameResolution).isEqualTo(resolution);
+    assertThat(sameKey).isEqualTo(key);
+    assertThat(sameKey.hashCode()).isEqualTo(key.hashCode());
+  }
+
+  @Test
+  public void equals_differentStyles() {
+    ThemeKey.Resolution resolution =
+        new ThemeKey.Resolution(ImmutableList.of(framework, app), config(160));
+    ThemeKey key = ThemeKey.of(resolution, 0x01030005, false);
+
+    assertThat(key.then(0x7f0a0001, false)).isNotEqualTo(key);
+    assertThat(key.then(0x7f0a0001, false)).isNotEqualTo(key.then(0x7f0a0001, true));
+    assertThat(ThemeKey.of(resolution, 0x7f0a0001, false).then(0x01030005, false))
+        .isNotEqualTo(key.then(0x7f0a0001, false));
+  }
+
+  @Test
+  public void equals_differentResolutions() {
+    ThemeKey.Resolution resolution =
+        new ThemeKey.Resolution(ImmutableList.of(framework, app), config(160));
+
+    assertThat(new ThemeKey.Resolution(ImmutableList.of(framework, app), config(320)))
+        .isNotEqualTo(resolution);
+    assertThat(new ThemeKey.Resolution(ImmutableList.of(framework), config(160)))
+        .isNotEqualTo(resolution);
+    assertThat(
+            new ThemeKey.Resolution(ImmutableList.of(framework, new CppApkAssets()), config(160)))
+        .isNotEqualTo(resolution);
+  }
+
+  @Test
+  public void resolution_isNotAffectedByLaterConfigurationChanges() {
+    ResTable_config config = config(160);
+    ThemeKey.Resolution resolution = new ThemeKey.Resolution(ImmutableList.of(framework), config);
+
+    config.density = 320;
+
+    assertThat(new ThemeKey.Resolution(ImmutableList.of(framework), config(160)))
+        .isEqualTo(resolution);
+  }
+
+  private static ResTable_config config(int density) {
+    ResTable_config config = new ResTable_config();
+    config.density = density;
+    return config;
+  }
+}
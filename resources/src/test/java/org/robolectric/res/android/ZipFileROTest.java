@@ -1,6 +1,7 @@
 package org.robolectric.res.android;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.newOutputStream;
 
 import com.google.common.io.ByteStreams;
@@ -9,6 +10,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import org.junit.Test;
@@ -58,6 +60,53 @@ public final class ZipFileROTest {
     assertThat(fileMap.getDataOffset()).isEqualTo(0x64);
   }
 
+  @Test
+  public void createEntryFileMap_mmapEnabled_mapsStoredEntries() throws Exception {
+    File blob = File.createTempFile("prefix", "zip");
+    try (InputStream input = getClass().getResourceAsStream("/zip_with_gap.zip");
+        FileOutputStream output = new FileOutputStream(blob)) {
+      ByteStreams.copy(input, output);
+    }
+
+    System.setProperty("robolectric.mmapResources", "true");
+    try {
+      ZipFileRO zipFile = ZipFileRO.open(blob.toString());
+      FileMap fileMap = zipFile.createEntryFileMap(zipFile.findEntryByName("f1"));
+
+      assertThat(fileMap.getDataOffset()).isEqualTo(0x64);
+      assertThat(fileMap.isMapped()).isTrue();
+      ByteBuffer data = fileMap.getDataBuffer();
+      assertThat(data.isReadOnly()).isTrue();
+      byte[] bytes = new byte[data.remaining()];
+      data.get(bytes);
+      assertThat(new String(bytes, UTF_8)).isEqualTo("bar\n");
+      assertThat(fileMap.getDataPtr()).isEqualTo(bytes);
+    } finally {
+      System.clearProperty("robolectric.mmapResources");
+    }
+  }
+
+  @Test
+  public void createEntryFileMap_mmapEnabled_doesNotMapCompressedEntries() throws Exception {
+    File blob = File.createTempFile("prefix", "zip");
+    try (ZipOutputStream zip = new ZipOutputStream(newOutputStream(blob.toPath()))) {
+      zip.putNextEntry(new ZipEntry("compressed"));
+      zip.write("compressed contents".getBytes(UTF_8));
+      zip.closeEntry();
+    }
+
+    System.setProperty("robolectric.mmapResources", "true");
+    try {
+      ZipFileRO zipFile = ZipFileRO.open(blob.toString());
+      FileMap fileMap = zipFile.createEntryFileMap(zipFile.findEntryByName("compressed"));
+
+      assertThat(fileMap.isMapped()).isFalse();
+      assertThat(new String(fileMap.getDataPtr(), UTF_8)).isEqualTo("compressed contents");
+    } finally {
+      System.clearProperty("robolectric.mmapResources");
+    }
+  }
+
   @Test
   public void open_emptyZip() throws Exception {
     // ensure ZipFileRO cam handle an empty zip file with no central directory
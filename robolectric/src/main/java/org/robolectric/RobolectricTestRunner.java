@@ -21,6 +21,8 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.annotation.Priority;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
 import org.junit.runner.notification.RunListener;
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.model.FrameworkMethod;
@@ -119,6 +121,9 @@ public class RobolectricTestRunner extends SandboxTestRunner {
       Boolean.parseBoolean(
           System.getProperty("robolectric.alwaysIncludeVariantMarkersInTestName", "false"));
 
+  // The filters applied to this runner, so that only the sandboxes of tests that run are prewarmed.
+  private Filter appliedFilter = Filter.ALL;
+
   /**
    * Creates a runner to run {@code testClass}. Use the {@link Config} annotation to configure.
    *
@@ -260,16 +265,22 @@ public class RobolectricTestRunner extends SandboxTestRunner {
   @Override
   @Nonnull
   protected AndroidSandbox getSandbox(FrameworkMethod method) {
-    return getAndroidSandbox(method, /* verifySdk= */ true);
+    return getAndroidSandbox(method, /* verifySdk= */ true, /* shard= */ 0);
+  }
+
+  @Override
+  @Nonnull
+  protected AndroidSandbox getShardSandbox(FrameworkMethod method, int shard) {
+    return getAndroidSandbox(method, /* verifySdk= */ true, shard);
   }
 
   @Override
   @Nonnull
   protected AndroidSandbox getSandboxForSandboxMapping(FrameworkMethod method) {
-    return getAndroidSandbox(method, /* verifySdk= */ false);
+    return getAndroidSandbox(method, /* verifySdk= */ false, /* shard= */ 0);
   }
 
-  private AndroidSandbox getAndroidSandbox(FrameworkMethod method, boolean verifySdk) {
+  private AndroidSandbox getAndroidSandbox(FrameworkMethod method, boolean verifySdk, int shard) {
     RobolectricFrameworkMethod roboMethod = (RobolectricFrameworkMethod) method;
     Sdk sdk = roboMethod.getSdk();
 
@@ -283,7 +294,50 @@ public class RobolectricTestRunner extends SandboxTestRunner {
       sdk.verifySupportedSdk(method.getDeclaringClass().getName());
     }
     return sandboxManager.getAndroidSandbox(
-        classLoaderConfig, sdk, resourcesMode, looperMode, sqliteMode, graphicsMode);
+        classLoaderConfig, sdk, resourcesMode, looperMode, sqliteMode, graphicsMode, shard);
+  }
+
+  @Override
+  public void filter(Filter filter) throws NoTestsRemainException {
+    super.filter(filter);
+    appliedFilter = appliedFilter.intersect(filter);
+  }
+
+  @Override
+  protected Statement classBlock(RunNotifier notifier) {
+    if (sandboxManager.isPrewarmEnabled()) {
+      prewarmSandboxes();
+    }
+    return super.classBlock(notifier);
+  }
+
+  /**
+   * Starts building the sandboxes for every test in this class that passes the applied filters in
+   * the background, so that classes running on several SDKs or modes build their sandboxes
+   * concurrently. Sorting doesn't change which sandboxes are needed, so it's ignored here.
+   */
+  private void prewarmSandboxes() {
+    for (FrameworkMethod method : getChildren()) {
+      if (isIgnored(method) || !appliedFilter.shouldRun(describeChild(method))) {
+        continue;
+      }
+      RobolectricFrameworkMethod roboMethod = (RobolectricFrameworkMethod) method;
+      if (!roboMethod.getSdk().isSupported()) {
+        continue;
+      }
+      try {
+        sandboxManager.prewarmAndroidSandbox(
+            createClassLoaderConfig(method),
+            roboMethod.getSdk(),
+            roboMethod.configuration.get(ResourcesMode.Mode.class),
+            roboMethod.configuration.get(LooperMode.Mode.class),
+            roboMethod.configuration.get(SQLiteMode.Mode.class),
+            roboMethod.configuration.get(GraphicsMode.Mode.class));
+      } catch (RuntimeException e) {
+        // The test reports the failure again when it asks for its sandbox.
+        Logger.warn("Failed to prewarm the sandbox for %s: %s", method.getName(), e);
+      }
+    }
   }
 
   @Override
@@ -308,7 +362,11 @@ public class RobolectricTestRunner extends SandboxTestRunner {
 
     PerfStatsCollector perfStatsCollector = PerfStatsCollector.getInstance();
     Sdk sdk = roboMethod.getSdk();
-    perfStatsCollector.putMetadata(new Metadata(sdk.getApiLevel()));
+    perfStatsCollector.putMetadata(
+        new Metadata(
+            sdk.getApiLevel(),
+            getTestClass().getJavaClass().getName(),
+            roboMethod.getMethod().getName()));
 
     Logger.lifecycle(
         roboMethod.getDeclaringClass().getName()
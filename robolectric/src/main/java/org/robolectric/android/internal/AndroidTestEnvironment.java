@@ -13,11 +13,15 @@ import android.annotation.SuppressLint;
 import android.app.ActivityThread;
 import android.app.AppCompatCallbacks;
 import android.app.Application;
+import android.app.Application.ActivityLifecycleCallbacks;
 import android.app.Instrumentation;
 import android.app.LoadedApk;
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks;
+import android.content.ComponentCallbacksController;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.ContextWrapper;
 import android.content.IntentFilter;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageParser;
@@ -49,6 +53,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.inject.Named;
 import javax.net.ssl.HostnameVerifier;
@@ -109,6 +114,22 @@ import org.robolectric.util.reflector.Static;
 @SuppressLint("NewApi")
 public class AndroidTestEnvironment implements TestEnvironment {
 
+  /**
+   * When set to true, the application created for the first test in a sandbox is reused by later
+   * tests in the sandbox with the same application class, manifest, qualifiers and font scale,
+   * instead of creating a new one and calling {@link Application#onCreate()} for each test.
+   *
+   * <p>The framework state around the application is still set up from scratch for every test, and
+   * the application's component and activity lifecycle callbacks are restored to what they were
+   * after {@link Application#onCreate()}, as are the broadcast receivers, sticky broadcasts and
+   * permissions of the instrumentation. Any other state held by the application, and static state
+   * set up by {@link Application#onCreate()}, carries over between tests. Files and databases
+   * created by {@link Application#onCreate()} are kept for as long as the application is reused,
+   * even in a memory-backed temp directory. Reused applications don't get {@link
+   * Application#onTerminate()} calls.
+   */
+  public static final String REUSE_APPLICATION_PROPERTY = "robolectric.reuseApplication";
+
   private static final String CONSCRYPT_PROVIDER = "Conscrypt";
   private static final BouncyCastleProvider BOUNCY_CASTLE_PROVIDER = new BouncyCastleProvider();
   // Cache the Conscrypt provider to avoid creating it multiple times across tests. Note Conscrypt
@@ -126,6 +147,7 @@ public class AndroidTestEnvironment implements TestEnvironment {
   private final ShadowProvider[] shadowProviders;
   private final TestEnvironmentLifecyclePlugin[] testEnvironmentLifecyclePlugins;
   private final Locale initialLocale = Locale.getDefault();
+  private ApplicationSnapshot applicationSnapshot;
 
   public AndroidTestEnvironment(
       @Named("runtimeSdk") Sdk runtimeSdk,
@@ -162,7 +184,7 @@ public class AndroidTestEnvironment implements TestEnvironment {
       DefaultNativeRuntimeLoader.injectAndLoad();
     }
 
-    RuntimeEnvironment.setTempDirectory(new TempDirectory(tmpDirName));
+    RuntimeEnvironment.setTempDirectory(TempDirectory.forTestData(tmpDirName));
     if (ShadowLooper.looperMode() == LooperMode.Mode.LEGACY) {
       RuntimeEnvironment.setMasterScheduler(new Scheduler());
       RuntimeEnvironment.setMainThread(Thread.currentThread());
@@ -398,9 +420,18 @@ public class AndroidTestEnvironment implements TestEnvironment {
     ShadowPackageManager shadowPackageManager = Shadow.extract(contextImpl.getPackageManager());
     shadowPackageManager.addPackageInternal(parsedPackage);
 
+    ApplicationKey applicationKey = new ApplicationKey(applicationClass, appManifest, config);
+    boolean reuseApplication = Boolean.getBoolean(REUSE_APPLICATION_PROPERTY);
+    if (!reuseApplication
+        || (applicationSnapshot != null && !applicationSnapshot.key.equals(applicationKey))) {
+      discardApplicationSnapshot();
+    }
+
     // If we're SDK 28+ and have an AppComponentFactory, call through it if possible
     Application application;
-    if (loadedApk != null && apiLevel >= P && loadedApk.getAppFactory() != null) {
+    if (applicationSnapshot != null) {
+      application = applicationSnapshot.restore();
+    } else if (loadedApk != null && apiLevel >= P && loadedApk.getAppFactory() != null) {
       try {
         application =
             loadedApk
@@ -431,7 +462,12 @@ public class AndroidTestEnvironment implements TestEnvironment {
       // Preload fonts resources
       FontsContract.setApplicationContextForResources(application);
     }
-    registerBroadcastReceivers(application, appManifest, loadedApk);
+    if (applicationSnapshot == null) {
+      registerBroadcastReceivers(application, appManifest, loadedApk);
+    } else {
+      // The reused application's receivers, including the ones from the manifest, are restored.
+      applicationSnapshot.restoreInstrumentationState(androidInstrumentation, contextImpl);
+    }
 
     appResources.updateConfiguration(androidConfiguration, Bootstrap.getDisplayMetrics());
 
@@ -451,10 +487,18 @@ public class AndroidTestEnvironment implements TestEnvironment {
           Robolectric.setupContentProvider(FakeMediaProvider.class, MediaStore.AUTHORITY);
     }
 
-    PerfStatsCollector.getInstance()
-        .measure(
-            "application onCreate()",
-            () -> androidInstrumentation.callApplicationOnCreate(application));
+    if (applicationSnapshot == null) {
+      PerfStatsCollector.getInstance()
+          .measure(
+              "application onCreate()",
+              () -> androidInstrumentation.callApplicationOnCreate(application));
+      if (reuseApplication) {
+        applicationSnapshot =
+            new ApplicationSnapshot(applicationKey, application, androidInstrumentation);
+      }
+    } else {
+      PerfStatsCollector.getInstance().incrementCount("application reused");
+    }
 
     return application;
   }
@@ -599,7 +643,10 @@ public class AndroidTestEnvironment implements TestEnvironment {
   @Override
   public void tearDownApplication() {
     if (RuntimeEnvironment.application != null) {
-      ShadowInstrumentation.runOnMainSyncNoIdle(RuntimeEnvironment.getApplication()::onTerminate);
+      if (applicationSnapshot == null
+          || applicationSnapshot.application != RuntimeEnvironment.application) {
+        ShadowInstrumentation.runOnMainSyncNoIdle(RuntimeEnvironment.getApplication()::onTerminate);
+      }
       ShadowInstrumentation.getInstrumentation().finish(1, new Bundle());
     }
     ImmutableList<RuntimeException> errors = ShadowView.getAndClear();
@@ -674,6 +721,15 @@ public class AndroidTestEnvironment implements TestEnvironment {
       }
     }
 
+    // Free the memory used by the test's files now that its databases are closed, instead of
+    // keeping them until the JVM exits like directories on disk. A reused application may still
+    // use the files it created in onCreate(), so their directory lives as long as the snapshot.
+    TempDirectory tempDirectory = RuntimeEnvironment.getTempDirectory();
+    if (tempDirectory.isInMemory()
+        && (applicationSnapshot == null || applicationSnapshot.tempDirectory != tempDirectory)) {
+      tempDirectory.destroy();
+    }
+
     if (!exceptions.isEmpty()) {
       Throwable first = exceptions.remove(0);
       for (Throwable t : exceptions) {
@@ -683,6 +739,16 @@ public class AndroidTestEnvironment implements TestEnvironment {
     }
   }
 
+  /** Stops reusing the application, freeing its files if they are kept in memory. */
+  private void discardApplicationSnapshot() {
+    if (applicationSnapshot != null
+        && applicationSnapshot.tempDirectory.isInMemory()
+        && applicationSnapshot.tempDirectory != RuntimeEnvironment.getTempDirectory()) {
+      applicationSnapshot.tempDirectory.destroy();
+    }
+    applicationSnapshot = null;
+  }
+
   // TODO(christianw): reconcile with ShadowPackageManager.setUpPackageStorage
   private void setUpPackageStorage(
       ApplicationInfo applicationInfo, PackageParser.Package parsedPackage) {
@@ -762,6 +828,116 @@ public class AndroidTestEnvironment implements TestEnvironment {
     }
   }
 
+  /** Identifies the applications that may be reused for a test. */
+  private static final class ApplicationKey {
+    private final Class<? extends Application> applicationClass;
+    private final AndroidManifest appManifest;
+    private final String qualifiers;
+    private final float fontScale;
+
+    ApplicationKey(
+        Class<? extends Application> applicationClass, AndroidManifest appManifest, Config config) {
+      this.applicationClass = applicationClass;
+      this.appManifest = appManifest;
+      this.qualifiers = config.qualifiers();
+      this.fontScale = config.fontScale();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ApplicationKey)) {
+        return false;
+      }
+      ApplicationKey that = (ApplicationKey) o;
+      return applicationClass.equals(that.applicationClass)
+          && Objects.equals(appManifest, that.appManifest)
+          && qualifiers.equals(that.qualifiers)
+          && fontScale == that.fontScale;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(applicationClass, appManifest, qualifiers, fontScale);
+    }
+  }
+
+  /**
+   * An application after {@link Application#onCreate()}, with the framework state it keeps that
+   * later tests may change, and the state it set up in its test's instrumentation.
+   */
+  private static final class ApplicationSnapshot {
+    private final ApplicationKey key;
+    private final Application application;
+    private final List<ComponentCallbacks> componentCallbacks;
+    private final List<ActivityLifecycleCallbacks> activityLifecycleCallbacks;
+    private final Context baseContext;
+    private final ShadowInstrumentation.ApplicationState instrumentationState;
+    // The directory of the test that created the application, holding its files and databases.
+    private final TempDirectory tempDirectory;
+
+    ApplicationSnapshot(
+        ApplicationKey key, Application application, Instrumentation instrumentation) {
+      this.key = key;
+      this.application = application;
+      this.baseContext = application.getBaseContext();
+      this.tempDirectory = RuntimeEnvironment.getTempDirectory();
+      ShadowInstrumentation shadowInstrumentation = Shadow.extract(instrumentation);
+      this.instrumentationState = shadowInstrumentation.saveApplicationState();
+      ApplicationReflector applicationReflector =
+          reflector(ApplicationReflector.class, application);
+      if (RuntimeEnvironment.getApiLevel() >= S) {
+        List<ComponentCallbacks> registeredCallbacks =
+            reflector(
+                    ComponentCallbacksControllerReflector.class,
+                    applicationReflector.getCallbacksController())
+                .getComponentCallbacks();
+        this.componentCallbacks =
+            registeredCallbacks == null ? new ArrayList<>() : new ArrayList<>(registeredCallbacks);
+      } else {
+        this.componentCallbacks = new ArrayList<>(applicationReflector.getComponentCallbacks());
+      }
+      this.activityLifecycleCallbacks =
+          new ArrayList<>(applicationReflector.getActivityLifecycleCallbacks());
+    }
+
+    /** Restores the application to its snapshot state, detached from its previous context. */
+    Application restore() {
+      ApplicationReflector applicationReflector =
+          reflector(ApplicationReflector.class, application);
+      if (RuntimeEnvironment.getApiLevel() >= S) {
+        ComponentCallbacksController callbacksController =
+            applicationReflector.getCallbacksController();
+        callbacksController.clearCallbacks();
+        for (ComponentCallbacks callbacks : componentCallbacks) {
+          callbacksController.registerCallbacks(callbacks);
+        }
+      } else {
+        List<ComponentCallbacks> currentComponentCallbacks =
+            applicationReflector.getComponentCallbacks();
+        currentComponentCallbacks.clear();
+        currentComponentCallbacks.addAll(componentCallbacks);
+      }
+      List<ActivityLifecycleCallbacks> currentActivityLifecycleCallbacks =
+          applicationReflector.getActivityLifecycleCallbacks();
+      currentActivityLifecycleCallbacks.clear();
+      currentActivityLifecycleCallbacks.addAll(activityLifecycleCallbacks);
+
+      reflector(ContextWrapperReflector.class, application).setBase(null);
+      ShadowApplication shadowApplication = Shadow.extract(application);
+      shadowApplication.clearRecordedState();
+      return application;
+    }
+
+    /**
+     * Restores the receivers, sticky broadcasts and permissions that the application set up to the
+     * new test's instrumentation, once the application is attached to {@code contextImpl}.
+     */
+    void restoreInstrumentationState(Instrumentation instrumentation, Context contextImpl) {
+      ShadowInstrumentation shadowInstrumentation = Shadow.extract(instrumentation);
+      shadowInstrumentation.restoreApplicationState(instrumentationState, baseContext, contextImpl);
+    }
+  }
+
   @ForType(RuntimeEnvironment.class)
   interface RuntimeEnvironmentReflector {
     @Static
@@ -773,6 +949,29 @@ public class AndroidTestEnvironment implements TestEnvironment {
   interface ApplicationReflector {
     @Constructor
     Application newInstance();
+
+    /** Before S. */
+    @Accessor("mComponentCallbacks")
+    ArrayList<ComponentCallbacks> getComponentCallbacks();
+
+    /** S and above. */
+    @Accessor("mCallbacksController")
+    ComponentCallbacksController getCallbacksController();
+
+    @Accessor("mActivityLifecycleCallbacks")
+    ArrayList<ActivityLifecycleCallbacks> getActivityLifecycleCallbacks();
+  }
+
+  @ForType(ComponentCallbacksController.class)
+  interface ComponentCallbacksControllerReflector {
+    @Accessor("mComponentCallbacks")
+    List<ComponentCallbacks> getComponentCallbacks();
+  }
+
+  @ForType(ContextWrapper.class)
+  interface ContextWrapperReflector {
+    @Accessor("mBase")
+    void setBase(Context base);
   }
 
   @ForType(AppCompatCallbacks.class)
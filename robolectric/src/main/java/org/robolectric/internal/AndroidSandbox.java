@@ -20,6 +20,7 @@ import org.robolectric.internal.bytecode.SandboxClassLoader;
 import org.robolectric.internal.bytecode.ShadowProviders;
 import org.robolectric.internal.bytecode.UrlResourceProvider;
 import org.robolectric.pluginapi.Sdk;
+import org.robolectric.res.android.ApkAssetsCache;
 import org.robolectric.shadows.SQLiteShadowPicker;
 import org.robolectric.util.inject.Injector;
 
@@ -55,6 +56,8 @@ public class AndroidSandbox extends Sandbox {
 
     sdk = runtimeSdk;
     activeSQLiteMode = sqLiteMode;
+    // Keeps the cached system resources for this SDK level alive while this sandbox is.
+    ApkAssetsCache.retain(runtimeSdk.getApiLevel(), this);
     this.testEnvironment = runOnMainThread(() -> sandboxScope.getInstance(TestEnvironment.class));
   }
 
@@ -1,9 +1,24 @@
 package org.robolectric.internal;
 
 import android.annotation.SuppressLint;
-import java.util.LinkedHashMap;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Named;
 import org.robolectric.annotation.GraphicsMode;
@@ -13,62 +28,242 @@ import org.robolectric.annotation.SQLiteMode;
 import org.robolectric.internal.bytecode.InstrumentationConfiguration;
 import org.robolectric.pluginapi.Sdk;
 import org.robolectric.plugins.SdkCollection;
+import org.robolectric.util.Logger;
 import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.Util;
 import org.robolectric.util.inject.AutoFactory;
 
-/** Manager of sandboxes. */
+/**
+ * Manager of sandboxes.
+ *
+ * <p>Sandboxes are pooled by {@link SandboxKey}. Sandboxes for different keys are built
+ * concurrently, and callers asking for a key that is still being built wait for that build rather
+ * than starting another one.
+ *
+ * <p>By default the pool holds up to {@link #CACHE_SIZE_FACTOR} sandboxes per supported SDK. The
+ * following system properties change this:
+ *
+ * <ul>
+ *   <li>{@code robolectric.sandboxPool.maxSize}: the maximum number of pooled sandboxes.
+ *   <li>{@code robolectric.sandboxPool.maxHeapBytes}: evict least recently used sandboxes while the
+ *       heap retained after the last garbage collection exceeds this many bytes.
+ *   <li>{@code robolectric.sandboxPool.prewarmThreads}: the number of background threads used by
+ *       {@link #prewarmAndroidSandbox} (default 0, which disables pre-warming).
+ * </ul>
+ */
 @SuppressLint("NewApi")
 public class SandboxManager {
 
   /** The factor for cache size. See {@link #sandboxesByKey} for details. */
   private static final int CACHE_SIZE_FACTOR = 3;
 
+  private static final String MAX_SIZE_PROPERTY = "robolectric.sandboxPool.maxSize";
+  private static final String MAX_HEAP_BYTES_PROPERTY = "robolectric.sandboxPool.maxHeapBytes";
+  private static final String PREWARM_THREADS_PROPERTY = "robolectric.sandboxPool.prewarmThreads";
+
   private final SandboxBuilder sandboxBuilder;
   private final SdkCollection sdkCollection;
+  private final int maxSize;
+  private final long maxHeapBytes;
+  private final HeapMonitor heapMonitor;
+  private final ExecutorService prewarmExecutor;
 
-  // Simple LRU Cache. AndroidSandboxes are unique across InstrumentationConfiguration and Sdk
-  private final LinkedHashMap<SandboxKey, AndroidSandbox> sandboxesByKey;
+  // AndroidSandboxes are unique across InstrumentationConfiguration and Sdk. We need to keep more
+  // sandboxes than the number of supported APIs as different tests may have different
+  // configurations.
+  private final Map<SandboxKey, PooledSandbox> sandboxesByKey = new ConcurrentHashMap<>();
+  private final AtomicLong useCounter = new AtomicLong();
 
   @Inject
   public SandboxManager(SandboxBuilder sandboxBuilder, SdkCollection sdkCollection) {
+    this(
+        sandboxBuilder,
+        sdkCollection,
+        Integer.getInteger(
+            MAX_SIZE_PROPERTY, sdkCollection.getSupportedSdks().size() * CACHE_SIZE_FACTOR),
+        Long.getLong(MAX_HEAP_BYTES_PROPERTY, 0),
+        Integer.getInteger(PREWARM_THREADS_PROPERTY, 0),
+        new HeapMonitor());
+  }
+
+  @VisibleForTesting
+  SandboxManager(
+      SandboxBuilder sandboxBuilder,
+      SdkCollection sdkCollection,
+      int maxSize,
+      long maxHeapBytes,
+      int prewarmThreads,
+      HeapMonitor heapMonitor) {
     this.sandboxBuilder = sandboxBuilder;
     this.sdkCollection = sdkCollection;
+    this.maxSize = Math.max(1, maxSize);
+    this.maxHeapBytes = maxHeapBytes;
+    this.heapMonitor = heapMonitor;
+    this.prewarmExecutor =
+        prewarmThreads <= 0
+            ? null
+            : Executors.newFixedThreadPool(
+                prewarmThreads,
+                new ThreadFactoryBuilder()
+                    .setNameFormat("Robolectric sandbox prewarm %d")
+                    .setDaemon(true)
+                    .build());
+  }
 
-    // We need to set the cache size of class loaders more than the number of supported APIs as
-    // different tests may have different configurations.
-    final int cacheSize = sdkCollection.getSupportedSdks().size() * CACHE_SIZE_FACTOR;
-    sandboxesByKey =
-        new LinkedHashMap<SandboxKey, AndroidSandbox>() {
-          @Override
-          protected boolean removeEldestEntry(Map.Entry<SandboxKey, AndroidSandbox> eldest) {
-            boolean toRemove = size() > cacheSize;
-            if (toRemove) {
-              PerfStatsCollector.getInstance().incrementCount("evictSandbox");
-              eldest.getValue().shutdown();
-            }
-            return toRemove;
-          }
-        };
+  public AndroidSandbox getAndroidSandbox(
+      InstrumentationConfiguration instrumentationConfig,
+      Sdk sdk,
+      ResourcesMode.Mode resourcesMode,
+      LooperMode.Mode looperMode,
+      SQLiteMode.Mode sqliteMode,
+      GraphicsMode.Mode graphicsMode) {
+    return getAndroidSandbox(
+        instrumentationConfig, sdk, resourcesMode, looperMode, sqliteMode, graphicsMode, 0);
   }
 
-  public synchronized AndroidSandbox getAndroidSandbox(
+  /**
+   * Returns a sandbox for the given parameters that is distinct for each {@code shard}, so that
+   * tests with the same configuration can run concurrently. Shard 0 is the sandbox returned by
+   * {@link #getAndroidSandbox(InstrumentationConfiguration, Sdk, ResourcesMode.Mode,
+   * LooperMode.Mode, SQLiteMode.Mode, GraphicsMode.Mode)}. Each shard takes up a slot in the pool.
+   */
+  public AndroidSandbox getAndroidSandbox(
+      InstrumentationConfiguration instrumentationConfig,
+      Sdk sdk,
+      ResourcesMode.Mode resourcesMode,
+      LooperMode.Mode looperMode,
+      SQLiteMode.Mode sqliteMode,
+      GraphicsMode.Mode graphicsMode,
+      int shard) {
+    SandboxKey key =
+        new SandboxKey(instrumentationConfig, sdk, resourcesMode, looperMode, graphicsMode, shard);
+
+    PooledSandbox pooledSandbox = new PooledSandbox();
+    PooledSandbox existing = sandboxesByKey.putIfAbsent(key, pooledSandbox);
+    if (existing == null) {
+      build(pooledSandbox, key, instrumentationConfig, sdk, resourcesMode, sqliteMode);
+    } else {
+      pooledSandbox = existing;
+      PerfStatsCollector.getInstance().incrementCount("reuseSandbox");
+    }
+    pooledSandbox.lastUsed = useCounter.incrementAndGet();
+
+    AndroidSandbox androidSandbox = pooledSandbox.await();
+    evictIfNeeded(key);
+    return androidSandbox;
+  }
+
+  /** Returns whether {@link #prewarmAndroidSandbox} builds sandboxes in the background. */
+  public boolean isPrewarmEnabled() {
+    return prewarmExecutor != null;
+  }
+
+  /**
+   * Starts building the sandbox for the given parameters in the background, if it isn't already
+   * pooled, so that a later {@link #getAndroidSandbox} call doesn't have to wait for it. Does
+   * nothing unless pre-warming is enabled.
+   */
+  public void prewarmAndroidSandbox(
       InstrumentationConfiguration instrumentationConfig,
       Sdk sdk,
       ResourcesMode.Mode resourcesMode,
       LooperMode.Mode looperMode,
       SQLiteMode.Mode sqliteMode,
       GraphicsMode.Mode graphicsMode) {
+    if (prewarmExecutor == null) {
+      return;
+    }
     SandboxKey key =
         new SandboxKey(instrumentationConfig, sdk, resourcesMode, looperMode, graphicsMode);
+    PooledSandbox pooledSandbox = new PooledSandbox();
+    if (sandboxesByKey.putIfAbsent(key, pooledSandbox) != null) {
+      return;
+    }
+    pooledSandbox.lastUsed = useCounter.incrementAndGet();
+    PerfStatsCollector.getInstance().incrementCount("prewarmSandbox");
+
+    // SandboxClassLoader uses the context class loader as its parent.
+    ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+    prewarmExecutor.execute(
+        () -> {
+          Thread thread = Thread.currentThread();
+          ClassLoader priorContextClassLoader = thread.getContextClassLoader();
+          thread.setContextClassLoader(contextClassLoader);
+          try {
+            build(pooledSandbox, key, instrumentationConfig, sdk, resourcesMode, sqliteMode);
+          } catch (RuntimeException | Error e) {
+            // Reported to whoever asks for this sandbox.
+            Logger.debug("Failed to prewarm %s: %s", key, e);
+          } finally {
+            thread.setContextClassLoader(priorContextClassLoader);
+          }
+        });
+  }
 
-    AndroidSandbox androidSandbox = sandboxesByKey.get(key);
-    if (androidSandbox == null) {
+  private void build(
+      PooledSandbox pooledSandbox,
+      SandboxKey key,
+      InstrumentationConfiguration instrumentationConfig,
+      Sdk sdk,
+      ResourcesMode.Mode resourcesMode,
+      SQLiteMode.Mode sqliteMode) {
+    try {
       Sdk compileSdk = sdkCollection.getMaxSupportedSdk();
-      androidSandbox =
-          sandboxBuilder.build(instrumentationConfig, sdk, compileSdk, resourcesMode, sqliteMode);
-      sandboxesByKey.put(key, androidSandbox);
+      pooledSandbox.future.complete(
+          sandboxBuilder.build(instrumentationConfig, sdk, compileSdk, resourcesMode, sqliteMode));
+    } catch (RuntimeException | Error e) {
+      // Don't pool failures; the next request for this key tries again.
+      sandboxesByKey.remove(key, pooledSandbox);
+      pooledSandbox.future.completeExceptionally(e);
+      throw e;
     }
-    return androidSandbox;
+  }
+
+  /**
+   * Evicts least recently used sandboxes, other than the shards of {@code keyInUse}, while the pool
+   * is over its size limit or the retained heap is over budget.
+   */
+  private synchronized void evictIfNeeded(SandboxKey keyInUse) {
+    while (sandboxesByKey.size() > maxSize) {
+      if (!evictEldest(keyInUse)) {
+        return;
+      }
+    }
+
+    // Retained heap only drops after the next collection, so evict at most one sandbox per
+    // collection to avoid emptying the pool on a single measurement.
+    if (maxHeapBytes > 0 && heapMonitor.hasCollectedSinceLastEviction()) {
+      long retainedHeap = heapMonitor.retainedHeapBytes();
+      if (retainedHeap > maxHeapBytes && evictEldest(keyInUse)) {
+        PerfStatsCollector.getInstance().incrementCount("evictSandboxForHeap");
+        heapMonitor.markEviction();
+      }
+    }
+  }
+
+  private boolean evictEldest(SandboxKey keyInUse) {
+    List<Map.Entry<SandboxKey, PooledSandbox>> candidates = new ArrayList<>();
+    for (Map.Entry<SandboxKey, PooledSandbox> entry : sandboxesByKey.entrySet()) {
+      // Sandboxes still being built are about to be used, so they aren't evicted. Neither are
+      // other shards of the key in use, which are likely running tests concurrently.
+      if (!entry.getKey().isShardOf(keyInUse) && entry.getValue().future.isDone()) {
+        candidates.add(entry);
+      }
+    }
+    if (candidates.isEmpty()) {
+      return false;
+    }
+    Map.Entry<SandboxKey, PooledSandbox> eldest =
+        candidates.stream().min(Comparator.comparingLong(e -> e.getValue().lastUsed)).get();
+    if (!sandboxesByKey.remove(eldest.getKey(), eldest.getValue())) {
+      return true;
+    }
+    PerfStatsCollector.getInstance().incrementCount("evictSandbox");
+    AndroidSandbox sandbox = eldest.getValue().future.getNow(null);
+    if (sandbox != null) {
+      sandbox.shutdown();
+    }
+    return true;
   }
 
   /** Factory interface for AndroidSandbox. */
@@ -82,12 +277,64 @@ public class SandboxManager {
         SQLiteMode.Mode sqLiteMode);
   }
 
+  /** A pooled sandbox, which may still be under construction. */
+  private static class PooledSandbox {
+    final CompletableFuture<AndroidSandbox> future = new CompletableFuture<>();
+    volatile long lastUsed;
+
+    AndroidSandbox await() {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for a sandbox", e);
+      } catch (ExecutionException e) {
+        throw Util.sneakyThrow(e.getCause());
+      }
+    }
+  }
+
+  /** Measures the heap retained after garbage collection. */
+  @VisibleForTesting
+  static class HeapMonitor {
+    private long collectionCountAtLastEviction = -1;
+
+    /** Returns the heap in use after the most recent collection of each heap pool. */
+    long retainedHeapBytes() {
+      long retained = 0;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        MemoryUsage usage = pool.getCollectionUsage();
+        if (pool.getType() == MemoryType.HEAP && usage != null) {
+          retained += usage.getUsed();
+        }
+      }
+      return retained;
+    }
+
+    boolean hasCollectedSinceLastEviction() {
+      return collectionCount() != collectionCountAtLastEviction;
+    }
+
+    void markEviction() {
+      collectionCountAtLastEviction = collectionCount();
+    }
+
+    private static long collectionCount() {
+      long count = 0;
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+        count += Math.max(0, collector.getCollectionCount());
+      }
+      return count;
+    }
+  }
+
   static class SandboxKey {
     private final Sdk sdk;
     private final InstrumentationConfiguration instrumentationConfiguration;
     private final ResourcesMode.Mode resourcesMode;
     private final LooperMode.Mode looperMode;
     private final GraphicsMode.Mode graphicsMode;
+    private final int shard;
 
     public SandboxKey(
         InstrumentationConfiguration instrumentationConfiguration,
@@ -95,11 +342,31 @@ public class SandboxManager {
         ResourcesMode.Mode resourcesMode,
         LooperMode.Mode looperMode,
         GraphicsMode.Mode graphicsMode) {
+      this(instrumentationConfiguration, sdk, resourcesMode, looperMode, graphicsMode, 0);
+    }
+
+    public SandboxKey(
+        InstrumentationConfiguration instrumentationConfiguration,
+        Sdk sdk,
+        ResourcesMode.Mode resourcesMode,
+        LooperMode.Mode looperMode,
+        GraphicsMode.Mode graphicsMode,
+        int shard) {
       this.sdk = sdk;
       this.instrumentationConfiguration = instrumentationConfiguration;
       this.resourcesMode = resourcesMode;
       this.looperMode = looperMode;
       this.graphicsMode = graphicsMode;
+      this.shard = shard;
+    }
+
+    /** Returns whether this key differs from {@code other} only in its shard, if at all. */
+    boolean isShardOf(SandboxKey other) {
+      return resourcesMode == other.resourcesMode
+          && Objects.equals(sdk, other.sdk)
+          && Objects.equals(instrumentationConfiguration, other.instrumentationConfiguration)
+          && looperMode == other.looperMode
+          && graphicsMode == other.graphicsMode;
     }
 
     @Override
@@ -111,17 +378,18 @@ public class SandboxManager {
         return false;
       }
       SandboxKey that = (SandboxKey) o;
-      return resourcesMode == that.resourcesMode
-          && Objects.equals(sdk, that.sdk)
-          && Objects.equals(instrumentationConfiguration, that.instrumentationConfiguration)
-          && looperMode == that.looperMode
-          && graphicsMode == that.graphicsMode;
+      return shard == that.shard && isShardOf(that);
     }
 
     @Override
     public int hashCode() {
       return Objects.hash(
-          sdk, instrumentationConfiguration, resourcesMode, looperMode, graphicsMode);
+          sdk, instrumentationConfiguration, resourcesMode, looperMode, graphicsMode, shard);
+    }
+
+    @Override
+    public String toString() {
+      return "SandboxKey[sdk=" + sdk + ", looperMode=" + looperMode + ", shard=" + shard + "]";
     }
   }
 }
@@ -28,10 +28,12 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import javax.annotation.Priority;
 import javax.inject.Inject;
+import org.robolectric.internal.SandboxTestRunner;
 import org.robolectric.internal.dependency.DependencyJar;
 import org.robolectric.internal.dependency.DependencyResolver;
 import org.robolectric.pluginapi.Sdk;
 import org.robolectric.pluginapi.SdkProvider;
+import org.robolectric.util.Logger;
 import org.robolectric.util.Util;
 
 /**
@@ -49,6 +51,9 @@ public class DefaultSdkProvider implements SdkProvider {
 
   private static final int PREINSTRUMENTED_VERSION = 7;
 
+  private static final String USE_PREINSTRUMENTED_JARS_PROPERTY =
+      "robolectric.usePreinstrumentedJars";
+
   private final DependencyResolver dependencyResolver;
 
   private final SortedMap<Integer, Sdk> knownSdks;
@@ -124,7 +129,7 @@ public class DefaultSdkProvider implements SdkProvider {
         throw new UnsupportedClassVersionError(getUnsupportedMessage());
       }
 
-      if (Boolean.parseBoolean(System.getProperty("robolectric.usePreinstrumentedJars", "true"))) {
+      if (usePreinstrumentedJars()) {
         String version =
             String.join(
                 "-",
@@ -139,6 +144,26 @@ public class DefaultSdkProvider implements SdkProvider {
       }
     }
 
+    /**
+     * Preinstrumented jars are used by default, except with minimal instrumentation, which only
+     * takes effect for classes that aren't instrumented yet.
+     */
+    private static boolean usePreinstrumentedJars() {
+      boolean minimalInstrumentation =
+          Boolean.getBoolean(SandboxTestRunner.MINIMAL_INSTRUMENTATION_PROPERTY);
+      String property = System.getProperty(USE_PREINSTRUMENTED_JARS_PROPERTY);
+      if (property == null) {
+        return !minimalInstrumentation;
+      }
+      boolean usePreinstrumentedJars = Boolean.parseBoolean(property);
+      if (usePreinstrumentedJars && minimalInstrumentation) {
+        Logger.warn(
+            "%s has no effect on preinstrumented android-all jars; set %s=false to use it",
+            SandboxTestRunner.MINIMAL_INSTRUMENTATION_PROPERTY, USE_PREINSTRUMENTED_JARS_PROPERTY);
+      }
+      return usePreinstrumentedJars;
+    }
+
     @Override
     public synchronized Path getJarPath() {
       if (jarPath == null) {
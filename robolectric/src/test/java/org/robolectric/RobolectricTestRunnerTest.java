@@ -21,7 +21,9 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import javax.annotation.Nonnull;
@@ -39,6 +41,7 @@ import org.junit.runner.Description;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Result;
 import org.junit.runner.RunWith;
+import org.junit.runner.manipulation.Filter;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
 import org.junit.runner.notification.RunNotifier;
@@ -47,11 +50,21 @@ import org.junit.runners.MethodSorters;
 import org.robolectric.RobolectricTestRunner.RobolectricFrameworkMethod;
 import org.robolectric.android.internal.AndroidTestEnvironment;
 import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.ResourcesMode;
+import org.robolectric.annotation.SQLiteMode;
 import org.robolectric.annotation.experimental.LazyApplication;
 import org.robolectric.annotation.experimental.LazyApplication.LazyLoad;
+import org.robolectric.annotation.internal.Instrument;
 import org.robolectric.config.ConfigurationRegistry;
 import org.robolectric.internal.AndroidSandbox.TestEnvironmentSpec;
+import org.robolectric.internal.SandboxManager;
+import org.robolectric.internal.SandboxTestRunner;
 import org.robolectric.internal.ShadowProvider;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
 import org.robolectric.junit.rules.SetSystemPropertyRule;
 import org.robolectric.manifest.AndroidManifest;
 import org.robolectric.pluginapi.Sdk;
@@ -244,6 +257,51 @@ public class RobolectricTestRunnerTest {
     assertThat(metricNames).contains("initialization");
   }
 
+  @Test
+  public void parallelSandboxes_shouldReportPerfStatsOfEachTest() throws Exception {
+    setSystemPropertyRule.set(SandboxTestRunner.PARALLEL_SANDBOXES_PROPERTY, "2");
+    Map<String, Set<String>> metricNamesByTest = new ConcurrentHashMap<>();
+    PerfStatsReporter reporter =
+        (metadata, metrics1) ->
+            metricNamesByTest.put(
+                metadata.getTestName(), metrics1.stream().map(Metric::getName).collect(toSet()));
+
+    RobolectricTestRunner runner =
+        new SingleSdkRobolectricTestRunner(
+            TestWithTwoMethods.class,
+            SingleSdkRobolectricTestRunner.defaultInjector()
+                .bind(PerfStatsReporter[].class, new PerfStatsReporter[] {reporter})
+                .build());
+
+    runner.run(notifier);
+
+    assertThat(events)
+        .containsExactly(
+            "started: first", "finished: first", "started: second", "finished: second");
+    assertThat(metricNamesByTest.keySet()).containsExactly("first", "second");
+    assertThat(metricNamesByTest.get("first")).containsAtLeast("initialization", "test");
+    assertThat(metricNamesByTest.get("second")).containsAtLeast("initialization", "test");
+  }
+
+  @Test
+  public void prewarm_onlyPrewarmsSandboxesOfFilteredTests() throws Exception {
+    PrewarmRecordingSandboxManager.prewarmCount = 0;
+    RobolectricTestRunner runner =
+        new SingleSdkRobolectricTestRunner(
+            TestWithTwoMethods.class,
+            SingleSdkRobolectricTestRunner.defaultInjector()
+                .bind(SandboxManager.class, PrewarmRecordingSandboxManager.class)
+                .build());
+    runner.filter(
+        Filter.matchMethodDescription(
+            Description.createTestDescription(TestWithTwoMethods.class, "first")));
+
+    runner.run(notifier);
+
+    assertThat(PrewarmRecordingSandboxManager.prewarmCount).isEqualTo(1);
+    assertThat(events).containsExactly("started: first", "finished: first").inOrder();
+  }
+
   @Test
   public void shouldResetThreadInterrupted() throws Exception {
     RobolectricTestRunner runner = new SingleSdkRobolectricTestRunner(TestWithInterrupt.class);
@@ -281,6 +339,20 @@ public class RobolectricTestRunnerTest {
             "finished: assumptionViolationWithUnexecutedRunnables");
   }
 
+  @Test
+  public void minimalInstrumentation_appliesConfigShadows() throws Exception {
+    setSystemPropertyRule.set(SandboxTestRunner.MINIMAL_INSTRUMENTATION_PROPERTY, "true");
+    RobolectricTestRunner runner = new SingleSdkRobolectricTestRunner(TestWithConfigShadow.class);
+    runner.run(notifier);
+    assertThat(events)
+        .containsExactly(
+            "started: shadowIsApplied",
+            "finished: shadowIsApplied",
+            "started: unshadowedClassKeepsItsBehavior",
+            "finished: unshadowedClassKeepsItsBehavior")
+        .inOrder();
+  }
+
   /////////////////////////////
 
   /** To simulate failures. */
@@ -447,6 +519,44 @@ public class RobolectricTestRunnerTest {
     }
   }
 
+  /** Fixture for #minimalInstrumentation_appliesConfigShadows() */
+  @Ignore
+  @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+  @Config(shadows = TestWithConfigShadow.ShadowGreeter.class)
+  public static class TestWithConfigShadow {
+    @Test
+    public void shadowIsApplied() {
+      assertThat(new Greeter().greet()).isEqualTo("hello from the shadow");
+    }
+
+    @Test
+    public void unshadowedClassKeepsItsBehavior() {
+      assertThat(new OtherGreeter().greet()).isEqualTo("hello");
+    }
+
+    @Instrument
+    public static class Greeter {
+      public String greet() {
+        return "hello";
+      }
+    }
+
+    @Instrument
+    public static class OtherGreeter {
+      public String greet() {
+        return "hello";
+      }
+    }
+
+    @Implements(Greeter.class)
+    public static class ShadowGreeter {
+      @Implementation
+      protected String greet() {
+        return "hello from the shadow";
+      }
+    }
+  }
+
   /** Fixture for #shouldDiagnoseUnexecutedRunnables() */
   @Ignore
   @FixMethodOrder(MethodSorters.NAME_ASCENDING)
@@ -485,6 +595,33 @@ public class RobolectricTestRunnerTest {
     }
   }
 
+  /** Records prewarm requests instead of building sandboxes in the background. */
+  public static class PrewarmRecordingSandboxManager extends SandboxManager {
+    static int prewarmCount;
+
+    @Inject
+    public PrewarmRecordingSandboxManager(
+        SandboxBuilder sandboxBuilder, SdkCollection sdkCollection) {
+      super(sandboxBuilder, sdkCollection);
+    }
+
+    @Override
+    public boolean isPrewarmEnabled() {
+      return true;
+    }
+
+    @Override
+    public void prewarmAndroidSandbox(
+        InstrumentationConfiguration instrumentationConfig,
+        Sdk sdk,
+        ResourcesMode.Mode resourcesMode,
+        LooperMode.Mode looperMode,
+        SQLiteMode.Mode sqliteMode,
+        GraphicsMode.Mode graphicsMode) {
+      prewarmCount++;
+    }
+  }
+
   private class MyRunListener extends RunListener {
 
     @Override
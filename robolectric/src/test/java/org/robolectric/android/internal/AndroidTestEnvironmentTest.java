@@ -6,13 +6,18 @@ import static android.os.Build.VERSION_CODES.Q;
 import static android.os.Build.VERSION_CODES.VANILLA_ICE_CREAM;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeTrue;
 import static org.robolectric.annotation.ConscryptMode.Mode.OFF;
 import static org.robolectric.annotation.ConscryptMode.Mode.ON;
 import static org.robolectric.annotation.LooperMode.Mode.LEGACY;
 
 import android.app.Application;
+import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.ApplicationInfo;
 import android.content.res.Configuration;
 import android.content.res.Resources;
@@ -23,6 +28,8 @@ import android.provider.MediaStore;
 import android.util.DisplayMetrics;
 import androidx.test.core.app.ApplicationProvider;
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -62,6 +69,7 @@ import org.robolectric.plugins.StubSdk;
 import org.robolectric.shadow.api.Shadow;
 import org.robolectric.shadows.ShadowApplication;
 import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.TempDirectory;
 
 @RunWith(BootstrapDeferringRobolectricTestRunner.class)
 @LooperMode(LEGACY)
@@ -240,6 +248,88 @@ public class AndroidTestEnvironmentTest {
     assertThat(events).containsExactly("terminated");
   }
 
+  @Test
+  @Config(application = CountingApplication.class)
+  public void setUpApplicationState_withReuseApplication_reusesApplication() {
+    setSystemPropertyRule.set(AndroidTestEnvironment.REUSE_APPLICATION_PROPERTY, "true");
+    CountingApplication.onCreateCount = 0;
+    CountingApplication.onTerminateCount = 0;
+    bootstrapWrapper.callSetUpApplicationState();
+    Application application = RuntimeEnvironment.getApplication();
+    Context baseContext = application.getBaseContext();
+    CountingComponentCallbacks componentCallbacks = new CountingComponentCallbacks();
+    application.registerComponentCallbacks(componentCallbacks);
+    bootstrapWrapper.tearDownApplication();
+    bootstrapWrapper.resetState();
+
+    bootstrapWrapper.callSetUpApplicationState();
+
+    assertThat(RuntimeEnvironment.getApplication()).isSameInstanceAs(application);
+    assertThat(application.getBaseContext()).isNotSameInstanceAs(baseContext);
+    assertThat(CountingApplication.onCreateCount).isEqualTo(1);
+    assertThat(CountingApplication.onTerminateCount).isEqualTo(0);
+    application.onConfigurationChanged(new Configuration());
+    assertThat(componentCallbacks.configurationChanges).isEqualTo(0);
+  }
+
+  @Test
+  @Config(application = ReceiverApplication.class)
+  public void setUpApplicationState_withReuseApplication_keepsReceiversFromOnCreate() {
+    setSystemPropertyRule.set(AndroidTestEnvironment.REUSE_APPLICATION_PROPERTY, "true");
+    ReceiverApplication.onCreateCount = 0;
+    ReceiverApplication.receivedIntents.clear();
+    bootstrapWrapper.callSetUpApplicationState();
+    bootstrapWrapper.tearDownApplication();
+    bootstrapWrapper.resetState();
+
+    bootstrapWrapper.callSetUpApplicationState();
+    Application application = RuntimeEnvironment.getApplication();
+    application.sendBroadcast(new Intent(ReceiverApplication.ACTION));
+    ShadowLooper.idleMainLooper();
+
+    assertThat(ReceiverApplication.onCreateCount).isEqualTo(1);
+    assertThat(ReceiverApplication.receivedIntents).hasSize(1);
+    assertThat(ReceiverApplication.receivedIntents.get(0).getAction())
+        .isEqualTo(ReceiverApplication.ACTION);
+  }
+
+  @Test
+  @Config(application = FileApplication.class)
+  public void resetState_withReuseApplicationAndInMemoryTempDirectory_keepsApplicationFiles() {
+    setSystemPropertyRule.set(AndroidTestEnvironment.REUSE_APPLICATION_PROPERTY, "true");
+    setSystemPropertyRule.set(TempDirectory.IN_MEMORY_PROPERTY, "true");
+    bootstrapWrapper.callSetUpApplicationState();
+    File createdFile = FileApplication.createdFile;
+    bootstrapWrapper.tearDownApplication();
+    bootstrapWrapper.resetState();
+
+    bootstrapWrapper.callSetUpApplicationState();
+    TempDirectory secondTempDirectory = RuntimeEnvironment.getTempDirectory();
+    bootstrapWrapper.tearDownApplication();
+    bootstrapWrapper.resetState();
+
+    assertThat(FileApplication.createdFile).isSameInstanceAs(createdFile);
+    assertThat(createdFile.exists()).isTrue();
+    // The directory is only in memory if /dev/shm is available.
+    assumeTrue(secondTempDirectory.isInMemory());
+    assertThat(secondTempDirectory.getBasePath().toFile().exists()).isFalse();
+  }
+
+  @Test
+  @Config(application = CountingApplication.class)
+  public void setUpApplicationState_withoutReuseApplication_createsNewApplication() {
+    CountingApplication.onCreateCount = 0;
+    bootstrapWrapper.callSetUpApplicationState();
+    Application application = RuntimeEnvironment.getApplication();
+    bootstrapWrapper.tearDownApplication();
+    bootstrapWrapper.resetState();
+
+    bootstrapWrapper.callSetUpApplicationState();
+
+    assertThat(RuntimeEnvironment.getApplication()).isNotSameInstanceAs(application);
+    assertThat(CountingApplication.onCreateCount).isEqualTo(2);
+  }
+
   @Test
   @Config(qualifiers = "b+fr+Cyrl+UK")
   public void localeIsSet() {
@@ -415,6 +505,73 @@ public class AndroidTestEnvironmentTest {
     }
   }
 
+  /** An application that counts its lifecycle calls. */
+  public static class CountingApplication extends Application {
+    static int onCreateCount;
+    static int onTerminateCount;
+
+    @Override
+    public void onCreate() {
+      super.onCreate();
+      onCreateCount++;
+    }
+
+    @Override
+    public void onTerminate() {
+      super.onTerminate();
+      onTerminateCount++;
+    }
+  }
+
+  /** An application that registers a broadcast receiver when it's created. */
+  public static class ReceiverApplication extends Application {
+    static final String ACTION = "org.robolectric.ReceiverApplication.ACTION";
+    static final List<Intent> receivedIntents = new ArrayList<>();
+    static int onCreateCount;
+
+    @Override
+    public void onCreate() {
+      super.onCreate();
+      onCreateCount++;
+      registerReceiver(
+          new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+              receivedIntents.add(intent);
+            }
+          },
+          new IntentFilter(ACTION));
+    }
+  }
+
+  /** An application that creates a file when it's created. */
+  public static class FileApplication extends Application {
+    static File createdFile;
+
+    @Override
+    public void onCreate() {
+      super.onCreate();
+      createdFile = new File(getFilesDir(), "created");
+      try {
+        createdFile.createNewFile();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private static class CountingComponentCallbacks implements ComponentCallbacks {
+    int configurationChanges;
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+      configurationChanges++;
+    }
+
+    @Override
+    public void onLowMemory() {}
+  }
+
   private static class ThrowingShadowProvider implements ShadowProvider {
     @Override
     public void reset(ClassTracker classTracker) {
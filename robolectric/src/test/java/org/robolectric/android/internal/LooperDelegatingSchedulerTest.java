@@ -78,4 +78,27 @@ public class LooperDelegatingSchedulerTest {
     assertThat(scheduler.advanceBy(0, TimeUnit.MILLISECONDS)).isTrue();
     assertThat(scheduler.size()).isEqualTo(0);
   }
+
+  @Test
+  public void size_countsRemovedAndExecutedMessages() {
+    assumeTrue(getApiLevel() <= BAKLAVA);
+    Handler handler = new Handler(getMainLooper());
+    Runnable first = mock(Runnable.class);
+    Runnable second = mock(Runnable.class);
+    Runnable third = mock(Runnable.class);
+    handler.postDelayed(first, 100);
+    handler.postDelayed(second, 200);
+    handler.postDelayed(third, 300);
+    handler.sendEmptyMessageDelayed(1, 400);
+    assertThat(scheduler.size()).isEqualTo(4);
+
+    handler.removeCallbacks(second);
+    handler.removeMessages(1);
+    assertThat(scheduler.size()).isEqualTo(2);
+
+    assertThat(scheduler.runOneTask()).isTrue();
+    assertThat(scheduler.size()).isEqualTo(1);
+    assertThat(scheduler.advanceBy(300, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(scheduler.size()).isEqualTo(0);
+  }
 }
@@ -0,0 +1,156 @@
+package org.robolectric.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.annotation.ResourcesMode;
+import org.robolectric.annotation.SQLiteMode;
+import org.robolectric.internal.SandboxManager.SandboxBuilder;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.pluginapi.Sdk;
+import org.robolectric.pluginapi.SdkProvider;
+import org.robolectric.plugins.SdkCollection;
+import org.robolectric.plugins.StubSdk;
+
+/** Test for {@link SandboxManager}. */
+@RunWith(JUnit4.class)
+public class SandboxManagerTest {
+  private final InstrumentationConfiguration config =
+      InstrumentationConfiguration.newBuilder().build();
+  private final Sdk sdk1 = new StubSdk(1234, true);
+  private final Sdk sdk2 = new StubSdk(1235, true);
+  private final Sdk sdk3 = new StubSdk(1236, true);
+
+  private SandboxBuilder sandboxBuilder;
+  private SdkCollection sdkCollection;
+  private FakeHeapMonitor heapMonitor;
+
+  @Before
+  public void setUp() throws Exception {
+    sandboxBuilder = mock(SandboxBuilder.class);
+    when(sandboxBuilder.build(any(), any(), any(), any(), any()))
+        .thenAnswer(invocation -> mock(AndroidSandbox.class));
+    SdkProvider sdkProvider = mock(SdkProvider.class);
+    when(sdkProvider.getSdks()).thenReturn(Arrays.asList(sdk1, sdk2, sdk3));
+    sdkCollection = new SdkCollection(sdkProvider);
+    heapMonitor = new FakeHeapMonitor();
+  }
+
+  @Test
+  public void getAndroidSandbox_reusesPooledSandbox() {
+    SandboxManager sandboxManager = newSandboxManager(3, 0);
+
+    AndroidSandbox first = getAndroidSandbox(sandboxManager, sdk1);
+    AndroidSandbox second = getAndroidSandbox(sandboxManager, sdk1);
+
+    assertThat(second).isSameInstanceAs(first);
+    verify(sandboxBuilder, times(1)).build(any(), eq(sdk1), any(), any(), any());
+  }
+
+  @Test
+  public void getAndroidSandbox_overMaxSize_evictsLeastRecentlyUsed() {
+    SandboxManager sandboxManager = newSandboxManager(2, 0);
+
+    AndroidSandbox sandbox1 = getAndroidSandbox(sandboxManager, sdk1);
+    AndroidSandbox sandbox2 = getAndroidSandbox(sandboxManager, sdk2);
+    getAndroidSandbox(sandboxManager, sdk1);
+    getAndroidSandbox(sandboxManager, sdk3);
+
+    verify(sandbox2).shutdown();
+    verify(sandbox1, times(0)).shutdown();
+    assertThat(getAndroidSandbox(sandboxManager, sdk1)).isSameInstanceAs(sandbox1);
+  }
+
+  @Test
+  public void getAndroidSandbox_overHeapBudget_evictsOnePerCollection() {
+    SandboxManager sandboxManager = newSandboxManager(10, 100);
+    AndroidSandbox sandbox1 = getAndroidSandbox(sandboxManager, sdk1);
+    AndroidSandbox sandbox2 = getAndroidSandbox(sandboxManager, sdk2);
+
+    heapMonitor.retainedHeapBytes = 200;
+    heapMonitor.collectionCount++;
+    getAndroidSandbox(sandboxManager, sdk3);
+    getAndroidSandbox(sandboxManager, sdk3);
+
+    verify(sandbox1).shutdown();
+    verify(sandbox2, times(0)).shutdown();
+  }
+
+  @Test
+  public void getAndroidSandbox_failedBuild_isNotPooled() {
+    SandboxManager sandboxManager = newSandboxManager(3, 0);
+    AndroidSandbox sandbox = mock(AndroidSandbox.class);
+    when(sandboxBuilder.build(any(), eq(sdk1), any(), any(), any()))
+        .thenThrow(new IllegalStateException("boom"))
+        .thenReturn(sandbox);
+
+    assertThrows(IllegalStateException.class, () -> getAndroidSandbox(sandboxManager, sdk1));
+    assertThat(getAndroidSandbox(sandboxManager, sdk1)).isSameInstanceAs(sandbox);
+  }
+
+  @Test
+  public void prewarmAndroidSandbox_buildsInBackground() {
+    SandboxManager sandboxManager =
+        new SandboxManager(sandboxBuilder, sdkCollection, 3, 0, 1, heapMonitor);
+
+    sandboxManager.prewarmAndroidSandbox(
+        config,
+        sdk1,
+        ResourcesMode.Mode.BINARY,
+        LooperMode.Mode.PAUSED,
+        SQLiteMode.Mode.NATIVE,
+        GraphicsMode.Mode.LEGACY);
+    getAndroidSandbox(sandboxManager, sdk1);
+
+    assertThat(sandboxManager.isPrewarmEnabled()).isTrue();
+    verify(sandboxBuilder, times(1)).build(any(), eq(sdk1), any(), any(), any());
+  }
+
+  private SandboxManager newSandboxManager(int maxSize, long maxHeapBytes) {
+    return new SandboxManager(sandboxBuilder, sdkCollection, maxSize, maxHeapBytes, 0, heapMonitor);
+  }
+
+  private AndroidSandbox getAndroidSandbox(SandboxManager sandboxManager, Sdk sdk) {
+    return sandboxManager.getAndroidSandbox(
+        config,
+        sdk,
+        ResourcesMode.Mode.BINARY,
+        LooperMode.Mode.PAUSED,
+        SQLiteMode.Mode.NATIVE,
+        GraphicsMode.Mode.LEGACY);
+  }
+
+  private static class FakeHeapMonitor extends SandboxManager.HeapMonitor {
+    long retainedHeapBytes;
+    long collectionCount;
+    long collectionCountAtLastEviction = -1;
+
+    @Override
+    long retainedHeapBytes() {
+      return retainedHeapBytes;
+    }
+
+    @Override
+    boolean hasCollectedSinceLastEviction() {
+      return collectionCount != collectionCountAtLastEviction;
+    }
+
+    @Override
+    void markEviction() {
+      collectionCountAtLastEviction = collectionCount;
+    }
+  }
+}
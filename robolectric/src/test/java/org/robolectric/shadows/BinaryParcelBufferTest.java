@@ -0,0 +1,145 @@
+package org.robolectric.shadows;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.os.Binder;
+import android.os.IBinder;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class BinaryParcelBufferTest {
+
+  private final BinaryParcelBuffer buffer = new BinaryParcelBuffer();
+
+  @Test
+  public void primitives_useNativeLayout() {
+    buffer.writeInt(0x01020304);
+    buffer.writeLong(-1L);
+    buffer.writeFloat(1f);
+
+    assertThat(buffer.dataSize()).isEqualTo(16);
+    assertThat(buffer.toByteArray())
+        .isEqualTo(
+            new byte[] {
+              4, 3, 2, 1, -1, -1, -1, -1, -1, -1, -1, -1, 0, 0, (byte) 0x80, 0x3f,
+            });
+  }
+
+  @Test
+  public void primitives_canBeReadAsOtherTypes() {
+    buffer.writeLong(0x0000000200000001L);
+    buffer.setDataPosition(0);
+
+    assertThat(buffer.readInt()).isEqualTo(1);
+    assertThat(buffer.readInt()).isEqualTo(2);
+  }
+
+  @Test
+  public void strings_arePaddedAndNullTerminated() {
+    buffer.writeString("abc");
+    buffer.writeString8("hé");
+    buffer.writeString(null);
+
+    // length, 4 UTF-16 chars; length, 4 UTF-8 bytes; -1
+    assertThat(buffer.dataSize()).isEqualTo(4 + 8 + 4 + 4 + 4);
+    buffer.setDataPosition(0);
+    assertThat(buffer.readString()).isEqualTo("abc");
+    assertThat(buffer.readString8()).isEqualTo("hé");
+    assertThat(buffer.readString()).isNull();
+  }
+
+  @Test
+  public void byteArrays_arePadded() {
+    buffer.writeByteArray(new byte[] {1, 2, 3, 4, 5}, 1, 3);
+    buffer.writeInt(7);
+
+    assertThat(buffer.dataSize()).isEqualTo(12);
+    buffer.setDataPosition(0);
+    assertThat(buffer.createByteArray()).isEqualTo(new byte[] {2, 3, 4});
+    assertThat(buffer.readInt()).isEqualTo(7);
+  }
+
+  @Test
+  public void readPastEnd_returnsZeroWithoutAdvancing() {
+    buffer.writeInt(1);
+    buffer.setDataPosition(2);
+
+    assertThat(buffer.readInt()).isEqualTo(0);
+    assertThat(buffer.dataPosition()).isEqualTo(2);
+  }
+
+  @Test
+  public void readPastEnd_afterWriting_throws() {
+    buffer.writeInt(1);
+
+    assertThrows(ShadowParcel.UnreliableBehaviorError.class, buffer::readInt);
+  }
+
+  @Test
+  public void fromByteArray_copiesBytes() {
+    buffer.writeInt(5);
+    buffer.writeString("x");
+    byte[] bytes = buffer.toByteArray();
+
+    BinaryParcelBuffer copy = BinaryParcelBuffer.fromByteArray(bytes, 0, bytes.length);
+    bytes[0] = 0;
+
+    assertThat(copy.dataSize()).isEqualTo(bytes.length);
+    copy.setDataPosition(0);
+    assertThat(copy.readInt()).isEqualTo(5);
+    assertThat(copy.readString()).isEqualTo("x");
+  }
+
+  @Test
+  public void appendFrom_copiesRangeAndBinders() {
+    IBinder binder = new Binder();
+    BinaryParcelBuffer source = new BinaryParcelBuffer();
+    source.writeInt(1);
+    source.writeStrongBinder(binder);
+    source.writeInt(2);
+    buffer.writeInt(9);
+
+    buffer.appendFrom(source, 4, source.dataSize() - 4);
+
+    assertThat(buffer.dataSize()).isEqualTo(source.dataSize());
+    buffer.setDataPosition(0);
+    assertThat(buffer.readInt()).isEqualTo(9);
+    assertThat(buffer.readStrongBinder()).isSameInstanceAs(binder);
+    assertThat(buffer.readInt()).isEqualTo(2);
+  }
+
+  @Test
+  public void binders_areDroppedWhenOverwritten() {
+    buffer.writeStrongBinder(new Binder());
+    buffer.setDataPosition(8);
+    buffer.writeInt(0);
+
+    buffer.setDataPosition(0);
+    assertThat(buffer.readStrongBinder()).isNull();
+    assertThat(buffer.toByteArray()).hasLength(24);
+  }
+
+  @Test
+  public void toByteArray_withBinders_throws() {
+    buffer.writeStrongBinder(new Binder());
+
+    assertThrows(RuntimeException.class, buffer::toByteArray);
+  }
+
+  @Test
+  public void setDataSize_truncatesAndZeroes() {
+    buffer.writeInt(1);
+    buffer.writeInt(2);
+
+    buffer.setDataSize(4);
+    buffer.setDataSize(8);
+
+    assertThat(buffer.dataPosition()).isEqualTo(4);
+    buffer.setDataPosition(0);
+    assertThat(buffer.readInt()).isEqualTo(1);
+    assertThat(buffer.readInt()).isEqualTo(0);
+  }
+}
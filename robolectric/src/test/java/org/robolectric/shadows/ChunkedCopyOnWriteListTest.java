@@ -0,0 +1,115 @@
+package org.robolectric.shadows;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class ChunkedCopyOnWriteListTest {
+  private final ChunkedCopyOnWriteList<Integer> list = new ChunkedCopyOnWriteList<>();
+
+  @Test
+  public void add_acrossChunks() {
+    for (int i = 0; i < 10_000; i++) {
+      list.add(i);
+    }
+
+    assertThat(list).hasSize(10_000);
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(list.get(i)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void get_outOfBounds_throws() {
+    list.add(1);
+
+    assertThrows(IndexOutOfBoundsException.class, () -> list.get(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> list.get(-1));
+  }
+
+  @Test
+  public void iterator_isSnapshot() {
+    list.add(1);
+    list.add(2);
+    Iterator<Integer> iterator = list.iterator();
+
+    list.clear();
+    list.add(3);
+
+    assertThat(iterator.next()).isEqualTo(1);
+    assertThat(iterator.next()).isEqualTo(2);
+    assertThat(iterator.hasNext()).isFalse();
+    assertThat(list).containsExactly(3);
+  }
+
+  @Test
+  public void remove_removesElementAcrossChunks() {
+    for (int i = 0; i < 1_000; i++) {
+      list.add(i);
+    }
+
+    assertThat(list.remove(10)).isEqualTo(10);
+    assertThat(list.remove(Integer.valueOf(500))).isTrue();
+    list.add(1_000);
+
+    assertThat(list).hasSize(999);
+    assertThat(list.get(10)).isEqualTo(11);
+    assertThat(list.get(499)).isEqualTo(501);
+    assertThat(list.get(998)).isEqualTo(1_000);
+  }
+
+  @Test
+  public void setAndAddAtIndex_modifyList() {
+    list.add(1);
+    list.add(3);
+
+    assertThat(list.set(1, 4)).isEqualTo(3);
+    list.add(1, 2);
+
+    assertThat(list).containsExactly(1, 2, 4).inOrder();
+    assertThrows(IndexOutOfBoundsException.class, () -> list.set(3, 5));
+    assertThrows(IndexOutOfBoundsException.class, () -> list.add(4, 5));
+  }
+
+  @Test
+  public void removeIf_removesMatchingElements() {
+    for (int i = 0; i < 10; i++) {
+      list.add(i);
+    }
+
+    assertThat(list.removeIf(i -> i % 2 == 0)).isTrue();
+    assertThat(list.removeAll(Arrays.asList(1, 3))).isTrue();
+    assertThat(list.retainAll(Arrays.asList(5, 7, 11))).isTrue();
+
+    assertThat(list).containsExactly(5, 7).inOrder();
+  }
+
+  @Test
+  public void iterator_isSnapshotOfModifications() {
+    list.add(1);
+    list.add(2);
+    Iterator<Integer> iterator = list.iterator();
+
+    list.remove(0);
+    list.set(0, 3);
+
+    assertThat(iterator.next()).isEqualTo(1);
+    assertThat(iterator.next()).isEqualTo(2);
+    assertThat(list).containsExactly(3);
+  }
+
+  @Test
+  public void nullElements_areSupported() {
+    list.add(null);
+
+    assertThat(list).containsExactly((Integer) null);
+    assertThat(list.remove(null)).isTrue();
+    assertThat(list).isEmpty();
+  }
+}
@@ -0,0 +1,89 @@
+package org.robolectric.shadows;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.base.Strings;
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class LogFileSinkTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void write_usesStreamFormat() throws Exception {
+    File file = temporaryFolder.newFile();
+    try (LogFileSink sink = new LogFileSink(file.toPath())) {
+      sink.write(null, Log.DEBUG, "tag", "msg", null);
+      sink.write("20 July 1969 20:17", Log.WARN, "tag", "é", new RuntimeException("boom"));
+    }
+
+    String contents = new String(Files.readAllBytes(file.toPath()), UTF_8);
+    assertThat(contents)
+        .startsWith(
+            "D/tag: msg"
+                + System.lineSeparator()
+                + "20 July 1969 20:17 W/tag: é"
+                + System.lineSeparator()
+                + "java.lang.RuntimeException: boom");
+  }
+
+  @Test
+  public void write_isBufferedUntilFlushed() throws Exception {
+    File file = temporaryFolder.newFile();
+    try (LogFileSink sink = new LogFileSink(file.toPath())) {
+      sink.write(null, Log.INFO, "tag", "msg", null);
+      assertThat(file.length()).isEqualTo(0);
+
+      sink.flush();
+      assertThat(file.length()).isEqualTo(("I/tag: msg" + System.lineSeparator()).length());
+    }
+  }
+
+  @Test
+  public void write_linesLargerThanBuffer() throws Exception {
+    File file = temporaryFolder.newFile();
+    String msg = Strings.repeat("x", 200_000);
+    try (LogFileSink sink = new LogFileSink(file.toPath())) {
+      sink.write(null, Log.INFO, "tag", msg, null);
+    }
+
+    assertThat(new String(Files.readAllBytes(file.toPath()), UTF_8))
+        .isEqualTo("I/tag: " + msg + System.lineSeparator());
+  }
+
+  @Test
+  public void write_errorsAreFlushedImmediately() throws Exception {
+    File file = temporaryFolder.newFile();
+    try (LogFileSink sink = new LogFileSink(file.toPath())) {
+      sink.write(null, Log.INFO, "tag", "info", null);
+      sink.write(null, Log.ERROR, "tag", "error", null);
+
+      assertThat(new String(Files.readAllBytes(file.toPath()), UTF_8))
+          .isEqualTo(
+              "I/tag: info" + System.lineSeparator() + "E/tag: error" + System.lineSeparator());
+    }
+  }
+
+  @Test
+  public void write_isFlushedPeriodically() throws Exception {
+    File file = temporaryFolder.newFile();
+    try (LogFileSink sink = new LogFileSink(file.toPath(), 10)) {
+      sink.write(null, Log.INFO, "tag", "msg", null);
+
+      long deadline = System.nanoTime() + SECONDS.toNanos(10);
+      while (file.length() == 0 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertThat(file.length()).isEqualTo(("I/tag: msg" + System.lineSeparator()).length());
+    }
+  }
+}
@@ -8,12 +8,17 @@ import static org.robolectric.Shadows.shadowOf;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteDatabase.OpenParams;
 import android.database.sqlite.SQLiteOpenHelper;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,6 +32,9 @@ public class SQLiteOpenHelperTest {
 
   @Before
   public void setUp() {
+    TemplateOpenHelper.onCreateCount = 0;
+    StatementsOpenHelper.onCreateCount = 0;
+    TableCallback.createdTables.clear();
     helper = new TestOpenHelper(ApplicationProvider.getApplicationContext(), "path", null, 1);
   }
 
@@ -271,6 +279,207 @@ public class SQLiteOpenHelperTest {
     assertThat(openParams.getIdleConnectionTimeout()).isEqualTo(1000L);
   }
 
+  @Test
+  public void databaseTemplates_onCreateIsOnlyCalledForTheTemplateAndItsVerification() {
+    ShadowSQLiteOpenHelper.clearDatabaseTemplates();
+    ShadowSQLiteOpenHelper.setUseDatabaseTemplates(true);
+    Context context = ApplicationProvider.getApplicationContext();
+
+    for (int i = 0; i < 3; i++) {
+      TemplateOpenHelper templateHelper = new TemplateOpenHelper(context, null);
+      try {
+        SQLiteDatabase database = templateHelper.getWritableDatabase();
+
+        assertThat(database.getVersion()).isEqualTo(2);
+        assertThat(countRows(database)).isEqualTo(1);
+        assertThat(templateHelper.onOpenCount).isEqualTo(1);
+        database.execSQL("INSERT INTO items (name) VALUES ('added')");
+      } finally {
+        templateHelper.close();
+      }
+      context.deleteDatabase(TemplateOpenHelper.NAME);
+    }
+
+    // Once for the template, then once more when it's first reused, to verify it.
+    assertThat(TemplateOpenHelper.onCreateCount).isEqualTo(2);
+  }
+
+  @Test
+  public void databaseTemplates_areDiscardedWhenOnOpenChangesTheSchema() {
+    ShadowSQLiteOpenHelper.clearDatabaseTemplates();
+    ShadowSQLiteOpenHelper.setUseDatabaseTemplates(true);
+    Context context = ApplicationProvider.getApplicationContext();
+
+    for (int i = 0; i < 2; i++) {
+      TemplateOpenHelper templateHelper =
+          new TemplateOpenHelper(context, "CREATE TABLE IF NOT EXISTS extra (id INTEGER)");
+      try {
+        SQLiteDatabase database = templateHelper.getWritableDatabase();
+
+        assertThat(hasTable(database, "extra")).isTrue();
+        assertThat(countRows(database)).isEqualTo(1);
+      } finally {
+        templateHelper.close();
+      }
+      context.deleteDatabase(TemplateOpenHelper.NAME);
+    }
+
+    // Once for the template, then once for each database, since the template diverged.
+    assertThat(TemplateOpenHelper.onCreateCount).isEqualTo(3);
+  }
+
+  @Test
+  public void databaseTemplates_areDiscardedWhenOnOpenChangesTheRows() {
+    ShadowSQLiteOpenHelper.clearDatabaseTemplates();
+    ShadowSQLiteOpenHelper.setUseDatabaseTemplates(true);
+    Context context = ApplicationProvider.getApplicationContext();
+
+    for (int i = 0; i < 2; i++) {
+      TemplateOpenHelper templateHelper =
+          new TemplateOpenHelper(context, "INSERT INTO items (name) VALUES ('opened')");
+      try {
+        assertThat(countRows(templateHelper.getWritableDatabase())).isEqualTo(2);
+      } finally {
+        templateHelper.close();
+      }
+      context.deleteDatabase(TemplateOpenHelper.NAME);
+    }
+
+    assertThat(TemplateOpenHelper.onCreateCount).isEqualTo(3);
+  }
+
+  @Test
+  public void databaseTemplates_areNotSharedByHelpersWithDifferentCallbacks() {
+    ShadowSQLiteOpenHelper.clearDatabaseTemplates();
+    ShadowSQLiteOpenHelper.setUseDatabaseTemplates(true);
+    Context context = ApplicationProvider.getApplicationContext();
+
+    for (int i = 0; i < 2; i++) {
+      for (String table : new String[] {"items", "users"}) {
+        CallbackOpenHelper callbackHelper =
+            new CallbackOpenHelper(context, new TableCallback(table));
+        try {
+          assertThat(hasTable(callbackHelper.getWritableDatabase(), table)).isTrue();
+        } finally {
+          callbackHelper.close();
+        }
+        context.deleteDatabase(CallbackOpenHelper.NAME);
+      }
+    }
+
+    // Each template is created, then verified when it's first reused.
+    assertThat(TableCallback.createdTables)
+        .containsExactly("items", "users", "items", "users")
+        .inOrder();
+  }
+
+  @Test
+  public void databaseTemplates_areNotSharedByHelpersWithDifferentArraysOrCollections() {
+    ShadowSQLiteOpenHelper.clearDatabaseTemplates();
+    ShadowSQLiteOpenHelper.setUseDatabaseTemplates(true);
+    Context context = ApplicationProvider.getApplicationContext();
+
+    for (int i = 0; i < 3; i++) {
+      for (String table : new String[] {"items", "users"}) {
+        for (boolean inList : new boolean[] {false, true}) {
+          String statement = "CREATE TABLE " + table + " (id INTEGER PRIMARY KEY)";
+          StatementsOpenHelper statementsHelper =
+              inList
+                  ? new StatementsOpenHelper(context, new String[0], Arrays.asList(statement))
+                  : new StatementsOpenHelper(
+                      context, new String[] {statement}, Collections.emptyList());
+          try {
+            SQLiteDatabase database = statementsHelper.getWritableDatabase();
+
+            assertThat(hasTable(database, table)).isTrue();
+            assertThat(DatabaseUtils.queryNumEntries(database, "sqlite_master", "type = 'table'"))
+                .isEqualTo(1);
+          } finally {
+            statementsHelper.close();
+          }
+          context.deleteDatabase(StatementsOpenHelper.NAME);
+        }
+      }
+    }
+
+    // Once for each of the four templates and once more to verify each of them.
+    assertThat(StatementsOpenHelper.onCreateCount).isEqualTo(8);
+  }
+
+  @Test
+  public void databaseTemplates_areDiscardedWhenOnCreateDiverges() {
+    ShadowSQLiteOpenHelper.clearDatabaseTemplates();
+    ShadowSQLiteOpenHelper.setUseDatabaseTemplates(true);
+    Context context = ApplicationProvider.getApplicationContext();
+
+    // The helpers look the same, but don't create the same schema.
+    for (String table : new String[] {"items", "users"}) {
+      StaticTableCallback.tableName = table;
+      CallbackOpenHelper callbackHelper =
+          new CallbackOpenHelper(context, new StaticTableCallback());
+      try {
+        SQLiteDatabase database = callbackHelper.getWritableDatabase();
+
+        assertThat(hasTable(database, table)).isTrue();
+        assertThat(DatabaseUtils.queryNumEntries(database, "sqlite_master", "type = 'table'"))
+            .isEqualTo(1);
+      } finally {
+        callbackHelper.close();
+      }
+      context.deleteDatabase(CallbackOpenHelper.NAME);
+    }
+
+    // The template for "items" is first reused for "users", so it's verified and discarded.
+    assertThat(TableCallback.createdTables).containsExactly("items", "users", "users").inOrder();
+  }
+
+  @Test
+  public void databaseTemplates_existingDatabasesAreOpenedAsUsual() {
+    ShadowSQLiteOpenHelper.clearDatabaseTemplates();
+    ShadowSQLiteOpenHelper.setUseDatabaseTemplates(true);
+    Context context = ApplicationProvider.getApplicationContext();
+
+    TemplateOpenHelper firstHelper = new TemplateOpenHelper(context, null);
+    try {
+      firstHelper.getWritableDatabase().execSQL("INSERT INTO items (name) VALUES ('added')");
+    } finally {
+      firstHelper.close();
+    }
+    TemplateOpenHelper secondHelper = new TemplateOpenHelper(context, null);
+    try {
+      assertThat(countRows(secondHelper.getWritableDatabase())).isEqualTo(2);
+    } finally {
+      secondHelper.close();
+    }
+  }
+
+  @Test
+  public void databaseTemplates_disabledByDefault() {
+    Context context = ApplicationProvider.getApplicationContext();
+
+    for (int i = 0; i < 2; i++) {
+      TemplateOpenHelper templateHelper = new TemplateOpenHelper(context, null);
+      try {
+        templateHelper.getWritableDatabase();
+      } finally {
+        templateHelper.close();
+      }
+      context.deleteDatabase(TemplateOpenHelper.NAME);
+    }
+
+    assertThat(TemplateOpenHelper.onCreateCount).isEqualTo(2);
+  }
+
+  private static long countRows(SQLiteDatabase database) {
+    return DatabaseUtils.queryNumEntries(database, "items");
+  }
+
+  private static boolean hasTable(SQLiteDatabase database, String table) {
+    return DatabaseUtils.queryNumEntries(
+            database, "sqlite_master", "type = 'table' AND name = ?", new String[] {table})
+        > 0;
+  }
+
   private static void assertInitialDB(SQLiteDatabase database, TestOpenHelper helper) {
     assertDatabaseOpened(database, helper);
     assertThat(helper.onCreateCalled).isTrue();
@@ -321,4 +530,134 @@ public class SQLiteOpenHelperTest {
       super.close();
     }
   }
+
+  private static class TemplateOpenHelper extends SQLiteOpenHelper {
+    static final String NAME = "templated";
+    static int onCreateCount;
+
+    private final String onOpenSql;
+    int onOpenCount;
+
+    TemplateOpenHelper(Context context, String onOpenSql) {
+      super(context, NAME, null, 2);
+      this.onOpenSql = onOpenSql;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+      onCreateCount++;
+      database.execSQL("CREATE TABLE items (id INTEGER PRIMARY KEY, name TEXT)");
+      database.execSQL("INSERT INTO items (name) VALUES ('created')");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+      throw new AssertionError("Unexpected upgrade from " + oldVersion);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase database) {
+      onOpenCount++;
+      if (onOpenSql != null) {
+        database.execSQL(onOpenSql);
+      }
+    }
+  }
+
+  /** Delegates to a callback, like Room's helper does. */
+  private static class CallbackOpenHelper extends SQLiteOpenHelper {
+    static final String NAME = "callback";
+
+    private final TableCallback callback;
+
+    CallbackOpenHelper(Context context, TableCallback callback) {
+      super(context, NAME, null, 1);
+      this.callback = callback;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+      callback.onCreate(database);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+      throw new AssertionError("Unexpected upgrade from " + oldVersion);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase database) {
+      callback.onOpen(database);
+    }
+  }
+
+  /** Runs the given statements, like helpers that are configured with their schema. */
+  private static class StatementsOpenHelper extends SQLiteOpenHelper {
+    static final String NAME = "statements";
+    static int onCreateCount;
+
+    private final String[] statementArray;
+    private final List<String> statementList;
+
+    StatementsOpenHelper(Context context, String[] statementArray, List<String> statementList) {
+      super(context, NAME, null, 1);
+      this.statementArray = statementArray;
+      this.statementList = statementList;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+      onCreateCount++;
+      for (String statement : statementArray) {
+        database.execSQL(statement);
+      }
+      for (String statement : statementList) {
+        database.execSQL(statement);
+      }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+      throw new AssertionError("Unexpected upgrade from " + oldVersion);
+    }
+  }
+
+  private static class TableCallback {
+    static final List<String> createdTables = new ArrayList<>();
+
+    private final String table;
+
+    TableCallback(String table) {
+      this.table = table;
+    }
+
+    String getTable() {
+      return table;
+    }
+
+    void onCreate(SQLiteDatabase database) {
+      createdTables.add(getTable());
+      database.execSQL("CREATE TABLE " + getTable() + " (id INTEGER PRIMARY KEY)");
+    }
+
+    /** Checks the schema, like Room's identity check. */
+    void onOpen(SQLiteDatabase database) {
+      if (!hasTable(database, getTable())) {
+        throw new IllegalStateException("Missing table " + getTable());
+      }
+    }
+  }
+
+  private static class StaticTableCallback extends TableCallback {
+    static String tableName;
+
+    StaticTableCallback() {
+      super(null);
+    }
+
+    @Override
+    String getTable() {
+      return tableName;
+    }
+  }
 }
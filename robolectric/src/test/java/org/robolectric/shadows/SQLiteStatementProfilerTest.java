@@ -0,0 +1,95 @@
+package org.robolectric.shadows;
+
+import static android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.SQLiteMode;
+import org.robolectric.annotation.SQLiteMode.Mode;
+import org.robolectric.shadows.SQLiteStatementProfiler.StatementStats;
+
+@RunWith(AndroidJUnit4.class)
+@SQLiteMode(Mode.NATIVE)
+@Config(maxSdk = UPSIDE_DOWN_CAKE)
+public class SQLiteStatementProfilerTest {
+  private SQLiteDatabase database;
+
+  @Before
+  public void setUp() {
+    SQLiteStatementProfiler.reset();
+    SQLiteStatementProfiler.setEnabled(true);
+    database = SQLiteDatabase.create(null);
+    database.execSQL("CREATE TABLE t (id INTEGER PRIMARY KEY, name TEXT)");
+  }
+
+  @After
+  public void tearDown() {
+    database.close();
+    SQLiteStatementProfiler.setEnabled(false);
+    SQLiteStatementProfiler.reset();
+  }
+
+  @Test
+  public void normalize_replacesLiteralsAndWhitespace() {
+    assertThat(
+            SQLiteStatementProfiler.normalize(
+                "SELECT *\n  FROM t1 WHERE id = 12 AND name = 'it''s' AND x > 1.5e3"))
+        .isEqualTo("SELECT * FROM t1 WHERE id = ? AND name = ? AND x > ?");
+  }
+
+  @Test
+  public void executions_areAggregatedByNormalizedSql() {
+    for (int i = 0; i < 5; i++) {
+      database.execSQL("INSERT INTO t (id, name) VALUES (" + i + ", 'row " + i + "')");
+    }
+
+    StatementStats stats = getStats("INSERT INTO t (id, name) VALUES (?, ?)");
+    assertThat(stats.getExecutionCount()).isEqualTo(5);
+    assertThat(stats.getTotalTimeNs()).isGreaterThan(0);
+    assertThat(stats.getWindowFillCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void queries_recordRowsAndWindowFills() {
+    for (int i = 0; i < 3; i++) {
+      database.execSQL("INSERT INTO t (id) VALUES (?)", new Object[] {i});
+    }
+
+    try (Cursor cursor = database.rawQuery("SELECT id FROM t", null)) {
+      assertThat(cursor.getCount()).isEqualTo(3);
+    }
+
+    StatementStats stats = getStats("SELECT id FROM t");
+    assertThat(stats.getWindowFillCount()).isEqualTo(1);
+    assertThat(stats.getWindowRowCount()).isEqualTo(3);
+    assertThat(stats.getMaxWindowRowCount()).isEqualTo(3);
+    assertThat(stats.getRowCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void disabled_recordsNothing() {
+    SQLiteStatementProfiler.setEnabled(false);
+    SQLiteStatementProfiler.reset();
+
+    database.execSQL("INSERT INTO t (id) VALUES (1)");
+
+    assertThat(SQLiteStatementProfiler.getStatementStats()).isEmpty();
+  }
+
+  private static StatementStats getStats(String sql) {
+    for (StatementStats stats : SQLiteStatementProfiler.getStatementStats()) {
+      if (stats.getSql().equals(sql)) {
+        return stats;
+      }
+    }
+    throw new AssertionError(
+        "No stats for " + sql + " in " + SQLiteStatementProfiler.getStatementStats());
+  }
+}
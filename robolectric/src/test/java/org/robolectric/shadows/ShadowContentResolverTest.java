@@ -46,6 +46,7 @@ import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.collect.Iterables;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
@@ -57,6 +58,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nonnull;
@@ -222,6 +226,36 @@ public class ShadowContentResolverTest {
     assertThat(shadowContentResolver.getUpdateStatements().get(1).getSelectionArgs()).isNull();
   }
 
+  @Test
+  public void setStatementRecordingEnabled_false_doesNotRecordStatements() {
+    ShadowContentResolver.setStatementRecordingEnabled(false);
+
+    contentResolver.insert(FAKE_URI, new ContentValues());
+    contentResolver.bulkInsert(FAKE_URI, new ContentValues[] {new ContentValues()});
+    contentResolver.update(FAKE_URI, new ContentValues(), null, null);
+    contentResolver.delete(FAKE_URI, null, null);
+
+    assertThat(shadowContentResolver.getStatements()).isEmpty();
+    assertThat(shadowContentResolver.getInsertStatements()).isEmpty();
+    assertThat(shadowContentResolver.getUpdateStatements()).isEmpty();
+    assertThat(shadowContentResolver.getDeleteStatements()).isEmpty();
+  }
+
+  @Test
+  public void getStatements_iterationSeesSnapshot() {
+    contentResolver.insert(FAKE_URI, new ContentValues());
+    List<ShadowContentResolver.Statement> statements = shadowContentResolver.getStatements();
+
+    int count = 0;
+    for (ShadowContentResolver.Statement unused : statements) {
+      contentResolver.delete(FAKE_URI, null, null);
+      count++;
+    }
+
+    assertThat(count).isEqualTo(1);
+    assertThat(statements).hasSize(2);
+  }
+
   @Test
   public void insert_supportsNullContentValues() {
     contentResolver.insert(FAKE_URI, null);
@@ -301,6 +335,16 @@ public class ShadowContentResolverTest {
         .isSameInstanceAs(cursor22);
   }
 
+  @Test
+  public void setCursor_supportsNullUriAndCursor() {
+    BaseCursor cursor = new BaseCursor();
+    shadowContentResolver.setCursor(null, cursor);
+    shadowContentResolver.setCursor(uri21, null);
+
+    assertThat(shadowContentResolver.query(null, null, null, null, null)).isSameInstanceAs(cursor);
+    assertThat(shadowContentResolver.query(uri21, null, null, null, null)).isNull();
+  }
+
   @Test
   public void query_shouldKnowWhatItsParamsWere() {
     String[] projection = {};
@@ -433,6 +477,18 @@ public class ShadowContentResolverTest {
     assertThat(new String(data2, UTF_8)).isEqualTo("ourStream");
   }
 
+  @Test
+  public void registerStreams_supportNullUrisAndSuppliers() throws Exception {
+    shadowContentResolver.registerInputStream(
+        null, new ByteArrayInputStream("ourStream".getBytes(UTF_8)));
+    shadowContentResolver.registerInputStreamSupplier(uri21, null);
+    shadowContentResolver.registerOutputStream(null, new ByteArrayOutputStream());
+    shadowContentResolver.registerOutputStreamSupplier(uri21, null);
+
+    assertThat(shadowContentResolver.openInputStream(null).read()).isEqualTo('o');
+    assertThat(shadowContentResolver.openOutputStream(null, "w")).isNotNull();
+  }
+
   @Test
   public void openInputStream_returnsResourceUriStream() throws Exception {
     InputStream inputStream =
@@ -734,6 +790,30 @@ public class ShadowContentResolverTest {
     assertThat(uri.observer).isNull();
   }
 
+  @Test
+  public void notifyChange_fromBackgroundThreads_shouldTrackNotifiedUris() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 1000; i++) {
+                    contentResolver.notifyChange(Uri.parse("foo"), null);
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(shadowContentResolver.getNotifiedUris()).hasSize(4000);
+  }
+
   @Test
   @Config(minSdk = N)
   public void notifyChangeWithFlags_shouldTrackNotifiedUris() {
@@ -882,6 +962,33 @@ public class ShadowContentResolverTest {
     assertThat(result).isNotNull();
   }
 
+  @Test
+  public void applyBatch_supportsNullAuthorityAndOperations() throws Exception {
+    assertThat(shadowContentResolver.getContentProviderOperations(null)).isEmpty();
+
+    contentResolver.applyBatch(AUTHORITY, null);
+    ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+    shadowContentResolver.applyBatch(null, operations);
+
+    assertThat(shadowContentResolver.getContentProviderOperations(AUTHORITY)).isEmpty();
+    assertThat(shadowContentResolver.getContentProviderOperations(null))
+        .isSameInstanceAs(operations);
+  }
+
+  @Test
+  public void getStatements_supportsRemovingStatements() {
+    contentResolver.insert(FAKE_URI, new ContentValues());
+    contentResolver.delete(FAKE_URI, null, null);
+
+    shadowContentResolver.getStatements().remove(0);
+    shadowContentResolver.getDeleteStatements().set(0, null);
+
+    assertThat(shadowContentResolver.getStatements()).hasSize(1);
+    assertThat(shadowContentResolver.getStatements().get(0))
+        .isInstanceOf(ShadowContentResolver.DeleteStatement.class);
+    assertThat(shadowContentResolver.getDeleteStatements()).containsExactly((Object) null);
+  }
+
   @Test
   public void shouldKeepTrackOfSyncRequests() {
     ShadowContentResolver.Status status = ShadowContentResolver.getStatus(a, AUTHORITY, true);
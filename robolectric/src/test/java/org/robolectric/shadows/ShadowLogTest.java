@@ -16,6 +16,7 @@ import com.google.common.collect.Iterables;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.shadows.ShadowLog.LogItem;
@@ -431,4 +432,59 @@ public class ShadowLogTest {
       ShadowLog.setCaptureLogsEnabled(true);
     }
   }
+
+  @Test
+  public void captureBufferSize_keepsMostRecentLogs() {
+    ShadowLog.setCaptureBufferSize(3);
+
+    for (int i = 1; i <= 5; i++) {
+      Log.i(i % 2 == 0 ? "even" : "odd", Integer.toString(i));
+    }
+
+    assertThat(ShadowLog.getLogs())
+        .containsExactly(
+            new LogItem(Log.INFO, "odd", "3", null),
+            new LogItem(Log.INFO, "even", "4", null),
+            new LogItem(Log.INFO, "odd", "5", null))
+        .inOrder();
+    assertThat(ShadowLog.getLogsForTag("odd"))
+        .containsExactly(
+            new LogItem(Log.INFO, "odd", "3", null), new LogItem(Log.INFO, "odd", "5", null))
+        .inOrder();
+    assertThat(ShadowLog.getLogsForTag("none")).isEmpty();
+  }
+
+  @Test
+  public void captureBufferSize_skipsLogsBelowLoggableLevel() {
+    ShadowLog.setCaptureBufferSize(10);
+    ShadowLog.setLoggable("Foo", Log.WARN);
+    AtomicInteger timeRequests = new AtomicInteger();
+    ShadowLog.setTimeSupplier(() -> Integer.toString(timeRequests.incrementAndGet()));
+
+    Log.i("Foo", "suppressed");
+    Log.v("Bar", "captured");
+
+    assertThat(ShadowLog.getLogsForTag("Foo")).isEmpty();
+    assertLogged("1", Log.VERBOSE, "Bar", "captured", null);
+    assertThat(timeRequests.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void captureBufferSize_clearAndReset() {
+    ShadowLog.setCaptureBufferSize(2);
+    Log.i("tag", "1");
+
+    ShadowLog.clear();
+    Log.i("tag", "2");
+    Log.i("tag", "3");
+    Log.i("tag", "4");
+
+    // Clearing resets to unbounded capture.
+    assertThat(ShadowLog.getLogsForTag("tag")).hasSize(3);
+  }
+
+  @Test
+  public void captureBufferSize_negative_throws() {
+    assertThrows(IllegalArgumentException.class, () -> ShadowLog.setCaptureBufferSize(-1));
+  }
 }
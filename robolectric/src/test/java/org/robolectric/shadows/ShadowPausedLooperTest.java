@@ -21,6 +21,7 @@ import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.MessageQueue.IdleHandler;
 import android.os.SystemClock;
+import android.view.Choreographer;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.util.concurrent.SettableFuture;
 import java.time.Duration;
@@ -30,6 +31,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -367,6 +369,38 @@ public class ShadowPausedLooperTest {
     verify(mockRunnable, times(1)).run();
   }
 
+  @Test
+  public void idleFor_fastForward_runsOtherLoopersAtTheirScheduledTime() {
+    ShadowPausedLooper.setFastForward(true);
+    long startTime = SystemClock.uptimeMillis();
+    AtomicLong mainRunTime = new AtomicLong();
+    Handler mainHandler = new Handler(getMainLooper());
+    new Handler(handlerThread.getLooper())
+        .postDelayed(
+            () -> mainHandler.post(() -> mainRunTime.set(SystemClock.uptimeMillis())), 1000);
+    mainHandler.postDelayed(() -> {}, 5000);
+
+    shadowMainLooper().idleFor(Duration.ofSeconds(10));
+
+    assertThat(mainRunTime.get()).isEqualTo(startTime + 1000);
+    assertThat(SystemClock.uptimeMillis()).isEqualTo(startTime + 10000);
+  }
+
+  @Test
+  public void idleFor_fastForward_stopsAtFramesWithCallbacks() {
+    ShadowPausedLooper.setFastForward(true);
+    ShadowChoreographer.setPaused(true);
+    ShadowChoreographer.setFrameDelay(Duration.ofMillis(15));
+    long startTime = SystemClock.uptimeMillis();
+    AtomicLong frameRunTime = new AtomicLong();
+    Choreographer.getInstance()
+        .postFrameCallback(frameTimeNanos -> frameRunTime.set(SystemClock.uptimeMillis()));
+
+    shadowMainLooper().idleFor(Duration.ofSeconds(10));
+
+    assertThat(frameRunTime.get()).isEqualTo(startTime + 15);
+  }
+
   @Test
   public void idleExecutesPostedRunnables() {
     ShadowPausedLooper shadowLooper = Shadow.extract(getMainLooper());
@@ -403,6 +437,20 @@ public class ShadowPausedLooperTest {
         .isEqualTo(SystemClock.uptimeMillis() + 200);
   }
 
+  @Test
+  public void getLastScheduledTime_afterLastTaskRemoved() {
+    Handler mainHandler = new Handler();
+    Runnable last = () -> {};
+    mainHandler.postDelayed(() -> {}, 100);
+    mainHandler.postDelayed(last, 200);
+    mainHandler.postDelayed(() -> {}, 100);
+
+    mainHandler.removeCallbacks(last);
+
+    assertThat(shadowMainLooper().getLastScheduledTaskTime().toMillis())
+        .isEqualTo(SystemClock.uptimeMillis() + 100);
+  }
+
   @Before
   public void assertMainLooperEmpty() {
     assertThat(getMainLooper().getQueue().isIdle()).isTrue();
@@ -3,6 +3,7 @@ package org.robolectric.shadows;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
 import static com.google.common.truth.TruthJUnit.assume;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.fail;
 import static org.robolectric.annotation.SQLiteMode.Mode.LEGACY;
@@ -10,6 +11,7 @@ import static org.robolectric.shadows.ShadowLegacySQLiteConnection.convertSQLWit
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatatypeMismatchException;
@@ -22,6 +24,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -146,6 +151,19 @@ public class ShadowSQLiteConnectionTest {
     assertWithMessage("statements after").that(statementsMap).isEmpty();
   }
 
+  @Test
+  public void nativeClose_clearsStatementsOfConnection() {
+    final Map<Long, SQLiteStatement> statementsMap =
+        ReflectionHelpers.getField(connections, "statementsMap");
+    long statementPtr = connections.prepareStatement(ptr, "SELECT 1");
+    int otherStatements = statementsMap.size() - 1;
+
+    ShadowLegacySQLiteConnection.nativeClose(ptr, false);
+
+    assertThat(statementsMap).doesNotContainKey(statementPtr);
+    assertWithMessage("other connections' statements").that(statementsMap).hasSize(otherStatements);
+  }
+
   @Test
   public void error_resultsInSpecificExceptionWithCause() {
     try {
@@ -214,6 +232,39 @@ public class ShadowSQLiteConnectionTest {
     statement2.execute();
   }
 
+  @Test
+  public void writeAheadLogging_readerRunsWhileWriterHoldsTransaction() throws Exception {
+    database.enableWriteAheadLogging();
+    database.execSQL("insert into routine(name) values ('Hand press 1')");
+
+    database.beginTransaction();
+    try {
+      database.execSQL("insert into routine(name) values ('Hand press 2')");
+      ExecutorService reader = Executors.newSingleThreadExecutor();
+      try {
+        // Reads on another connection see the last committed state, without waiting for the
+        // writer's transaction.
+        Future<Long> count =
+            reader.submit(() -> DatabaseUtils.queryNumEntries(database, "routine"));
+        assertThat(count.get(10, SECONDS)).isEqualTo(1L);
+      } finally {
+        reader.shutdown();
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+
+    assertThat(DatabaseUtils.queryNumEntries(database, "routine")).isEqualTo(2L);
+  }
+
+  @Test
+  public void closedConnection_throwsIllegalStateException() {
+    ShadowLegacySQLiteConnection.nativeClose(ptr, false);
+
+    assertThrows(IllegalStateException.class, () -> connections.getConnection(ptr));
+  }
+
   private SQLiteDatabase createDatabase(String filename) {
     databasePath = ApplicationProvider.getApplicationContext().getDatabasePath(filename);
     databasePath.getParentFile().mkdirs();
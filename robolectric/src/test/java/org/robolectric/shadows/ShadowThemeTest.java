@@ -1,5 +1,6 @@
 package org.robolectric.shadows;
 
+import static android.os.Build.VERSION_CODES.P;
 import static com.google.common.truth.Truth.assertThat;
 import static org.robolectric.Robolectric.buildActivity;
 
@@ -22,8 +23,12 @@ import org.junit.runner.RunWith;
 import org.robolectric.R;
 import org.robolectric.Robolectric;
 import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
 import org.robolectric.annotation.ResourcesMode;
+import org.robolectric.res.android.CppAssetManager2;
+import org.robolectric.res.android.Registries;
 import org.robolectric.shadows.testing.TestActivity;
+import org.robolectric.util.ReflectionHelpers;
 import org.xmlpull.v1.XmlPullParser;
 
 @RunWith(AndroidJUnit4.class)
@@ -320,6 +325,102 @@ public class ShadowThemeTest {
     }
   }
 
+  @Test
+  @Config(minSdk = P)
+  @ResourcesMode(ResourcesMode.Mode.BINARY)
+  public void applyStyle_sameStyleOnTwoThemes_sharesThemeState() {
+    Theme theme1 = resources.newTheme();
+    Theme theme2 = resources.newTheme();
+    theme1.applyStyle(R.style.StyleA, false);
+    theme2.applyStyle(R.style.StyleA, false);
+
+    assertThat(themeState(theme2)).isSameInstanceAs(themeState(theme1));
+  }
+
+  @Test
+  @Config(minSdk = P)
+  @ResourcesMode(ResourcesMode.Mode.BINARY)
+  public void applyStyle_onSharedTheme_doesNotAffectOtherTheme() {
+    Theme theme1 = resources.newTheme();
+    Theme theme2 = resources.newTheme();
+    theme1.applyStyle(R.style.StyleA, false);
+    theme2.applyStyle(R.style.StyleA, false);
+
+    theme1.applyStyle(R.style.StyleB, true);
+
+    assertThat(themeState(theme1)).isNotSameInstanceAs(themeState(theme2));
+    assertThat(getString1(theme1)).isEqualTo("string 1 from style B");
+    assertThat(getString1(theme2)).isEqualTo("string 1 from style A");
+  }
+
+  @Test
+  @Config(minSdk = P)
+  @ResourcesMode(ResourcesMode.Mode.BINARY)
+  public void setTo_onSharedTheme_doesNotAffectOtherTheme() {
+    Theme theme1 = resources.newTheme();
+    Theme theme2 = resources.newTheme();
+    Theme themeB = resources.newTheme();
+    theme1.applyStyle(R.style.StyleA, false);
+    theme2.applyStyle(R.style.StyleA, false);
+    themeB.applyStyle(R.style.StyleB, false);
+
+    theme1.setTo(themeB);
+
+    assertThat(getString1(theme1)).isEqualTo("string 1 from style B");
+    assertThat(getString1(theme2)).isEqualTo("string 1 from style A");
+    assertThat(getString1(themeB)).isEqualTo("string 1 from style B");
+  }
+
+  @Test
+  @Config(minSdk = P)
+  @ResourcesMode(ResourcesMode.Mode.BINARY)
+  public void setTo_onEmptyTheme_sharesThemeStateUntilModified() {
+    Theme theme1 = resources.newTheme();
+    Theme theme2 = resources.newTheme();
+    theme1.applyStyle(R.style.StyleA, false);
+
+    theme2.setTo(theme1);
+    assertThat(themeState(theme2)).isSameInstanceAs(themeState(theme1));
+
+    theme2.applyStyle(R.style.StyleB, true);
+    assertThat(getString1(theme1)).isEqualTo("string 1 from style A");
+    assertThat(getString1(theme2)).isEqualTo("string 1 from style B");
+  }
+
+  @Test
+  @Config(minSdk = P)
+  @ResourcesMode(ResourcesMode.Mode.BINARY)
+  public void clear_onSharedTheme_doesNotAffectOtherTheme() {
+    Theme theme1 = resources.newTheme();
+    Theme theme2 = resources.newTheme();
+    theme1.applyStyle(R.style.StyleA, false);
+    theme2.applyStyle(R.style.StyleA, false);
+
+    nativeTheme(theme1).Clear();
+
+    assertThat(getString1(theme1)).isNull();
+    assertThat(getString1(theme2)).isEqualTo("string 1 from style A");
+  }
+
+  private static String getString1(Theme theme) {
+    TypedArray typedArray = theme.obtainStyledAttributes(new int[] {R.attr.string1});
+    try {
+      return typedArray.getString(0);
+    } finally {
+      typedArray.recycle();
+    }
+  }
+
+  private static CppAssetManager2.Theme nativeTheme(Theme theme) {
+    Object themeImpl = ReflectionHelpers.getField(theme, "mThemeImpl");
+    long themePtr = ReflectionHelpers.getField(themeImpl, "mTheme");
+    return Registries.NATIVE_THEME9_REGISTRY.getNativeObject(themePtr);
+  }
+
+  private static Object themeState(Theme theme) {
+    return ReflectionHelpers.getField(nativeTheme(theme), "packages_");
+  }
+
   private XmlResourceParser getFirstElementAttrSet(int resId) throws Exception {
     XmlResourceParser xml = resources.getXml(resId);
     assertThat(xml.next()).isEqualTo(XmlPullParser.START_DOCUMENT);
@@ -1,16 +1,23 @@
 package org.robolectric.internal.bytecode;
 
 import static java.lang.invoke.MethodType.methodType;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.collect.Iterables;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Objects;
+import javax.annotation.Nullable;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.ConstantDynamic;
@@ -38,6 +45,7 @@ import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.tree.VarInsnNode;
+import org.robolectric.util.Logger;
 import org.robolectric.util.PerfStatsCollector;
 
 /**
@@ -53,6 +61,7 @@ public class ClassInstrumentor {
   protected static final Type OBJECT_TYPE = Type.getType(Object.class);
   private static final ShadowImpl SHADOW_IMPL = new ShadowImpl();
   final Decorator decorator;
+  private volatile String fingerprint;
 
   static {
     String className = Type.getInternalName(InvokeDynamicSupport.class);
@@ -307,6 +316,7 @@ public class ClassInstrumentor {
         rewriteMethodBody(mutableClass, method);
       }
     } else {
+      boolean mayBeShadowed = mutableClass.config.mayBeShadowed(mutableClass.getName());
       for (MethodNode method : mutableClass.getMethods()) {
         rewriteMethodBody(mutableClass, method);
 
@@ -320,7 +330,11 @@ public class ClassInstrumentor {
             instrumentConstructor(mutableClass, method);
           }
         } else if (!isSyntheticAccessorMethod(method) && !Modifier.isAbstract(method.access)) {
-          instrumentNormalMethod(mutableClass, method);
+          if (mayBeShadowed || Modifier.isNative(method.access)) {
+            instrumentNormalMethod(mutableClass, method);
+          } else {
+            addDirectMethod(mutableClass, method);
+          }
         }
       }
     }
@@ -567,6 +581,19 @@ public class ClassInstrumentor {
     mutableClass.addMethod(delegatorMethodNode);
   }
 
+  /**
+   * Leaves a method that no shadow can apply to as it is, apart from removing its {@code final}
+   * modifier like {@link #instrumentNormalMethod} does, and adds a private {@code
+   * $$robo$$methodName} method that calls it non-virtually, for {@link
+   * org.robolectric.util.reflector.Direct} and {@link org.robolectric.shadow.api.Shadow#directlyOn}
+   * callers.
+   */
+  protected void addDirectMethod(MutableClass mutableClass, MethodNode method) {
+    method.access &= ~Opcodes.ACC_FINAL;
+    mutableClass.addMethod(
+        redirectorMethod(mutableClass, method, directMethodName(mutableClass, method.name)));
+  }
+
   /**
    * Creates native stub which returns the default return value.
    *
@@ -789,6 +816,56 @@ public class ClassInstrumentor {
     return Modifier.isStatic(m.access) ? Opcodes.H_INVOKESTATIC : Opcodes.H_INVOKESPECIAL;
   }
 
+  /**
+   * Returns a digest of the bytecode of this instrumentor and its decorator, which identifies the
+   * output it produces for a given input class and configuration. Returns null if the bytecode
+   * can't be located, in which case instrumented output should not be reused.
+   */
+  @Nullable
+  public String fingerprint() {
+    String result = fingerprint;
+    if (result != null) {
+      return result.isEmpty() ? null : result;
+    }
+
+    List<Class<?>> classes = new ArrayList<>();
+    for (Class<?> c = getClass(); c != Object.class; c = c.getSuperclass()) {
+      classes.add(c);
+    }
+    classes.add(decorator.getClass());
+    classes.add(MutableClass.class);
+    classes.add(InstrumentingClassWriter.class);
+    classes.add(RobolectricGeneratorAdapter.class);
+    classes.add(TypeMapper.class);
+
+    Hasher hasher = Hashing.sha256().newHasher().putInt(getAndroidJarSDKVersion());
+    result = "";
+    try {
+      for (Class<?> clazz : classes) {
+        hasher.putString(clazz.getName(), UTF_8).putBytes(classFileBytes(clazz));
+      }
+      result = hasher.hash().toString();
+    } catch (IOException e) {
+      Logger.info("Unable to fingerprint %s: %s", getClass().getName(), e.getMessage());
+    }
+    fingerprint = result;
+    return result.isEmpty() ? null : result;
+  }
+
+  private static byte[] classFileBytes(Class<?> clazz) throws IOException {
+    String resourceName = clazz.getName().replace('.', '/') + ".class";
+    ClassLoader classLoader = clazz.getClassLoader();
+    try (InputStream in =
+        classLoader == null
+            ? ClassLoader.getSystemResourceAsStream(resourceName)
+            : classLoader.getResourceAsStream(resourceName)) {
+      if (in == null) {
+        throw new IOException(resourceName + " not found");
+      }
+      return in.readAllBytes();
+    }
+  }
+
   // implemented in DirectClassInstrumentor
   public void setAndroidJarSDKVersion(int androidJarSDKVersion) {}
 
@@ -0,0 +1,37 @@
+package org.robolectric.internal.bytecode;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
+
+/**
+ * The parts of a class header that instrumenting other classes depends on: its access flags,
+ * superclass and interfaces. This is much smaller than a {@link org.objectweb.asm.tree.ClassNode},
+ * and is read from the header without visiting fields or methods.
+ */
+final class ClassMetadata {
+  // Type names are repeated across many classes, so share a single copy of each.
+  private static final Interner<String> NAMES = Interners.newWeakInterner();
+
+  final int access;
+  @Nullable final String superName;
+  final String[] interfaces;
+
+  private ClassMetadata(int access, @Nullable String superName, String[] interfaces) {
+    this.access = access;
+    this.superName = superName;
+    this.interfaces = interfaces;
+  }
+
+  static ClassMetadata fromClassBytes(byte[] classBytes) {
+    ClassReader classReader = new ClassReader(classBytes);
+    String superName = classReader.getSuperName();
+    String[] interfaces = classReader.getInterfaces();
+    for (int i = 0; i < interfaces.length; i++) {
+      interfaces[i] = NAMES.intern(interfaces[i]);
+    }
+    return new ClassMetadata(
+        classReader.getAccess(), superName == null ? null : NAMES.intern(superName), interfaces);
+  }
+}
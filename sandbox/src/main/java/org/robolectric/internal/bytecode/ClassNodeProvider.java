@@ -1,30 +1,61 @@
 package org.robolectric.internal.bytecode;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.net.URL;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.tree.ClassNode;
+import javax.annotation.Nullable;
+import org.robolectric.util.PerfStatsCollector;
 
+/**
+ * Provides {@link ClassMetadata} for the classes that instrumentation consults, such as when
+ * computing stack map frames.
+ *
+ * <p>Metadata for classes with a known location (see {@link #getClassUrl}) is shared by every
+ * provider in the process, so sandboxes using the same android-all jar only read each class header
+ * once. Shared metadata is softly referenced and is dropped under memory pressure.
+ */
 public abstract class ClassNodeProvider {
-  private final Map<String, ClassNode> classNodes = new ConcurrentHashMap<>();
+  private static final Cache<String, ClassMetadata> sharedClassMetadata =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private final Map<String, ClassMetadata> classMetadata = new ConcurrentHashMap<>();
 
   protected abstract byte[] getClassBytes(String className) throws ClassNotFoundException;
 
-  ClassNode getClassNode(String internalClassName) throws ClassNotFoundException {
-    ClassNode classNode = classNodes.get(internalClassName);
-    if (classNode == null) {
-      classNode = createClassNode(internalClassName);
-      classNodes.put(internalClassName, classNode);
+  /**
+   * Returns the location of the bytes returned by {@link #getClassBytes}, or null if unknown.
+   * Classes at the same location must have the same bytes in every provider that returns it.
+   */
+  @Nullable
+  protected URL getClassUrl(String internalClassName) {
+    return null;
+  }
+
+  ClassMetadata getClassMetadata(String internalClassName) throws ClassNotFoundException {
+    ClassMetadata metadata = classMetadata.get(internalClassName);
+    if (metadata == null) {
+      metadata = loadClassMetadata(internalClassName);
+      classMetadata.put(internalClassName, metadata);
     }
-    return classNode;
+    return metadata;
   }
 
-  private ClassNode createClassNode(String internalClassName) throws ClassNotFoundException {
-    byte[] byteCode = getClassBytes(internalClassName);
-    ClassReader classReader = new ClassReader(byteCode);
-    ClassNode classNode = new ClassNode();
-    classReader.accept(
-        classNode, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-    return classNode;
+  private ClassMetadata loadClassMetadata(String internalClassName) throws ClassNotFoundException {
+    URL classUrl = getClassUrl(internalClassName);
+    if (classUrl == null) {
+      return ClassMetadata.fromClassBytes(getClassBytes(internalClassName));
+    }
+    String key = classUrl.toString();
+    ClassMetadata metadata = sharedClassMetadata.getIfPresent(key);
+    if (metadata == null) {
+      PerfStatsCollector.getInstance().incrementCount("ClassNodeProvider.sharedMetadata.miss");
+      metadata = ClassMetadata.fromClassBytes(getClassBytes(internalClassName));
+      sharedClassMetadata.put(key, metadata);
+    } else {
+      PerfStatsCollector.getInstance().incrementCount("ClassNodeProvider.sharedMetadata.hit");
+    }
+    return metadata;
   }
 }
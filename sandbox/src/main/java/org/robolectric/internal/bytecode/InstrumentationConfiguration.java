@@ -1,8 +1,13 @@
 package org.robolectric.internal.bytecode;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -63,7 +68,10 @@ public class InstrumentationConfiguration {
   private final Set<String> classesToNotAcquire;
   private final Set<String> packagesToNotAcquire;
   private final Set<String> packagesToNotInstrument;
+  private final boolean minimalInstrumentation;
+  private final Set<String> shadowedClasses;
   private int cachedHashCode;
+  private String cachedFingerprint;
 
   private final TypeMapper typeMapper;
   private final Set<MethodRef> methodsToIntercept;
@@ -78,6 +86,32 @@ public class InstrumentationConfiguration {
       Collection<String> classesToNotInstrument,
       Collection<String> packagesToNotInstrument,
       String classesToNotInstrumentRegex) {
+    this(
+        classNameTranslations,
+        interceptedMethods,
+        instrumentedPackages,
+        instrumentedClasses,
+        classesToNotAcquire,
+        packagesToNotAcquire,
+        classesToNotInstrument,
+        packagesToNotInstrument,
+        classesToNotInstrumentRegex,
+        false,
+        Collections.emptySet());
+  }
+
+  protected InstrumentationConfiguration(
+      Map<String, String> classNameTranslations,
+      Collection<MethodRef> interceptedMethods,
+      Collection<String> instrumentedPackages,
+      Collection<String> instrumentedClasses,
+      Collection<String> classesToNotAcquire,
+      Collection<String> packagesToNotAcquire,
+      Collection<String> classesToNotInstrument,
+      Collection<String> packagesToNotInstrument,
+      String classesToNotInstrumentRegex,
+      boolean minimalInstrumentation,
+      Collection<String> shadowedClasses) {
     this.classNameTranslations = ImmutableMap.copyOf(classNameTranslations);
     this.interceptedMethods = ImmutableSet.copyOf(interceptedMethods);
     this.instrumentedPackages = ImmutableList.copyOf(instrumentedPackages);
@@ -89,6 +123,14 @@ public class InstrumentationConfiguration {
     this.classesToNotInstrumentRegex = classesToNotInstrumentRegex;
     this.classesToNotInstrumentPattern =
         classesToNotInstrumentRegex == null ? null : Pattern.compile(classesToNotInstrumentRegex);
+    this.minimalInstrumentation = minimalInstrumentation;
+    this.shadowedClasses =
+        minimalInstrumentation
+            ? ImmutableSet.copyOf(
+                shadowedClasses.stream()
+                    .map(InstrumentationConfiguration::canonicalize)
+                    .collect(Collectors.toList()))
+            : ImmutableSet.of();
     this.cachedHashCode = 0;
 
     this.typeMapper = new TypeMapper(classNameTranslations());
@@ -115,6 +157,41 @@ public class InstrumentationConfiguration {
             "org.junit.runner.RunWith"); // Don't instrument test classes.
   }
 
+  /**
+   * Returns true if only the methods of shadowed classes are redirected to the {@link
+   * ClassHandler}.
+   *
+   * <p>In this mode, the methods of instrumented classes that have no shadow keep their original
+   * bytecode, apart from calls to intercepted methods, so the JIT compiles them like any other
+   * code. Native methods and constructors are still instrumented. Shadows of classes other than
+   * those returned by {@link #getShadowedClasses()} can only be applied if the sandbox hasn't
+   * loaded the class yet, so this mode is meant for suites with a fixed set of shadows.
+   */
+  public boolean isMinimalInstrumentation() {
+    return minimalInstrumentation;
+  }
+
+  /** The canonical names of the classes that shadows may apply to in minimal instrumentation. */
+  public Set<String> getShadowedClasses() {
+    return shadowedClasses;
+  }
+
+  /**
+   * Determines if the methods of a class need to be redirected to the {@link ClassHandler}, which
+   * is always the case unless {@link #isMinimalInstrumentation() minimal instrumentation} is
+   * enabled.
+   *
+   * @param className The fully-qualified binary or canonical class name.
+   */
+  public boolean mayBeShadowed(String className) {
+    return !minimalInstrumentation || shadowedClasses.contains(canonicalize(className));
+  }
+
+  /** Shadow providers use canonical names, while shadow pickers and classes use binary names. */
+  private static String canonicalize(String className) {
+    return className.replace('$', '.');
+  }
+
   private boolean classMatchesExclusionRegex(String className) {
     return classesToNotInstrumentPattern != null
         && classesToNotInstrumentPattern.matcher(className).matches();
@@ -219,6 +296,8 @@ public class InstrumentationConfiguration {
     if (!instrumentedPackages.equals(that.instrumentedPackages)) return false;
     if (!instrumentedClasses.equals(that.instrumentedClasses)) return false;
     if (!interceptedMethods.equals(that.interceptedMethods)) return false;
+    if (minimalInstrumentation != that.minimalInstrumentation) return false;
+    if (!shadowedClasses.equals(that.shadowedClasses)) return false;
 
     return true;
   }
@@ -234,10 +313,59 @@ public class InstrumentationConfiguration {
     result = 31 * result + classNameTranslations.hashCode();
     result = 31 * result + interceptedMethods.hashCode();
     result = 31 * result + classesToNotAcquire.hashCode();
+    result = 31 * result + Boolean.hashCode(minimalInstrumentation);
+    result = 31 * result + shadowedClasses.hashCode();
     cachedHashCode = result;
     return result;
   }
 
+  /**
+   * Returns a stable digest of every rule in this configuration.
+   *
+   * <p>Unlike {@link #hashCode()}, the fingerprint covers all of the configuration but the shadowed
+   * classes, see {@link #mayBeShadowed}, and does not depend on iteration order, so it is suitable
+   * for identifying instrumented output across JVM runs.
+   */
+  public String fingerprint() {
+    if (cachedFingerprint != null) {
+      return cachedFingerprint;
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    putSorted(hasher, "instrumentedPackages", instrumentedPackages);
+    putSorted(hasher, "instrumentedClasses", instrumentedClasses);
+    putSorted(hasher, "classesToNotInstrument", classesToNotInstrument);
+    putSorted(hasher, "packagesToNotInstrument", packagesToNotInstrument);
+    putSorted(hasher, "classesToNotAcquire", classesToNotAcquire);
+    putSorted(hasher, "packagesToNotAcquire", packagesToNotAcquire);
+    List<String> translations = new ArrayList<>();
+    for (Map.Entry<String, String> entry : classNameTranslations.entrySet()) {
+      translations.add(entry.getKey() + "=" + entry.getValue());
+    }
+    putSorted(hasher, "classNameTranslations", translations);
+    List<String> methods = new ArrayList<>();
+    for (MethodRef methodRef : interceptedMethods) {
+      methods.add(methodRef.className + "#" + methodRef.methodName);
+    }
+    putSorted(hasher, "interceptedMethods", methods);
+    hasher.putString(Strings.nullToEmpty(classesToNotInstrumentRegex), UTF_8);
+    // The shadowed classes aren't included, as they change when classes are shadowed late, see
+    // SandboxClassLoader#addShadowedClass. Whether a class may be shadowed only affects the
+    // instrumentation of that class, so InstrumentedClassCache keys each class by it instead.
+    hasher.putBoolean(minimalInstrumentation);
+    cachedFingerprint = hasher.hash().toString();
+    return cachedFingerprint;
+  }
+
+  private static void putSorted(Hasher hasher, String name, Collection<String> values) {
+    List<String> sorted = new ArrayList<>(values);
+    Collections.sort(sorted);
+    hasher.putString(name, UTF_8).putInt(sorted.size());
+    for (String value : sorted) {
+      hasher.putString(value, UTF_8).putByte((byte) 0);
+    }
+  }
+
   public String remapParamType(String desc) {
     return typeMapper.remapParamType(desc);
   }
@@ -280,6 +408,8 @@ public class InstrumentationConfiguration {
     public final Collection<String> classesToNotInstrument = new HashSet<>();
     public final Collection<String> packagesToNotInstrument = new HashSet<>();
     public String classesToNotInstrumentRegex;
+    public boolean minimalInstrumentation;
+    public final Collection<String> shadowedClasses = new HashSet<>();
 
     public Builder() {}
 
@@ -293,6 +423,8 @@ public class InstrumentationConfiguration {
       classesToNotInstrument.addAll(classLoaderConfig.classesToNotInstrument);
       packagesToNotInstrument.addAll(classLoaderConfig.packagesToNotInstrument);
       classesToNotInstrumentRegex = classLoaderConfig.classesToNotInstrumentRegex;
+      minimalInstrumentation = classLoaderConfig.minimalInstrumentation;
+      shadowedClasses.addAll(classLoaderConfig.shadowedClasses);
     }
 
     public Builder doNotAcquireClass(Class<?> clazz) {
@@ -345,6 +477,26 @@ public class InstrumentationConfiguration {
       return this;
     }
 
+    /** See {@link InstrumentationConfiguration#isMinimalInstrumentation()}. */
+    public Builder setMinimalInstrumentation(boolean minimalInstrumentation) {
+      this.minimalInstrumentation = minimalInstrumentation;
+      return this;
+    }
+
+    /**
+     * Adds a class that shadows may apply to, which is fully instrumented even with {@link
+     * #setMinimalInstrumentation minimal instrumentation}.
+     */
+    public Builder addShadowedClass(String className) {
+      shadowedClasses.add(className);
+      return this;
+    }
+
+    public Builder addShadowedClasses(Collection<String> classNames) {
+      shadowedClasses.addAll(classNames);
+      return this;
+    }
+
     public InstrumentationConfiguration build() {
       // Remove redundant packages, e.g. remove 'android.os' if 'android.' is present.
       List<String> minimalPackages = new ArrayList<>(instrumentedPackages);
@@ -378,7 +530,9 @@ public class InstrumentationConfiguration {
           packagesToNotAcquire,
           classesToNotInstrument,
           packagesToNotInstrument,
-          classesToNotInstrumentRegex);
+          classesToNotInstrumentRegex,
+          minimalInstrumentation,
+          shadowedClasses);
     }
   }
 }
@@ -0,0 +1,370 @@
+package org.robolectric.internal.bytecode;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+import org.robolectric.util.Logger;
+import org.robolectric.util.PerfStatsCollector;
+
+/**
+ * A content-addressed, on-disk cache of instrumented class bytes that survives across JVM runs.
+ *
+ * <p>Entries are keyed by a digest of the original class bytes, the {@link
+ * InstrumentationConfiguration#fingerprint() configuration fingerprint}, whether the class {@link
+ * InstrumentationConfiguration#mayBeShadowed may be shadowed} and the bytecode of the {@link
+ * ClassInstrumentor} and {@link ClassInstrumentor.Decorator} doing the work, so any change to one
+ * of them results in a miss rather than stale output.
+ *
+ * <p>Computing stack map frames consults the hierarchy of other classes (see {@link
+ * InstrumentingClassWriter#getCommonSuperClass}). Each entry records the classes that were
+ * consulted along with a digest of their hierarchy information, and an entry is only used if that
+ * information is unchanged when it is read back.
+ *
+ * <p>The cache is disabled unless the {@code robolectric.instrumentedClassCacheDirectory} system
+ * property is set. The total size of the directory is bounded by {@code
+ * robolectric.instrumentedClassCacheMaxBytes}; once it is exceeded, the least recently used entries
+ * are deleted. The directory may safely be shared by concurrently running JVMs.
+ */
+public class InstrumentedClassCache {
+  static final String CACHE_DIRECTORY_PROPERTY = "robolectric.instrumentedClassCacheDirectory";
+  static final String CACHE_MAX_BYTES_PROPERTY = "robolectric.instrumentedClassCacheMaxBytes";
+
+  private static final long DEFAULT_MAX_BYTES = 1024L * 1024 * 1024;
+
+  /** Bump this whenever the entry layout or the key derivation changes. */
+  private static final int FORMAT_VERSION = 2;
+
+  private static final int MAGIC = 0x524f424f; // "ROBO"
+  private static final String ENTRY_SUFFIX = ".robo";
+
+  private static final Map<Path, InstrumentedClassCache> INSTANCES = new ConcurrentHashMap<>();
+
+  private final Path directory;
+  private final long maxBytes;
+  private final AtomicLong approximateSize = new AtomicLong(-1);
+
+  /**
+   * Returns the cache configured by system properties, or null if the cache has not been enabled.
+   */
+  @Nullable
+  public static InstrumentedClassCache fromSystemProperties() {
+    String directory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+    if (Strings.isNullOrEmpty(directory)) {
+      return null;
+    }
+    long maxBytes = DEFAULT_MAX_BYTES;
+    String maxBytesValue = System.getProperty(CACHE_MAX_BYTES_PROPERTY);
+    if (!Strings.isNullOrEmpty(maxBytesValue)) {
+      try {
+        maxBytes = Long.parseLong(maxBytesValue.trim());
+      } catch (NumberFormatException e) {
+        Logger.warn("Ignoring invalid %s value '%s'", CACHE_MAX_BYTES_PROPERTY, maxBytesValue);
+      }
+    }
+    return forDirectory(Paths.get(directory), maxBytes);
+  }
+
+  /** Returns the cache for the given directory, which is shared by all class loaders in the JVM. */
+  public static InstrumentedClassCache forDirectory(Path directory, long maxBytes) {
+    Path key = directory.toAbsolutePath().normalize();
+    return INSTANCES.computeIfAbsent(key, dir -> new InstrumentedClassCache(dir, maxBytes));
+  }
+
+  @VisibleForTesting
+  InstrumentedClassCache(Path directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the instrumented bytes for the given class, reading them from the cache if a valid
+   * entry exists, and otherwise instrumenting the class and storing the result.
+   */
+  public byte[] instrument(
+      ClassDetails classDetails,
+      InstrumentationConfiguration config,
+      ClassInstrumentor classInstrumentor,
+      ClassNodeProvider classNodeProvider) {
+    PerfStatsCollector perfStats = PerfStatsCollector.getInstance();
+    String instrumentorFingerprint = classInstrumentor.fingerprint();
+    if (instrumentorFingerprint == null) {
+      return classInstrumentor.instrument(classDetails, config, classNodeProvider);
+    }
+
+    HashCode key =
+        Hashing.sha256()
+            .newHasher()
+            .putInt(FORMAT_VERSION)
+            .putString(instrumentorFingerprint, UTF_8)
+            .putString(config.fingerprint(), UTF_8)
+            .putBoolean(config.mayBeShadowed(classDetails.getName()))
+            .putBytes(classDetails.getClassBytes())
+            .hash();
+    Path entry = entryPath(key);
+
+    byte[] cached =
+        perfStats.measure(
+            "read instrumented class cache", () -> read(entry, key, classNodeProvider));
+    if (cached != null) {
+      perfStats.incrementCount("InstrumentedClassCache.hit");
+      return cached;
+    }
+    perfStats.incrementCount("InstrumentedClassCache.miss");
+
+    RecordingClassNodeProvider recordingProvider =
+        new RecordingClassNodeProvider(classNodeProvider);
+    byte[] instrumented = classInstrumentor.instrument(classDetails, config, recordingProvider);
+    write(entry, key, recordingProvider.getConsultedClasses(), classNodeProvider, instrumented);
+    return instrumented;
+  }
+
+  @Nullable
+  private byte[] read(Path entry, HashCode key, ClassNodeProvider classNodeProvider) {
+    byte[] contents;
+    try {
+      contents = Files.readAllBytes(entry);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      Logger.debug("Unable to read instrumented class cache entry %s: %s", entry, e);
+      return null;
+    }
+
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        return discard(entry, "unknown format");
+      }
+      if (!Arrays.equals(readBytes(in), key.asBytes())) {
+        return discard(entry, "key mismatch");
+      }
+      int dependencyCount = in.readInt();
+      if (dependencyCount < 0 || dependencyCount > contents.length) {
+        return discard(entry, "truncated entry");
+      }
+      List<String> dependencies = new ArrayList<>(dependencyCount);
+      for (int i = 0; i < dependencyCount; i++) {
+        dependencies.add(in.readUTF());
+      }
+      byte[] dependencyDigest = readBytes(in);
+      byte[] classBytes = readBytes(in);
+      long checksum = in.readLong();
+      if (checksum(classBytes) != checksum) {
+        return discard(entry, "checksum mismatch");
+      }
+      if (!Arrays.equals(
+          dependencyDigest,
+          RecordingClassNodeProvider.hierarchyDigest(dependencies, classNodeProvider).asBytes())) {
+        // The class hierarchy changed since the entry was written; the frames may be stale.
+        return discard(entry, "hierarchy changed");
+      }
+      touch(entry);
+      return classBytes;
+    } catch (IOException | RuntimeException e) {
+      return discard(entry, e.toString());
+    }
+  }
+
+  private void write(
+      Path entry,
+      HashCode key,
+      Set<String> dependencies,
+      ClassNodeProvider classNodeProvider,
+      byte[] classBytes) {
+    ByteArrayOutputStream contents = new ByteArrayOutputStream(classBytes.length + 256);
+    try (DataOutputStream out = new DataOutputStream(contents)) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      writeBytes(out, key.asBytes());
+      out.writeInt(dependencies.size());
+      for (String dependency : dependencies) {
+        out.writeUTF(dependency);
+      }
+      writeBytes(
+          out,
+          RecordingClassNodeProvider.hierarchyDigest(dependencies, classNodeProvider).asBytes());
+      writeBytes(out, classBytes);
+      out.writeLong(checksum(classBytes));
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+
+    Path tempFile = null;
+    try {
+      Files.createDirectories(entry.getParent());
+      tempFile = Files.createTempFile(entry.getParent(), "tmp-", ".part");
+      Files.write(tempFile, contents.toByteArray());
+      try {
+        Files.move(tempFile, entry, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile, entry, StandardCopyOption.REPLACE_EXISTING);
+      }
+      tempFile = null;
+    } catch (FileAlreadyExistsException e) {
+      // Another JVM stored the same entry first.
+      return;
+    } catch (IOException e) {
+      Logger.debug("Unable to write instrumented class cache entry %s: %s", entry, e);
+      return;
+    } finally {
+      if (tempFile != null) {
+        deleteQuietly(tempFile);
+      }
+    }
+
+    if (addToSize(contents.size()) > maxBytes) {
+      evict();
+    }
+  }
+
+  private Path entryPath(HashCode key) {
+    String name = key.toString();
+    return directory.resolve(name.substring(0, 2)).resolve(name.substring(2) + ENTRY_SUFFIX);
+  }
+
+  private long addToSize(long delta) {
+    long current = approximateSize.get();
+    if (current < 0) {
+      // First write in this JVM; start from the actual size of the directory.
+      approximateSize.compareAndSet(
+          current, measureEntries().stream().mapToLong(e -> e.size).sum());
+    }
+    return approximateSize.addAndGet(delta);
+  }
+
+  /**
+   * Deletes the least recently used entries until the cache is below 80% of its budget, so that
+   * eviction doesn't run on every write once the budget is reached.
+   */
+  @VisibleForTesting
+  synchronized void evict() {
+    List<EntryInfo> entries = measureEntries();
+    long size = entries.stream().mapToLong(e -> e.size).sum();
+    long target = maxBytes / 10 * 8;
+    if (size > maxBytes) {
+      entries.sort(Comparator.comparing((EntryInfo e) -> e.lastUsed));
+      for (EntryInfo entry : entries) {
+        if (size <= target) {
+          break;
+        }
+        if (deleteQuietly(entry.path)) {
+          size -= entry.size;
+          PerfStatsCollector.getInstance().incrementCount("InstrumentedClassCache.evicted");
+        }
+      }
+    }
+    approximateSize.set(size);
+  }
+
+  private List<EntryInfo> measureEntries() {
+    if (!Files.isDirectory(directory)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> paths = Files.walk(directory, 2)) {
+      return paths
+          .filter(path -> path.getFileName().toString().endsWith(ENTRY_SUFFIX))
+          .map(EntryInfo::of)
+          .filter(e -> e != null)
+          .collect(Collectors.toCollection(ArrayList::new));
+    } catch (IOException | RuntimeException e) {
+      Logger.debug("Unable to measure instrumented class cache %s: %s", directory, e);
+      return new ArrayList<>();
+    }
+  }
+
+  @Nullable
+  private byte[] discard(Path entry, String reason) {
+    Logger.debug("Discarding instrumented class cache entry %s: %s", entry, reason);
+    PerfStatsCollector.getInstance().incrementCount("InstrumentedClassCache.invalid");
+    deleteQuietly(entry);
+    return null;
+  }
+
+  private static void touch(Path entry) {
+    try {
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      // Only affects eviction order.
+    }
+  }
+
+  private static boolean deleteQuietly(Path path) {
+    try {
+      return Files.deleteIfExists(path);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static long checksum(byte[] bytes) {
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes);
+    return crc32.getValue();
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > in.available()) {
+      throw new IOException("truncated entry");
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  private static class EntryInfo {
+    final Path path;
+    final long size;
+    final FileTime lastUsed;
+
+    EntryInfo(Path path, long size, FileTime lastUsed) {
+      this.path = path;
+      this.size = size;
+      this.lastUsed = lastUsed;
+    }
+
+    @Nullable
+    static EntryInfo of(Path path) {
+      try {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return new EntryInfo(path, attributes.size(), attributes.lastModifiedTime());
+      } catch (IOException e) {
+        // Deleted concurrently.
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.robolectric.internal.bytecode;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Strings;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A {@link ClassNodeProvider} that records which classes are consulted while instrumenting a single
+ * class.
+ *
+ * <p>Instrumented output depends on more than the bytes of the class itself: computing stack map
+ * frames looks up the hierarchy of other classes (see {@link
+ * InstrumentingClassWriter#getCommonSuperClass}). Anything that reuses instrumented output must
+ * check that the hierarchy of the consulted classes hasn't changed, using {@link #hierarchyDigest}.
+ */
+public class RecordingClassNodeProvider extends ClassNodeProvider {
+  private static final String MISSING_CLASS = "<missing>";
+
+  private final ClassNodeProvider delegate;
+  private final Set<String> consultedClasses = new TreeSet<>();
+
+  public RecordingClassNodeProvider(ClassNodeProvider delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  protected byte[] getClassBytes(String internalClassName) throws ClassNotFoundException {
+    return delegate.getClassBytes(internalClassName);
+  }
+
+  @Override
+  ClassMetadata getClassMetadata(String internalClassName) throws ClassNotFoundException {
+    synchronized (consultedClasses) {
+      consultedClasses.add(internalClassName);
+    }
+    return delegate.getClassMetadata(internalClassName);
+  }
+
+  /** Returns the internal names of the consulted classes, in sorted order. */
+  public Set<String> getConsultedClasses() {
+    synchronized (consultedClasses) {
+      return new TreeSet<>(consultedClasses);
+    }
+  }
+
+  /**
+   * Digests the parts of each class that affect frame computation. Classes that can't be found are
+   * recorded too, since they cause {@link InstrumentingClassWriter} to fall back to {@code
+   * java/lang/Object}.
+   */
+  public static HashCode hierarchyDigest(
+      Iterable<String> internalClassNames, ClassNodeProvider classNodeProvider) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (String internalClassName : internalClassNames) {
+      hasher.putString(internalClassName, UTF_8).putByte((byte) 0);
+      ClassMetadata metadata;
+      try {
+        metadata = classNodeProvider.getClassMetadata(internalClassName);
+      } catch (ClassNotFoundException e) {
+        hasher.putString(MISSING_CLASS, UTF_8).putByte((byte) 0);
+        continue;
+      }
+      hasher.putInt(metadata.access);
+      hasher.putString(Strings.nullToEmpty(metadata.superName), UTF_8).putByte((byte) 0);
+      for (String itf : metadata.interfaces) {
+        hasher.putString(itf, UTF_8).putByte((byte) 0);
+      }
+      hasher.putByte((byte) 1);
+    }
+    return hasher.hash();
+  }
+}
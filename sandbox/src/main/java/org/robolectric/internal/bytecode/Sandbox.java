@@ -65,11 +65,33 @@ public class Sandbox {
     this.shadowMap = shadowMap;
     Set<String> invalidatedClasses = new HashSet<>();
     invalidatedClasses.addAll(shadowMap.getInvalidatedClasses(oldShadowMap));
+    checkShadowsCanApply(shadowMap, invalidatedClasses);
     invalidatedClasses.addAll(getModeInvalidatedClasses());
     getShadowInvalidator().invalidateClasses(invalidatedClasses);
     clearModeInvalidatedClasses();
   }
 
+  /**
+   * With minimal instrumentation, classes that weren't expected to be shadowed when the sandbox was
+   * created have no redirectors for their methods, so new shadows for them would be silently
+   * ignored. Such classes are fully instrumented instead if they haven't been loaded yet.
+   */
+  private void checkShadowsCanApply(ShadowMap shadowMap, Set<String> invalidatedClasses) {
+    if (!sandboxClassLoader.getInstrumentationConfiguration().isMinimalInstrumentation()) {
+      return;
+    }
+    for (String className : invalidatedClasses) {
+      if (shadowMap.hasOverriddenShadow(className)
+          && !sandboxClassLoader.addShadowedClass(className)) {
+        throw new IllegalStateException(
+            "Can't shadow "
+                + className
+                + " in a sandbox with minimal instrumentation, since it was already loaded and"
+                + " wasn't one of the shadowed classes of its InstrumentationConfiguration");
+      }
+    }
+  }
+
   protected Set<String> getModeInvalidatedClasses() {
     return Collections.emptySet();
   }
@@ -36,11 +36,15 @@ public class SandboxClassLoader extends URLClassLoader implements ClassTracker {
 
   private static final AtomicInteger DUMP_CLASSES_COUNTER = new AtomicInteger();
 
-  private final InstrumentationConfiguration config;
+  // Only replaced to add shadowed classes, see addShadowedClass().
+  private volatile InstrumentationConfiguration config;
+  // Guards updates of config, which may happen for different classes at once.
+  private final Object configLock = new Object();
   private final ResourceProvider resourceProvider;
   private final ClassInstrumentor classInstrumentor;
   private final ClassNodeProvider classNodeProvider;
   private final String dumpClassesDirectory;
+  private final InstrumentedClassCache instrumentedClassCache;
   private boolean isClosed;
 
   /** Constructor for use by tests. */
@@ -78,8 +82,43 @@ public class SandboxClassLoader extends URLClassLoader implements ClassTracker {
           protected byte[] getClassBytes(String internalClassName) throws ClassNotFoundException {
             return getByteCode(internalClassName);
           }
+
+          @Override
+          protected URL getClassUrl(String internalClassName) {
+            // Classes the resource provider finds (e.g. in android-all jars) are read from this
+            // location, see getClassBytesAsStreamPreferringLocalUrls().
+            return resourceProvider.getResource(internalClassName + ".class");
+          }
         };
     this.dumpClassesDirectory = System.getProperty(DUMP_CLASSES_PROPERTY, "");
+    this.instrumentedClassCache = InstrumentedClassCache.fromSystemProperties();
+  }
+
+  InstrumentationConfiguration getInstrumentationConfiguration() {
+    return config;
+  }
+
+  /**
+   * Lets the shadows of a class apply in {@link
+   * InstrumentationConfiguration#isMinimalInstrumentation() minimal instrumentation}, by fully
+   * instrumenting the class when it gets loaded.
+   *
+   * @return false if the class was already loaded without full instrumentation
+   */
+  boolean addShadowedClass(String className) {
+    synchronized (getClassLoadingLock(className)) {
+      if (config.mayBeShadowed(className)) {
+        return true;
+      }
+      if (isClassLoaded(className)) {
+        return false;
+      }
+      synchronized (configLock) {
+        config =
+            new InstrumentationConfiguration.Builder(config).addShadowedClass(className).build();
+      }
+      return true;
+    }
   }
 
   private static URL[] getClassPathUrls(ClassLoader classloader) {
@@ -213,13 +252,21 @@ public class SandboxClassLoader extends URLClassLoader implements ClassTracker {
     byte[] classBytes = getByteCode(className);
     ClassDetails classDetails = new ClassDetails(classBytes);
     if (config.shouldInstrument(classDetails)) {
-      classBytes = classInstrumentor.instrument(classDetails, config, classNodeProvider);
+      classBytes = instrumentClass(classDetails);
       maybeDumpClassBytes(classDetails, classBytes);
     }
     ensurePackage(className);
     return defineClass(className, classBytes, 0, classBytes.length);
   }
 
+  private byte[] instrumentClass(ClassDetails classDetails) {
+    if (instrumentedClassCache != null) {
+      return instrumentedClassCache.instrument(
+          classDetails, config, classInstrumentor, classNodeProvider);
+    }
+    return classInstrumentor.instrument(classDetails, config, classNodeProvider);
+  }
+
   private void maybeDumpClassBytes(ClassDetails classDetails, byte[] classBytes) {
     if (!Strings.isNullOrEmpty(dumpClassesDirectory)) {
       String outputClassName =
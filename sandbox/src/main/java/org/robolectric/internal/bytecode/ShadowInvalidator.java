@@ -1,43 +1,54 @@
 package org.robolectric.internal.bytecode;
 
 import java.lang.invoke.SwitchPoint;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds a {@link SwitchPoint} per class that guards the call sites linked against that class's
+ * shadows. Invalidating a class forces its call sites to be relinked.
+ *
+ * <p>Call site bootstrapping looks up switch points from every thread that loads classes, so
+ * lookups of existing switch points don't lock.
+ */
 public class ShadowInvalidator {
-  private static final SwitchPoint DUMMY = new SwitchPoint();
-
-  static {
-    SwitchPoint.invalidateAll(new SwitchPoint[] {DUMMY});
-  }
-
-  private final Map<String, SwitchPoint> switchPoints;
+  private final ConcurrentMap<String, SwitchPoint> switchPoints;
 
   public ShadowInvalidator() {
-    this.switchPoints = new HashMap<>();
+    this.switchPoints = new ConcurrentHashMap<>();
   }
 
   public SwitchPoint getSwitchPoint(Class<?> caller) {
     return getSwitchPoint(caller.getName());
   }
 
-  public synchronized SwitchPoint getSwitchPoint(String className) {
+  public SwitchPoint getSwitchPoint(String className) {
     SwitchPoint switchPoint = switchPoints.get(className);
-    if (switchPoint == null) switchPoints.put(className, switchPoint = new SwitchPoint());
+    if (switchPoint == null) {
+      switchPoint = switchPoints.computeIfAbsent(className, unused -> new SwitchPoint());
+    }
     return switchPoint;
   }
 
-  public synchronized void invalidateClasses(Collection<String> classNames) {
+  /**
+   * Invalidates the switch points of the given classes. Later calls to {@link #getSwitchPoint}
+   * return fresh switch points for them.
+   */
+  public void invalidateClasses(Collection<String> classNames) {
     if (classNames.isEmpty()) return;
-    SwitchPoint[] points = new SwitchPoint[classNames.size()];
-    int i = 0;
+    List<SwitchPoint> points = new ArrayList<>(classNames.size());
     for (String className : classNames) {
-      SwitchPoint switchPoint = switchPoints.put(className, null);
-      if (switchPoint == null) switchPoint = DUMMY;
-      points[i++] = switchPoint;
+      SwitchPoint switchPoint = switchPoints.remove(className);
+      if (switchPoint != null) {
+        points.add(switchPoint);
+      }
     }
 
-    SwitchPoint.invalidateAll(points);
+    if (!points.isEmpty()) {
+      SwitchPoint.invalidateAll(points.toArray(new SwitchPoint[0]));
+    }
   }
 }
@@ -4,6 +4,7 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collections;
 import java.util.HashMap;
@@ -67,6 +68,19 @@ public class ShadowMap {
     this.shadowPickers = ImmutableMap.copyOf(shadowPickers);
   }
 
+  /** Returns the names of the classes that this map has shadows or shadow pickers for. */
+  public ImmutableSet<String> getShadowedClassNames() {
+    return ImmutableSet.<String>builder()
+        .addAll(defaultShadows.keySet())
+        .addAll(overriddenShadows.keySet())
+        .addAll(shadowPickers.keySet())
+        .build();
+  }
+
+  boolean hasOverriddenShadow(String className) {
+    return overriddenShadows.containsKey(className);
+  }
+
   public boolean hasShadowPicker(MutableClass mutableClass) {
     return shadowPickers.containsKey(mutableClass.getName());
   }
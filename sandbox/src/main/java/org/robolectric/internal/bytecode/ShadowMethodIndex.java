@@ -0,0 +1,156 @@
+package org.robolectric.internal.bytecode;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.objectweb.asm.Type;
+import org.robolectric.annotation.ClassName;
+import org.robolectric.annotation.Filter;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.util.PerfStatsCollector;
+
+/**
+ * Indexes the methods declared on a shadow class by the name and parameter types of the shadowed
+ * methods they implement or filter, taking {@link Implementation#methodName()}, {@link
+ * Filter#methodName()} and {@link ClassName} parameters into account.
+ *
+ * <p>Methods are identified by their name and descriptor rather than by {@link Method}, so an index
+ * doesn't depend on the class loader of the shadow class and is shared by every sandbox that loads
+ * it. Whether a candidate applies to the sandbox's SDK is left to the caller's {@link
+ * org.robolectric.sandbox.ShadowMatcher}.
+ */
+final class ShadowMethodIndex {
+  private static final Cache<String, ShadowMethodIndex> sharedIndexes =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private final ImmutableSet<String> methodSignatures;
+  private final ImmutableListMultimap<String, String> candidates;
+  private final ImmutableList<String> conflictingMethods;
+
+  /**
+   * Returns the index for a shadow class.
+   *
+   * @param methods the public and protected methods declared on the shadow class, keyed by {@link
+   *     #signatureOf}, in declaration order
+   */
+  static ShadowMethodIndex get(Class<?> shadowClass, Map<String, Method> methods) {
+    String key = shadowClass.getName();
+    ShadowMethodIndex index = sharedIndexes.getIfPresent(key);
+    // A different class with the same name may have been loaded from elsewhere.
+    if (index == null || !index.methodSignatures.equals(methods.keySet())) {
+      PerfStatsCollector.getInstance().incrementCount("ShadowMethodIndex.miss");
+      index = new ShadowMethodIndex(methods.values());
+      sharedIndexes.put(key, index);
+    } else {
+      PerfStatsCollector.getInstance().incrementCount("ShadowMethodIndex.hit");
+    }
+    return index;
+  }
+
+  /** Returns whether {@code method} may be indexed, i.e. whether it's public or protected. */
+  static boolean isIndexable(Method method) {
+    return Modifier.isPublic(method.getModifiers()) || Modifier.isProtected(method.getModifiers());
+  }
+
+  static String signatureOf(Method method) {
+    return method.getName() + Type.getMethodDescriptor(method);
+  }
+
+  @VisibleForTesting
+  ShadowMethodIndex(Collection<Method> methods) {
+    ImmutableSet.Builder<String> methodSignatures = ImmutableSet.builder();
+    ImmutableListMultimap.Builder<String, String> candidates = ImmutableListMultimap.builder();
+    ImmutableList.Builder<String> conflictingMethods = ImmutableList.builder();
+    List<Map.Entry<String, String>> classNameMatches = new ArrayList<>();
+
+    for (Method method : methods) {
+      String signature = signatureOf(method);
+      methodSignatures.add(signature);
+
+      Filter filter = method.getAnnotation(Filter.class);
+      Implementation implementation = method.getAnnotation(Implementation.class);
+      if (filter != null && implementation != null) {
+        conflictingMethods.add(signature);
+        continue;
+      }
+
+      Set<String> names = new LinkedHashSet<>();
+      names.add(method.getName());
+      if (filter != null && !filter.methodName().trim().isEmpty()) {
+        names.add(filter.methodName().trim());
+      }
+      if (implementation != null && !implementation.methodName().trim().isEmpty()) {
+        names.add(implementation.methodName().trim());
+      }
+
+      Parameter[] parameters = method.getParameters();
+      String[] parameterTypeNames = new String[parameters.length];
+      String[] matchedTypeNames = new String[parameters.length];
+      boolean hasClassNameParameter = false;
+      for (int i = 0; i < parameters.length; i++) {
+        parameterTypeNames[i] = parameters[i].getType().getName();
+        matchedTypeNames[i] = parameterTypeNames[i];
+        if (parameters[i].getType().equals(Object.class)) {
+          ClassName className = parameters[i].getAnnotation(ClassName.class);
+          if (className != null) {
+            matchedTypeNames[i] = className.value();
+            hasClassNameParameter = true;
+          }
+        }
+      }
+
+      for (String name : names) {
+        candidates.put(keyOf(name, parameterTypeNames), signature);
+        if (hasClassNameParameter) {
+          classNameMatches.add(new SimpleEntry<>(keyOf(name, matchedTypeNames), signature));
+        }
+      }
+    }
+
+    // Exact matches are preferred over @ClassName matches, of which the last declared one wins.
+    for (Map.Entry<String, String> classNameMatch : Lists.reverse(classNameMatches)) {
+      candidates.put(classNameMatch);
+    }
+
+    this.methodSignatures = methodSignatures.build();
+    this.candidates = candidates.build();
+    this.conflictingMethods = conflictingMethods.build();
+  }
+
+  /**
+   * Returns the signatures of the methods that may shadow the given method, most preferred first.
+   */
+  List<String> getCandidates(String methodName, Class<?>[] paramTypes) {
+    String[] paramTypeNames = new String[paramTypes.length];
+    for (int i = 0; i < paramTypes.length; i++) {
+      paramTypeNames[i] = paramTypes[i].getName();
+    }
+    return candidates.get(keyOf(methodName, paramTypeNames));
+  }
+
+  /**
+   * Returns the signatures of the methods that are annotated with both {@link Implementation} and
+   * {@link Filter}, which is an error.
+   */
+  List<String> getConflictingMethods() {
+    return conflictingMethods;
+  }
+
+  private static String keyOf(String methodName, String[] paramTypeNames) {
+    return methodName + "(" + String.join(",", paramTypeNames) + ")";
+  }
+}
@@ -18,15 +18,13 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.lang.reflect.Parameter;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.Nonnull;
 import javax.annotation.Priority;
-import org.robolectric.annotation.ClassName;
 import org.robolectric.annotation.Filter;
-import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.RealObject;
 import org.robolectric.annotation.ReflectorObject;
 import org.robolectric.pluginapi.MethodHandleDecorator;
@@ -83,6 +81,16 @@ public class ShadowWrangler implements ClassHandler {
         }
       };
 
+  /** key is shadow class */
+  private final ClassValueMap<ShadowMethods> cachedShadowMethods =
+      new ClassValueMap<ShadowMethods>() {
+        @Nonnull
+        @Override
+        protected ShadowMethods computeValue(Class<?> type) {
+          return new ShadowMethods(type);
+        }
+      };
+
   public ShadowWrangler(
       ShadowMap shadowMap,
       ShadowMatcher shadowMatcher,
@@ -380,87 +388,15 @@ public class ShadowWrangler implements ClassHandler {
 
   private Method findShadowMethodDeclaredOnClass(
       Class<?> shadowClass, String methodName, Class<?>[] paramClasses) {
-    Method foundMethod = null;
-    Method[] methods = shadowClass.getDeclaredMethods();
-    for (Method method : methods) {
-      if (!Modifier.isPublic(method.getModifiers())
-          && !Modifier.isProtected(method.getModifiers())) {
-        continue;
-      }
-
-      if (!shadowMatcher.matches(method)) {
-        continue;
-      }
-
-      Filter filter = method.getAnnotation(Filter.class);
-      Implementation implementation = method.getAnnotation(Implementation.class);
-
-      if (filter != null && implementation != null) {
-        throw new IllegalStateException(
-            "Method "
-                + method.getName()
-                + " cannot be annotated with both @Implementation and @Filter");
-      }
-
-      boolean nameMatches = method.getName().equals(methodName);
-
-      if (!nameMatches && filter != null) {
-        String mappedMethodName = filter.methodName().trim();
-        nameMatches = !mappedMethodName.isEmpty() && mappedMethodName.equals(methodName);
-      }
-
-      if (!nameMatches && implementation != null) {
-        String mappedMethodName = implementation.methodName().trim();
-        nameMatches = !mappedMethodName.isEmpty() && mappedMethodName.equals(methodName);
-      }
-
-      if (!nameMatches) {
-        continue;
-      }
-
-      if (Arrays.equals(method.getParameterTypes(), paramClasses)) {
-        // Found an exact match, we can exit early.
-        foundMethod = method;
-        break;
-      }
-
-      // Or maybe support @ClassName.
-      if (parametersMatch(method.getParameters(), paramClasses)) {
-        // Found a @ClassName match, but continue looking for an exact match.
-        foundMethod = method;
-      }
-    }
-
-    if (foundMethod != null) {
-      foundMethod.setAccessible(true);
-      return foundMethod;
-    } else {
-      return null;
-    }
-  }
-
-  private boolean parametersMatch(Parameter[] params, Class<?>[] expectedTypes) {
-    if (params.length != expectedTypes.length) {
-      return false;
-    }
-
-    for (int i = 0; i < params.length; i++) {
-      if (!isParameterMatch(params[i], expectedTypes[i])) {
-        return false;
-      }
-    }
-    return true;
-  }
-
-  private boolean isParameterMatch(Parameter param, Class<?> expectedType) {
-    if (param.getType().equals(Object.class)) {
-      ClassName className = param.getAnnotation(ClassName.class);
-      if (className != null) {
-        return className.value().equals(expectedType.getName());
+    ShadowMethods shadowMethods = cachedShadowMethods.get(shadowClass);
+    for (String signature : shadowMethods.index.getCandidates(methodName, paramClasses)) {
+      Method method = shadowMethods.methods.get(signature);
+      if (shadowMatcher.matches(method)) {
+        method.setAccessible(true);
+        return method;
       }
     }
-
-    return param.getType().equals(expectedType);
+    return null;
   }
 
   @Override
@@ -589,6 +525,30 @@ public class ShadowWrangler implements ClassHandler {
     }
   }
 
+  private class ShadowMethods {
+    final Map<String, Method> methods = new LinkedHashMap<>();
+    final ShadowMethodIndex index;
+
+    ShadowMethods(Class<?> shadowClass) {
+      for (Method method : shadowClass.getDeclaredMethods()) {
+        if (ShadowMethodIndex.isIndexable(method)) {
+          methods.put(ShadowMethodIndex.signatureOf(method), method);
+        }
+      }
+      index = ShadowMethodIndex.get(shadowClass, methods);
+
+      for (String signature : index.getConflictingMethods()) {
+        Method method = methods.get(signature);
+        if (shadowMatcher.matches(method)) {
+          throw new IllegalStateException(
+              "Method "
+                  + method.getName()
+                  + " cannot be annotated with both @Implementation and @Filter");
+        }
+      }
+    }
+  }
+
   private static class ShadowMetadata {
     final Constructor<?> constructor;
     final List<Field> realObjectFields = new ArrayList<>();
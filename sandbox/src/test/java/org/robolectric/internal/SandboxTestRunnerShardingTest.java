@@ -0,0 +1,121 @@
+package org.robolectric.internal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.robolectric.internal.bytecode.Sandbox;
+import org.robolectric.util.PerfStatsCollector;
+
+@RunWith(JUnit4.class)
+public class SandboxTestRunnerShardingTest {
+  private static final Set<ClassLoader> sandboxClassLoaders = ConcurrentHashMap.newKeySet();
+  private static final Set<Thread> mainThreads = ConcurrentHashMap.newKeySet();
+  private static final CyclicBarrier barrier = new CyclicBarrier(2);
+  private static final Set<PerfStatsCollector> perfStatsCollectors = ConcurrentHashMap.newKeySet();
+
+  @Before
+  public void setUp() {
+    sandboxClassLoaders.clear();
+    mainThreads.clear();
+    perfStatsCollectors.clear();
+    barrier.reset();
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(SandboxTestRunner.PARALLEL_SANDBOXES_PROPERTY);
+    PerfStatsCollector.getInstance().setEnabled(true);
+  }
+
+  @Test
+  public void parallelSandboxes_runsShardsConcurrentlyInSeparateSandboxes() throws Exception {
+    System.setProperty(SandboxTestRunner.PARALLEL_SANDBOXES_PROPERTY, "2");
+
+    Result result = new JUnitCore().run(new PooledSandboxTestRunner(TwoConcurrentTests.class));
+
+    assertThat(result.getFailures()).isEmpty();
+    assertThat(result.getRunCount()).isEqualTo(2);
+    assertThat(sandboxClassLoaders).hasSize(2);
+    assertThat(mainThreads).hasSize(2);
+  }
+
+  @Test
+  public void parallelSandboxes_moreShardsThanTests_runsEachTestOnce() throws Exception {
+    System.setProperty(SandboxTestRunner.PARALLEL_SANDBOXES_PROPERTY, "8");
+
+    Result result = new JUnitCore().run(new PooledSandboxTestRunner(TwoConcurrentTests.class));
+
+    assertThat(result.getFailures()).isEmpty();
+    assertThat(result.getRunCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void parallelSandboxes_collectPerfStatsPerShard() throws Exception {
+    System.setProperty(SandboxTestRunner.PARALLEL_SANDBOXES_PROPERTY, "2");
+    PooledSandboxTestRunner runner = new PooledSandboxTestRunner(TwoConcurrentTests.class);
+    PerfStatsCollector.getInstance().setEnabled(true);
+
+    Result result = new JUnitCore().run(runner);
+
+    assertThat(result.getFailures()).isEmpty();
+    assertThat(perfStatsCollectors).hasSize(2);
+    assertThat(perfStatsCollectors).doesNotContain(PerfStatsCollector.getInstance());
+    assertThat(PerfStatsCollector.getInstance().forCurrentThread())
+        .isSameInstanceAs(PerfStatsCollector.getInstance());
+    assertThat(PerfStatsCollector.getInstance().isEnabled()).isTrue();
+  }
+
+  /** Like {@code RobolectricTestRunner}, returns the same sandbox for methods in the same shard. */
+  private static class PooledSandboxTestRunner extends SandboxTestRunner {
+    private final Map<Integer, Sandbox> sandboxesByShard = new ConcurrentHashMap<>();
+
+    PooledSandboxTestRunner(Class<?> klass) throws InitializationError {
+      super(klass);
+    }
+
+    @Override
+    protected Sandbox getSandbox(FrameworkMethod method) {
+      return getShardSandbox(method, 0);
+    }
+
+    @Override
+    protected Sandbox getShardSandbox(FrameworkMethod method, int shard) {
+      return sandboxesByShard.computeIfAbsent(shard, unused -> super.getSandbox(method));
+    }
+  }
+
+  @Ignore
+  public static class TwoConcurrentTests {
+    @Test
+    public void first() throws Exception {
+      record();
+    }
+
+    @Test
+    public void second() throws Exception {
+      record();
+    }
+
+    private static void record() throws Exception {
+      sandboxClassLoaders.add(Thread.currentThread().getContextClassLoader());
+      mainThreads.add(Thread.currentThread());
+      perfStatsCollectors.add(PerfStatsCollector.getInstance().forCurrentThread());
+      // Only completes if both tests are running at the same time.
+      barrier.await(10, TimeUnit.SECONDS);
+    }
+  }
+}
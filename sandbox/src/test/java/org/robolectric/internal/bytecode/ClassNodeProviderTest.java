@@ -0,0 +1,84 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.objectweb.asm.Opcodes;
+import org.robolectric.testing.AChild;
+import org.robolectric.testing.AParent;
+
+@RunWith(JUnit4.class)
+public class ClassNodeProviderTest {
+  private static final String CHILD = AChild.class.getName().replace('.', '/');
+  private static final String PARENT = AParent.class.getName().replace('.', '/');
+
+  @Test
+  public void getClassMetadata_readsHierarchy() throws Exception {
+    ClassMetadata metadata = new CountingClassNodeProvider(false).getClassMetadata(CHILD);
+
+    assertThat(metadata.superName).isEqualTo(PARENT);
+    assertThat(metadata.access & Opcodes.ACC_INTERFACE).isEqualTo(0);
+  }
+
+  @Test
+  public void getClassMetadata_withClassUrl_isSharedAcrossProviders() throws Exception {
+    CountingClassNodeProvider first = new CountingClassNodeProvider(true);
+    CountingClassNodeProvider second = new CountingClassNodeProvider(true);
+
+    ClassMetadata fromFirst = first.getClassMetadata(CHILD);
+    ClassMetadata fromSecond = second.getClassMetadata(CHILD);
+
+    assertThat(fromSecond).isSameInstanceAs(fromFirst);
+    assertThat(first.readCount + second.readCount).isEqualTo(1);
+  }
+
+  @Test
+  public void getClassMetadata_withoutClassUrl_isNotShared() throws Exception {
+    CountingClassNodeProvider first = new CountingClassNodeProvider(false);
+    CountingClassNodeProvider second = new CountingClassNodeProvider(false);
+
+    first.getClassMetadata(CHILD);
+    first.getClassMetadata(CHILD);
+    second.getClassMetadata(CHILD);
+
+    assertThat(first.readCount).isEqualTo(1);
+    assertThat(second.readCount).isEqualTo(1);
+  }
+
+  private static class CountingClassNodeProvider extends ClassNodeProvider {
+    private final boolean hasClassUrl;
+    int readCount;
+
+    CountingClassNodeProvider(boolean hasClassUrl) {
+      this.hasClassUrl = hasClassUrl;
+    }
+
+    @Override
+    protected byte[] getClassBytes(String internalClassName) throws ClassNotFoundException {
+      readCount++;
+      try (InputStream in =
+          ClassNodeProviderTest.class
+              .getClassLoader()
+              .getResourceAsStream(internalClassName + ".class")) {
+        if (in == null) {
+          throw new ClassNotFoundException(internalClassName);
+        }
+        return in.readAllBytes();
+      } catch (IOException e) {
+        throw new ClassNotFoundException(internalClassName, e);
+      }
+    }
+
+    @Override
+    protected URL getClassUrl(String internalClassName) {
+      return hasClassUrl
+          ? ClassNodeProviderTest.class.getClassLoader().getResource(internalClassName + ".class")
+          : null;
+    }
+  }
+}
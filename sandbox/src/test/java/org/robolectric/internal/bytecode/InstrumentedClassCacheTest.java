@@ -0,0 +1,179 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.testing.AChild;
+import org.robolectric.testing.AnExampleClass;
+
+@RunWith(JUnit4.class)
+public class InstrumentedClassCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final InstrumentationConfiguration config =
+      InstrumentationConfiguration.newBuilder().build();
+  private final ClassNodeProvider classNodeProvider =
+      new ClassNodeProvider() {
+        @Override
+        protected byte[] getClassBytes(String internalClassName) throws ClassNotFoundException {
+          return classBytes(internalClassName.replace('/', '.'));
+        }
+      };
+  private Path cacheDir;
+  private CountingClassInstrumentor classInstrumentor;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir = temporaryFolder.newFolder("cache").toPath();
+    classInstrumentor = new CountingClassInstrumentor();
+  }
+
+  @Test
+  public void instrument_storesAndReusesInstrumentedBytes() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(cacheDir, Long.MAX_VALUE);
+    ClassDetails classDetails = new ClassDetails(classBytes(AnExampleClass.class.getName()));
+
+    byte[] first = cache.instrument(classDetails, config, classInstrumentor, classNodeProvider);
+    byte[] second =
+        new InstrumentedClassCache(cacheDir, Long.MAX_VALUE)
+            .instrument(classDetails, config, classInstrumentor, classNodeProvider);
+
+    assertThat(classInstrumentor.instrumentCount).isEqualTo(1);
+    assertThat(second).isEqualTo(first);
+    assertThat(new ClassDetails(second).isInstrumented()).isTrue();
+  }
+
+  @Test
+  public void instrument_differentConfiguration_misses() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(cacheDir, Long.MAX_VALUE);
+    ClassDetails classDetails = new ClassDetails(classBytes(AnExampleClass.class.getName()));
+    InstrumentationConfiguration otherConfig =
+        InstrumentationConfiguration.newBuilder().addInstrumentedPackage("org.example.").build();
+
+    cache.instrument(classDetails, config, classInstrumentor, classNodeProvider);
+    cache.instrument(classDetails, otherConfig, classInstrumentor, classNodeProvider);
+
+    assertThat(classInstrumentor.instrumentCount).isEqualTo(2);
+    assertThat(entries()).hasSize(2);
+  }
+
+  @Test
+  public void instrument_minimalInstrumentation_otherClassShadowedLate_hits() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(cacheDir, Long.MAX_VALUE);
+    ClassDetails classDetails = new ClassDetails(classBytes(AnExampleClass.class.getName()));
+    InstrumentationConfiguration minimalConfig =
+        InstrumentationConfiguration.newBuilder().setMinimalInstrumentation(true).build();
+    InstrumentationConfiguration lateConfig =
+        new InstrumentationConfiguration.Builder(minimalConfig)
+            .addShadowedClass(AChild.class.getName())
+            .build();
+
+    cache.instrument(classDetails, minimalConfig, classInstrumentor, classNodeProvider);
+    cache.instrument(classDetails, lateConfig, classInstrumentor, classNodeProvider);
+
+    assertThat(classInstrumentor.instrumentCount).isEqualTo(1);
+  }
+
+  @Test
+  public void instrument_minimalInstrumentation_classShadowedLate_misses() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(cacheDir, Long.MAX_VALUE);
+    ClassDetails classDetails = new ClassDetails(classBytes(AnExampleClass.class.getName()));
+    InstrumentationConfiguration minimalConfig =
+        InstrumentationConfiguration.newBuilder().setMinimalInstrumentation(true).build();
+    InstrumentationConfiguration lateConfig =
+        new InstrumentationConfiguration.Builder(minimalConfig)
+            .addShadowedClass(AnExampleClass.class.getName())
+            .build();
+
+    cache.instrument(classDetails, minimalConfig, classInstrumentor, classNodeProvider);
+    cache.instrument(classDetails, lateConfig, classInstrumentor, classNodeProvider);
+
+    assertThat(classInstrumentor.instrumentCount).isEqualTo(2);
+    assertThat(entries()).hasSize(2);
+  }
+
+  @Test
+  public void instrument_corruptEntry_isDiscardedAndRewritten() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(cacheDir, Long.MAX_VALUE);
+    ClassDetails classDetails = new ClassDetails(classBytes(AChild.class.getName()));
+    byte[] expected = cache.instrument(classDetails, config, classInstrumentor, classNodeProvider);
+
+    Path entry = entries().get(0);
+    byte[] contents = Files.readAllBytes(entry);
+    contents[contents.length - 20] ^= 0x7f;
+    Files.write(entry, contents);
+
+    byte[] actual = cache.instrument(classDetails, config, classInstrumentor, classNodeProvider);
+
+    assertThat(classInstrumentor.instrumentCount).isEqualTo(2);
+    assertThat(actual).isEqualTo(expected);
+    assertThat(entries()).hasSize(1);
+  }
+
+  @Test
+  public void evict_removesLeastRecentlyUsedEntriesOverBudget() throws Exception {
+    InstrumentedClassCache cache = new InstrumentedClassCache(cacheDir, Long.MAX_VALUE);
+    cache.instrument(
+        new ClassDetails(classBytes(AnExampleClass.class.getName())),
+        config,
+        classInstrumentor,
+        classNodeProvider);
+    cache.instrument(
+        new ClassDetails(classBytes(AChild.class.getName())),
+        config,
+        classInstrumentor,
+        classNodeProvider);
+    long totalSize = 0;
+    for (Path entry : entries()) {
+      totalSize += Files.size(entry);
+    }
+
+    new InstrumentedClassCache(cacheDir, totalSize - 1).evict();
+
+    assertThat(entries()).hasSize(1);
+  }
+
+  private List<Path> entries() throws IOException {
+    try (Stream<Path> paths = Files.walk(cacheDir)) {
+      return paths.filter(path -> path.toString().endsWith(".robo")).collect(Collectors.toList());
+    }
+  }
+
+  private static byte[] classBytes(String className) throws ClassNotFoundException {
+    String resourceName = className.replace('.', '/') + ".class";
+    try (InputStream in =
+        InstrumentedClassCacheTest.class.getClassLoader().getResourceAsStream(resourceName)) {
+      if (in == null) {
+        throw new ClassNotFoundException(className);
+      }
+      return in.readAllBytes();
+    } catch (IOException e) {
+      throw new ClassNotFoundException(className, e);
+    }
+  }
+
+  private static class CountingClassInstrumentor extends ClassInstrumentor {
+    int instrumentCount;
+
+    @Override
+    public byte[] instrument(
+        ClassDetails classDetails,
+        InstrumentationConfiguration config,
+        ClassNodeProvider classNodeProvider) {
+      instrumentCount++;
+      return super.instrument(classDetails, config, classNodeProvider);
+    }
+  }
+}
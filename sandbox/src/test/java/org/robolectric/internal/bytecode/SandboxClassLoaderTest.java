@@ -33,6 +33,9 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nonnull;
@@ -201,6 +204,88 @@ public class SandboxClassLoaderTest {
     assertThat(transcript).containsExactly("methodInvoked: AnExampleClass.__constructor__()");
   }
 
+  @Test
+  public void minimalInstrumentation_unshadowedClassMethodsDoNotInvokeClassHandler()
+      throws Exception {
+    setClassLoader(
+        new SandboxClassLoader(configureBuilder().setMinimalInstrumentation(true).build()));
+    Class<?> exampleClass = loadClass(AnExampleClass.class);
+    Method normalMethod = exampleClass.getMethod("normalMethod", String.class, int.class);
+
+    Object exampleInstance = exampleClass.getDeclaredConstructor().newInstance();
+    assertEquals("normalMethod(value1, 123)", normalMethod.invoke(exampleInstance, "value1", 123));
+    assertThat(transcript).containsExactly("methodInvoked: AnExampleClass.__constructor__()");
+  }
+
+  @Test
+  public void minimalInstrumentation_unshadowedClassStillHasDirectAccessMethod() throws Exception {
+    setClassLoader(
+        new SandboxClassLoader(configureBuilder().setMinimalInstrumentation(true).build()));
+    Class<?> exampleClass = loadClass(AClassWithStaticMethod.class);
+    Method directMethod = findDirectMethod(exampleClass, "staticMethod", String.class);
+
+    assertEquals("staticMethod(value1)", directMethod.invoke(null, "value1"));
+    assertThat(transcript).isEmpty();
+  }
+
+  @Test
+  public void minimalInstrumentation_shadowedClassMethodsInvokeClassHandler() throws Exception {
+    setClassLoader(
+        new SandboxClassLoader(
+            configureBuilder()
+                .setMinimalInstrumentation(true)
+                .addShadowedClass(AClassWithStaticMethod.class.getName())
+                .build()));
+    Class<?> exampleClass = loadClass(AClassWithStaticMethod.class);
+    Method normalMethod = exampleClass.getMethod("staticMethod", String.class);
+
+    assertEquals(
+        "response from methodInvoked: AClassWithStaticMethod.staticMethod(java.lang.String value1)",
+        normalMethod.invoke(null, "value1"));
+  }
+
+  @Test
+  public void minimalInstrumentation_unshadowedNativeMethodsInvokeClassHandler() throws Exception {
+    setClassLoader(
+        new SandboxClassLoader(configureBuilder().setMinimalInstrumentation(true).build()));
+    Class<?> exampleClass = loadClass(AClassWithNativeMethod.class);
+    Object exampleInstance = exampleClass.getDeclaredConstructor().newInstance();
+    Method nativeMethod = exampleClass.getMethod("nativeMethod", String.class, int.class);
+
+    assertEquals(
+        "response from methodInvoked: AClassWithNativeMethod.nativeMethod(java.lang.String"
+            + " value1, int 123)",
+        nativeMethod.invoke(exampleInstance, "value1", 123));
+  }
+
+  @Test
+  public void minimalInstrumentation_addShadowedClassKeepsClassesAddedConcurrently()
+      throws Exception {
+    SandboxClassLoader sandboxClassLoader =
+        new SandboxClassLoader(configureBuilder().setMinimalInstrumentation(true).build());
+    List<String> classNames = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      classNames.add("org.robolectric.testing.NotLoaded" + i);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (String className : classNames) {
+        results.add(executor.submit(() -> sandboxClassLoader.addShadowedClass(className)));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    InstrumentationConfiguration config = sandboxClassLoader.getInstrumentationConfiguration();
+    for (String className : classNames) {
+      assertTrue(className, config.mayBeShadowed(className));
+    }
+  }
+
   @Test
   public void
       soMockitoDoesntExplodeDueToTooManyMethods_shouldGenerateClassSpecificDirectAccessMethodWhichIsPrivateAndFinal()
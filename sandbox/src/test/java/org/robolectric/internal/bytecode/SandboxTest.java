@@ -0,0 +1,66 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.internal.bytecode.SandboxClassLoaderTest.MyClassHandler;
+import org.robolectric.testing.Foo;
+import org.robolectric.testing.ShadowFoo;
+
+@RunWith(JUnit4.class)
+public class SandboxTest {
+
+  @Test
+  public void replaceShadowMap_withMinimalInstrumentation_fullyInstrumentsUnloadedClass()
+      throws Exception {
+    Sandbox sandbox = new Sandbox(new SandboxClassLoader(minimalInstrumentationConfig()));
+
+    sandbox.replaceShadowMap(
+        ShadowMap.EMPTY.newBuilder().addShadowClasses(ShadowFoo.class).build());
+    sandbox.configure(
+        new MyClassHandler(new ArrayList<>()), new Interceptors(Collections.emptyList()));
+
+    Class<?> fooClass = sandbox.bootstrappedClass(Foo.class);
+    Object foo = fooClass.getConstructor(String.class).newInstance("name");
+    assertThat(fooClass.getMethod("getName").invoke(foo))
+        .isEqualTo("response from methodInvoked: Foo.getName()");
+  }
+
+  @Test
+  public void replaceShadowMap_withMinimalInstrumentation_throwsForLoadedUnshadowedClass() {
+    Sandbox sandbox = new Sandbox(new SandboxClassLoader(minimalInstrumentationConfig()));
+    sandbox.bootstrappedClass(Foo.class);
+
+    IllegalStateException e =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                sandbox.replaceShadowMap(
+                    ShadowMap.EMPTY.newBuilder().addShadowClasses(ShadowFoo.class).build()));
+    assertThat(e).hasMessageThat().contains(Foo.class.getName());
+  }
+
+  @Test
+  public void replaceShadowMap_withMinimalInstrumentation_acceptsShadowedClass() {
+    Sandbox sandbox =
+        new Sandbox(
+            new SandboxClassLoader(
+                InstrumentationConfiguration.newBuilder()
+                    .setMinimalInstrumentation(true)
+                    .addShadowedClass(Foo.class.getName())
+                    .build()));
+    sandbox.bootstrappedClass(Foo.class);
+
+    sandbox.replaceShadowMap(
+        ShadowMap.EMPTY.newBuilder().addShadowClasses(ShadowFoo.class).build());
+  }
+
+  private static InstrumentationConfiguration minimalInstrumentationConfig() {
+    return InstrumentationConfiguration.newBuilder().setMinimalInstrumentation(true).build();
+  }
+}
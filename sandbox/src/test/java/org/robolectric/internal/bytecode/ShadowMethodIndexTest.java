@@ -0,0 +1,119 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.annotation.ClassName;
+import org.robolectric.annotation.Filter;
+import org.robolectric.annotation.Implementation;
+
+@RunWith(JUnit4.class)
+public class ShadowMethodIndexTest {
+
+  @Test
+  public void getCandidates_matchesByNameAndParameterTypes() throws Exception {
+    ShadowMethodIndex index =
+        ShadowMethodIndex.get(ShadowThing.class, methodsOf(ShadowThing.class));
+
+    assertThat(index.getCandidates("add", new Class<?>[] {int.class, int.class}))
+        .containsExactly("add(II)I");
+    assertThat(index.getCandidates("add", new Class<?>[] {long.class})).isEmpty();
+    assertThat(index.getCandidates("remove", new Class<?>[] {int.class})).isEmpty();
+  }
+
+  @Test
+  public void getCandidates_usesMappedMethodNames() throws Exception {
+    ShadowMethodIndex index =
+        ShadowMethodIndex.get(ShadowThing.class, methodsOf(ShadowThing.class));
+
+    assertThat(index.getCandidates("getThing", new Class<?>[0]))
+        .containsExactly("getThingImpl()Ljava/lang/String;");
+    assertThat(index.getCandidates("close", new Class<?>[0])).containsExactly("filterClose()V");
+  }
+
+  @Test
+  public void getCandidates_prefersExactMatchesOverClassNameMatches() throws Exception {
+    ShadowMethodIndex index =
+        ShadowMethodIndex.get(ShadowThing.class, methodsOf(ShadowThing.class));
+
+    assertThat(index.getCandidates("set", new Class<?>[] {String.class}))
+        .containsExactly("set(Ljava/lang/String;)V", "set(Ljava/lang/Object;)V")
+        .inOrder();
+    assertThat(index.getCandidates("set", new Class<?>[] {Object.class}))
+        .containsExactly("set(Ljava/lang/Object;)V");
+  }
+
+  @Test
+  public void getConflictingMethods_returnsMethodsWithImplementationAndFilter() throws Exception {
+    ShadowMethodIndex index =
+        ShadowMethodIndex.get(ShadowThing.class, methodsOf(ShadowThing.class));
+
+    assertThat(index.getConflictingMethods()).containsExactly("both()V");
+    assertThat(index.getCandidates("both", new Class<?>[0])).isEmpty();
+  }
+
+  @Test
+  public void get_isSharedForSameMethods() throws Exception {
+    ShadowMethodIndex first =
+        ShadowMethodIndex.get(ShadowThing.class, methodsOf(ShadowThing.class));
+    ShadowMethodIndex second =
+        ShadowMethodIndex.get(ShadowThing.class, methodsOf(ShadowThing.class));
+
+    assertThat(second).isSameInstanceAs(first);
+  }
+
+  @Test
+  public void get_rebuildsForDifferentMethods() throws Exception {
+    Map<String, Method> methods = methodsOf(ShadowThing.class);
+    ShadowMethodIndex first = ShadowMethodIndex.get(ShadowThing.class, methods);
+    methods.remove("add(II)I");
+    ShadowMethodIndex second = ShadowMethodIndex.get(ShadowThing.class, methods);
+
+    assertThat(second).isNotSameInstanceAs(first);
+    assertThat(second.getCandidates("add", new Class<?>[] {int.class, int.class})).isEmpty();
+  }
+
+  private static Map<String, Method> methodsOf(Class<?> shadowClass) {
+    Map<String, Method> methods = new LinkedHashMap<>();
+    for (Method method : shadowClass.getDeclaredMethods()) {
+      if (ShadowMethodIndex.isIndexable(method)) {
+        methods.put(ShadowMethodIndex.signatureOf(method), method);
+      }
+    }
+    return methods;
+  }
+
+  @SuppressWarnings("unused")
+  public static class ShadowThing {
+    @Implementation
+    public int add(int a, int b) {
+      return a + b;
+    }
+
+    @Implementation
+    private void remove(int index) {}
+
+    @Implementation(methodName = "getThing")
+    protected String getThingImpl() {
+      return "thing";
+    }
+
+    @Filter(methodName = "close")
+    protected void filterClose() {}
+
+    @Implementation
+    protected void set(String value) {}
+
+    @Implementation
+    protected void set(@ClassName("java.lang.String") Object value) {}
+
+    @Implementation
+    @Filter
+    protected void both() {}
+  }
+}
@@ -0,0 +1,411 @@
+package org.robolectric.shadows;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import android.os.IBinder;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A {@link ShadowParcel.ParcelBuffer} backed by a little-endian byte array, using the same layout
+ * as the native Parcel implementation.
+ *
+ * <p>Unlike the strongly typed default buffer, values may be read back as any type, data size and
+ * positions are exact, and marshalling copies the bytes as they are. Like native parcels:
+ *
+ * <ul>
+ *   <li>Values are padded to 4 bytes, and padding is zeroed.
+ *   <li>Strings are written as a length followed by null-terminated UTF-16 or UTF-8 characters.
+ *   <li>Binders take the space of a 64-bit {@code flat_binder_object}, and are kept aside by the
+ *       position of that object. Parcels containing binders can't be marshalled.
+ *   <li>Reading past the end returns zeros or nulls without advancing the position.
+ *   <li>{@code appendFrom} always grows the data size by the number of appended bytes.
+ * </ul>
+ *
+ * <p>Reading past the end right after writing, without setting the data position first, still
+ * fails, since that's almost always a test bug.
+ */
+final class BinaryParcelBuffer implements ShadowParcel.ParcelBuffer {
+  private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+
+  /** Size of a 64-bit {@code flat_binder_object}. */
+  private static final int BINDER_OBJECT_SIZE = 24;
+
+  /** {@code BINDER_TYPE_BINDER}, i.e. {@code B_PACK_CHARS('s', 'b', '*', 0x85)}. */
+  private static final int BINDER_TYPE_BINDER = 0x73622a85;
+
+  private byte[] data = EMPTY_BYTE_ARRAY;
+  private ByteBuffer view = wrap(data);
+  private int dataSize;
+  private int dataPosition;
+  private boolean failNextReadIfPastEnd;
+
+  /** Binders by the position of their flat_binder_object, or null if there are none. */
+  private TreeMap<Integer, IBinder> objects;
+
+  /**
+   * Creates a buffer holding a copy of {@code length} bytes of {@code array}, positioned at the
+   * end, like {@code Parcel.unmarshall}.
+   */
+  static BinaryParcelBuffer fromByteArray(byte[] array, int offset, int length) {
+    BinaryParcelBuffer buffer = new BinaryParcelBuffer();
+    buffer.data = Arrays.copyOfRange(array, offset, offset + length);
+    buffer.view = wrap(buffer.data);
+    buffer.dataSize = length;
+    buffer.dataPosition = length;
+    buffer.failNextReadIfPastEnd = true;
+    return buffer;
+  }
+
+  @Override
+  public void clear() {
+    // Keep the capacity, since recycled parcels are usually reused for similar data.
+    Arrays.fill(data, 0, dataSize, (byte) 0);
+    dataSize = 0;
+    dataPosition = 0;
+    failNextReadIfPastEnd = false;
+    objects = null;
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    if (objects != null) {
+      throw new RuntimeException("Tried to marshall a Parcel that contained Binder objects.");
+    }
+    return Arrays.copyOf(data, dataSize);
+  }
+
+  @Override
+  public void appendFrom(ShadowParcel.ParcelBuffer other, int offset, int length) {
+    if (!(other instanceof BinaryParcelBuffer)) {
+      throw new IllegalArgumentException("Can't append a parcel that isn't binary");
+    }
+    BinaryParcelBuffer source = (BinaryParcelBuffer) other;
+    if (offset < 0 || length < 0 || offset > source.dataSize - length) {
+      throw new IllegalArgumentException(
+          "Can't append " + length + " bytes at offset " + offset + " of " + source.dataSize);
+    }
+    // Only objects that are entirely within the appended bytes are copied, like native parcels.
+    List<Map.Entry<Integer, IBinder>> sourceObjects =
+        source.objects == null || length < BINDER_OBJECT_SIZE
+            ? Collections.emptyList()
+            : new ArrayList<>(
+                source
+                    .objects
+                    .subMap(offset, true, offset + length - BINDER_OBJECT_SIZE, true)
+                    .entrySet());
+
+    int position = dataPosition;
+    int newSize = Math.max(dataSize, position) + length;
+    if (newSize > data.length) {
+      grow(newSize * 3 / 2);
+    }
+    removeObjects(position, position + length);
+    // Read the source's data after growing, in case it's this buffer.
+    System.arraycopy(source.data, offset, data, position, length);
+    for (Map.Entry<Integer, IBinder> object : sourceObjects) {
+      putObject(position + object.getKey() - offset, object.getValue());
+    }
+    dataSize = newSize;
+    dataPosition = position + length;
+    failNextReadIfPastEnd = true;
+  }
+
+  @Override
+  public int dataAvailable() {
+    return Math.max(0, dataSize - dataPosition);
+  }
+
+  @Override
+  public int dataCapacity() {
+    return data.length;
+  }
+
+  @Override
+  public int dataPosition() {
+    return dataPosition;
+  }
+
+  @Override
+  public int dataSize() {
+    return dataSize;
+  }
+
+  @Override
+  public void setDataPosition(int pos) {
+    if (pos < 0) {
+      // Native parcels ignore positions that look like they came from a negative int.
+      return;
+    }
+    dataPosition = pos;
+    failNextReadIfPastEnd = false;
+  }
+
+  @Override
+  public void setDataSize(int size) {
+    if (size < dataSize) {
+      // Keep the bytes beyond the end zeroed, in case the data is expanded again.
+      Arrays.fill(data, size, dataSize, (byte) 0);
+      removeObjects(size, dataSize);
+    }
+    setDataCapacityAtLeast(size);
+    dataSize = size;
+    if (dataPosition > dataSize) {
+      dataPosition = dataSize;
+    }
+  }
+
+  @Override
+  public void setDataCapacityAtLeast(int newCapacity) {
+    if (newCapacity > data.length) {
+      grow(newCapacity);
+    }
+  }
+
+  @Override
+  public void writeInt(int i) {
+    int position = beginWrite(4);
+    view.putInt(position, i);
+  }
+
+  @Override
+  public int readInt() {
+    int position = beginRead(4);
+    return position < 0 ? 0 : view.getInt(position);
+  }
+
+  @Override
+  public void writeLong(long l) {
+    int position = beginWrite(8);
+    view.putLong(position, l);
+  }
+
+  @Override
+  public long readLong() {
+    int position = beginRead(8);
+    return position < 0 ? 0 : view.getLong(position);
+  }
+
+  @Override
+  public void writeFloat(float f) {
+    int position = beginWrite(4);
+    view.putFloat(position, f);
+  }
+
+  @Override
+  public float readFloat() {
+    int position = beginRead(4);
+    return position < 0 ? 0 : view.getFloat(position);
+  }
+
+  @Override
+  public void writeDouble(double d) {
+    int position = beginWrite(8);
+    view.putDouble(position, d);
+  }
+
+  @Override
+  public double readDouble() {
+    int position = beginRead(8);
+    return position < 0 ? 0 : view.getDouble(position);
+  }
+
+  @Override
+  public void writeByteArray(byte[] b, int offset, int length) {
+    writeInt(length);
+    int position = beginPaddedWrite(length);
+    System.arraycopy(b, offset, data, position, length);
+  }
+
+  @Override
+  public byte[] createByteArray() {
+    int length = readInt();
+    if (length < 0 || length > dataAvailable()) {
+      return null;
+    }
+    int position = beginRead(pad(length));
+    if (position < 0) {
+      return null;
+    }
+    return length == 0 ? EMPTY_BYTE_ARRAY : Arrays.copyOfRange(data, position, position + length);
+  }
+
+  @Override
+  public boolean readByteArray(byte[] dest, int destLen) {
+    int length = readInt();
+    if (length < 0 || length != destLen || length > dataAvailable()) {
+      return false;
+    }
+    int position = beginRead(pad(length));
+    if (position < 0) {
+      return false;
+    }
+    System.arraycopy(data, position, dest, 0, length);
+    return true;
+  }
+
+  /** Writes a UTF-16 string. */
+  @Override
+  public void writeString(String s) {
+    if (s == null) {
+      writeInt(-1);
+      return;
+    }
+    int length = s.length();
+    writeInt(length);
+    int position = beginPaddedWrite((length + 1) * 2);
+    for (int i = 0; i < length; i++) {
+      view.putChar(position + i * 2, s.charAt(i));
+    }
+  }
+
+  /** Reads a UTF-16 string. */
+  @Override
+  public String readString() {
+    int length = readInt();
+    if (length < 0 || length >= Integer.MAX_VALUE / 2) {
+      return null;
+    }
+    int position = beginRead(pad((length + 1) * 2));
+    if (position < 0 || view.getChar(position + length * 2) != 0) {
+      return null;
+    }
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++) {
+      chars[i] = view.getChar(position + i * 2);
+    }
+    return new String(chars);
+  }
+
+  @Override
+  public void writeString8(String s) {
+    if (s == null) {
+      writeInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(UTF_8);
+    writeInt(bytes.length);
+    int position = beginPaddedWrite(bytes.length + 1);
+    System.arraycopy(bytes, 0, data, position, bytes.length);
+  }
+
+  @Override
+  public String readString8() {
+    int length = readInt();
+    if (length < 0 || length == Integer.MAX_VALUE) {
+      return null;
+    }
+    int position = beginRead(pad(length + 1));
+    if (position < 0 || data[position + length] != 0) {
+      return null;
+    }
+    return new String(data, position, length, UTF_8);
+  }
+
+  @Override
+  public void writeStrongBinder(IBinder b) {
+    int position = beginPaddedWrite(BINDER_OBJECT_SIZE);
+    view.putInt(position, BINDER_TYPE_BINDER);
+    // Like native parcels, null binders aren't objects.
+    if (b != null) {
+      putObject(position, b);
+    }
+  }
+
+  @Override
+  public IBinder readStrongBinder() {
+    int position = beginRead(BINDER_OBJECT_SIZE);
+    return position < 0 || objects == null ? null : objects.get(position);
+  }
+
+  /**
+   * Makes room for {@code length} bytes at the current position and advances past them. This may
+   * replace {@link #data} and {@link #view}, so it must be called before they're read.
+   *
+   * @return the position to write the bytes to
+   */
+  private int beginWrite(int length) {
+    int position = dataPosition;
+    int end = position + length;
+    if (end > data.length) {
+      // Native parcels grow by 3/2 of the new size.
+      grow(end * 3 / 2);
+    }
+    if (end > dataSize) {
+      dataSize = end;
+      failNextReadIfPastEnd = true;
+    }
+    if (objects != null) {
+      removeObjects(position, end);
+    }
+    dataPosition = end;
+    return position;
+  }
+
+  /** Like {@link #beginWrite}, but pads {@code length} to 4 bytes and zeroes all of them. */
+  private int beginPaddedWrite(int length) {
+    int paddedLength = pad(length);
+    int position = beginWrite(paddedLength);
+    Arrays.fill(data, position, position + paddedLength, (byte) 0);
+    return position;
+  }
+
+  /**
+   * Advances past {@code length} bytes at the current position.
+   *
+   * @return the position to read the bytes from, or -1 if there aren't enough bytes left
+   */
+  private int beginRead(int length) {
+    int position = dataPosition;
+    if (position > dataSize - length) {
+      if (failNextReadIfPastEnd && position >= dataSize) {
+        throw new ShadowParcel.UnreliableBehaviorError(
+            "Did you forget to setDataPosition(0) before reading the parcel?");
+      }
+      return -1;
+    }
+    dataPosition = position + length;
+    return position;
+  }
+
+  private void grow(int capacity) {
+    data = Arrays.copyOf(data, capacity);
+    view = wrap(data);
+  }
+
+  private void putObject(int position, IBinder binder) {
+    if (objects == null) {
+      objects = new TreeMap<>();
+    }
+    objects.put(position, binder);
+  }
+
+  /** Removes the objects that overlap the bytes from {@code start} to {@code end}. */
+  private void removeObjects(int start, int end) {
+    if (objects == null || start >= end) {
+      return;
+    }
+    NavigableMap<Integer, IBinder> overlapping =
+        objects.subMap(start - BINDER_OBJECT_SIZE, false, end, false);
+    overlapping.clear();
+    if (objects.isEmpty()) {
+      objects = null;
+    }
+  }
+
+  /** Rounds up to the next 4-byte boundary, like native Parcel. */
+  private static int pad(int length) {
+    return (length + 3) & ~3;
+  }
+
+  private static ByteBuffer wrap(byte[] data) {
+    return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
@@ -0,0 +1,198 @@
+package org.robolectric.shadows;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * A thread safe list for recording events, which behaves like {@link
+ * java.util.concurrent.CopyOnWriteArrayList} but is cheap to append to.
+ *
+ * <p>Appending doesn't copy the existing elements: they're stored in fixed size chunks, and only
+ * the small array of chunks is ever copied. Other modifications copy the whole list, like {@link
+ * java.util.concurrent.CopyOnWriteArrayList} does for every modification. Modifications are
+ * serialized, while reads take no locks. Iterators see the elements that were in the list when they
+ * were created, never throw {@link java.util.ConcurrentModificationException}, and don't support
+ * {@link Iterator#remove()}.
+ */
+final class ChunkedCopyOnWriteList<E> extends AbstractList<E> implements RandomAccess {
+  private static final int CHUNK_SHIFT = 8;
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  /**
+   * Replaced by modifications other than appending, so that readers never see a partially modified
+   * list.
+   */
+  private volatile Contents contents = new Contents();
+
+  @Override
+  public synchronized boolean add(E e) {
+    contents.append(e);
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public E get(int index) {
+    return contents.get(index);
+  }
+
+  @Override
+  public int size() {
+    return contents.size;
+  }
+
+  @Override
+  public synchronized E set(int index, E element) {
+    Object[] elements = toArray();
+    E previous = get(index);
+    elements[index] = element;
+    contents = new Contents(elements);
+    return previous;
+  }
+
+  @Override
+  public synchronized void add(int index, E element) {
+    Object[] elements = toArray();
+    if (index < 0 || index > elements.length) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.length);
+    }
+    Object[] newElements = new Object[elements.length + 1];
+    System.arraycopy(elements, 0, newElements, 0, index);
+    newElements[index] = element;
+    System.arraycopy(elements, index, newElements, index + 1, elements.length - index);
+    contents = new Contents(newElements);
+    modCount++;
+  }
+
+  @Override
+  public synchronized E remove(int index) {
+    Object[] elements = toArray();
+    E previous = get(index);
+    Object[] newElements = new Object[elements.length - 1];
+    System.arraycopy(elements, 0, newElements, 0, index);
+    System.arraycopy(elements, index + 1, newElements, index, elements.length - index - 1);
+    contents = new Contents(newElements);
+    modCount++;
+    return previous;
+  }
+
+  @Override
+  public synchronized boolean remove(Object o) {
+    int index = indexOf(o);
+    if (index < 0) {
+      return false;
+    }
+    remove(index);
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized boolean removeIf(Predicate<? super E> filter) {
+    Contents remaining = new Contents();
+    for (Object element : toArray()) {
+      if (!filter.test((E) element)) {
+        remaining.append(element);
+      }
+    }
+    if (remaining.size == contents.size) {
+      return false;
+    }
+    contents = remaining;
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public boolean removeAll(Collection<?> c) {
+    return removeIf(c::contains);
+  }
+
+  @Override
+  public boolean retainAll(Collection<?> c) {
+    return removeIf(element -> !c.contains(element));
+  }
+
+  @Override
+  public synchronized void clear() {
+    contents = new Contents();
+    modCount++;
+  }
+
+  @Override
+  public Object[] toArray() {
+    Contents contents = this.contents;
+    int size = contents.size;
+    Object[] elements = new Object[size];
+    for (int i = 0; i < size; i++) {
+      elements[i] = contents.get(i);
+    }
+    return elements;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    Contents contents = this.contents;
+    int size = contents.size;
+    return new Iterator<E>() {
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      }
+
+      @Override
+      public E next() {
+        if (next >= size) {
+          throw new NoSuchElementException();
+        }
+        return contents.get(next++);
+      }
+    };
+  }
+
+  private final class Contents {
+    // Always written before size by writers, and read after size by readers.
+    volatile Object[][] chunks = new Object[0][];
+    volatile int size;
+
+    Contents() {}
+
+    Contents(Object[] elements) {
+      for (Object element : elements) {
+        append(element);
+      }
+    }
+
+    // Must be called while holding the list's lock, or before the contents are published.
+    void append(Object element) {
+      int chunkIndex = size >>> CHUNK_SHIFT;
+      Object[][] chunks = this.chunks;
+      if (chunkIndex == chunks.length) {
+        chunks = Arrays.copyOf(chunks, Math.max(4, chunks.length * 2));
+        this.chunks = chunks;
+      }
+      if (chunks[chunkIndex] == null) {
+        chunks[chunkIndex] = new Object[CHUNK_SIZE];
+      }
+      chunks[chunkIndex][size & CHUNK_MASK] = element;
+      // Publishes the element, and any new chunks, to readers.
+      size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    E get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      return (E) chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package org.robolectric.shadows;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import android.util.Log;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Writes log lines to a file through a {@link FileChannel}, in the same format as {@link
+ * ShadowLog#stream}.
+ *
+ * <p>Lines are formatted into a reused builder and encoded into a reused buffer, which is written
+ * to the file when it's full, when an {@link Log#ERROR} or {@link Log#ASSERT} line is logged, every
+ * {@code flushIntervalMillis} and when {@link #flush} is called. {@link ShadowLog} also flushes the
+ * sink after every test, and when the JVM shuts down, so that at most a moment of logs is lost if
+ * the process is killed. Like {@link java.io.PrintStream}, I/O errors stop any further output
+ * instead of being thrown to the code that is logging.
+ */
+final class LogFileSink implements Closeable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** How often {@link ShadowLog} has buffered lines written to the file. */
+  static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+  private final FileChannel channel;
+  private final CharsetEncoder encoder =
+      UTF_8
+          .newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private final StringBuilder line = new StringBuilder();
+  private final ScheduledExecutorService flusher;
+  private boolean failed;
+
+  /** Creates a sink that is only flushed when its buffer is full or {@link #flush} is called. */
+  LogFileSink(Path path) throws IOException {
+    this(path, 0);
+  }
+
+  /**
+   * Creates a sink that is also flushed every {@code flushIntervalMillis} on a daemon thread, if
+   * it's positive.
+   */
+  LogFileSink(Path path, long flushIntervalMillis) throws IOException {
+    channel = FileChannel.open(path, CREATE, WRITE, TRUNCATE_EXISTING);
+    if (flushIntervalMillis > 0) {
+      flusher =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactoryBuilder()
+                  .setNameFormat("Robolectric log flusher")
+                  .setDaemon(true)
+                  .build());
+      flusher.scheduleWithFixedDelay(
+          this::flush, flushIntervalMillis, flushIntervalMillis, MILLISECONDS);
+    } else {
+      flusher = null;
+    }
+  }
+
+  synchronized void write(
+      String timeString, int level, String tag, String msg, Throwable throwable) {
+    if (failed) {
+      return;
+    }
+    line.setLength(0);
+    if (timeString != null && !timeString.isEmpty()) {
+      line.append(timeString).append(' ');
+    }
+    line.append(ShadowLog.levelToChar(level)).append('/').append(tag).append(": ").append(msg);
+    line.append(System.lineSeparator());
+    if (throwable != null) {
+      line.append(Throwables.getStackTraceAsString(throwable));
+    }
+    try {
+      CharBuffer chars = CharBuffer.wrap(line);
+      encoder.reset();
+      while (encoder.encode(chars, buffer, true).isOverflow()) {
+        writeBuffer();
+      }
+      while (encoder.flush(buffer).isOverflow()) {
+        writeBuffer();
+      }
+      // Errors are often the last thing logged before a crash, so they are never held back.
+      if (level >= Log.ERROR) {
+        writeBuffer();
+      }
+    } catch (IOException e) {
+      failed = true;
+    }
+  }
+
+  /** Writes any buffered lines to the file. */
+  synchronized void flush() {
+    if (failed) {
+      return;
+    }
+    try {
+      writeBuffer();
+    } catch (IOException e) {
+      failed = true;
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (flusher != null) {
+      flusher.shutdownNow();
+    }
+    if (channel.isOpen()) {
+      flush();
+      failed = true;
+      channel.close();
+    }
+  }
+
+  private void writeBuffer() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,226 @@
+package org.robolectric.shadows;
+
+import static java.util.Comparator.comparingLong;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
+
+/**
+ * Profiles the SQL statements executed in {@link org.robolectric.annotation.SQLiteMode.Mode#NATIVE}
+ * mode.
+ *
+ * <p>Only SDKs up to {@link android.os.Build.VERSION_CODES#UPSIDE_DOWN_CAKE} are profiled. From
+ * {@link android.os.Build.VERSION_CODES#VANILLA_ICE_CREAM}, {@code SQLiteConnection} calls its
+ * native methods directly instead of through {@link ShadowNativeSQLiteConnection}, so no statements
+ * are recorded.
+ *
+ * <p>Profiling is disabled by default, and can be enabled with {@link #setEnabled(boolean)} or the
+ * {@value #ENABLED_PROPERTY} system property. When disabled, it adds nothing to SQLite calls but a
+ * volatile read. When enabled, each thread aggregates its own statistics per statement, and {@link
+ * #getStatementStats()} merges them.
+ *
+ * <p>Statements are identified by their SQL, with whitespace collapsed and literals replaced by
+ * {@code ?}, so that statements that only differ by their literal values are aggregated together.
+ * Only statements that are prepared while profiling is enabled are identified; others are reported
+ * as {@value #UNKNOWN_SQL}.
+ */
+public final class SQLiteStatementProfiler {
+
+  /** System property that enables profiling when set to {@code true}. */
+  public static final String ENABLED_PROPERTY = "robolectric.sqlite.profile";
+
+  /** Reported instead of the SQL of statements that were prepared before profiling was enabled. */
+  public static final String UNKNOWN_SQL = "<unknown>";
+
+  private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+  private static final Pattern NUMERIC_LITERAL =
+      Pattern.compile("(?<![\\w.])\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?(?![\\w.])");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+  /** The normalized SQL of prepared statements, by statement pointer. */
+  private static final Map<Long, String> statementSql = new ConcurrentHashMap<>();
+
+  private static final List<ThreadStats> allThreadStats = new CopyOnWriteArrayList<>();
+  private static final ThreadLocal<ThreadStats> threadStats =
+      ThreadLocal.withInitial(
+          () -> {
+            ThreadStats stats = new ThreadStats();
+            allThreadStats.add(stats);
+            return stats;
+          });
+
+  private SQLiteStatementProfiler() {}
+
+  /** Enables or disables profiling. Statistics that were already collected are kept. */
+  public static void setEnabled(boolean isEnabled) {
+    enabled = isEnabled;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the statistics collected for each statement, with the statements that took the most
+   * time first.
+   *
+   * <p>Statistics are merged from all threads, so this should be called when no statements are
+   * being executed in order to get consistent results.
+   */
+  public static ImmutableList<StatementStats> getStatementStats() {
+    Map<String, StatementStats> merged = new HashMap<>();
+    for (ThreadStats stats : allThreadStats) {
+      synchronized (stats) {
+        for (StatementStats statementStats : stats.bySql.values()) {
+          merged.computeIfAbsent(statementStats.sql, StatementStats::new).add(statementStats);
+        }
+      }
+    }
+    List<StatementStats> result = new ArrayList<>(merged.values());
+    result.sort(comparingLong(StatementStats::getTotalTimeNs).reversed());
+    return ImmutableList.copyOf(result);
+  }
+
+  /** Discards all collected statistics. */
+  public static void reset() {
+    for (ThreadStats stats : allThreadStats) {
+      synchronized (stats) {
+        stats.bySql.clear();
+      }
+    }
+  }
+
+  static void statementPrepared(long statementPtr, String sql) {
+    statementSql.put(statementPtr, normalize(sql));
+  }
+
+  static void statementFinalized(long statementPtr) {
+    if (!statementSql.isEmpty()) {
+      statementSql.remove(statementPtr);
+    }
+  }
+
+  /**
+   * Records an execution of a statement.
+   *
+   * @param rowCount the number of rows stepped through, for queries
+   * @param windowRowCount the number of rows put in a {@link android.database.CursorWindow}, or -1
+   *     if the statement didn't fill a window
+   */
+  static void statementExecuted(
+      long statementPtr, long elapsedNs, int rowCount, int windowRowCount) {
+    String sql = statementSql.getOrDefault(statementPtr, UNKNOWN_SQL);
+    ThreadStats stats = threadStats.get();
+    synchronized (stats) {
+      StatementStats statementStats = stats.bySql.get(sql);
+      if (statementStats == null) {
+        statementStats = new StatementStats(sql);
+        stats.bySql.put(sql, statementStats);
+      }
+      statementStats.executionCount++;
+      statementStats.totalTimeNs += elapsedNs;
+      statementStats.rowCount += rowCount;
+      if (windowRowCount >= 0) {
+        statementStats.windowFillCount++;
+        statementStats.windowRowCount += windowRowCount;
+        statementStats.maxWindowRowCount =
+            Math.max(statementStats.maxWindowRowCount, windowRowCount);
+      }
+    }
+  }
+
+  static String normalize(String sql) {
+    if (sql == null) {
+      return UNKNOWN_SQL;
+    }
+    String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+    normalized = NUMERIC_LITERAL.matcher(normalized).replaceAll("?");
+    return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+  }
+
+  private static final class ThreadStats {
+    // Guarded by this.
+    final Map<String, StatementStats> bySql = new HashMap<>();
+  }
+
+  /** Statistics for the executions of a statement. */
+  public static final class StatementStats {
+    private final String sql;
+    private long executionCount;
+    private long totalTimeNs;
+    private long rowCount;
+    private long windowFillCount;
+    private long windowRowCount;
+    private int maxWindowRowCount;
+
+    private StatementStats(String sql) {
+      this.sql = sql;
+    }
+
+    /** The normalized SQL of the statement. */
+    public String getSql() {
+      return sql;
+    }
+
+    public long getExecutionCount() {
+      return executionCount;
+    }
+
+    /** The total time spent executing the statement, excluding binding its arguments. */
+    public long getTotalTimeNs() {
+      return totalTimeNs;
+    }
+
+    /** The total number of rows that queries stepped through. */
+    public long getRowCount() {
+      return rowCount;
+    }
+
+    /**
+     * The number of times that results were copied into a {@link android.database.CursorWindow}.
+     */
+    public long getWindowFillCount() {
+      return windowFillCount;
+    }
+
+    /** The total number of rows that were copied into {@link android.database.CursorWindow}s. */
+    public long getWindowRowCount() {
+      return windowRowCount;
+    }
+
+    /** The most rows that were copied into a {@link android.database.CursorWindow} at once. */
+    public int getMaxWindowRowCount() {
+      return maxWindowRowCount;
+    }
+
+    private void add(StatementStats other) {
+      executionCount += other.executionCount;
+      totalTimeNs += other.totalTimeNs;
+      rowCount += other.rowCount;
+      windowFillCount += other.windowFillCount;
+      windowRowCount += other.windowRowCount;
+      maxWindowRowCount = Math.max(maxWindowRowCount, other.maxWindowRowCount);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: %d executions, %.3fms, %d rows, %d window fills (%d rows, max %d)",
+          sql,
+          executionCount,
+          totalTimeNs / 1e6,
+          rowCount,
+          windowFillCount,
+          windowRowCount,
+          maxWindowRowCount);
+    }
+  }
+}
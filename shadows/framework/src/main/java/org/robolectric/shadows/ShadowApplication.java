@@ -79,6 +79,19 @@ public class ShadowApplication extends ShadowContextWrapper {
         ReflectionHelpers.ClassParameter.from(Context.class, context));
   }
 
+  /**
+   * Clears the toasts and popups recorded by this shadow, so the application can be reused by
+   * another test.
+   *
+   * <p>Internal use only. This API may be removed at any time.
+   */
+  public void clearRecordedState() {
+    shownToasts.clear();
+    latestPopupMenu = null;
+    latestPopupWindow = null;
+    latestListPopupWindow = null;
+  }
+
   public List<Toast> getShownToasts() {
     return shownToasts;
   }
@@ -148,8 +148,13 @@ public class ShadowArscApkAssets9 extends ShadowApkAssets {
                 throw new IOException(error_msg);
               }
               long ptr = Registries.NATIVE_APK_ASSETS_REGISTRY.register(apk_assets);
-              ApkAssetsCache.put(path, system, RuntimeEnvironment.getApiLevel(), ptr);
-              return ptr;
+              long cachedPtr =
+                  ApkAssetsCache.putIfAbsent(path, system, RuntimeEnvironment.getApiLevel(), ptr);
+              if (cachedPtr != ptr) {
+                // Another sandbox loaded the same resources concurrently.
+                Registries.NATIVE_APK_ASSETS_REGISTRY.unregister(ptr);
+              }
+              return cachedPtr;
             });
   }
 
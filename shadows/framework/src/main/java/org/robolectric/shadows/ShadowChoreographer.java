@@ -307,5 +307,8 @@ public abstract class ShadowChoreographer {
   protected interface CallbackQueueReflector {
     @Accessor("mHead")
     void setHead(Object head);
+
+    @Accessor("mHead")
+    Object getHead();
   }
 }
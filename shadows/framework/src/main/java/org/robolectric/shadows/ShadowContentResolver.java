@@ -73,17 +73,22 @@ public class ShadowContentResolver {
   @RealObject ContentResolver realContentResolver;
 
   private BaseCursor cursor;
-  private static final List<Statement> statements = new CopyOnWriteArrayList<>();
-  private static final List<InsertStatement> insertStatements = new CopyOnWriteArrayList<>();
-  private static final List<UpdateStatement> updateStatements = new CopyOnWriteArrayList<>();
-  private static final List<DeleteStatement> deleteStatements = new CopyOnWriteArrayList<>();
-  private static final List<NotifiedUri> notifiedUris = new ArrayList<>();
-  private static final Map<Uri, BaseCursor> uriCursorMap = new HashMap<>();
-  private static final Map<Uri, Supplier<InputStream>> inputStreamMap = new HashMap<>();
-  private static final Map<Uri, Supplier<OutputStream>> outputStreamMap = new HashMap<>();
+  private static final List<Statement> statements = new ChunkedCopyOnWriteList<>();
+  private static final List<InsertStatement> insertStatements = new ChunkedCopyOnWriteList<>();
+  private static final List<UpdateStatement> updateStatements = new ChunkedCopyOnWriteList<>();
+  private static final List<DeleteStatement> deleteStatements = new ChunkedCopyOnWriteList<>();
+  private static final List<NotifiedUri> notifiedUris = new ChunkedCopyOnWriteList<>();
+  private static final Map<Uri, BaseCursor> uriCursorMap =
+      Collections.synchronizedMap(new HashMap<>());
+  private static final Map<Uri, Supplier<InputStream>> inputStreamMap =
+      Collections.synchronizedMap(new HashMap<>());
+  private static final Map<Uri, Supplier<OutputStream>> outputStreamMap =
+      Collections.synchronizedMap(new HashMap<>());
   private static final Map<String, List<ContentProviderOperation>> contentProviderOperations =
-      new HashMap<>();
+      Collections.synchronizedMap(new HashMap<>());
+  // Guarded by itself.
   private static final List<UriPermission> uriPermissions = new ArrayList<>();
+  private static volatile boolean statementRecordingEnabled = true;
 
   private static final CopyOnWriteArrayList<ContentObserverEntry> contentObservers =
       new CopyOnWriteArrayList<>();
@@ -106,7 +111,10 @@ public class ShadowContentResolver {
     inputStreamMap.clear();
     outputStreamMap.clear();
     contentProviderOperations.clear();
-    uriPermissions.clear();
+    synchronized (uriPermissions) {
+      uriPermissions.clear();
+    }
+    statementRecordingEnabled = true;
     contentObservers.clear();
     syncableAccounts.clear();
     providers.clear();
@@ -253,10 +261,12 @@ public class ShadowContentResolver {
   @Implementation
   protected Uri insert(Uri url, ContentValues values) {
     ContentProvider provider = getProvider(url, getContext());
-    ContentValues valuesCopy = (values == null) ? null : new ContentValues(values);
-    InsertStatement insertStatement = new InsertStatement(url, provider, valuesCopy);
-    statements.add(insertStatement);
-    insertStatements.add(insertStatement);
+    if (statementRecordingEnabled) {
+      ContentValues valuesCopy = (values == null) ? null : new ContentValues(values);
+      InsertStatement insertStatement = new InsertStatement(url, provider, valuesCopy);
+      statements.add(insertStatement);
+      insertStatements.add(insertStatement);
+    }
 
     if (provider != null) {
       return provider.insert(url, values);
@@ -282,11 +292,13 @@ public class ShadowContentResolver {
   @Implementation
   protected int update(Uri uri, ContentValues values, String where, String[] selectionArgs) {
     ContentProvider provider = getProvider(uri, getContext());
-    ContentValues valuesCopy = (values == null) ? null : new ContentValues(values);
-    UpdateStatement updateStatement =
-        new UpdateStatement(uri, provider, valuesCopy, where, selectionArgs);
-    statements.add(updateStatement);
-    updateStatements.add(updateStatement);
+    if (statementRecordingEnabled) {
+      ContentValues valuesCopy = (values == null) ? null : new ContentValues(values);
+      UpdateStatement updateStatement =
+          new UpdateStatement(uri, provider, valuesCopy, where, selectionArgs);
+      statements.add(updateStatement);
+      updateStatements.add(updateStatement);
+    }
 
     if (provider != null) {
       return provider.update(uri, values, where, selectionArgs);
@@ -465,9 +477,11 @@ public class ShadowContentResolver {
   protected int delete(Uri url, String where, String[] selectionArgs) {
     ContentProvider provider = getProvider(url, getContext());
 
-    DeleteStatement deleteStatement = new DeleteStatement(url, provider, where, selectionArgs);
-    statements.add(deleteStatement);
-    deleteStatements.add(deleteStatement);
+    if (statementRecordingEnabled) {
+      DeleteStatement deleteStatement = new DeleteStatement(url, provider, where, selectionArgs);
+      statements.add(deleteStatement);
+      deleteStatements.add(deleteStatement);
+    }
 
     if (provider != null) {
       return provider.delete(url, where, selectionArgs);
@@ -490,9 +504,11 @@ public class ShadowContentResolver {
   protected int bulkInsert(Uri url, ContentValues[] values) {
     ContentProvider provider = getProvider(url, getContext());
 
-    InsertStatement insertStatement = new InsertStatement(url, provider, values);
-    statements.add(insertStatement);
-    insertStatements.add(insertStatement);
+    if (statementRecordingEnabled) {
+      InsertStatement insertStatement = new InsertStatement(url, provider, values);
+      statements.add(insertStatement);
+      insertStatements.add(insertStatement);
+    }
 
     if (provider != null) {
       return provider.bulkInsert(url, values);
@@ -684,22 +700,24 @@ public class ShadowContentResolver {
       return;
     }
 
-    // Attempt to locate an existing record for the uri.
-    for (Iterator<UriPermission> i = uriPermissions.iterator(); i.hasNext(); ) {
-      UriPermission perm = i.next();
-      if (uri.equals(perm.getUri())) {
-        if (perm.isReadPermission()) {
-          modeFlags |= Intent.FLAG_GRANT_READ_URI_PERMISSION;
-        }
-        if (perm.isWritePermission()) {
-          modeFlags |= Intent.FLAG_GRANT_WRITE_URI_PERMISSION;
+    synchronized (uriPermissions) {
+      // Attempt to locate an existing record for the uri.
+      for (Iterator<UriPermission> i = uriPermissions.iterator(); i.hasNext(); ) {
+        UriPermission perm = i.next();
+        if (uri.equals(perm.getUri())) {
+          if (perm.isReadPermission()) {
+            modeFlags |= Intent.FLAG_GRANT_READ_URI_PERMISSION;
+          }
+          if (perm.isWritePermission()) {
+            modeFlags |= Intent.FLAG_GRANT_WRITE_URI_PERMISSION;
+          }
+          i.remove();
+          break;
         }
-        i.remove();
-        break;
       }
-    }
 
-    addUriPermission(uri, modeFlags);
+      addUriPermission(uri, modeFlags);
+    }
   }
 
   @Implementation
@@ -712,26 +730,28 @@ public class ShadowContentResolver {
       return;
     }
 
-    // Attempt to locate an existing record for the uri.
-    for (Iterator<UriPermission> i = uriPermissions.iterator(); i.hasNext(); ) {
-      UriPermission perm = i.next();
-      if (uri.equals(perm.getUri())) {
-        // Reconstruct the current mode flags.
-        int oldModeFlags =
-            (perm.isReadPermission() ? Intent.FLAG_GRANT_READ_URI_PERMISSION : 0)
-                | (perm.isWritePermission() ? Intent.FLAG_GRANT_WRITE_URI_PERMISSION : 0);
-
-        // Apply the requested permission change.
-        int newModeFlags = oldModeFlags & ~modeFlags;
-
-        // Update the permission record if a change occurred.
-        if (newModeFlags != oldModeFlags) {
-          i.remove();
-          if (newModeFlags != 0) {
-            addUriPermission(uri, newModeFlags);
+    synchronized (uriPermissions) {
+      // Attempt to locate an existing record for the uri.
+      for (Iterator<UriPermission> i = uriPermissions.iterator(); i.hasNext(); ) {
+        UriPermission perm = i.next();
+        if (uri.equals(perm.getUri())) {
+          // Reconstruct the current mode flags.
+          int oldModeFlags =
+              (perm.isReadPermission() ? Intent.FLAG_GRANT_READ_URI_PERMISSION : 0)
+                  | (perm.isWritePermission() ? Intent.FLAG_GRANT_WRITE_URI_PERMISSION : 0);
+
+          // Apply the requested permission change.
+          int newModeFlags = oldModeFlags & ~modeFlags;
+
+          // Update the permission record if a change occurred.
+          if (newModeFlags != oldModeFlags) {
+            i.remove();
+            if (newModeFlags != 0) {
+              addUriPermission(uri, newModeFlags);
+            }
           }
+          break;
         }
-        break;
       }
     }
   }
@@ -739,9 +759,12 @@ public class ShadowContentResolver {
   @Implementation
   @Nonnull
   protected List<UriPermission> getPersistedUriPermissions() {
-    return uriPermissions;
+    synchronized (uriPermissions) {
+      return new ArrayList<>(uriPermissions);
+    }
   }
 
+  // Must be called while holding the uriPermissions lock.
   private void addUriPermission(@Nonnull Uri uri, int modeFlags) {
     UriPermission perm =
         ReflectionHelpers.callConstructor(
@@ -854,6 +877,18 @@ public class ShadowContentResolver {
     nextDatabaseIdForInserts = nextId;
   }
 
+  /**
+   * Sets whether calls to {@link ContentResolver#insert}, {@link ContentResolver#bulkInsert},
+   * {@link ContentResolver#update} and {@link ContentResolver#delete} are recorded for {@link
+   * #getStatements()} and related methods. Disabling recording avoids copying the values of every
+   * call, for tests that make many calls but never look at the statements.
+   *
+   * <p>Recording is enabled by default, and is enabled again when the resolver is reset.
+   */
+  public static void setStatementRecordingEnabled(boolean enabled) {
+    statementRecordingEnabled = enabled;
+  }
+
   /**
    * Returns the list of {@link InsertStatement}s, {@link UpdateStatement}s, and {@link
    * DeleteStatement}s invoked on this {@link ContentResolver}.
@@ -1047,8 +1082,9 @@ public class ShadowContentResolver {
   }
 
   private BaseCursor getCursor(Uri uri) {
-    if (uriCursorMap.get(uri) != null) {
-      return uriCursorMap.get(uri);
+    BaseCursor cursorForUri = uriCursorMap.get(uri);
+    if (cursorForUri != null) {
+      return cursorForUri;
     } else if (cursor != null) {
       return cursor;
     } else {
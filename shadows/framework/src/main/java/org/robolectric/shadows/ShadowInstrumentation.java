@@ -1004,6 +1004,71 @@ public class ShadowInstrumentation {
     return copy;
   }
 
+  /**
+   * Returns the registered receivers, sticky broadcasts and granted permissions, so that they can
+   * be restored to the instrumentation of a later test that reuses the application.
+   *
+   * <p>Internal use only. This API may be removed at any time.
+   */
+  public ApplicationState saveApplicationState() {
+    Map<PermissionKey, Set<String>> grantedPermissions = new HashMap<>();
+    synchronized (grantedPermissionsMap) {
+      for (Map.Entry<PermissionKey, Set<String>> entry : grantedPermissionsMap.entrySet()) {
+        grantedPermissions.put(entry.getKey(), new HashSet<>(entry.getValue()));
+      }
+    }
+    Map<String, Intent> savedStickyIntents;
+    synchronized (stickyIntents) {
+      savedStickyIntents = new LinkedHashMap<>(stickyIntents);
+    }
+    return new ApplicationState(getRegisteredReceivers(), savedStickyIntents, grantedPermissions);
+  }
+
+  /**
+   * Restores state returned by {@link #saveApplicationState()} to this instrumentation. Receivers
+   * that were registered with {@code oldContext} are restored with {@code newContext} instead.
+   *
+   * <p>Internal use only. This API may be removed at any time.
+   */
+  public void restoreApplicationState(
+      ApplicationState state, Context oldContext, Context newContext) {
+    synchronized (registeredReceivers) {
+      for (Wrapper wrapper : state.registeredReceivers) {
+        registeredReceivers.add(
+            new Wrapper(
+                wrapper.broadcastReceiver,
+                wrapper.intentFilter,
+                wrapper.context == oldContext ? newContext : wrapper.context,
+                wrapper.broadcastPermission,
+                wrapper.scheduler,
+                wrapper.flags));
+      }
+    }
+    stickyIntents.putAll(state.stickyIntents);
+    for (Map.Entry<PermissionKey, Set<String>> entry : state.grantedPermissions.entrySet()) {
+      grantedPermissionsMap.put(entry.getKey(), new HashSet<>(entry.getValue()));
+    }
+  }
+
+  /**
+   * State of an instrumentation that belongs to the application rather than to a test, see {@link
+   * #saveApplicationState()}.
+   */
+  public static final class ApplicationState {
+    private final ImmutableList<Wrapper> registeredReceivers;
+    private final Map<String, Intent> stickyIntents;
+    private final Map<PermissionKey, Set<String>> grantedPermissions;
+
+    private ApplicationState(
+        ImmutableList<Wrapper> registeredReceivers,
+        Map<String, Intent> stickyIntents,
+        Map<PermissionKey, Set<String>> grantedPermissions) {
+      this.registeredReceivers = registeredReceivers;
+      this.stickyIntents = stickyIntents;
+      this.grantedPermissions = grantedPermissions;
+    }
+  }
+
   int checkPermission(String permission, int pid, int uid) {
     return checkPermission(permission, pid, uid, Context.DEVICE_ID_DEFAULT);
   }
@@ -41,11 +41,14 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -262,16 +265,23 @@ public class ShadowLegacySQLiteConnection extends ShadowSQLiteConnection {
     return 0;
   }
 
+  /**
+   * The open sqlite4java connections and prepared statements.
+   *
+   * <p>sqlite4java confines each connection, and its statements, to the thread that opened it, so
+   * every connection gets its own worker thread. Work on different connections runs in parallel,
+   * e.g. for several databases, or for WAL readers and a writer on the same database, while work on
+   * a single connection is serialized like it is on Android. Lookups don't take any locks.
+   */
   // VisibleForTesting
   static class Connections {
 
-    private final Object lock = new Object();
-    private final AtomicLong pointerCounter = new AtomicLong(0);
-    private final Map<Long, SQLiteStatement> statementsMap = new HashMap<>();
-    private final Map<Long, SQLiteConnection> connectionsMap = new HashMap<>();
-    private final Map<Long, List<Long>> statementPtrsForConnection = new HashMap<>();
+    /** Same as BUSY_TIMEOUT_MS in android_database_SQLiteConnection.cpp. */
+    private static final long BUSY_TIMEOUT_MS = 2500;
 
-    private ExecutorService dbExecutor = Executors.newSingleThreadExecutor(threadFactory());
+    private final AtomicLong pointerCounter = new AtomicLong(0);
+    private final Map<Long, StatementEntry> statementsMap = new ConcurrentHashMap<>();
+    private final Map<Long, ConnectionEntry> connectionsMap = new ConcurrentHashMap<>();
 
     static ThreadFactory threadFactory() {
       ThreadFactory delegate = Executors.defaultThreadFactory();
@@ -283,46 +293,49 @@ public class ShadowLegacySQLiteConnection extends ShadowSQLiteConnection {
     }
 
     SQLiteConnection getConnection(final long connectionPtr) {
-      synchronized (lock) {
-        final SQLiteConnection connection = connectionsMap.get(connectionPtr);
-        if (connection == null) {
-          throw new IllegalStateException(
-              "Illegal connection pointer "
-                  + connectionPtr
-                  + ". Current pointers for thread "
-                  + Thread.currentThread()
-                  + " "
-                  + connectionsMap.keySet());
-        }
-        return connection;
+      return getConnectionEntry(connectionPtr).connection;
+    }
+
+    private ConnectionEntry getConnectionEntry(final long connectionPtr) {
+      final ConnectionEntry entry = connectionsMap.get(connectionPtr);
+      if (entry == null) {
+        throw new IllegalStateException(
+            "Illegal connection pointer "
+                + connectionPtr
+                + ". Current pointers for thread "
+                + Thread.currentThread()
+                + " "
+                + connectionsMap.keySet());
       }
+      return entry;
     }
 
     SQLiteStatement getStatement(final long connectionPtr, final long statementPtr) {
-      synchronized (lock) {
-        // ensure connection is ok
-        getConnection(connectionPtr);
-
-        final SQLiteStatement statement = statementsMap.get(statementPtr);
-        if (statement == null) {
-          throw new IllegalArgumentException(
-              "Invalid prepared statement pointer: "
-                  + statementPtr
-                  + ". Current pointers: "
-                  + statementsMap.keySet());
-        }
-        if (statement.isDisposed()) {
-          throw new IllegalStateException(
-              "Statement " + statementPtr + " " + statement + " is disposed");
-        }
-        return statement;
+      // ensure connection is ok
+      getConnectionEntry(connectionPtr);
+
+      final StatementEntry entry = statementsMap.get(statementPtr);
+      if (entry == null) {
+        throw new IllegalArgumentException(
+            "Invalid prepared statement pointer: "
+                + statementPtr
+                + ". Current pointers: "
+                + statementsMap.keySet());
+      }
+      if (entry.statement.isDisposed()) {
+        throw new IllegalStateException(
+            "Statement " + statementPtr + " " + entry.statement + " is disposed");
       }
+      return entry.statement;
     }
 
     long open(final String path) {
-      synchronized (lock) {
-        final SQLiteConnection dbConnection =
+      final ExecutorService executor = Executors.newSingleThreadExecutor(threadFactory());
+      final SQLiteConnection dbConnection;
+      try {
+        dbConnection =
             execute(
+                executor,
                 () -> {
                   SQLiteConnection connection =
                       useInMemoryDatabase.get() || IN_MEMORY_PATH.equals(path)
@@ -330,14 +343,18 @@ public class ShadowLegacySQLiteConnection extends ShadowSQLiteConnection {
                           : new SQLiteConnection(new File(path));
 
                   connection.open();
+                  // Other connections to the same file may now be running at the same time.
+                  connection.setBusyTimeout(BUSY_TIMEOUT_MS);
                   return connection;
                 });
-
-        final long connectionPtr = pointerCounter.incrementAndGet();
-        connectionsMap.put(connectionPtr, dbConnection);
-        statementPtrsForConnection.put(connectionPtr, new ArrayList<>());
-        return connectionPtr;
+      } catch (RuntimeException e) {
+        executor.shutdown();
+        throw e;
       }
+
+      final long connectionPtr = pointerCounter.incrementAndGet();
+      connectionsMap.put(connectionPtr, new ConnectionEntry(dbConnection, executor));
+      return connectionPtr;
     }
 
     long prepareStatement(final long connectionPtr, final String sql) {
@@ -346,63 +363,57 @@ public class ShadowLegacySQLiteConnection extends ShadowSQLiteConnection {
         return IGNORED_REINDEX_STMT;
       }
 
-      synchronized (lock) {
-        final SQLiteConnection connection = getConnection(connectionPtr);
-        final SQLiteStatement statement = execute(() -> connection.prepare(sql));
+      final ConnectionEntry connection = getConnectionEntry(connectionPtr);
+      final SQLiteStatement statement =
+          execute(connection, () -> connection.connection.prepare(sql));
 
-        final long statementPtr = pointerCounter.incrementAndGet();
-        statementsMap.put(statementPtr, statement);
-        statementPtrsForConnection.get(connectionPtr).add(statementPtr);
-        return statementPtr;
-      }
+      final long statementPtr = pointerCounter.incrementAndGet();
+      statementsMap.put(statementPtr, new StatementEntry(connectionPtr, statement));
+      connection.statementPtrs.add(statementPtr);
+      return statementPtr;
     }
 
     void close(final long connectionPtr) {
-      synchronized (lock) {
-        final SQLiteConnection connection = getConnection(connectionPtr);
-        execute(
-            () -> {
-              connection.dispose();
-              return null;
-            });
-        connectionsMap.remove(connectionPtr);
-        statementPtrsForConnection.remove(connectionPtr);
+      final ConnectionEntry connection = getConnectionEntry(connectionPtr);
+      execute(
+          connection,
+          () -> {
+            connection.connection.dispose();
+            return null;
+          });
+      connectionsMap.remove(connectionPtr);
+      // Disposing of the connection disposed of its statements too.
+      for (Long statementPtr : connection.statementPtrs) {
+        statementsMap.remove(statementPtr);
       }
+      connection.executor.shutdown();
     }
 
     void reset() {
-      ExecutorService oldDbExecutor;
-      Collection<SQLiteConnection> openConnections;
-
-      synchronized (lock) {
-        oldDbExecutor = dbExecutor;
-        openConnections = new ArrayList<>(connectionsMap.values());
-
-        dbExecutor = Executors.newSingleThreadExecutor(threadFactory());
-        connectionsMap.clear();
-        statementsMap.clear();
-        statementPtrsForConnection.clear();
-      }
-
-      shutdownDbExecutor(oldDbExecutor, openConnections);
-    }
-
-    private static void shutdownDbExecutor(
-        ExecutorService executorService, Collection<SQLiteConnection> connections) {
-      for (final SQLiteConnection connection : connections) {
-        getFuture(
-            executorService.submit(
+      Collection<ConnectionEntry> openConnections = new ArrayList<>(connectionsMap.values());
+      connectionsMap.clear();
+      statementsMap.clear();
+
+      // Dispose of the connections in parallel, each on its own thread.
+      List<Future<Void>> disposals = new ArrayList<>();
+      for (final ConnectionEntry connection : openConnections) {
+        disposals.add(
+            connection.executor.submit(
                 () -> {
-                  connection.dispose();
+                  connection.connection.dispose();
                   return null;
                 }));
+        connection.executor.shutdown();
       }
-
-      executorService.shutdown();
-      try {
-        executorService.awaitTermination(30, TimeUnit.SECONDS);
-      } catch (InterruptedException e) {
-        throw new RuntimeException(e);
+      for (Future<Void> disposal : disposals) {
+        getFuture(disposal);
+      }
+      for (ConnectionEntry connection : openConnections) {
+        try {
+          connection.executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
       }
     }
 
@@ -411,16 +422,17 @@ public class ShadowLegacySQLiteConnection extends ShadowSQLiteConnection {
         return;
       }
 
-      synchronized (lock) {
-        final SQLiteStatement statement = getStatement(connectionPtr, statementPtr);
-        statementsMap.remove(statementPtr);
+      final ConnectionEntry connection = getConnectionEntry(connectionPtr);
+      final SQLiteStatement statement = getStatement(connectionPtr, statementPtr);
+      statementsMap.remove(statementPtr);
+      connection.statementPtrs.remove(statementPtr);
 
-        execute(
-            () -> {
-              statement.dispose();
-              return null;
-            });
-      }
+      execute(
+          connection,
+          () -> {
+            statement.dispose();
+            return null;
+          });
     }
 
     void finalizeStmt(final long statementPtr) {
@@ -428,41 +440,38 @@ public class ShadowLegacySQLiteConnection extends ShadowSQLiteConnection {
         return;
       }
 
-      synchronized (lock) {
-        final SQLiteStatement statement = statementsMap.get(statementPtr);
-        if (statement == null) {
-          return;
-        }
-        statementsMap.remove(statementPtr);
-
-        for (List<Long> list : statementPtrsForConnection.values()) {
-          if (list.remove(statementPtr)) {
-            break;
-          }
-        }
-
-        execute(
-            () -> {
-              statement.dispose();
-              return null;
-            });
+      final StatementEntry entry = statementsMap.remove(statementPtr);
+      if (entry == null) {
+        return;
+      }
+      final ConnectionEntry connection = connectionsMap.get(entry.connectionPtr);
+      if (connection == null) {
+        // Closing the connection already disposed of its statements.
+        return;
       }
+      connection.statementPtrs.remove(statementPtr);
+
+      execute(
+          connection,
+          () -> {
+            entry.statement.dispose();
+            return null;
+          });
     }
 
     void cancel(final long connectionPtr) {
-      synchronized (lock) {
-        getConnection(connectionPtr); // check connection
-
-        for (Long statementPtr : statementPtrsForConnection.get(connectionPtr)) {
-          final SQLiteStatement statement = statementsMap.get(statementPtr);
-          if (statement != null) {
-            execute(
-                (Callable<Void>)
-                    () -> {
-                      statement.cancel();
-                      return null;
-                    });
-          }
+      final ConnectionEntry connection = getConnectionEntry(connectionPtr);
+
+      for (Long statementPtr : connection.statementPtrs) {
+        final StatementEntry entry = statementsMap.get(statementPtr);
+        if (entry != null) {
+          execute(
+              connection,
+              (Callable<Void>)
+                  () -> {
+                    entry.statement.cancel();
+                    return null;
+                  });
         }
       }
     }
@@ -592,33 +601,33 @@ public class ShadowLegacySQLiteConnection extends ShadowSQLiteConnection {
     }
 
     int executeForChangedRowCount(final long connectionPtr, final long statementPtr) {
-      synchronized (lock) {
-        final SQLiteConnection connection = getConnection(connectionPtr);
-        final SQLiteStatement statement = getStatement(connectionPtr, statementPtr);
-
-        return execute(
-            () -> {
-              if (statement.step()) {
-                throw new android.database.sqlite.SQLiteException(
-                    "Queries can be performed using SQLiteDatabase query or rawQuery methods"
-                        + " only.");
-              }
-              return connection.getChanges();
-            });
-      }
+      final ConnectionEntry connection = getConnectionEntry(connectionPtr);
+      final SQLiteStatement statement = getStatement(connectionPtr, statementPtr);
+
+      return execute(
+          connection,
+          () -> {
+            if (statement.step()) {
+              throw new android.database.sqlite.SQLiteException(
+                  "Queries can be performed using SQLiteDatabase query or rawQuery methods"
+                      + " only.");
+            }
+            return connection.connection.getChanges();
+          });
     }
 
     long executeForLastInsertedRowId(final long connectionPtr, final long statementPtr) {
-      synchronized (lock) {
-        final SQLiteConnection connection = getConnection(connectionPtr);
-        final SQLiteStatement statement = getStatement(connectionPtr, statementPtr);
-
-        return execute(
-            () -> {
-              statement.stepThrough();
-              return connection.getChanges() > 0 ? connection.getLastInsertId() : -1L;
-            });
-      }
+      final ConnectionEntry connection = getConnectionEntry(connectionPtr);
+      final SQLiteStatement statement = getStatement(connectionPtr, statementPtr);
+
+      return execute(
+          connection,
+          () -> {
+            statement.stepThrough();
+            return connection.connection.getChanges() > 0
+                ? connection.connection.getLastInsertId()
+                : -1L;
+          });
     }
 
     long executeForCursorWindow(
@@ -649,20 +658,45 @@ public class ShadowLegacySQLiteConnection extends ShadowSQLiteConnection {
         final long connectionPtr,
         final long statementPtr,
         final StatementOperation<T> statementOperation) {
-      synchronized (lock) {
-        final SQLiteStatement statement = getStatement(connectionPtr, statementPtr);
-        return execute(() -> statementOperation.call(statement));
+      final ConnectionEntry connection = getConnectionEntry(connectionPtr);
+      final SQLiteStatement statement = getStatement(connectionPtr, statementPtr);
+      return execute(connection, () -> statementOperation.call(statement));
+    }
+
+    /** Runs {@code work} on the thread of {@code connection}, and waits for its result. */
+    private static <T> T execute(final ConnectionEntry connection, final Callable<T> work) {
+      return execute(connection.executor, work);
+    }
+
+    private static <T> T execute(final ExecutorService executor, final Callable<T> work) {
+      final Future<T> future;
+      try {
+        future = executor.submit(work);
+      } catch (RejectedExecutionException e) {
+        throw new IllegalStateException("The connection has been closed", e);
+      }
+      return PerfStatsCollector.getInstance().measure("sqlite", () -> getFuture(future));
+    }
+
+    /** An open connection, and the thread that all of its work runs on. */
+    private static final class ConnectionEntry {
+      final SQLiteConnection connection;
+      final ExecutorService executor;
+      final Set<Long> statementPtrs = ConcurrentHashMap.newKeySet();
+
+      ConnectionEntry(SQLiteConnection connection, ExecutorService executor) {
+        this.connection = connection;
+        this.executor = executor;
       }
     }
 
-    /**
-     * Any Callable passed in to execute must not synchronize on lock, as this will result in a
-     * deadlock
-     */
-    private <T> T execute(final Callable<T> work) {
-      synchronized (lock) {
-        return PerfStatsCollector.getInstance()
-            .measure("sqlite", () -> getFuture(dbExecutor.submit(work)));
+    private static final class StatementEntry {
+      final long connectionPtr;
+      final SQLiteStatement statement;
+
+      StatementEntry(long connectionPtr, SQLiteStatement statement) {
+        this.connectionPtr = connectionPtr;
+        this.statement = statement;
       }
     }
 
@@ -9,9 +9,11 @@ import android.util.Log.TerribleFailureHandler;
 import com.google.common.base.Ascii;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -42,6 +44,17 @@ public class ShadowLog {
 
   private static final AtomicBoolean logCaptureEnabled = new AtomicBoolean(true);
 
+  /**
+   * System property for the default capture buffer size, see {@link #setCaptureBufferSize(int)}.
+   */
+  public static final String CAPTURE_BUFFER_SIZE_PROPERTY = "robolectric.logging.bufferSize";
+
+  /** The bounded capture buffer, or null if all logs are captured. */
+  private static volatile LogRingBuffer boundedLogs = newRingBuffer(defaultCaptureBufferSize());
+
+  /** Sink for the file named by the {@code robolectric.logging} system property, if any. */
+  private static volatile LogFileSink fileSink;
+
   private static final Map<String, Integer> tagToLevel =
       Collections.synchronizedMap(new HashMap<>());
 
@@ -168,22 +181,46 @@ public class ShadowLog {
   }
 
   private static int addLog(int level, String tag, String msg, Throwable throwable) {
+    PrintStream stream = ShadowLog.stream;
+    LogFileSink fileSink = ShadowLog.fileSink;
+    LogRingBuffer boundedLogs = ShadowLog.boundedLogs;
+    boolean capture = logCaptureEnabled.get();
+    boolean loggable = true;
+    if (stream != null || fileSink != null || (capture && boundedLogs != null)) {
+      Integer minLevel = tagToLevel.get(tag);
+      loggable = minLevel == null || level >= minLevel;
+    }
+    // Bounded capture also follows the levels set with setLoggable.
+    if (boundedLogs != null && !loggable) {
+      capture = false;
+    }
+    boolean output = loggable && (stream != null || fileSink != null);
+    if (!output && !capture) {
+      return 0;
+    }
+
     String timeString = null;
     if (timeSupplier != null) {
       timeString = timeSupplier.get();
     }
 
-    if (stream != null) {
-      Integer minLevel = tagToLevel.get(tag);
-      if (minLevel == null || level >= minLevel) {
+    if (output) {
+      if (stream != null) {
         logToStream(stream, timeString, level, tag, msg, throwable);
       }
+      if (fileSink != null) {
+        fileSink.write(timeString, level, tag, msg, throwable);
+      }
     }
-    if (!logCaptureEnabled.get()) {
+    if (!capture) {
       return 0;
     }
 
     LogItem item = new LogItem(timeString, level, tag, msg, throwable);
+    if (boundedLogs != null) {
+      boundedLogs.add(item);
+      return 0;
+    }
     Queue<LogItem> itemList;
 
     synchronized (logsByTag) {
@@ -259,9 +296,31 @@ public class ShadowLog {
   public static void setCaptureLogsEnabled(boolean isEnabled) {
     boolean previous = logCaptureEnabled.getAndSet(isEnabled);
     if (previous && !isEnabled) {
-      logs.clear();
-      logsByTag.clear();
+      clearCapturedLogs();
+    }
+  }
+
+  /**
+   * Limits the number of log items captured for {@link #getLogs()} and {@link
+   * #getLogsForTag(String)}, for tests that log heavily but only look at recent logs. Once the
+   * limit is reached, each new log item replaces the oldest one.
+   *
+   * <p>In bounded mode, log items below the level set with {@link #setLoggable} for their tag are
+   * not captured, nor is anything allocated for them. Tags without a level are captured at all
+   * levels, as in unbounded mode.
+   *
+   * <p>Changing the size discards any captured logs. The size is restored to the value of the
+   * {@value #CAPTURE_BUFFER_SIZE_PROPERTY} system property, or unbounded, when {@link #reset()} is
+   * called.
+   *
+   * @param size The maximum number of log items to keep, or 0 to capture all logs.
+   */
+  public static void setCaptureBufferSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Invalid capture buffer size: " + size);
     }
+    clearCapturedLogs();
+    boundedLogs = newRingBuffer(size);
   }
 
   /**
@@ -273,7 +332,10 @@ public class ShadowLog {
     checkState(
         logCaptureEnabled.get(),
         "Log capturing is disabled. Use ShadowLog.setCaptureLogsEnabled(true) to enable.");
-    return ImmutableList.copyOf(logs);
+    LogRingBuffer boundedLogs = ShadowLog.boundedLogs;
+    return boundedLogs != null
+        ? boundedLogs.getLogs(/* filterByTag= */ false, null)
+        : ImmutableList.copyOf(logs);
   }
 
   /**
@@ -286,6 +348,10 @@ public class ShadowLog {
     checkState(
         logCaptureEnabled.get(),
         "Log capturing is disabled. Use ShadowLog.setCaptureLogsEnabled(true) to enable.");
+    LogRingBuffer boundedLogs = ShadowLog.boundedLogs;
+    if (boundedLogs != null) {
+      return boundedLogs.getLogs(/* filterByTag= */ true, tag);
+    }
     Queue<LogItem> logs = logsByTag.get(tag);
     return logs == null ? ImmutableList.of() : ImmutableList.copyOf(logs);
   }
@@ -297,32 +363,112 @@ public class ShadowLog {
 
   @Resetter
   public static void reset() {
-    logs.clear();
-    logsByTag.clear();
+    clearCapturedLogs();
+    boundedLogs = newRingBuffer(defaultCaptureBufferSize());
     tagToLevel.clear();
     wtfIsFatal = false;
     timeSupplier = null;
+    LogFileSink fileSink = ShadowLog.fileSink;
+    if (fileSink != null) {
+      fileSink.flush();
+    }
   }
 
+  private static void clearCapturedLogs() {
+    logs.clear();
+    logsByTag.clear();
+    LogRingBuffer boundedLogs = ShadowLog.boundedLogs;
+    if (boundedLogs != null) {
+      boundedLogs.clear();
+    }
+  }
+
+  private static int defaultCaptureBufferSize() {
+    return Integer.getInteger(CAPTURE_BUFFER_SIZE_PROPERTY, 0);
+  }
+
+  private static LogRingBuffer newRingBuffer(int size) {
+    return size > 0 ? new LogRingBuffer(size) : null;
+  }
+
+  /**
+   * Sets up output for the {@code robolectric.logging} system property, which may be {@code
+   * stdout}, {@code stderr}, or the path of a file to write logs to.
+   *
+   * <p>Logs are written to files through a buffered {@link java.nio.channels.FileChannel}, which is
+   * flushed after every test, after {@link Log#ERROR} and {@link Log#ASSERT} lines, and every
+   * second, rather than after every line.
+   */
   @SuppressWarnings("CatchAndPrintStackTrace")
   public static void setupLogging() {
     String logging = System.getProperty("robolectric.logging");
-    if (logging != null && stream == null) {
-      PrintStream stream = null;
+    if (logging != null && stream == null && fileSink == null) {
       if (Ascii.equalsIgnoreCase("stdout", logging)) {
         stream = System.out;
       } else if (Ascii.equalsIgnoreCase("stderr", logging)) {
         stream = System.err;
       } else {
-        try {
-          final PrintStream file = new PrintStream(new FileOutputStream(logging), true);
-          stream = file;
-          Runtime.getRuntime().addShutdownHook(new Thread(file::close));
-        } catch (IOException e) {
-          e.printStackTrace();
+        synchronized (ShadowLog.class) {
+          if (fileSink != null) {
+            return;
+          }
+          try {
+            LogFileSink sink =
+                new LogFileSink(Paths.get(logging), LogFileSink.DEFAULT_FLUSH_INTERVAL_MILLIS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> closeQuietly(sink)));
+            fileSink = sink;
+          } catch (IOException | InvalidPathException e) {
+            e.printStackTrace();
+          }
         }
       }
-      ShadowLog.stream = stream;
+    }
+  }
+
+  private static void closeQuietly(LogFileSink sink) {
+    try {
+      sink.close();
+    } catch (IOException e) {
+      // Nothing useful can be done while shutting down.
+    }
+  }
+
+  /** A fixed size buffer of the most recent log items. */
+  private static final class LogRingBuffer {
+    private final LogItem[] items;
+    // Both guarded by this.
+    private int next;
+    private int size;
+
+    LogRingBuffer(int capacity) {
+      items = new LogItem[capacity];
+    }
+
+    synchronized void add(LogItem item) {
+      items[next] = item;
+      next = next + 1 == items.length ? 0 : next + 1;
+      if (size < items.length) {
+        size++;
+      }
+    }
+
+    /** Returns the items in the order they were logged, only those for {@code tag} if filtered. */
+    synchronized ImmutableList<LogItem> getLogs(boolean filterByTag, String tag) {
+      ImmutableList.Builder<LogItem> builder = ImmutableList.builder();
+      int start = next - size < 0 ? next - size + items.length : next - size;
+      for (int i = 0; i < size; i++) {
+        LogItem item = items[(start + i) % items.length];
+        if (!filterByTag || Objects.equals(tag, item.tag)) {
+          builder.add(item);
+        }
+      }
+      return builder.build();
+    }
+
+    synchronized void clear() {
+      Arrays.fill(items, null);
+      next = 0;
+      size = 0;
     }
   }
 
@@ -84,6 +84,9 @@ public abstract class ShadowMessage {
     @Direct
     void recycleUnchecked();
 
+    @Direct
+    void markInUse();
+
     @Static
     @Accessor("sPool")
     void setPool(Message o);
@@ -12,16 +12,27 @@ import java.util.function.BinaryOperator;
 import java.util.function.UnaryOperator;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
+import org.robolectric.nativeruntime.CursorWindowNatives;
 import org.robolectric.nativeruntime.DefaultNativeRuntimeLoader;
 import org.robolectric.nativeruntime.SQLiteConnectionNatives;
 import org.robolectric.util.PerfStatsCollector;
 
-/** Shadow for {@link SQLiteConnection} that is backed by native code */
+/**
+ * Shadow for {@link SQLiteConnection} that is backed by native code.
+ *
+ * <p>Methods that are called for every statement execution, argument or column only measure perf
+ * stats when they're enabled, so that they don't allocate anything otherwise. Statement executions
+ * are also reported to {@link SQLiteStatementProfiler}.
+ */
 @Implements(
     className = "android.database.sqlite.SQLiteConnection",
     isInAndroidSdk = false,
     callNativeMethodsByDefault = true)
 public class ShadowNativeSQLiteConnection extends ShadowSQLiteConnection {
+  private static final String ANDROID_SQLITE = "androidsqlite";
+  private static final PerfStatsCollector perfStats = PerfStatsCollector.getInstance();
+  private static final long NOT_PROFILING = Long.MIN_VALUE;
+
   @Implementation(maxSdk = O)
   protected static long nativeOpen(
       String path, int openFlags, String label, boolean enableTrace, boolean enableProfile) {
@@ -38,199 +49,252 @@ public class ShadowNativeSQLiteConnection extends ShadowSQLiteConnection {
       int lookasideSlotSize,
       int lookasideSlotCount) {
     DefaultNativeRuntimeLoader.injectAndLoad();
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeOpen(
-                    path,
-                    openFlags,
-                    label,
-                    enableTrace,
-                    enableProfile,
-                    lookasideSlotSize,
-                    lookasideSlotCount));
+    return perfStats.measure(
+        ANDROID_SQLITE,
+        () ->
+            SQLiteConnectionNatives.nativeOpen(
+                path,
+                openFlags,
+                label,
+                enableTrace,
+                enableProfile,
+                lookasideSlotSize,
+                lookasideSlotCount));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeClose(long connectionPtr) {
-    PerfStatsCollector.getInstance()
-        .measure("androidsqlite", () -> SQLiteConnectionNatives.nativeClose(connectionPtr));
+    perfStats.measure(ANDROID_SQLITE, () -> SQLiteConnectionNatives.nativeClose(connectionPtr));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static long nativePrepareStatement(long connectionPtr, String sql) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
+    long statementPtr =
+        perfStats.measure(
+            ANDROID_SQLITE,
             () -> SQLiteConnectionNatives.nativePrepareStatement(connectionPtr, sql));
+    if (SQLiteStatementProfiler.isEnabled()) {
+      SQLiteStatementProfiler.statementPrepared(statementPtr, sql);
+    }
+    return statementPtr;
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeFinalizeStatement(long connectionPtr, long statementPtr) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeFinalizeStatement(connectionPtr, statementPtr));
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeFinalizeStatement(connectionPtr, statementPtr));
+    // Even if profiling is now disabled, the statement may have been prepared while it was enabled.
+    SQLiteStatementProfiler.statementFinalized(statementPtr);
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static int nativeGetParameterCount(final long connectionPtr, final long statementPtr) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeGetParameterCount(connectionPtr, statementPtr));
+    if (!perfStats.isEnabled()) {
+      return SQLiteConnectionNatives.nativeGetParameterCount(connectionPtr, statementPtr);
+    }
+    return perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeGetParameterCount(connectionPtr, statementPtr));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static boolean nativeIsReadOnly(final long connectionPtr, final long statementPtr) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeIsReadOnly(connectionPtr, statementPtr));
+    if (!perfStats.isEnabled()) {
+      return SQLiteConnectionNatives.nativeIsReadOnly(connectionPtr, statementPtr);
+    }
+    return perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeIsReadOnly(connectionPtr, statementPtr));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static String nativeExecuteForString(
       final long connectionPtr, final long statementPtr) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeExecuteForString(connectionPtr, statementPtr));
+    long startNs = profileStart();
+    String result =
+        perfStats.isEnabled()
+            ? perfStats.measure(
+                ANDROID_SQLITE,
+                () -> SQLiteConnectionNatives.nativeExecuteForString(connectionPtr, statementPtr))
+            : SQLiteConnectionNatives.nativeExecuteForString(connectionPtr, statementPtr);
+    profileEnd(statementPtr, startNs, 0, -1);
+    return result;
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeRegisterLocalizedCollators(long connectionPtr, String locale) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeRegisterLocalizedCollators(connectionPtr, locale));
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeRegisterLocalizedCollators(connectionPtr, locale));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static long nativeExecuteForLong(final long connectionPtr, final long statementPtr) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeExecuteForLong(connectionPtr, statementPtr));
+    long startNs = profileStart();
+    long result =
+        perfStats.isEnabled()
+            ? perfStats.measure(
+                ANDROID_SQLITE,
+                () -> SQLiteConnectionNatives.nativeExecuteForLong(connectionPtr, statementPtr))
+            : SQLiteConnectionNatives.nativeExecuteForLong(connectionPtr, statementPtr);
+    profileEnd(statementPtr, startNs, 0, -1);
+    return result;
   }
 
   @Implementation(maxSdk = S_V2)
   protected static void nativeExecute(final long connectionPtr, final long statementPtr) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeExecute(connectionPtr, statementPtr, false));
+    long startNs = profileStart();
+    if (perfStats.isEnabled()) {
+      perfStats.measure(
+          ANDROID_SQLITE,
+          () -> SQLiteConnectionNatives.nativeExecute(connectionPtr, statementPtr, false));
+    } else {
+      SQLiteConnectionNatives.nativeExecute(connectionPtr, statementPtr, false);
+    }
+    profileEnd(statementPtr, startNs, 0, -1);
   }
 
   @Implementation(minSdk = TIRAMISU, maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeExecute(
       final long connectionPtr, final long statementPtr, boolean isPragmaStmt) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeExecute(connectionPtr, statementPtr, isPragmaStmt));
+    long startNs = profileStart();
+    if (perfStats.isEnabled()) {
+      perfStats.measure(
+          ANDROID_SQLITE,
+          () -> SQLiteConnectionNatives.nativeExecute(connectionPtr, statementPtr, isPragmaStmt));
+    } else {
+      SQLiteConnectionNatives.nativeExecute(connectionPtr, statementPtr, isPragmaStmt);
+    }
+    profileEnd(statementPtr, startNs, 0, -1);
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static int nativeExecuteForChangedRowCount(
       final long connectionPtr, final long statementPtr) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeExecuteForChangedRowCount(
-                    connectionPtr, statementPtr));
+    long startNs = profileStart();
+    int result =
+        perfStats.isEnabled()
+            ? perfStats.measure(
+                ANDROID_SQLITE,
+                () ->
+                    SQLiteConnectionNatives.nativeExecuteForChangedRowCount(
+                        connectionPtr, statementPtr))
+            : SQLiteConnectionNatives.nativeExecuteForChangedRowCount(connectionPtr, statementPtr);
+    profileEnd(statementPtr, startNs, 0, -1);
+    return result;
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static int nativeGetColumnCount(final long connectionPtr, final long statementPtr) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeGetColumnCount(connectionPtr, statementPtr));
+    if (!perfStats.isEnabled()) {
+      return SQLiteConnectionNatives.nativeGetColumnCount(connectionPtr, statementPtr);
+    }
+    return perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeGetColumnCount(connectionPtr, statementPtr));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static String nativeGetColumnName(
       final long connectionPtr, final long statementPtr, final int index) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeGetColumnName(connectionPtr, statementPtr, index));
+    if (!perfStats.isEnabled()) {
+      return SQLiteConnectionNatives.nativeGetColumnName(connectionPtr, statementPtr, index);
+    }
+    return perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeGetColumnName(connectionPtr, statementPtr, index));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeBindNull(
       final long connectionPtr, final long statementPtr, final int index) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeBindNull(connectionPtr, statementPtr, index));
+    if (!perfStats.isEnabled()) {
+      SQLiteConnectionNatives.nativeBindNull(connectionPtr, statementPtr, index);
+      return;
+    }
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeBindNull(connectionPtr, statementPtr, index));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeBindLong(
       final long connectionPtr, final long statementPtr, final int index, final long value) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeBindLong(connectionPtr, statementPtr, index, value));
+    if (!perfStats.isEnabled()) {
+      SQLiteConnectionNatives.nativeBindLong(connectionPtr, statementPtr, index, value);
+      return;
+    }
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeBindLong(connectionPtr, statementPtr, index, value));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeBindDouble(
       final long connectionPtr, final long statementPtr, final int index, final double value) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeBindDouble(
-                    connectionPtr, statementPtr, index, value));
+    if (!perfStats.isEnabled()) {
+      SQLiteConnectionNatives.nativeBindDouble(connectionPtr, statementPtr, index, value);
+      return;
+    }
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeBindDouble(connectionPtr, statementPtr, index, value));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeBindString(
       final long connectionPtr, final long statementPtr, final int index, final String value) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeBindString(
-                    connectionPtr, statementPtr, index, value));
+    if (!perfStats.isEnabled()) {
+      SQLiteConnectionNatives.nativeBindString(connectionPtr, statementPtr, index, value);
+      return;
+    }
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeBindString(connectionPtr, statementPtr, index, value));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeBindBlob(
       final long connectionPtr, final long statementPtr, final int index, final byte[] value) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeBindBlob(connectionPtr, statementPtr, index, value));
+    if (!perfStats.isEnabled()) {
+      SQLiteConnectionNatives.nativeBindBlob(connectionPtr, statementPtr, index, value);
+      return;
+    }
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () -> SQLiteConnectionNatives.nativeBindBlob(connectionPtr, statementPtr, index, value));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeResetStatementAndClearBindings(
       final long connectionPtr, final long statementPtr) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeResetStatementAndClearBindings(
-                    connectionPtr, statementPtr));
+    if (!perfStats.isEnabled()) {
+      SQLiteConnectionNatives.nativeResetStatementAndClearBindings(connectionPtr, statementPtr);
+      return;
+    }
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () ->
+            SQLiteConnectionNatives.nativeResetStatementAndClearBindings(
+                connectionPtr, statementPtr));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static long nativeExecuteForLastInsertedRowId(
       final long connectionPtr, final long statementPtr) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeExecuteForLastInsertedRowId(
-                    connectionPtr, statementPtr));
+    long startNs = profileStart();
+    long result =
+        perfStats.isEnabled()
+            ? perfStats.measure(
+                ANDROID_SQLITE,
+                () ->
+                    SQLiteConnectionNatives.nativeExecuteForLastInsertedRowId(
+                        connectionPtr, statementPtr))
+            : SQLiteConnectionNatives.nativeExecuteForLastInsertedRowId(
+                connectionPtr, statementPtr);
+    profileEnd(statementPtr, startNs, 0, -1);
+    return result;
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
@@ -241,65 +305,92 @@ public class ShadowNativeSQLiteConnection extends ShadowSQLiteConnection {
       final int startPos,
       final int requiredPos,
       final boolean countAllRows) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeExecuteForCursorWindow(
-                    connectionPtr, statementPtr, windowPtr, startPos, requiredPos, countAllRows));
+    long startNs = profileStart();
+    long result =
+        perfStats.isEnabled()
+            ? perfStats.measure(
+                ANDROID_SQLITE,
+                () ->
+                    SQLiteConnectionNatives.nativeExecuteForCursorWindow(
+                        connectionPtr,
+                        statementPtr,
+                        windowPtr,
+                        startPos,
+                        requiredPos,
+                        countAllRows))
+            : SQLiteConnectionNatives.nativeExecuteForCursorWindow(
+                connectionPtr, statementPtr, windowPtr, startPos, requiredPos, countAllRows);
+    if (startNs != NOT_PROFILING) {
+      // The low 32 bits of the result are the number of rows stepped through.
+      profileEnd(
+          statementPtr, startNs, (int) result, CursorWindowNatives.nativeGetNumRows(windowPtr));
+    }
+    return result;
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static int nativeExecuteForBlobFileDescriptor(
       final long connectionPtr, final long statementPtr) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeExecuteForBlobFileDescriptor(
-                    connectionPtr, statementPtr));
+    long startNs = profileStart();
+    int result =
+        perfStats.isEnabled()
+            ? perfStats.measure(
+                ANDROID_SQLITE,
+                () ->
+                    SQLiteConnectionNatives.nativeExecuteForBlobFileDescriptor(
+                        connectionPtr, statementPtr))
+            : SQLiteConnectionNatives.nativeExecuteForBlobFileDescriptor(
+                connectionPtr, statementPtr);
+    profileEnd(statementPtr, startNs, 0, -1);
+    return result;
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeCancel(long connectionPtr) {
-    PerfStatsCollector.getInstance()
-        .measure("androidsqlite", () -> SQLiteConnectionNatives.nativeCancel(connectionPtr));
+    perfStats.measure(ANDROID_SQLITE, () -> SQLiteConnectionNatives.nativeCancel(connectionPtr));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeResetCancel(long connectionPtr, boolean cancelable) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () -> SQLiteConnectionNatives.nativeResetCancel(connectionPtr, cancelable));
+    perfStats.measure(
+        ANDROID_SQLITE, () -> SQLiteConnectionNatives.nativeResetCancel(connectionPtr, cancelable));
   }
 
   @Implementation(minSdk = R, maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeRegisterCustomScalarFunction(
       long connectionPtr, String name, UnaryOperator<String> function) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeRegisterCustomScalarFunction(
-                    connectionPtr, name, function));
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () ->
+            SQLiteConnectionNatives.nativeRegisterCustomScalarFunction(
+                connectionPtr, name, function));
   }
 
   @Implementation(minSdk = R, maxSdk = UPSIDE_DOWN_CAKE)
   protected static void nativeRegisterCustomAggregateFunction(
       long connectionPtr, String name, BinaryOperator<String> function) {
-    PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite",
-            () ->
-                SQLiteConnectionNatives.nativeRegisterCustomAggregateFunction(
-                    connectionPtr, name, function));
+    perfStats.measure(
+        ANDROID_SQLITE,
+        () ->
+            SQLiteConnectionNatives.nativeRegisterCustomAggregateFunction(
+                connectionPtr, name, function));
   }
 
   @Implementation(maxSdk = UPSIDE_DOWN_CAKE)
   protected static int nativeGetDbLookaside(long connectionPtr) {
-    return PerfStatsCollector.getInstance()
-        .measure(
-            "androidsqlite", () -> SQLiteConnectionNatives.nativeGetDbLookaside(connectionPtr));
+    return perfStats.measure(
+        ANDROID_SQLITE, () -> SQLiteConnectionNatives.nativeGetDbLookaside(connectionPtr));
+  }
+
+  private static long profileStart() {
+    return SQLiteStatementProfiler.isEnabled() ? System.nanoTime() : NOT_PROFILING;
+  }
+
+  private static void profileEnd(
+      long statementPtr, long startNs, int rowCount, int windowRowCount) {
+    if (startNs != NOT_PROFILING) {
+      SQLiteStatementProfiler.statementExecuted(
+          statementPtr, System.nanoTime() - startNs, rowCount, windowRowCount);
+    }
   }
 }
@@ -46,15 +46,21 @@ import org.robolectric.util.ReflectionHelpers.ClassParameter;
  * is strongly typed, to detect non-portable code and common testing mistakes. It may throw {@link
  * IllegalArgumentException} or {@link IllegalStateException} for error-prone behavior normal {@link
  * Parcel} tolerates.
+ *
+ * <p>If the {@code robolectric.binaryParcel} system property is set to true when a sandbox is
+ * created, parcels are instead backed by a {@link BinaryParcelBuffer}, which uses the same byte
+ * layout as native parcels.
  */
 @Implements(Parcel.class)
 public class ShadowParcel {
   protected static final String TAG = "Parcel";
 
+  private static final boolean USE_BINARY_BUFFER = Boolean.getBoolean("robolectric.binaryParcel");
+
   @RealObject private Parcel realObject;
 
-  private static final NativeObjRegistry<ByteBuffer> NATIVE_BYTE_BUFFER_REGISTRY =
-      new NativeObjRegistry<>(ByteBuffer.class);
+  private static final NativeObjRegistry<ParcelBuffer> NATIVE_BYTE_BUFFER_REGISTRY =
+      new NativeObjRegistry<>(ParcelBuffer.class);
 
   private static final HashMap<ClassLoader, HashMap<String, Pair<Creator<?>, Class<?>>>>
       pairedCreators = new HashMap<>();
@@ -423,7 +429,8 @@ public class ShadowParcel {
   @Implementation
   @HiddenApi
   public static long nativeCreate() {
-    return NATIVE_BYTE_BUFFER_REGISTRY.register(new ByteBuffer());
+    return NATIVE_BYTE_BUFFER_REGISTRY.register(
+        USE_BINARY_BUFFER ? new BinaryParcelBuffer() : new ByteBuffer());
   }
 
   @Implementation
@@ -445,15 +452,19 @@ public class ShadowParcel {
   @Implementation
   @SuppressWarnings("robolectric.ShadowReturnTypeMismatch")
   protected static void nativeUnmarshall(long nativePtr, byte[] data, int offset, int length) {
-    NATIVE_BYTE_BUFFER_REGISTRY.update(nativePtr, ByteBuffer.fromByteArray(data, offset, length));
+    NATIVE_BYTE_BUFFER_REGISTRY.update(
+        nativePtr,
+        USE_BINARY_BUFFER
+            ? BinaryParcelBuffer.fromByteArray(data, offset, length)
+            : ByteBuffer.fromByteArray(data, offset, length));
   }
 
   @Implementation
   @SuppressWarnings("robolectric.ShadowReturnTypeMismatch")
   protected static void nativeAppendFrom(
       long thisNativePtr, long otherNativePtr, int offset, int length) {
-    ByteBuffer thisByteBuffer = NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(thisNativePtr);
-    ByteBuffer otherByteBuffer = NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(otherNativePtr);
+    ParcelBuffer thisByteBuffer = NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(thisNativePtr);
+    ParcelBuffer otherByteBuffer = NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(otherNativePtr);
     thisByteBuffer.appendFrom(otherByteBuffer, offset, length);
   }
 
@@ -509,6 +520,73 @@ public class ShadowParcel {
     }
   }
 
+  /** The underlying Parcel implementation, which native Parcel methods delegate to. */
+  interface ParcelBuffer {
+    /** Removes all elements from the buffer */
+    void clear();
+
+    /** Reads a byte array from the buffer based on the current data position */
+    byte[] createByteArray();
+
+    /** Reads a byte array of the given length into {@code dest}, returning false on a mismatch */
+    boolean readByteArray(byte[] dest, int destLen);
+
+    /** Writes {@code length} bytes of {@code b} starting at {@code offset} */
+    void writeByteArray(byte[] b, int offset, int length);
+
+    void writeInt(int i);
+
+    int readInt();
+
+    void writeLong(long l);
+
+    long readLong();
+
+    void writeFloat(float f);
+
+    float readFloat();
+
+    void writeDouble(double d);
+
+    double readDouble();
+
+    void writeString(String s);
+
+    String readString();
+
+    default void writeString8(String s) {
+      writeString(s);
+    }
+
+    default String readString8() {
+      return readString();
+    }
+
+    void writeStrongBinder(IBinder b);
+
+    IBinder readStrongBinder();
+
+    /** Appends {@code length} bytes of {@code other} starting at {@code offset} */
+    void appendFrom(ParcelBuffer other, int offset, int length);
+
+    /** Returns the marshalled form of the buffer */
+    byte[] toByteArray();
+
+    int dataAvailable();
+
+    int dataCapacity();
+
+    int dataPosition();
+
+    int dataSize();
+
+    void setDataPosition(int pos);
+
+    void setDataSize(int size);
+
+    void setDataCapacityAtLeast(int newCapacity);
+  }
+
   /**
    * ByteBuffer pretends to be the underlying Parcel implementation.
    *
@@ -554,7 +632,7 @@ public class ShadowParcel {
    *       only at most one allocation for every 4 byte positions.
    * </ul>
    */
-  private static class ByteBuffer {
+  private static class ByteBuffer implements ParcelBuffer {
     /** Number of bytes in Parcel used by an int, length, or anything smaller. */
     private static final int INT_SIZE_BYTES = 4;
 
@@ -783,7 +861,11 @@ public class ShadowParcel {
      * @param offset number of bytes from beginning of byte buffer to start copy from
      * @param length number of bytes to copy
      */
-    public void appendFrom(ByteBuffer other, int offset, int length) {
+    public void appendFrom(ParcelBuffer otherBuffer, int offset, int length) {
+      if (!(otherBuffer instanceof ByteBuffer)) {
+        throw new IllegalArgumentException("Can't append a binary parcel");
+      }
+      ByteBuffer other = (ByteBuffer) otherBuffer;
       int oldSize = dataSize;
       if (dataPosition != dataSize) {
         // Parcel.cpp will always expand the buffer by length even if it is overwriting existing
@@ -1152,7 +1234,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = R)
   protected static void nativeWriteString8(long nativePtr, String val) {
-    nativeWriteString(nativePtr, val);
+    NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).writeString8(val);
   }
 
   @Implementation(minSdk = R)
@@ -1162,7 +1244,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = R)
   protected static String nativeReadString8(long nativePtr) {
-    return nativeReadString(nativePtr);
+    return NATIVE_BYTE_BUFFER_REGISTRY.getNativeObject(nativePtr).readString8();
   }
 
   @Implementation(minSdk = R)
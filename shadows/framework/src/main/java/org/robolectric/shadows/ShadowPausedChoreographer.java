@@ -92,6 +92,20 @@ public class ShadowPausedChoreographer extends ShadowChoreographer {
     }
   }
 
+  /** Returns true if any active Choreographer has callbacks waiting for the next frame. */
+  static boolean hasPendingCallbacks() {
+    for (Choreographer choreographer : activeChoreographers) {
+      Object[] /* CallbackQueue */ callbackQueues =
+          reflector(ChoreographerReflector.class, choreographer).getCallbackQueues();
+      for (Object callbackQueue : callbackQueues) {
+        if (reflector(CallbackQueueReflector.class, callbackQueue).getHead() != null) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   private void resetState() {
     ChoreographerReflector choreographerReflector =
         reflector(ChoreographerReflector.class, realChoreographer);
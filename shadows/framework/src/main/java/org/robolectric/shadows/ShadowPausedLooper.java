@@ -17,6 +17,7 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -55,6 +56,12 @@ import org.robolectric.util.reflector.Static;
  *       behavior where each {@link Scheduler} kept their own clock value.
  * </ul>
  *
+ * <p>If the {@code robolectric.looper.fastForward} system property is set to true, idling a looper
+ * for a duration fast-forwards all loopers together: the clock jumps straight to the next message
+ * due on any unpaused looper, or to the next frame if a paused {@link ShadowChoreographer} has
+ * callbacks waiting, and the loopers woken by each jump are allowed to go idle before the clock
+ * moves on.
+ *
  * <p>This class should not be used directly; use {@link ShadowLooper} instead.
  */
 @Implements(
@@ -70,6 +77,13 @@ public final class ShadowPausedLooper extends ShadowLooper {
 
   private static boolean ignoreUncaughtExceptions = false;
 
+  private static final String FAST_FORWARD_PROPERTY = "robolectric.looper.fastForward";
+
+  private static volatile boolean fastForward = Boolean.getBoolean(FAST_FORWARD_PROPERTY);
+
+  /** How long to wait for another looper to go idle when fast-forwarding. */
+  private static final long FAST_FORWARD_AWAIT_IDLE_MILLIS = 1000;
+
   @RealObject private Looper realLooper;
 
   private LooperControlService looperControlService;
@@ -312,9 +326,16 @@ public final class ShadowPausedLooper extends ShadowLooper {
     return shadowQueue().getLastScheduledTaskTime();
   }
 
+  @VisibleForTesting
+  static void setFastForward(boolean shouldFastForward) {
+    fastForward = shouldFastForward;
+  }
+
   @Resetter
   @SuppressWarnings("deprecation") // This is Robolectric library code
   public static synchronized void resetLoopers() {
+    fastForward = Boolean.getBoolean(FAST_FORWARD_PROPERTY);
+
     // Do not use looperMode() here, because its cached value might already have been reset
     LooperMode.Mode looperMode = ConfigurationRegistry.get(LooperMode.Mode.class);
 
@@ -405,6 +426,10 @@ public final class ShadowPausedLooper extends ShadowLooper {
     return Shadow.extract(realLooper.getQueue());
   }
 
+  private static ShadowPausedLooper shadowOfLooper(Looper looper) {
+    return Shadow.extract(looper);
+  }
+
   /** Retrieves the next message or null if the queue is idle. */
   private Message getNextExecutableMessage() {
     checkState(
@@ -489,24 +514,93 @@ public final class ShadowPausedLooper extends ShadowLooper {
     }
   }
 
-  private class RunToEmptyRunnable implements Runnable {
+  /**
+   * Idles the clock forward one scheduled time after another, either for this looper alone or, when
+   * fast-forwarding, for all loopers.
+   */
+  private abstract class ClockAdvancingRunnable implements Runnable {
     private final IdlingRunnable idleRunnable = new IdlingRunnable();
+    private final boolean isFastForwarding = fastForward;
+    // Loopers that didn't go idle in time, which are left running on their own from then on.
+    private final Set<Looper> busyLoopers = new HashSet<>();
+
+    /**
+     * Returns the next time the clock should be advanced to, or 0 if there is nothing left to run.
+     */
+    long getNextAdvanceTimeMs() {
+      long nextTimeMs = getNextScheduledTaskTime().toMillis();
+      if (!isFastForwarding) {
+        return nextTimeMs;
+      }
+      long now = SystemClock.uptimeMillis();
+      for (Looper looper : getLoopers()) {
+        if (isRunningOnItsOwn(looper)) {
+          Long when = shadowOfLooper(looper).shadowQueue().peekWhen();
+          // Messages that are already due were handled when the clock last advanced.
+          if (when != null && when > now) {
+            nextTimeMs = nextTimeMs == 0 ? when : Math.min(nextTimeMs, when);
+          }
+        }
+      }
+      // Skip frames with no callbacks, they wouldn't do anything.
+      long nextVsyncTimeNanos = ShadowChoreographer.getNextVsyncTimeNanos();
+      if (ShadowChoreographer.isPaused()
+          && nextVsyncTimeNanos != 0
+          && ShadowPausedChoreographer.hasPendingCallbacks()) {
+        long nextVsyncTimeMs =
+            (nextVsyncTimeNanos + ShadowPausedSystemClock.MILLIS_PER_NANO - 1)
+                / ShadowPausedSystemClock.MILLIS_PER_NANO;
+        if (nextVsyncTimeMs > now) {
+          nextTimeMs = nextTimeMs == 0 ? nextVsyncTimeMs : Math.min(nextTimeMs, nextVsyncTimeMs);
+        }
+      }
+      return nextTimeMs;
+    }
+
+    /** Advances the clock to the given time, and runs everything that is then due. */
+    void advanceTo(long timeMs) {
+      ShadowSystemClock.advanceBy(Duration.ofMillis(timeMs - SystemClock.uptimeMillis()));
+      idleRunnable.run();
+      if (isFastForwarding) {
+        awaitOtherLoopersIdle();
+        // Other loopers may have posted more work to this one.
+        idleRunnable.run();
+      }
+    }
+
+    private void awaitOtherLoopersIdle() {
+      for (Looper looper : getLoopers()) {
+        if (isRunningOnItsOwn(looper)
+            && !shadowOfLooper(looper).shadowQueue().awaitIdle(FAST_FORWARD_AWAIT_IDLE_MILLIS)) {
+          Log.w(
+              "ShadowPausedLooper",
+              "Looper for " + looper.getThread().getName() + " is busy, no longer waiting for it");
+          busyLoopers.add(looper);
+        }
+      }
+    }
+
+    private boolean isRunningOnItsOwn(Looper looper) {
+      return looper != realLooper
+          && !busyLoopers.contains(looper)
+          && looper.getThread().isAlive()
+          && !shadowOfLooper(looper).isPaused();
+    }
+  }
+
+  private class RunToEmptyRunnable extends ClockAdvancingRunnable {
 
     @Override
     public void run() {
-      long nextScheduledTimeMs = getNextScheduledTaskTime().toMillis();
-      while (nextScheduledTimeMs != 0) {
-        ShadowSystemClock.advanceBy(
-            Duration.ofMillis(nextScheduledTimeMs - SystemClock.uptimeMillis()));
-        idleRunnable.run();
-        nextScheduledTimeMs = getNextScheduledTaskTime().toMillis();
+      // Other loopers may never run out of work, so only run until this looper is empty.
+      while (getNextScheduledTaskTime().toMillis() != 0) {
+        advanceTo(getNextAdvanceTimeMs());
       }
     }
   }
 
-  private class IdleForRunnable implements Runnable {
+  private class IdleForRunnable extends ClockAdvancingRunnable {
     private final Duration idleForDuration;
-    private final IdlingRunnable idleRunnable = new IdlingRunnable();
 
     IdleForRunnable(Duration duration) {
       super();
@@ -516,17 +610,14 @@ public final class ShadowPausedLooper extends ShadowLooper {
     @Override
     public void run() {
       long endingTimeMs = SystemClock.uptimeMillis() + idleForDuration.toMillis();
-      long nextScheduledTimeMs = getNextScheduledTaskTime().toMillis();
+      long nextScheduledTimeMs = getNextAdvanceTimeMs();
       while (nextScheduledTimeMs != 0 && nextScheduledTimeMs <= endingTimeMs) {
-        ShadowSystemClock.advanceBy(
-            Duration.ofMillis(nextScheduledTimeMs - SystemClock.uptimeMillis()));
-        idleRunnable.run();
-        nextScheduledTimeMs = getNextScheduledTaskTime().toMillis();
+        advanceTo(nextScheduledTimeMs);
+        nextScheduledTimeMs = getNextAdvanceTimeMs();
       }
-      ShadowSystemClock.advanceBy(Duration.ofMillis(endingTimeMs - SystemClock.uptimeMillis()));
       // the last SystemClock update might have added new tasks to the main looper via Choreographer
       // so idle once more.
-      idleRunnable.run();
+      advanceTo(endingTimeMs);
     }
   }
 
@@ -19,6 +19,11 @@ public class ShadowPausedMessage extends ShadowMessage {
 
   @RealObject private Message realMessage;
 
+  // The queue that counts this message as pending, and the time it was counted at. Guarded by
+  // that queue's MessageQueue.
+  ShadowPausedMessageQueue pendingQueue;
+  long pendingWhen;
+
   @Implementation
   protected long getWhen() {
     return reflector(MessageReflector.class, realMessage).getWhen();
@@ -32,9 +37,24 @@ public class ShadowPausedMessage extends ShadowMessage {
   @Override
   @Implementation
   public void recycleUnchecked() {
+    removeFromPendingQueue();
     reflector(MessageReflector.class, realMessage).recycleUnchecked();
   }
 
+  @Implementation
+  protected void markInUse() {
+    reflector(MessageReflector.class, realMessage).markInUse();
+    // MessageQueue.next() marks the message it takes off the queue as in use.
+    removeFromPendingQueue();
+  }
+
+  void removeFromPendingQueue() {
+    ShadowPausedMessageQueue queue = pendingQueue;
+    if (queue != null) {
+      queue.removePendingMessage(this);
+    }
+  }
+
   @Override
   public void setScheduledRunnable(Runnable r) {
     throw new UnsupportedOperationException("Not supported in PAUSED LooperMode");
@@ -14,9 +14,11 @@ import android.os.MessageQueue.IdleHandler;
 import android.os.SystemClock;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.TreeMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import org.robolectric.annotation.Filter;
 import org.robolectric.annotation.Filter.Order;
@@ -62,6 +64,12 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
 
   private final AtomicReference<QueueListener> queueListenerRef = new AtomicReference<>(null);
 
+  // The number of pending messages with a target per scheduled time, so that the size and last
+  // scheduled time of the queue don't need a walk of its message list. Only maintained on SDKs <=
+  // Baklava, and guarded by realQueue.
+  private final TreeMap<Long, Integer> pendingMessageCounts = new TreeMap<>();
+  private int pendingMessageCount = 0;
+
   private interface QueueListener {
 
     /** Called when there is a new executable message available. */
@@ -109,6 +117,8 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
   protected void nativePollOnce(long ptr, int timeoutMillis) {
     synchronized (poller) {
       isPolling = true;
+      // Wake up any threads in awaitIdle().
+      poller.notifyAll();
       try {
         if (pendingWake) {
           // Calling with pending wake returns immediately
@@ -156,7 +166,17 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
   @Implementation
   protected boolean enqueueMessage(Message msg, long when) {
     checkQueueState();
-    boolean result = reflector(MessageQueueReflector.class, realQueue).enqueueMessage(msg, when);
+    boolean result;
+    if (getApiLevel() > BAKLAVA) {
+      result = reflector(MessageQueueReflector.class, realQueue).enqueueMessage(msg, when);
+    } else {
+      synchronized (realQueue) {
+        result = reflector(MessageQueueReflector.class, realQueue).enqueueMessage(msg, when);
+        if (result) {
+          addPendingMessage(shadowOfMsg(msg));
+        }
+      }
+    }
     if (result) {
       updateListener();
     }
@@ -203,11 +223,21 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
    * thread is blocked (such as from poll())
    */
   private boolean hasExecutableMsg() {
+    Long when = peekWhen();
+    return when != null && when <= SystemClock.uptimeMillis();
+  }
+
+  /**
+   * Returns the time of the next message that isn't stalled by a sync barrier, or null if there is
+   * none.
+   *
+   * <p>Unlike {@link TestLooperManagerCompat#peekWhen()}, this may be called from any thread.
+   */
+  @Nullable
+  Long peekWhen() {
     if (getApiLevel() > BAKLAVA) {
-      Long when = reflector(MessageQueueReflector.class, realQueue).peekWhenForTest();
-      return when != null && when <= SystemClock.uptimeMillis();
+      return reflector(MessageQueueReflector.class, realQueue).peekWhenForTest();
     } else {
-      final long now = SystemClock.uptimeMillis();
       synchronized (realQueue) {
         Message msg = getMessages();
         if (msg != null && msg.getTarget() == null) {
@@ -216,7 +246,39 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
             msg = reflector(MessageReflector.class, msg).getNext();
           } while (msg != null && !msg.isAsynchronous());
         }
-        return msg != null && shadowMsg(msg).getWhen() <= now;
+        return msg == null ? null : shadowMsg(msg).getWhen();
+      }
+    }
+  }
+
+  /**
+   * Waits until the Looper thread has no executable messages and is polling for more.
+   *
+   * <p>Must not be called from the Looper thread.
+   *
+   * @return false if the Looper thread was still busy after the timeout
+   */
+  boolean awaitIdle(long timeoutMillis) {
+    long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (true) {
+      // Check for messages without holding the poller lock, since the queue lock is taken first
+      // when messages are enqueued.
+      boolean executable = hasExecutableMsg();
+      synchronized (poller) {
+        if (!executable && isPolling) {
+          return true;
+        }
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+        if (remainingMillis <= 0) {
+          return false;
+        }
+        try {
+          // Messages may be posted without notifying the poller, so check again periodically.
+          poller.wait(Math.min(remainingMillis, 10));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
       }
     }
   }
@@ -225,6 +287,40 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
     return reflector(MessageQueueReflector.class, realQueue).getMessages();
   }
 
+  private void addPendingMessage(ShadowPausedMessage msg) {
+    long when = msg.getWhen();
+    msg.pendingQueue = this;
+    msg.pendingWhen = when;
+    pendingMessageCounts.merge(when, 1, Integer::sum);
+    pendingMessageCount++;
+  }
+
+  /**
+   * Stops counting a message as pending, once it has been taken off or removed from the queue.
+   *
+   * <p>Every message leaves the legacy MessageQueue by being marked in use by next(), recycled when
+   * it's removed, or polled through {@link TestLooperManagerCompat}.
+   */
+  void removePendingMessage(ShadowPausedMessage msg) {
+    synchronized (realQueue) {
+      if (msg.pendingQueue != this) {
+        return;
+      }
+      msg.pendingQueue = null;
+      Integer count = pendingMessageCounts.get(msg.pendingWhen);
+      if (count == null) {
+        // The counts were cleared by reset().
+        return;
+      }
+      if (count == 1) {
+        pendingMessageCounts.remove(msg.pendingWhen);
+      } else {
+        pendingMessageCounts.put(msg.pendingWhen, count - 1);
+      }
+      pendingMessageCount--;
+    }
+  }
+
   @Implementation
   protected boolean isPolling() {
     synchronized (poller) {
@@ -250,18 +346,13 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
       }
       return Duration.ofMillis(convertWhenToScheduledTime(shadowOfMsg(msg).getWhen()));
     } else {
-      long when = 0;
+      long when;
       synchronized (realQueue) {
-        Message next = getMessages();
-        if (next == null) {
+        if (getMessages() == null) {
           return Duration.ZERO;
         }
-        while (next != null) {
-          if (next.getTarget() != null) {
-            when = shadowOfMsg(next).getWhen();
-          }
-          next = shadowOfMsg(next).internalGetNext();
-        }
+        // The queue may only hold sync barriers.
+        when = pendingMessageCounts.isEmpty() ? 0 : pendingMessageCounts.lastKey();
       }
       return Duration.ofMillis(convertWhenToScheduledTime(when));
     }
@@ -288,17 +379,9 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
         getApiLevel() <= BAKLAVA,
         "size() is not supported on SDKs > baklava. Consider using Handler.hasMessages or"
             + " hasCallbacks instead");
-    int count = 0;
     synchronized (realQueue) {
-      Message next = getMessages();
-      while (next != null) {
-        if (next.getTarget() != null) {
-          count++;
-        }
-        next = shadowOfMsg(next).internalGetNext();
-      }
+      return pendingMessageCount;
     }
-    return count;
   }
 
   // TODO: reconsider exposing this as a public API. Only ShadowPausedLooper needs to access this,
@@ -318,6 +401,8 @@ public class ShadowPausedMessageQueue extends ShadowMessageQueue {
           msg = next;
         }
         reflector(MessageQueueReflector.class, realQueue).setMessages(null);
+        pendingMessageCounts.clear();
+        pendingMessageCount = 0;
         if (getApiLevel() >= VANILLA_ICE_CREAM) {
           reflector(MessageQueueReflector.class, realQueue).setLast(null);
           reflector(MessageQueueReflector.class, realQueue).setAsyncMessageCount(0);
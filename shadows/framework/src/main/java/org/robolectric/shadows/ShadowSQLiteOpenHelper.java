@@ -2,14 +2,37 @@ package org.robolectric.shadows;
 
 import static android.os.Build.VERSION_CODES.O_MR1;
 import static android.os.Build.VERSION_CODES.P;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.robolectric.util.reflector.Reflector.reflector;
 
 import android.annotation.RequiresApi;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.OpenParams;
 import android.database.sqlite.SQLiteOpenHelper;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.annotation.SQLiteMode.Mode;
 import org.robolectric.util.reflector.Accessor;
 import org.robolectric.util.reflector.Direct;
 import org.robolectric.util.reflector.ForType;
@@ -17,6 +40,9 @@ import org.robolectric.util.reflector.ForType;
 /**
  * Avoid calls to setIdleConnectionTimeout. They shouldn't matter for tests, but sometimes induced
  * deadlocks.
+ *
+ * <p>Also supports creating new databases from templates, see {@link
+ * #setUseDatabaseTemplates(boolean)}.
  */
 @Implements(SQLiteOpenHelper.class)
 public class ShadowSQLiteOpenHelper {
@@ -25,6 +51,16 @@ public class ShadowSQLiteOpenHelper {
 
   public static final long IDLE_CONNECTION_TIMEOUT_DISABLED = -1L;
 
+  /** System property that enables database templates when set to {@code true}. */
+  public static final String USE_DATABASE_TEMPLATES_PROPERTY = "robolectric.sqlite.useTemplates";
+
+  // Shared by all tests in the sandbox, so it's never reset.
+  private static final Map<String, DatabaseTemplate> databaseTemplates = new ConcurrentHashMap<>();
+  private static final Set<String> divergedTemplateKeys = ConcurrentHashMap.newKeySet();
+
+  private static volatile boolean useDatabaseTemplates =
+      Boolean.getBoolean(USE_DATABASE_TEMPLATES_PROPERTY);
+
   private long idleConnectionTimeoutMs = IDLE_CONNECTION_TIMEOUT_DISABLED;
 
   public long getIdleConnectionTimeout() {
@@ -45,6 +81,309 @@ public class ShadowSQLiteOpenHelper {
     return openParamsBuilder.build();
   }
 
+  /**
+   * Sets whether new databases are created from templates, which can save a lot of time for tests
+   * that create the same databases over and over. This is only supported in {@link Mode#NATIVE}
+   * SQLite mode.
+   *
+   * <p>The first time a database file is created for a given {@link SQLiteOpenHelper}, database
+   * name and version, {@link SQLiteOpenHelper#onConfigure} and {@link SQLiteOpenHelper#onCreate}
+   * are called on a separate database, which is kept as a template. Then, each time the database
+   * file is created for an equivalent helper, the template is copied to it, so that {@link
+   * SQLiteOpenHelper#onCreate} is not called again. {@link SQLiteOpenHelper#onConfigure} and {@link
+   * SQLiteOpenHelper#onOpen} are still called as usual.
+   *
+   * <p>Helpers are equivalent if they have the same class and reference objects of the same
+   * classes, with the same primitive, string and enum field values, two levels deep. The elements
+   * of arrays, collections and maps are compared too. E.g. Room helpers for different databases are
+   * told apart by their callback and its schema identity hash.
+   *
+   * <p>This relies on {@link SQLiteOpenHelper#onCreate} only modifying the database, always in the
+   * same way for equivalent helpers. The first time a template is reused, {@link
+   * SQLiteOpenHelper#onCreate} is called once more on a separate database to check that it creates
+   * the same schema and rows as the template. If it doesn't, if opening a database that was copied
+   * from a template fails, or if its schema or rows differ from the template's once it's open, e.g.
+   * because {@link SQLiteOpenHelper#onOpen} changed them, the database is created with {@link
+   * SQLiteOpenHelper#onCreate} as usual, and templates aren't used for that helper anymore.
+   *
+   * <p>Templates are kept across tests in the same sandbox, but this setting is reset to the value
+   * of the {@value #USE_DATABASE_TEMPLATES_PROPERTY} system property after each test.
+   */
+  public static void setUseDatabaseTemplates(boolean useTemplates) {
+    useDatabaseTemplates = useTemplates;
+  }
+
+  /** Discards all database templates. */
+  public static void clearDatabaseTemplates() {
+    databaseTemplates.clear();
+    divergedTemplateKeys.clear();
+  }
+
+  @Resetter
+  public static void reset() {
+    useDatabaseTemplates = Boolean.getBoolean(USE_DATABASE_TEMPLATES_PROPERTY);
+  }
+
+  @Implementation
+  protected SQLiteDatabase getDatabaseLocked(boolean writable) {
+    SQLiteOpenHelperReflector helperReflector =
+        reflector(SQLiteOpenHelperReflector.class, realSQLiteOpenHelper);
+    SQLiteDatabase database = helperReflector.getDatabase();
+    String name = helperReflector.getName();
+    if (!useDatabaseTemplates
+        || (database != null && database.isOpen())
+        || helperReflector.isInitializing()
+        || name == null
+        || ShadowSQLiteConnection.sqliteMode() != Mode.NATIVE) {
+      return helperReflector.getDatabaseLocked(writable);
+    }
+    File file = helperReflector.getContext().getDatabasePath(name);
+    if (file.exists()) {
+      return helperReflector.getDatabaseLocked(writable);
+    }
+
+    int version = helperReflector.getNewVersion();
+    String key = templateKey(name, version);
+    if (divergedTemplateKeys.contains(key)) {
+      return helperReflector.getDatabaseLocked(writable);
+    }
+    DatabaseTemplate template = databaseTemplates.get(key);
+    if (template == null) {
+      template = createDatabaseTemplate(version);
+      databaseTemplates.put(key, template);
+    } else if (!template.verified) {
+      // The key can't capture everything onCreate depends on, so check once that this helper
+      // creates the same database as the one the template was created with.
+      if (!Arrays.equals(template.contentsDigest, createDatabaseTemplate(version).contentsDigest)) {
+        discardDatabaseTemplate(key, file);
+        return helperReflector.getDatabaseLocked(writable);
+      }
+      template.verified = true;
+    }
+    try {
+      Files.createDirectories(file.toPath().getParent());
+      Files.write(file.toPath(), template.contents);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to copy database template to " + file, e);
+    }
+
+    try {
+      database = helperReflector.getDatabaseLocked(writable);
+    } catch (RuntimeException e) {
+      // E.g. Room's identity check in onOpen, if the helper doesn't create the template's schema.
+      // The helper already closed the database.
+      discardDatabaseTemplate(key, file);
+      return helperReflector.getDatabaseLocked(writable);
+    }
+    if (database.getVersion() != version
+        || !Arrays.equals(template.contentsDigest, digestContents(database))) {
+      realSQLiteOpenHelper.close();
+      discardDatabaseTemplate(key, file);
+      return helperReflector.getDatabaseLocked(writable);
+    }
+    return database;
+  }
+
+  private String templateKey(String name, int version) {
+    StringBuilder key = new StringBuilder().append(name).append(':').append(version).append(':');
+    appendIdentity(key, realSQLiteOpenHelper, 2);
+    return key.toString();
+  }
+
+  /**
+   * Appends the class of {@code object} and, up to {@code depth} levels deep, the values of the
+   * instance fields declared by its non-platform classes. Objects that fields reference are
+   * described the same way, and simple values are appended as is.
+   */
+  private static void appendIdentity(StringBuilder key, Object object, int depth) {
+    Class<?> type = object.getClass();
+    key.append(type.getName());
+    if (depth <= 0) {
+      return;
+    }
+    key.append('{');
+    for (; type != null && !isPlatformClass(type); type = type.getSuperclass()) {
+      Field[] fields = type.getDeclaredFields();
+      Arrays.sort(fields, Comparator.comparing(Field::getName));
+      for (Field field : fields) {
+        if (Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        Object value;
+        try {
+          field.setAccessible(true);
+          value = field.get(object);
+        } catch (IllegalAccessException | RuntimeException e) {
+          continue;
+        }
+        key.append(field.getName()).append('=');
+        appendValue(key, value, depth - 1);
+        key.append(';');
+      }
+    }
+    key.append('}');
+  }
+
+  /**
+   * Appends a field value, with the elements of arrays, collections and maps, which are platform
+   * classes but may hold e.g. the statements that a helper runs.
+   */
+  private static void appendValue(StringBuilder key, Object value, int depth) {
+    if (value == null
+        || value instanceof String
+        || value instanceof Number
+        || value instanceof Boolean
+        || value instanceof Character
+        || value instanceof Enum) {
+      key.append(value);
+    } else if (depth < 0) {
+      key.append(value.getClass().getName());
+    } else if (value.getClass().isArray()) {
+      key.append(value.getClass().getName()).append('[');
+      for (int i = 0; i < Array.getLength(value); i++) {
+        appendValue(key, Array.get(value, i), depth - 1);
+        key.append(',');
+      }
+      key.append(']');
+    } else if (value instanceof Collection) {
+      key.append(value.getClass().getName()).append('[');
+      for (Object element : (Collection<?>) value) {
+        appendValue(key, element, depth - 1);
+        key.append(',');
+      }
+      key.append(']');
+    } else if (value instanceof Map) {
+      key.append(value.getClass().getName()).append('[');
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        appendValue(key, entry.getKey(), depth - 1);
+        key.append('=');
+        appendValue(key, entry.getValue(), depth - 1);
+        key.append(',');
+      }
+      key.append(']');
+    } else {
+      appendIdentity(key, value, depth);
+    }
+  }
+
+  private static boolean isPlatformClass(Class<?> type) {
+    String name = type.getName();
+    return name.startsWith("java.")
+        || name.startsWith("javax.")
+        || name.startsWith("android.")
+        || name.startsWith("com.android.")
+        || name.startsWith("dalvik.")
+        || name.startsWith("kotlin.");
+  }
+
+  private static void discardDatabaseTemplate(String key, File file) {
+    databaseTemplates.remove(key);
+    divergedTemplateKeys.add(key);
+    SQLiteDatabase.deleteDatabase(file);
+  }
+
+  private DatabaseTemplate createDatabaseTemplate(int version) {
+    File file;
+    try {
+      // SQLite opens an empty file as a new database.
+      file =
+          Files.createTempFile(
+                  RuntimeEnvironment.getTempDirectory().createIfNotExists("sqlite-templates"),
+                  "template",
+                  ".db")
+              .toFile();
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to create a database template file", e);
+    }
+    byte[] contentsDigest;
+    try (SQLiteDatabase database = SQLiteDatabase.openOrCreateDatabase(file, null)) {
+      realSQLiteOpenHelper.onConfigure(database);
+      database.beginTransaction();
+      try {
+        realSQLiteOpenHelper.onCreate(database);
+        database.setVersion(version);
+        database.setTransactionSuccessful();
+      } finally {
+        database.endTransaction();
+      }
+      contentsDigest = digestContents(database);
+    }
+    try {
+      // Closing the database checkpoints and removes any journal, so the file is complete.
+      return new DatabaseTemplate(Files.readAllBytes(file.toPath()), contentsDigest);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read database template " + file, e);
+    } finally {
+      SQLiteDatabase.deleteDatabase(file);
+    }
+  }
+
+  /** Returns a digest of the schema of the database and of the rows of all its tables. */
+  private static byte[] digestContents(SQLiteDatabase database) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    List<String> tables = new ArrayList<>();
+    try (Cursor cursor =
+        database.rawQuery("SELECT type, name, sql FROM sqlite_master ORDER BY type, name", null)) {
+      while (cursor.moveToNext()) {
+        updateDigest(digest, cursor);
+        if ("table".equals(cursor.getString(0))) {
+          tables.add(cursor.getString(1));
+        }
+      }
+    }
+    for (String table : tables) {
+      digest.update(table.getBytes(UTF_8));
+      try (Cursor cursor =
+          database.rawQuery("SELECT * FROM \"" + table.replace("\"", "\"\"") + "\"", null)) {
+        while (cursor.moveToNext()) {
+          updateDigest(digest, cursor);
+        }
+      }
+    }
+    return digest.digest();
+  }
+
+  private static void updateDigest(MessageDigest digest, Cursor cursor) {
+    for (int i = 0; i < cursor.getColumnCount(); i++) {
+      int type = cursor.getType(i);
+      digest.update((byte) type);
+      switch (type) {
+        case Cursor.FIELD_TYPE_NULL:
+          break;
+        case Cursor.FIELD_TYPE_INTEGER:
+          digest.update(Long.toString(cursor.getLong(i)).getBytes(UTF_8));
+          break;
+        case Cursor.FIELD_TYPE_FLOAT:
+          digest.update(Double.toString(cursor.getDouble(i)).getBytes(UTF_8));
+          break;
+        case Cursor.FIELD_TYPE_BLOB:
+          digest.update(cursor.getBlob(i));
+          break;
+        default:
+          digest.update(cursor.getString(i).getBytes(UTF_8));
+          break;
+      }
+      digest.update((byte) 0);
+    }
+  }
+
+  private static final class DatabaseTemplate {
+    final byte[] contents;
+    final byte[] contentsDigest;
+    // Whether another helper with the same key was seen to create the same database.
+    volatile boolean verified;
+
+    DatabaseTemplate(byte[] contents, byte[] contentsDigest) {
+      this.contents = contents;
+      this.contentsDigest = contentsDigest;
+    }
+  }
+
   @Implementation(minSdk = O_MR1)
   protected void setIdleConnectionTimeout(long idleConnectionTimeoutMs) {
     // Calling the real one currently results in a Robolectric deadlock.
@@ -71,5 +410,23 @@ public class ShadowSQLiteOpenHelper {
 
     @Accessor("mOpenParamsBuilder")
     OpenParams.Builder getOpenParamsBuilder();
+
+    @Direct
+    SQLiteDatabase getDatabaseLocked(boolean writable);
+
+    @Accessor("mContext")
+    Context getContext();
+
+    @Accessor("mName")
+    String getName();
+
+    @Accessor("mNewVersion")
+    int getNewVersion();
+
+    @Accessor("mDatabase")
+    SQLiteDatabase getDatabase();
+
+    @Accessor("mIsInitializing")
+    boolean isInitializing();
   }
 }
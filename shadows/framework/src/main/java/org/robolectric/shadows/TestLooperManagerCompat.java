@@ -85,11 +85,11 @@ final class TestLooperManagerCompat implements AutoCloseable {
   }
 
   Message poll() {
-    if (delegate != null) {
-      return delegate.poll();
-    } else {
-      return legacyPoll(queue);
+    Message msg = delegate != null ? delegate.poll() : legacyPoll(queue);
+    if (msg != null) {
+      shadowOfMsg(msg).removeFromPendingQueue();
     }
+    return msg;
   }
 
   private Message legacyPoll(MessageQueue realQueue) {
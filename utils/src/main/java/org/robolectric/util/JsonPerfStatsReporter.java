@@ -0,0 +1,97 @@
+package org.robolectric.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.robolectric.pluginapi.perf.Metric;
+
+/**
+ * Implementation of PerfStatsReporter that writes the stats of each test class to a JSON file named
+ * after the class, e.g. {@code com.example.MyTest.json}.
+ *
+ * <p>Each file contains the metrics of every test of the class:
+ *
+ * <pre>{@code
+ * {"testClass": "com.example.MyTest", "tests": [
+ *   {"name": "myTest", "sdk": 34, "metrics": [
+ *     {"name": "load sandboxed class", "success": true, "count": 1200,
+ *      "elapsedNs": 1400000000, "minNs": 5000, "maxNs": 82000000}]}]}
+ * }</pre>
+ */
+public class JsonPerfStatsReporter extends PerfStatsFileReporter {
+
+  public JsonPerfStatsReporter(File outputDirectory) {
+    super(outputDirectory, ".json");
+  }
+
+  @Override
+  void write(Writer writer, String testClassName, List<TestStats> tests) throws IOException {
+    writer.write("{\"testClass\": ");
+    writeString(writer, testClassName);
+    writer.write(", \"tests\": [");
+    for (int i = 0; i < tests.size(); i++) {
+      TestStats test = tests.get(i);
+      writer.write(i == 0 ? "\n" : ",\n");
+      writer.write("  {\"name\": ");
+      writeString(writer, test.testName);
+      writer.write(", \"sdk\": " + test.sdk + ", \"metrics\": [");
+      for (int j = 0; j < test.metrics.size(); j++) {
+        Metric metric = test.metrics.get(j);
+        writer.write(j == 0 ? "\n" : ",\n");
+        writer.write("    {\"name\": ");
+        writeString(writer, metric.getName());
+        writer.write(
+            ", \"success\": "
+                + metric.isSuccess()
+                + ", \"count\": "
+                + metric.getCount()
+                + ", \"elapsedNs\": "
+                + metric.getElapsedNs()
+                + ", \"minNs\": "
+                + metric.getMinNs()
+                + ", \"maxNs\": "
+                + metric.getMaxNs()
+                + "}");
+      }
+      writer.write("]}");
+    }
+    writer.write("]}\n");
+  }
+
+  private static void writeString(Writer writer, @Nullable String value) throws IOException {
+    if (value == null) {
+      writer.write("null");
+      return;
+    }
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          writer.write("\\\"");
+          break;
+        case '\\':
+          writer.write("\\\\");
+          break;
+        case '\n':
+          writer.write("\\n");
+          break;
+        case '\r':
+          writer.write("\\r");
+          break;
+        case '\t':
+          writer.write("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            writer.write(String.format("\\u%04x", (int) c));
+          } else {
+            writer.write(c);
+          }
+      }
+    }
+    writer.write('"');
+  }
+}
@@ -0,0 +1,135 @@
+package org.robolectric.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import org.robolectric.pluginapi.perf.Metric;
+
+/**
+ * Implementation of PerfStatsReporter that writes the stats of each test class in the <a
+ * href="https://openmetrics.io">OpenMetrics</a> text format to a file named after the class, e.g.
+ * {@code com.example.MyTest.prom}.
+ *
+ * <p>Every metric is labelled with the test class, test, SDK, event name and whether the event
+ * succeeded.
+ */
+public class OpenMetricsPerfStatsReporter extends PerfStatsFileReporter {
+
+  public OpenMetricsPerfStatsReporter(File outputDirectory) {
+    super(outputDirectory, ".prom");
+  }
+
+  @Override
+  void write(Writer writer, String testClassName, List<TestStats> tests) throws IOException {
+    writeFamily(
+        writer,
+        testClassName,
+        tests,
+        "robolectric_perf_event_count",
+        "counter",
+        "Number of times the event occurred.",
+        "_total",
+        Field.COUNT);
+    writeFamily(
+        writer,
+        testClassName,
+        tests,
+        "robolectric_perf_event_seconds",
+        "counter",
+        "Total time spent in the event.",
+        "_total",
+        Field.ELAPSED);
+    writeFamily(
+        writer,
+        testClassName,
+        tests,
+        "robolectric_perf_event_min_seconds",
+        "gauge",
+        "Shortest occurrence of the event.",
+        "",
+        Field.MIN);
+    writeFamily(
+        writer,
+        testClassName,
+        tests,
+        "robolectric_perf_event_max_seconds",
+        "gauge",
+        "Longest occurrence of the event.",
+        "",
+        Field.MAX);
+    writer.write("# EOF\n");
+  }
+
+  private enum Field {
+    COUNT,
+    ELAPSED,
+    MIN,
+    MAX
+  }
+
+  private static void writeFamily(
+      Writer writer,
+      String testClassName,
+      List<TestStats> tests,
+      String family,
+      String type,
+      String help,
+      String suffix,
+      Field field)
+      throws IOException {
+    writer.write("# TYPE " + family + " " + type + "\n");
+    writer.write("# HELP " + family + " " + help + "\n");
+    for (TestStats test : tests) {
+      for (Metric metric : test.metrics) {
+        writer.write(family + suffix + "{test_class=");
+        writeLabelValue(writer, testClassName);
+        writer.write(",test=");
+        writeLabelValue(writer, test.testName == null ? "" : test.testName);
+        writer.write(",sdk=\"" + test.sdk + "\",event=");
+        writeLabelValue(writer, metric.getName());
+        writer.write(",success=\"" + metric.isSuccess() + "\"} ");
+        switch (field) {
+          case COUNT:
+            writer.write(Integer.toString(metric.getCount()));
+            break;
+          case ELAPSED:
+            writer.write(seconds(metric.getElapsedNs()));
+            break;
+          case MIN:
+            writer.write(seconds(metric.getMinNs()));
+            break;
+          case MAX:
+            writer.write(seconds(metric.getMaxNs()));
+            break;
+        }
+        writer.write('\n');
+      }
+    }
+  }
+
+  private static String seconds(long nanos) {
+    return Double.toString(nanos / 1e9);
+  }
+
+  private static void writeLabelValue(Writer writer, String value) throws IOException {
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          writer.write("\\\"");
+          break;
+        case '\\':
+          writer.write("\\\\");
+          break;
+        case '\n':
+          writer.write("\\n");
+          break;
+        default:
+          writer.write(c);
+      }
+    }
+    writer.write('"');
+  }
+}
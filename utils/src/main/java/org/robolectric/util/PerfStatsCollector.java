@@ -1,12 +1,14 @@
 package org.robolectric.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 import org.robolectric.pluginapi.perf.Metadata;
 import org.robolectric.pluginapi.perf.Metric;
 import org.robolectric.pluginapi.perf.PerfStatsReporter;
@@ -24,6 +26,8 @@ public class PerfStatsCollector {
   private final AtomicReference<Metadata> metadata = new AtomicReference<>(null);
   private final Map<MetricKey, Metric> metricMap = new ConcurrentHashMap<>();
   private final AtomicBoolean enabled = new AtomicBoolean(true);
+  private volatile EventListener[] eventListeners = new EventListener[0];
+  private final ThreadLocal<PerfStatsCollector> threadCollector = new ThreadLocal<>();
 
   public PerfStatsCollector() {
     this(System::nanoTime);
@@ -54,8 +58,68 @@ public class PerfStatsCollector {
     return enabled.get();
   }
 
+  /**
+   * Adds a listener that is notified of each event as it starts and finishes, while collection is
+   * enabled.
+   */
+  public synchronized void addEventListener(EventListener listener) {
+    EventListener[] listeners = Arrays.copyOf(eventListeners, eventListeners.length + 1);
+    listeners[listeners.length - 1] = listener;
+    eventListeners = listeners;
+  }
+
+  public synchronized void removeEventListener(EventListener listener) {
+    EventListener[] listeners = new EventListener[eventListeners.length];
+    int count = 0;
+    for (EventListener eventListener : eventListeners) {
+      if (eventListener != listener) {
+        listeners[count++] = eventListener;
+      }
+    }
+    eventListeners = Arrays.copyOf(listeners, count);
+  }
+
+  /**
+   * Makes the events, counts and metadata that are recorded through this collector on the calling
+   * thread go to {@code collector} instead, until this is called again with {@code null}. E.g. lets
+   * tests that run concurrently on different threads collect their stats separately.
+   */
+  public void setThreadCollector(@Nullable PerfStatsCollector collector) {
+    if (collector == null) {
+      threadCollector.remove();
+    } else {
+      threadCollector.set(collector);
+    }
+  }
+
+  /** Returns the collector that records what's recorded through this one on the calling thread. */
+  public PerfStatsCollector forCurrentThread() {
+    PerfStatsCollector collector = threadCollector.get();
+    return collector == null ? this : collector;
+  }
+
+  /**
+   * Returns a new collector for {@link #setThreadCollector}, which is enabled if this collector is
+   * and notifies the same listeners.
+   */
+  public synchronized PerfStatsCollector newThreadCollector() {
+    PerfStatsCollector collector = new PerfStatsCollector(clock);
+    collector.enabled.set(enabled.get());
+    collector.eventListeners = eventListeners;
+    return collector;
+  }
+
+  /** Adds the metrics of {@code other} to the metrics of this collector. */
+  public void merge(PerfStatsCollector other) {
+    for (Metric otherMetric : other.getMetrics()) {
+      MetricKey key = new MetricKey(otherMetric.getName(), otherMetric.isSuccess());
+      metricMap.computeIfAbsent(key, k -> new Metric(k.name, k.success)).merge(otherMetric);
+    }
+  }
+
   public Event startEvent(String eventName) {
-    return new Event(eventName);
+    PerfStatsCollector collector = threadCollector.get();
+    return collector == null ? new Event(eventName) : collector.startEvent(eventName);
   }
 
   public <T, E extends Exception> T measure(String eventName, ThrowingSupplier<T, E> supplier)
@@ -81,6 +145,11 @@ public class PerfStatsCollector {
     if (!enabled.get()) {
       return;
     }
+    PerfStatsCollector collector = threadCollector.get();
+    if (collector != null) {
+      collector.incrementCount(eventName);
+      return;
+    }
 
     MetricKey key = new MetricKey(eventName, true);
     Metric metric = metricMap.get(key);
@@ -100,6 +169,11 @@ public class PerfStatsCollector {
     if (!enabled.get()) {
       return;
     }
+    PerfStatsCollector collector = threadCollector.get();
+    if (collector != null) {
+      collector.recordCount(eventName, count);
+      return;
+    }
 
     MetricKey key = new MetricKey(eventName, true);
     Metric metric = metricMap.get(key);
@@ -135,6 +209,25 @@ public class PerfStatsCollector {
     void run() throws F;
   }
 
+  /**
+   * Listener for events as they happen, e.g. to forward them to a profiler.
+   *
+   * <p>Listeners are called on the thread that starts or finishes the event.
+   */
+  public interface EventListener {
+    /**
+     * Called when an event starts.
+     *
+     * @return a value that is passed back to {@link #eventFinished} for the same event
+     */
+    @Nullable
+    Object eventStarted(String eventName);
+
+    /** Called when an event finishes. */
+    void eventFinished(
+        @Nullable Object startValue, String eventName, long elapsedNs, boolean success);
+  }
+
   public Collection<Metric> getMetrics() {
     return new ArrayList<>(metricMap.values());
   }
@@ -143,6 +236,11 @@ public class PerfStatsCollector {
     if (!enabled.get()) {
       return;
     }
+    PerfStatsCollector collector = threadCollector.get();
+    if (collector != null) {
+      collector.putMetadata(metadata);
+      return;
+    }
 
     this.metadata.set(metadata);
   }
@@ -160,9 +258,20 @@ public class PerfStatsCollector {
   public class Event {
     private final String name;
     private final long startTimeNs;
+    private final EventListener[] listeners;
+    @Nullable private final Object[] listenerValues;
 
     Event(String name) {
       this.name = name;
+      this.listeners = eventListeners;
+      if (listeners.length == 0 || !enabled.get()) {
+        this.listenerValues = null;
+      } else {
+        this.listenerValues = new Object[listeners.length];
+        for (int i = 0; i < listeners.length; i++) {
+          listenerValues[i] = listeners[i].eventStarted(name);
+        }
+      }
       this.startTimeNs = clock.nanoTime();
     }
 
@@ -180,7 +289,14 @@ public class PerfStatsCollector {
       if (metric == null) {
         metric = metricMap.computeIfAbsent(key, k -> new Metric(k.name, k.success));
       }
-      metric.record(clock.nanoTime() - startTimeNs);
+      long elapsedNs = clock.nanoTime() - startTimeNs;
+      metric.record(elapsedNs);
+
+      if (listenerValues != null) {
+        for (int i = 0; i < listeners.length; i++) {
+          listeners[i].eventFinished(listenerValues[i], name, elapsedNs, success);
+        }
+      }
     }
   }
 
@@ -0,0 +1,83 @@
+package org.robolectric.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+import org.robolectric.pluginapi.perf.Metadata;
+import org.robolectric.pluginapi.perf.Metric;
+import org.robolectric.pluginapi.perf.PerfStatsReporter;
+
+/**
+ * Base class for reporters that write the perf stats of each test class to a file of its own, so
+ * that they can be collected by CI.
+ */
+abstract class PerfStatsFileReporter implements PerfStatsReporter {
+  static final String UNKNOWN_TEST_CLASS = "unknown";
+
+  private final File outputDirectory;
+  private final String fileExtension;
+  private final Map<String, List<TestStats>> statsByTestClass = new TreeMap<>();
+
+  PerfStatsFileReporter(File outputDirectory, String fileExtension) {
+    this.outputDirectory = outputDirectory;
+    this.fileExtension = fileExtension;
+  }
+
+  @Override
+  public synchronized void report(@Nullable Metadata metadata, Collection<Metric> metrics) {
+    String testClassName =
+        metadata == null || metadata.getTestClassName() == null
+            ? UNKNOWN_TEST_CLASS
+            : metadata.getTestClassName();
+    statsByTestClass
+        .computeIfAbsent(testClassName, k -> new ArrayList<>())
+        .add(new TestStats(metadata, metrics));
+  }
+
+  @Override
+  public synchronized void finalReport() {
+    if (statsByTestClass.isEmpty()) {
+      return;
+    }
+    if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+      throw new IllegalStateException("Unable to create " + outputDirectory);
+    }
+    for (Map.Entry<String, List<TestStats>> entry : statsByTestClass.entrySet()) {
+      File file = new File(outputDirectory, entry.getKey() + fileExtension);
+      try (Writer writer =
+          new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+        write(writer, entry.getKey(), entry.getValue());
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to write " + file, e);
+      }
+    }
+  }
+
+  /** Writes the stats of the tests of a test class, in the order they were reported. */
+  abstract void write(Writer writer, String testClassName, List<TestStats> tests)
+      throws IOException;
+
+  /** The perf stats of a single test. */
+  static final class TestStats {
+    final int sdk;
+    @Nullable final String testName;
+    final List<Metric> metrics;
+
+    TestStats(@Nullable Metadata metadata, Collection<Metric> metrics) {
+      this.sdk = metadata == null ? -1 : metadata.getSdk();
+      this.testName = metadata == null ? null : metadata.getTestName();
+      this.metrics = new ArrayList<>(metrics);
+      this.metrics.sort(Comparator.comparing(Metric::getName).thenComparing(Metric::isSuccess));
+    }
+  }
+}
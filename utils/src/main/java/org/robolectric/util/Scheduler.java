@@ -7,10 +7,13 @@ import static org.robolectric.util.Scheduler.IdleState.UNPAUSED;
 
 import com.google.errorprone.annotations.InlineMe;
 import java.time.Duration;
-import java.util.Iterator;
-import java.util.PriorityQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
-import javax.annotation.Nonnull;
 
 /**
  * Class that manages a queue of Runnables that are scheduled to run now (or at some time in the
@@ -31,6 +34,10 @@ import javax.annotation.Nonnull;
  *       advancing its clock as it goes.
  * </ul>
  *
+ * <p>Runnables are kept in FIFO buckets keyed by their scheduled time, and indexed by runnable, so
+ * finding the next or last runnable, counting them, and removing a runnable don't scan the whole
+ * queue.
+ *
  * @deprecated Scheduler APIs only function when using LooperMode.LEGACY. Switch to
  *     LooperMode.PAUSED and use {@link ShadowLooper} APIs instead.
  */
@@ -56,15 +63,16 @@ public class Scheduler {
   private static final long START_TIME = 100;
   private volatile long currentTime = START_TIME;
 
-  /**
-   * PriorityQueue doesn't maintain ordering based on insertion; track that ourselves to preserve
-   * FIFO order for posted runnables with the same scheduled time.
-   */
-  private long nextTimeDisambiguator = 0;
-
   private boolean isExecutingRunnable = false;
   private final Thread associatedThread = Thread.currentThread();
-  private final PriorityQueue<ScheduledRunnable> runnables = new PriorityQueue<>();
+
+  /** Runnables by scheduled time, in FIFO order for runnables with the same scheduled time. */
+  private final TreeMap<Long, ArrayDeque<ScheduledRunnable>> runnablesByTime = new TreeMap<>();
+
+  /** Scheduled instances of each runnable, by identity, so they can be removed directly. */
+  private final Map<Runnable, List<ScheduledRunnable>> runnablesIndex = new IdentityHashMap<>();
+
+  private int size;
   private volatile IdleState idleState = UNPAUSED;
 
   /**
@@ -163,7 +171,7 @@ public class Scheduler {
     long delayMillis = unit.toMillis(delay);
     if ((idleState != CONSTANT_IDLE && (isPaused() || delayMillis > 0))
         || Thread.currentThread() != associatedThread) {
-      runnables.add(new ScheduledRunnable(runnable, currentTime + delayMillis));
+      enqueue(new ScheduledRunnable(runnable, currentTime + delayMillis), false);
     } else {
       runOrQueueRunnable(runnable, currentTime + delayMillis);
     }
@@ -176,13 +184,7 @@ public class Scheduler {
    */
   public synchronized void postAtFrontOfQueue(Runnable runnable) {
     if (isPaused() || Thread.currentThread() != associatedThread) {
-      final long timeDisambiguator;
-      if (runnables.isEmpty()) {
-        timeDisambiguator = nextTimeDisambiguator++;
-      } else {
-        timeDisambiguator = runnables.peek().timeDisambiguator - 1;
-      }
-      runnables.add(new ScheduledRunnable(runnable, 0, timeDisambiguator));
+      enqueue(new ScheduledRunnable(runnable, 0), true);
     } else {
       runOrQueueRunnable(runnable, currentTime);
     }
@@ -194,12 +196,18 @@ public class Scheduler {
    * @param runnable Runnable to remove.
    */
   public synchronized void remove(Runnable runnable) {
-    Iterator<ScheduledRunnable> iterator = runnables.iterator();
-    while (iterator.hasNext()) {
-      if (iterator.next().runnable == runnable) {
-        iterator.remove();
+    List<ScheduledRunnable> scheduled = runnablesIndex.remove(runnable);
+    if (scheduled == null) {
+      return;
+    }
+    for (ScheduledRunnable postedRunnable : scheduled) {
+      ArrayDeque<ScheduledRunnable> bucket = runnablesByTime.get(postedRunnable.scheduledTime);
+      bucket.remove(postedRunnable);
+      if (bucket.isEmpty()) {
+        runnablesByTime.remove(postedRunnable.scheduledTime);
       }
     }
+    size -= scheduled.size();
   }
 
   /**
@@ -210,10 +218,8 @@ public class Scheduler {
    */
   public synchronized boolean advanceToLastPostedRunnable() {
     long currentMaxTime = currentTime;
-    for (ScheduledRunnable scheduled : runnables) {
-      if (currentMaxTime < scheduled.scheduledTime) {
-        currentMaxTime = scheduled.scheduledTime;
-      }
+    if (size > 0 && currentMaxTime < runnablesByTime.lastKey()) {
+      currentMaxTime = runnablesByTime.lastKey();
     }
     return advanceTo(currentMaxTime);
   }
@@ -224,7 +230,7 @@ public class Scheduler {
    * @return True if a runnable was executed.
    */
   public synchronized boolean advanceToNextPostedRunnable() {
-    return !runnables.isEmpty() && advanceTo(runnables.peek().scheduledTime);
+    return size > 0 && advanceTo(runnablesByTime.firstKey());
   }
 
   /**
@@ -259,7 +265,7 @@ public class Scheduler {
    * @return True if a runnable was executed.
    */
   public synchronized boolean advanceTo(long endTime) {
-    if (endTime < currentTime || runnables.isEmpty()) {
+    if (endTime < currentTime || size == 0) {
       currentTime = endTime;
       return false;
     }
@@ -279,7 +285,7 @@ public class Scheduler {
    * @return True if a runnable was executed.
    */
   public synchronized boolean runOneTask() {
-    ScheduledRunnable postedRunnable = runnables.poll();
+    ScheduledRunnable postedRunnable = poll();
     if (postedRunnable != null) {
       if (postedRunnable.scheduledTime > currentTime) {
         currentTime = postedRunnable.scheduledTime;
@@ -301,7 +307,9 @@ public class Scheduler {
 
   /** Reset the internal state of the Scheduler. */
   public synchronized void reset() {
-    runnables.clear();
+    runnablesByTime.clear();
+    runnablesIndex.clear();
+    size = 0;
     idleState = UNPAUSED;
     currentTime = START_TIME;
     isExecutingRunnable = false;
@@ -313,35 +321,65 @@ public class Scheduler {
    * @return Number of enqueues runnables.
    */
   public synchronized int size() {
-    return runnables.size();
+    return size;
   }
 
   @SuppressWarnings("NewApi")
   public synchronized Duration getNextScheduledTaskTime() {
-    return runnables.isEmpty() ? Duration.ZERO : Duration.ofMillis(runnables.peek().scheduledTime);
+    return size == 0 ? Duration.ZERO : Duration.ofMillis(runnablesByTime.firstKey());
   }
 
   @SuppressWarnings("NewApi")
   public synchronized Duration getLastScheduledTaskTime() {
-    if (runnables.isEmpty()) {
+    if (size == 0) {
       return Duration.ZERO;
     }
-    long currentMaxTime = currentTime;
-    for (ScheduledRunnable scheduled : runnables) {
-      if (currentMaxTime < scheduled.scheduledTime) {
-        currentMaxTime = scheduled.scheduledTime;
-      }
-    }
-    return Duration.ofMillis(currentMaxTime);
+    return Duration.ofMillis(Math.max(currentTime, runnablesByTime.lastKey()));
   }
 
   private boolean nextTaskIsScheduledBefore(long endingTime) {
-    return !runnables.isEmpty() && runnables.peek().scheduledTime <= endingTime;
+    return size > 0 && runnablesByTime.firstKey() <= endingTime;
+  }
+
+  /**
+   * Adds a runnable to the bucket for its scheduled time, ahead of the runnables already there if
+   * {@code atFront} is true.
+   */
+  private void enqueue(ScheduledRunnable postedRunnable, boolean atFront) {
+    ArrayDeque<ScheduledRunnable> bucket =
+        runnablesByTime.computeIfAbsent(postedRunnable.scheduledTime, time -> new ArrayDeque<>());
+    if (atFront) {
+      bucket.addFirst(postedRunnable);
+    } else {
+      bucket.addLast(postedRunnable);
+    }
+    runnablesIndex
+        .computeIfAbsent(postedRunnable.runnable, runnable -> new ArrayList<>(1))
+        .add(postedRunnable);
+    size++;
+  }
+
+  private ScheduledRunnable poll() {
+    if (size == 0) {
+      return null;
+    }
+    Map.Entry<Long, ArrayDeque<ScheduledRunnable>> first = runnablesByTime.firstEntry();
+    ScheduledRunnable postedRunnable = first.getValue().pollFirst();
+    if (first.getValue().isEmpty()) {
+      runnablesByTime.remove(first.getKey());
+    }
+    List<ScheduledRunnable> scheduled = runnablesIndex.get(postedRunnable.runnable);
+    scheduled.remove(postedRunnable);
+    if (scheduled.isEmpty()) {
+      runnablesIndex.remove(postedRunnable.runnable);
+    }
+    size--;
+    return postedRunnable;
   }
 
   private void runOrQueueRunnable(Runnable runnable, long scheduledTime) {
     if (isExecutingRunnable) {
-      runnables.add(new ScheduledRunnable(runnable, scheduledTime));
+      enqueue(new ScheduledRunnable(runnable, scheduledTime), false);
       return;
     }
     isExecutingRunnable = true;
@@ -367,28 +405,13 @@ public class Scheduler {
     }
   }
 
-  private class ScheduledRunnable implements Comparable<ScheduledRunnable> {
+  private class ScheduledRunnable {
     private final Runnable runnable;
     private final long scheduledTime;
-    private final long timeDisambiguator;
 
     private ScheduledRunnable(Runnable runnable, long scheduledTime) {
-      this(runnable, scheduledTime, nextTimeDisambiguator++);
-    }
-
-    private ScheduledRunnable(Runnable runnable, long scheduledTime, long timeDisambiguator) {
       this.runnable = runnable;
       this.scheduledTime = scheduledTime;
-      this.timeDisambiguator = timeDisambiguator;
-    }
-
-    @Override
-    public int compareTo(@Nonnull ScheduledRunnable runnable) {
-      int timeCompare = Long.compare(scheduledTime, runnable.scheduledTime);
-      if (timeCompare == 0) {
-        return Long.compare(timeDisambiguator, runnable.timeDisambiguator);
-      }
-      return timeCompare;
     }
 
     public void run() {
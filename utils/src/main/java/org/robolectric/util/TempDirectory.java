@@ -23,6 +23,9 @@ import javax.annotation.Nonnull;
 /**
  * A helper class for working with temporary directories. All temporary directories created by this
  * class are automatically removed in a JVM shutdown hook.
+ *
+ * <p>The directories holding the files written by tests can be kept in memory instead of on disk,
+ * see {@link #forTestData(String)}.
  */
 @SuppressWarnings({"NewApi", "AndroidJdkLibsChecker"})
 public class TempDirectory {
@@ -37,9 +40,23 @@ public class TempDirectory {
 
   static final String OBSOLETE_MARKER_FILE_NAME = ".obsolete";
 
+  /**
+   * System property that, when set to {@code true}, makes {@link #forTestData(String)} create
+   * directories on a memory-backed filesystem if one is available.
+   */
+  public static final String IN_MEMORY_PROPERTY = "robolectric.tempDirectory.inMemory";
+
+  /** A tmpfs mount that is available on most Linux systems, including containers. */
+  private static final Path MEMORY_BACKED_ROOT = Paths.get("/dev/shm");
+
+  private static boolean warnedAboutMissingMemoryRoot;
+
   /* Set to track the undeleted TempDirectory instances which we need to erase. */
   private static final Set<TempDirectory> tempDirectoriesToDelete = new HashSet<>();
 
+  // Guarded by tempDirectoriesToDelete.
+  private static boolean shutdownHookAdded;
+
   /* Prior temp directories in Windows that were unable to be deleted */
   private static final Set<Path> obsoleteTempDirectoriesToDelete =
       Collections.synchronizedSet(new HashSet<>());
@@ -51,21 +68,31 @@ public class TempDirectory {
   }
 
   private final Path basePath;
+  private final boolean inMemory;
 
   public TempDirectory() {
     this("test-dir");
   }
 
   public TempDirectory(String name) {
+    this(name, null);
+  }
+
+  private TempDirectory(String name, Path parent) {
     try {
-      basePath = Files.createTempDirectory(TEMP_DIR_PREFIX + name);
+      basePath =
+          parent == null
+              ? Files.createTempDirectory(TEMP_DIR_PREFIX + name)
+              : Files.createTempDirectory(parent, TEMP_DIR_PREFIX + name);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    inMemory = parent != null;
 
     synchronized (tempDirectoriesToDelete) {
       // If we haven't initialised the shutdown hook we should set everything up.
-      if (tempDirectoriesToDelete.isEmpty()) {
+      if (!shutdownHookAdded) {
+        shutdownHookAdded = true;
         // Use a manual hook that actually clears the directory
         // This is necessary because File.deleteOnExit won't delete non empty directories
         Runtime.getRuntime().addShutdownHook(new Thread(TempDirectory::clearAllDirectories));
@@ -75,10 +102,44 @@ public class TempDirectory {
     }
   }
 
+  /**
+   * Creates a temporary directory for the files that a test writes, such as app data directories,
+   * databases and shared preferences.
+   *
+   * <p>If {@value #IN_MEMORY_PROPERTY} is {@code true} and {@code /dev/shm} is available, the
+   * directory is created there. Files in it are still real files, so they can be opened as file
+   * descriptors, mapped and used by native code, but writing and syncing them never touches a disk,
+   * and deleting them only frees memory. Otherwise, this is the same as {@link
+   * #TempDirectory(String)}. Code that needs its files on disk, e.g. because they are too big to
+   * keep in memory, can always create its own directory with {@link #TempDirectory(String)}.
+   */
+  public static TempDirectory forTestData(String name) {
+    if (!Boolean.getBoolean(IN_MEMORY_PROPERTY)) {
+      return new TempDirectory(name);
+    }
+    if (!Files.isDirectory(MEMORY_BACKED_ROOT) || !Files.isWritable(MEMORY_BACKED_ROOT)) {
+      synchronized (TempDirectory.class) {
+        if (!warnedAboutMissingMemoryRoot) {
+          warnedAboutMissingMemoryRoot = true;
+          Logger.warn(
+              "%s is set, but %s isn't available; using %s",
+              IN_MEMORY_PROPERTY, MEMORY_BACKED_ROOT, System.getProperty("java.io.tmpdir"));
+        }
+      }
+      return new TempDirectory(name);
+    }
+    return new TempDirectory(name, MEMORY_BACKED_ROOT);
+  }
+
   public Path getBasePath() {
     return basePath;
   }
 
+  /** Returns true if this directory is on a memory-backed filesystem. */
+  public boolean isInMemory() {
+    return inMemory;
+  }
+
   static void clearAllDirectories() {
     ExecutorService deletionExecutorService = Executors.newFixedThreadPool(DELETE_THREAD_POOL_SIZE);
     synchronized (tempDirectoriesToDelete) {
@@ -144,6 +205,10 @@ public class TempDirectory {
     try {
       clearDirectory(basePath);
       Files.delete(basePath);
+      // Tests running concurrently, e.g. in sandbox shards, each create and destroy directories.
+      synchronized (tempDirectoriesToDelete) {
+        tempDirectoriesToDelete.remove(this);
+      }
     } catch (IOException e) {
       if (OsUtil.isWindows()) {
         // Windows is much more protective of files that have been opened in native code. For
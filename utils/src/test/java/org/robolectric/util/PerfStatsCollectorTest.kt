@@ -120,6 +120,107 @@ class PerfStatsCollectorTest {
     assertThat(collector.metrics).containsExactly(Metric("changing event", 7, 0, true))
   }
 
+  @Test
+  fun shouldNotifyEventListeners() {
+    val finished = mutableListOf<String>()
+    val listener =
+      object : PerfStatsCollector.EventListener {
+        override fun eventStarted(eventName: String): Any = "started $eventName"
+
+        override fun eventFinished(
+          startValue: Any?,
+          eventName: String,
+          elapsedNs: Long,
+          success: Boolean,
+        ) {
+          finished.add("$startValue in $elapsedNs, success=$success")
+        }
+      }
+    collector.addEventListener(listener)
+    val event = collector.startEvent("event")
+    fakeClock.delay(20)
+    event.finished(false)
+    collector.removeEventListener(listener)
+    collector.startEvent("other event").finished()
+
+    assertThat(finished).containsExactly("started event in 20, success=false")
+  }
+
+  @Test
+  fun shouldNotNotifyEventListenersWhenDisabled() {
+    val started = mutableListOf<String>()
+    collector.addEventListener(
+      object : PerfStatsCollector.EventListener {
+        override fun eventStarted(eventName: String): Any? {
+          started.add(eventName)
+          return null
+        }
+
+        override fun eventFinished(
+          startValue: Any?,
+          eventName: String,
+          elapsedNs: Long,
+          success: Boolean,
+        ) {}
+      }
+    )
+    collector.setEnabled(false)
+    collector.startEvent("event").finished()
+
+    assertThat(started).isEmpty()
+  }
+
+  @Test
+  fun threadCollector_recordsWhatIsRecordedOnItsThread() {
+    val threadCollector = collector.newThreadCollector()
+    collector.setThreadCollector(threadCollector)
+    try {
+      collector.startEvent("event").finished()
+      collector.incrementCount("count")
+      val otherThread = Thread { collector.incrementCount("other thread") }
+      otherThread.start()
+      otherThread.join()
+      assertThat(collector.forCurrentThread()).isSameInstanceAs(threadCollector)
+    } finally {
+      collector.setThreadCollector(null)
+    }
+    collector.incrementCount("after")
+
+    assertThat(threadCollector.metrics.map { it.name }).containsExactly("event", "count")
+    assertThat(collector.metrics.map { it.name }).containsExactly("other thread", "after")
+  }
+
+  @Test
+  fun newThreadCollector_isDisabledWhenThisIsDisabled() {
+    collector.setEnabled(false)
+    val threadCollector = collector.newThreadCollector()
+    threadCollector.startEvent("event").finished()
+
+    assertThat(threadCollector.isEnabled).isFalse()
+    assertThat(threadCollector.metrics).isEmpty()
+  }
+
+  @Test
+  fun merge_addsCountsAndTimes() {
+    val other = PerfStatsCollector(fakeClock)
+    val event = collector.startEvent("event")
+    fakeClock.delay(10)
+    event.finished()
+    val otherEvent = other.startEvent("event")
+    fakeClock.delay(30)
+    otherEvent.finished()
+    other.incrementCount("count")
+
+    collector.merge(other)
+
+    val merged = collector.metrics.single { it.name == "event" }
+    assertThat(merged.count).isEqualTo(2)
+    assertThat(merged.elapsedNs).isEqualTo(40L)
+    assertThat(merged.minNs).isEqualTo(10L)
+    assertThat(merged.maxNs).isEqualTo(30L)
+    assertThat(collector.metrics.single { it.name == "count" }.count).isEqualTo(1)
+  }
+
   private class FakeClock : Clock {
     private var timeNs = 0
 
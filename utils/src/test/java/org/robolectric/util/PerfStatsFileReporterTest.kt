@@ -0,0 +1,80 @@
+package org.robolectric.util
+
+import com.google.common.truth.Truth.assertThat
+import java.io.File
+import java.nio.file.Files
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.JUnit4
+import org.robolectric.pluginapi.perf.Metadata
+import org.robolectric.pluginapi.perf.Metric
+
+@RunWith(JUnit4::class)
+class PerfStatsFileReporterTest {
+  private lateinit var outputDir: File
+
+  @Before
+  fun setUp() {
+    outputDir = Files.createTempDirectory("perf-stats").toFile()
+  }
+
+  @Test
+  fun jsonReporter_writesFilePerTestClass() {
+    val reporter = JsonPerfStatsReporter(outputDir)
+    reporter.report(Metadata(34, "com.example.FirstTest", "first"), metrics())
+    reporter.report(Metadata(34, "com.example.SecondTest", "second"), metrics())
+    reporter.finalReport()
+
+    assertThat(outputDir.list())
+      .asList()
+      .containsExactly("com.example.FirstTest.json", "com.example.SecondTest.json")
+    assertThat(File(outputDir, "com.example.FirstTest.json").readText())
+      .isEqualTo(
+        """
+        {"testClass": "com.example.FirstTest", "tests": [
+          {"name": "first", "sdk": 34, "metrics": [
+            {"name": "load \"class\"", "success": true, "count": 2, "elapsedNs": 30, "minNs": 10, "maxNs": 20},
+            {"name": "test", "success": false, "count": 1, "elapsedNs": 5, "minNs": 5, "maxNs": 5}]}]}
+
+        """
+          .trimIndent()
+      )
+  }
+
+  @Test
+  fun openMetricsReporter_writesFilePerTestClass() {
+    val reporter = OpenMetricsPerfStatsReporter(outputDir)
+    reporter.report(Metadata(34, "com.example.FirstTest", "first"), metrics())
+    reporter.finalReport()
+
+    val labels = "test_class=\"com.example.FirstTest\",test=\"first\",sdk=\"34\""
+    assertThat(File(outputDir, "com.example.FirstTest.prom").readLines())
+      .containsAtLeast(
+        "# TYPE robolectric_perf_event_count counter",
+        "robolectric_perf_event_count_total{$labels,event=\"load \\\"class\\\"\",success=\"true\"} 2",
+        "robolectric_perf_event_seconds_total{$labels,event=\"test\",success=\"false\"} 5.0E-9",
+        "robolectric_perf_event_max_seconds{$labels,event=\"load \\\"class\\\"\",success=\"true\"} 2.0E-8",
+        "# EOF",
+      )
+      .inOrder()
+  }
+
+  @Test
+  fun reporter_groupsTestsWithoutMetadata() {
+    val reporter = JsonPerfStatsReporter(outputDir)
+    reporter.report(null, metrics())
+    reporter.finalReport()
+
+    assertThat(outputDir.list()).asList().containsExactly("unknown.json")
+  }
+
+  private fun metrics(): List<Metric> {
+    val test = Metric("test", false)
+    test.record(5)
+    val load = Metric("load \"class\"", true)
+    load.record(10)
+    load.record(20)
+    return listOf(test, load)
+  }
+}
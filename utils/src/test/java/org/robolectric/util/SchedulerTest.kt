@@ -223,6 +223,23 @@ class SchedulerTest {
     assertThat(wasRun.get()).isFalse()
   }
 
+  @Test
+  fun remove_updatesScheduledTaskTimes() {
+    val runnable = Runnable {}
+    scheduler.postDelayed(AddToTranscript("one"), 100)
+    scheduler.postDelayed(runnable, 50)
+    scheduler.postDelayed(runnable, 200)
+
+    scheduler.remove(runnable)
+
+    assertThat(scheduler.size()).isEqualTo(1)
+    assertThat(scheduler.nextScheduledTaskTime.toMillis()).isEqualTo(startTime + 100)
+    assertThat(scheduler.lastScheduledTaskTime.toMillis()).isEqualTo(startTime + 100)
+    scheduler.advanceToLastPostedRunnable()
+    assertThat(transcript).containsExactly("one")
+    assertThat(scheduler.currentTime).isEqualTo(startTime + 100)
+  }
+
   @Test
   @Throws(Exception::class)
   fun reset_shouldUnPause() {
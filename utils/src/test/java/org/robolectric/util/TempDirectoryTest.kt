@@ -4,10 +4,12 @@ import com.google.common.truth.Truth.assertThat
 import java.io.IOException
 import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.Paths
 import java.util.concurrent.CountDownLatch
 import java.util.concurrent.Executors
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.TimeUnit
+import org.junit.Assume.assumeTrue
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.junit.runners.JUnit4
@@ -35,6 +37,31 @@ class TempDirectoryTest {
     assertThat(dir.parent.toFile().exists()).isFalse()
   }
 
+  @Test
+  fun forTestData_isOnDiskByDefault() {
+    val tempDir = TempDirectory.forTestData("temp_dir")
+    assertThat(tempDir.isInMemory).isFalse()
+  }
+
+  @Test
+  fun forTestData_inMemory_usesMemoryBackedFilesystem() {
+    val memoryRoot = Paths.get("/dev/shm")
+    assumeTrue(Files.isDirectory(memoryRoot) && Files.isWritable(memoryRoot))
+    System.setProperty(TempDirectory.IN_MEMORY_PROPERTY, "true")
+    try {
+      val tempDir = TempDirectory.forTestData("temp_dir")
+      val file = tempDir.createFile("file1", "contents")
+      assertThat(tempDir.isInMemory).isTrue()
+      assertThat(tempDir.basePath.parent).isEqualTo(memoryRoot)
+      assertThat(Files.readAllLines(file)).containsExactly("contents")
+
+      tempDir.destroy()
+      assertThat(Files.exists(tempDir.basePath)).isFalse()
+    } finally {
+      System.clearProperty(TempDirectory.IN_MEMORY_PROPERTY)
+    }
+  }
+
   @Test
   fun cleanupObsoleteDirectories() {
     val origOsName = System.getProperty("os.name")